@@ -0,0 +1,201 @@
+package org.spicefactory.parsley.flow;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nullable;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.messaging.MessageProcessor;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+import org.spicefactory.parsley.core.scope.ScopeManager;
+
+/**
+ * Publishes the messages of a single type and selector dispatched through a scope to reactive stream subscribers.
+ * <p>
+ * The publisher registers one message target in the scope, which copies each matching message into a bounded buffer per subscription.
+ * Subscribers receive messages on the executor of the publisher, never more than they requested. As the message bus cannot be slowed down by
+ * a subscriber, a subscriber that falls behind until its buffer is full either gets an error and is cancelled, or misses the messages that do
+ * not fit, depending on the overflow strategy.
+ * </p>
+ * <p>
+ * The settings must be set before the first subscriber subscribes. Closing the publisher removes its target from the scope and completes all
+ * subscribers once they received the messages already buffered.
+ * </p>
+ * @param <T> the type of the published messages
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class ScopePublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+
+	/**
+	 * Strategy applied when a message does not fit in the buffer of a subscription.
+	 */
+	public enum Overflow {
+
+		/**
+		 * Cancels the subscription and signals an error to the subscriber.
+		 */
+		FAIL,
+
+		/**
+		 * Discards the message for that subscriber only.
+		 */
+		DROP
+	}
+
+	private final Class<T> type;
+	private final String scopeName;
+	private final MessageReceiverRegistry receivers;
+	private final PublishingTarget target;
+	private final List<ScopeSubscription<T>> subscriptions;
+
+	private volatile int bufferSize = 256;
+	private volatile Executor executor = ForkJoinPool.commonPool();
+	private volatile Overflow overflow = Overflow.FAIL;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new publisher for the specified scope of a Context, looking the scope up in the scope index of its hierarchy.
+	 * @param context the Context the scope belongs to
+	 * @param scopeName the name of the scope to publish messages of, null for the default scope
+	 * @param type the type of the messages to publish, including subtypes
+	 * @param selector the selector messages must match, or null for all messages of the type
+	 */
+	public ScopePublisher(Context context, @Nullable String scopeName, Class<T> type, @Nullable Object selector) {
+		this(context.getInstance(ScopeManager.class).getScope(scopeName), context.getInstance(ScopeIndex.class), type, selector);
+	}
+
+	/**
+	 * Creates a new publisher for the specified scope.
+	 * @param scope the scope to publish messages of
+	 * @param scopeIndex the index the scope has been registered in
+	 * @param type the type of the messages to publish, including subtypes
+	 * @param selector the selector messages must match, or null for all messages of the type
+	 */
+	public ScopePublisher(Scope scope, ScopeIndex scopeIndex, Class<T> type, @Nullable Object selector) {
+		final ScopeInfo info = scopeIndex.get(scope.uuid());
+		if (info == null) {
+			throw new IllegalStateException("Scope '" + scope.name() + "' is not registered in the scope index.");
+		}
+
+		this.type = type;
+		this.scopeName = scope.name();
+		this.receivers = info.messageReceivers();
+		this.target = new PublishingTarget(selector);
+		this.subscriptions = new CopyOnWriteArrayList<ScopeSubscription<T>>();
+
+		receivers.addTarget(target);
+	}
+
+	/**
+	 * Sets the number of messages buffered per subscription. The default is 256.
+	 */
+	public ScopePublisher<T> bufferSize(int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+		}
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	/**
+	 * Sets the executor subscribers receive messages on. The default is the common fork-join pool.
+	 */
+	public ScopePublisher<T> executor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Sets the strategy applied when a message does not fit in the buffer of a subscription. The default is to fail the subscription.
+	 */
+	public ScopePublisher<T> overflow(Overflow overflow) {
+		this.overflow = overflow;
+		return this;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		final ScopeSubscription<T> subscription = new ScopeSubscription<T>(this, subscriber, executor, bufferSize, overflow);
+		subscriptions.add(subscription);
+		if (closed) {
+			// Closed concurrently, the subscription may have been missed.
+			subscriptions.remove(subscription);
+			subscription.complete();
+		}
+		subscription.start();
+	}
+
+	/**
+	 * Returns the number of active subscriptions.
+	 */
+	public int subscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Stops publishing messages of the scope and completes all subscribers.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		receivers.removeTarget(target);
+		for (ScopeSubscription<T> subscription : subscriptions) {
+			subscription.complete();
+		}
+		subscriptions.clear();
+	}
+
+	// Package-private.
+	void remove(ScopeSubscription<T> subscription) {
+		subscriptions.remove(subscription);
+	}
+
+	// Package-private.
+	String scopeName() {
+		return scopeName;
+	}
+
+	/**
+	 * Target copying matching messages into the buffers of all subscriptions.
+	 */
+	private class PublishingTarget implements MessageTarget {
+
+		private final Object selector;
+
+		PublishingTarget(Object selector) {
+			this.selector = selector;
+		}
+
+		@Override
+		public Class<?> type() {
+			return type;
+		}
+
+		@Override
+		public Object selector() {
+			return selector;
+		}
+
+		@Override
+		public int order() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public void handleMessage(MessageProcessor processor) {
+			final T message = type.cast(processor.message().instance());
+			for (ScopeSubscription<T> subscription : subscriptions) {
+				subscription.offer(message);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.spicefactory.parsley.flow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.scope.Scope;
+
+/**
+ * Dispatches the items of a reactive stream as messages through a scope.
+ * <p>
+ * The subscriber keeps at most <code>window</code> messages in flight: it requests that many items up front and requests more whenever half
+ * of them completed processing. Items are dispatched on the thread that signals them. Messages whose type is annotated with a dispatch
+ * priority are queued and only count as completed once delivered, so that a fast upstream is held back by slow receivers instead of filling
+ * an unbounded queue.
+ * </p>
+ * <p>
+ * Exceptions thrown by receivers are logged by the scope and do not cancel the subscription. A subscriber may only be subscribed once.
+ * </p>
+ * @param <T> the type of the dispatched items
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class ScopeSubscriber<T> implements Flow.Subscriber<T> {
+
+	private final Scope scope;
+	private final Object selector;
+	private final int window;
+	private final int limit;
+	private final AtomicInteger inFlight;
+	private final AtomicInteger completedSinceRequest;
+	private final CompletableFuture<Void> completion;
+	private final BiConsumer<DispatchResult, Throwable> onDelivered;
+
+	private Flow.Subscription subscription;
+	private volatile boolean done;
+	private volatile Throwable error;
+
+	/**
+	 * Creates a new subscriber keeping up to 256 messages in flight.
+	 * @param scope the scope to dispatch items through
+	 * @param selector the selector to use if it cannot be determined from the item itself
+	 */
+	public ScopeSubscriber(Scope scope, @Nullable Object selector) {
+		this(scope, selector, 256);
+	}
+
+	/**
+	 * Creates a new subscriber.
+	 * @param scope the scope to dispatch items through
+	 * @param selector the selector to use if it cannot be determined from the item itself
+	 * @param window the maximum number of messages in flight
+	 */
+	public ScopeSubscriber(Scope scope, @Nullable Object selector, int window) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("Window must be positive: " + window);
+		}
+		this.scope = scope;
+		this.selector = selector;
+		this.window = window;
+		this.limit = Math.max(1, window / 2);
+		this.inFlight = new AtomicInteger();
+		this.completedSinceRequest = new AtomicInteger();
+		this.completion = new CompletableFuture<Void>();
+		this.onDelivered = new BiConsumer<DispatchResult, Throwable>() {
+
+			@Override
+			public void accept(DispatchResult result, Throwable failure) {
+				delivered();
+			}
+		};
+	}
+
+	/**
+	 * Returns the stage completed once the stream terminated and all its messages have been processed, exceptionally if the stream failed.
+	 */
+	public CompletionStage<Void> completion() {
+		return completion;
+	}
+
+	/**
+	 * Cancels the subscription. Messages already in flight are still processed.
+	 */
+	public synchronized void cancel() {
+		if (subscription != null && !done) {
+			done = true;
+			subscription.cancel();
+			terminateIfIdle();
+		}
+	}
+
+	@Override
+	public synchronized void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(window);
+	}
+
+	@Override
+	public void onNext(T item) {
+		if (item == null) {
+			throw new NullPointerException("Item must not be null.");
+		}
+		if (done) {
+			return;
+		}
+		inFlight.incrementAndGet();
+		try {
+			scope.dispatch(item, selector).whenComplete(onDelivered);
+		}
+		catch (RuntimeException e) {
+			logger.error("Failed to dispatch item '{}' through scope '{}'.", item, scope.name(), e);
+			delivered();
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		logger.error("Stream dispatched through scope '{}' failed.", scope.name(), throwable);
+		error = throwable;
+		done = true;
+		terminateIfIdle();
+	}
+
+	@Override
+	public void onComplete() {
+		done = true;
+		terminateIfIdle();
+	}
+
+	private void delivered() {
+		inFlight.decrementAndGet();
+		if (done) {
+			terminateIfIdle();
+		}
+		else if (completedSinceRequest.incrementAndGet() == limit) {
+			completedSinceRequest.addAndGet(-limit);
+			request(limit);
+		}
+	}
+
+	/**
+	 * Requests more items, serialized with <code>onSubscribe</code> and <code>cancel</code> as deliveries may complete on any thread.
+	 */
+	private synchronized void request(long n) {
+		if (!done) {
+			subscription.request(n);
+		}
+	}
+
+	private void terminateIfIdle() {
+		if (inFlight.get() == 0) {
+			final Throwable cause = error;
+			if (cause != null) {
+				completion.completeExceptionally(cause);
+			}
+			else {
+				completion.complete(null);
+			}
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(ScopeSubscriber.class);
+
+}
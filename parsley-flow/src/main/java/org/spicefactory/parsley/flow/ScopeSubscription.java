@@ -0,0 +1,221 @@
+package org.spicefactory.parsley.flow;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single subscription to a ScopePublisher, buffering messages until the subscriber requested them.
+ * <p>
+ * All signals to the subscriber, including <code>onSubscribe</code>, are emitted by a single draining task at a time, scheduled on the
+ * executor of the publisher whenever a message, a request or a terminal event arrives while it is not running. The task delivers as many
+ * buffered messages as have been requested and exits once no work arrived in the meantime.
+ * </p>
+ * @param <T> the type of the published messages
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+final class ScopeSubscription<T> implements Flow.Subscription, Runnable {
+
+	private final ScopePublisher<T> publisher;
+	private final Flow.Subscriber<? super T> subscriber;
+	private final Executor executor;
+	private final int bufferSize;
+	private final ScopePublisher.Overflow overflow;
+	private final Queue<T> buffer;
+	private final AtomicLong requested;
+	private final AtomicInteger work;
+
+	private volatile boolean completed;
+	private volatile boolean cancelled;
+	private volatile Throwable error;
+
+	// Confined to the draining task.
+	private boolean subscribed;
+
+	// Package-private.
+	ScopeSubscription(ScopePublisher<T> publisher, Flow.Subscriber<? super T> subscriber, Executor executor, int bufferSize,
+			ScopePublisher.Overflow overflow) {
+		this.publisher = publisher;
+		this.subscriber = subscriber;
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+		this.overflow = overflow;
+		this.buffer = new ArrayBlockingQueue<T>(bufferSize);
+		this.requested = new AtomicLong();
+		// Held until start, so that nothing is signalled before onSubscribe.
+		this.work = new AtomicInteger(1);
+	}
+
+	/**
+	 * Schedules the draining task for the first time, which signals <code>onSubscribe</code>.
+	 */
+	// Package-private.
+	void start() {
+		executor.execute(this);
+	}
+
+	/**
+	 * Buffers a message dispatched through the scope, applying the overflow strategy if the buffer is full.
+	 */
+	// Package-private.
+	void offer(T message) {
+		if (cancelled || completed || error != null) {
+			return;
+		}
+		if (!buffer.offer(message)) {
+			if (overflow == ScopePublisher.Overflow.DROP) {
+				logger.debug("Dropping message '{}' for subscriber {}: buffer full.", message, subscriber);
+				return;
+			}
+			fail(new IllegalStateException("Subscriber " + subscriber + " fell behind: buffer of " + bufferSize + " messages of scope '"
+					+ publisher.scopeName() + "' overflowed."));
+			return;
+		}
+		schedule();
+	}
+
+	/**
+	 * Completes the subscriber once it received the messages already buffered.
+	 */
+	// Package-private.
+	void complete() {
+		completed = true;
+		schedule();
+	}
+
+	@Override
+	public void request(long n) {
+		if (n <= 0) {
+			fail(new IllegalArgumentException("Subscriber " + subscriber + " requested a non-positive number of messages: " + n));
+			return;
+		}
+		for (;;) {
+			final long current = requested.get();
+			final long next = current + n;
+			if (requested.compareAndSet(current, (next < 0) ? Long.MAX_VALUE : next)) {
+				break;
+			}
+		}
+		schedule();
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+		publisher.remove(this);
+		schedule();
+	}
+
+	private void fail(Throwable cause) {
+		if (error == null) {
+			error = cause;
+		}
+		publisher.remove(this);
+		schedule();
+	}
+
+	private void schedule() {
+		if (work.getAndIncrement() == 0) {
+			executor.execute(this);
+		}
+	}
+
+	@Override
+	public void run() {
+		if (!subscribed) {
+			subscribed = true;
+			try {
+				subscriber.onSubscribe(this);
+			}
+			catch (RuntimeException e) {
+				logger.error("Subscriber {} failed in onSubscribe, cancelling its subscription.", subscriber, e);
+				cancel();
+			}
+		}
+
+		int missed = 1;
+		for (;;) {
+			final long demand = requested.get();
+			long emitted = 0;
+
+			while (emitted != demand) {
+				if (terminated()) {
+					return;
+				}
+				final T message = buffer.poll();
+				if (message == null) {
+					break;
+				}
+				try {
+					subscriber.onNext(message);
+				}
+				catch (RuntimeException e) {
+					logger.error("Subscriber {} failed in onNext, cancelling its subscription.", subscriber, e);
+					cancel();
+				}
+				emitted++;
+			}
+
+			if (terminated()) {
+				return;
+			}
+			if (completed && buffer.isEmpty()) {
+				cancelled = true;
+				publisher.remove(this);
+				signal(null);
+				return;
+			}
+			if (emitted != 0 && demand != Long.MAX_VALUE) {
+				requested.addAndGet(-emitted);
+			}
+
+			missed = work.addAndGet(-missed);
+			if (missed == 0) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Handles cancellation and errors, which both take effect before the buffered messages. Leaves the work counter non-zero once terminated,
+	 * so that the task never gets scheduled again.
+	 */
+	private boolean terminated() {
+		if (cancelled) {
+			buffer.clear();
+			return true;
+		}
+		final Throwable cause = error;
+		if (cause != null) {
+			cancelled = true;
+			buffer.clear();
+			signal(cause);
+			return true;
+		}
+		return false;
+	}
+
+	private void signal(Throwable cause) {
+		try {
+			if (cause != null) {
+				subscriber.onError(cause);
+			}
+			else {
+				subscriber.onComplete();
+			}
+		}
+		catch (RuntimeException e) {
+			logger.error("Subscriber {} failed to handle the termination of its subscription.", subscriber, e);
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(ScopeSubscription.class);
+
+}
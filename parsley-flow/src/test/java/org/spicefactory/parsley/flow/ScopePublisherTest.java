@@ -0,0 +1,173 @@
+package org.spicefactory.parsley.flow;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import org.spicefactory.parsley.core.messaging.MessageProcessor;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.messaging.impl.DefaultMessage;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+
+/**
+ * Checks that a scope publisher honours the demand of its subscribers, applies its overflow strategy and completes them when closed, on an
+ * executor run by hand.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class ScopePublisherTest {
+
+	private final List<MessageTarget> targets = new ArrayList<MessageTarget>();
+	private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+	private final Executor executor = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+	};
+	private final ScopePublisher<String> publisher;
+
+	public ScopePublisherTest() {
+		final MessageReceiverRegistry registry = stub(MessageReceiverRegistry.class, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("addTarget")) {
+					targets.add((MessageTarget) args[0]);
+				}
+				else if (method.getName().equals("removeTarget")) {
+					targets.remove(args[0]);
+				}
+				return null;
+			}
+		});
+		final ScopeInfo info = stub(ScopeInfo.class, returning("messageReceivers", registry));
+		final Scope scope = stub(Scope.class, returning("uuid", "global-uuid"));
+		publisher = new ScopePublisher<String>(scope, stub(ScopeIndex.class, returning("get", info)), String.class, null).executor(executor);
+	}
+
+	public void testDeliversOnlyRequestedMessages() {
+		final RecordingSubscriber subscriber = subscribe();
+		subscriber.subscription.request(2);
+		publish("a", "b", "c");
+		runTasks();
+		check(subscriber.items.equals(Arrays.asList("a", "b")), "Demand not honoured: " + subscriber.items);
+
+		subscriber.subscription.request(1);
+		runTasks();
+		check(subscriber.items.equals(Arrays.asList("a", "b", "c")), "Buffered message not delivered: " + subscriber.items);
+	}
+
+	public void testOverflowFailsSubscriber() {
+		publisher.bufferSize(2);
+		final RecordingSubscriber subscriber = subscribe();
+		publish("a", "b", "c");
+		runTasks();
+		check(subscriber.error instanceof IllegalStateException, "Overflow not signalled: " + subscriber.error);
+		check(subscriber.items.isEmpty(), "Messages delivered after the overflow: " + subscriber.items);
+		check(publisher.subscriberCount() == 0, "Failed subscription still active");
+	}
+
+	public void testOverflowDropsMessages() {
+		publisher.bufferSize(2).overflow(ScopePublisher.Overflow.DROP);
+		final RecordingSubscriber subscriber = subscribe();
+		publish("a", "b", "c");
+		subscriber.subscription.request(5);
+		runTasks();
+		check(subscriber.items.equals(Arrays.asList("a", "b")), "Unexpected messages: " + subscriber.items);
+		check(subscriber.error == null, "Subscription failed: " + subscriber.error);
+	}
+
+	public void testCloseCompletesAfterBufferedMessages() {
+		final RecordingSubscriber subscriber = subscribe();
+		publish("a");
+		publisher.close();
+		check(targets.isEmpty(), "Target not removed from the scope");
+		runTasks();
+		check(!subscriber.completed, "Completed before the buffered message has been requested");
+
+		subscriber.subscription.request(1);
+		runTasks();
+		check(subscriber.items.equals(Arrays.asList("a")), "Buffered message lost: " + subscriber.items);
+		check(subscriber.completed, "Subscriber not completed");
+	}
+
+	private RecordingSubscriber subscribe() {
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		runTasks();
+		check(subscriber.subscription != null, "onSubscribe not signalled");
+		return subscriber;
+	}
+
+	private void publish(String... messages) {
+		for (String message : messages) {
+			targets.get(0).handleMessage(stub(MessageProcessor.class, returning("message", new DefaultMessage(message, String.class, null))));
+		}
+	}
+
+	private void runTasks() {
+		for (Runnable task; (task = tasks.poll()) != null;) {
+			task.run();
+		}
+	}
+
+	private static InvocationHandler returning(final String name, final Object value) {
+		return new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return method.getName().equals(name) ? value : null;
+			}
+		};
+	}
+
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(ScopePublisherTest.class.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	private static final class RecordingSubscriber implements Flow.Subscriber<String> {
+
+		private final List<String> items = new ArrayList<String>();
+		private Flow.Subscription subscription;
+		private Throwable error;
+		private boolean completed;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(String item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+}
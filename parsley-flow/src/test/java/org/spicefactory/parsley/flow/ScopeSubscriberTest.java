@@ -0,0 +1,100 @@
+package org.spicefactory.parsley.flow;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.scope.Scope;
+
+/**
+ * Checks that a scope subscriber keeps its window of messages in flight and completes once the stream and its messages have been processed.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class ScopeSubscriberTest {
+
+	private final List<CompletableFuture<DispatchResult>> dispatches = new ArrayList<CompletableFuture<DispatchResult>>();
+	private final Scope scope = (Scope) Proxy.newProxyInstance(ScopeSubscriberTest.class.getClassLoader(), new Class<?>[] {Scope.class},
+			new InvocationHandler() {
+
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("dispatch")) {
+						final CompletableFuture<DispatchResult> result = new CompletableFuture<DispatchResult>();
+						dispatches.add(result);
+						return result;
+					}
+					return method.getName().equals("name") ? "global" : null;
+				}
+			});
+
+	private long requested;
+	private boolean cancelled;
+	private final Flow.Subscription subscription = new Flow.Subscription() {
+
+		@Override
+		public void request(long n) {
+			requested += n;
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+	};
+
+	public void testKeepsWindowInFlight() {
+		final ScopeSubscriber<String> subscriber = new ScopeSubscriber<String>(scope, null, 4);
+		subscriber.onSubscribe(subscription);
+		check(requested == 4, "Window not requested up front: " + requested);
+
+		for (int i = 0; i < 4; i++) {
+			subscriber.onNext("m" + i);
+		}
+		check(dispatches.size() == 4, "Items not dispatched: " + dispatches.size());
+		dispatches.get(0).complete(null);
+		check(requested == 4, "Requested before half of the window completed: " + requested);
+		dispatches.get(1).complete(null);
+		check(requested == 6, "Half of the window not requested again: " + requested);
+	}
+
+	public void testCompletesOnceMessagesProcessed() {
+		final ScopeSubscriber<String> subscriber = new ScopeSubscriber<String>(scope, null);
+		subscriber.onSubscribe(subscription);
+		subscriber.onNext("a");
+		subscriber.onComplete();
+		check(!subscriber.completion().toCompletableFuture().isDone(), "Completed with a message in flight");
+
+		dispatches.get(0).complete(null);
+		check(subscriber.completion().toCompletableFuture().isDone(), "Not completed once the message has been processed");
+		check(!cancelled, "Completed stream cancelled");
+	}
+
+	public void testStreamFailureCompletesExceptionally() {
+		final ScopeSubscriber<String> subscriber = new ScopeSubscriber<String>(scope, null);
+		subscriber.onSubscribe(subscription);
+		subscriber.onError(new IllegalStateException("upstream"));
+		check(subscriber.completion().toCompletableFuture().isCompletedExceptionally(), "Stream failure not reported");
+	}
+
+	public void testCancelStopsDispatching() {
+		final ScopeSubscriber<String> subscriber = new ScopeSubscriber<String>(scope, null);
+		subscriber.onSubscribe(subscription);
+		subscriber.cancel();
+		subscriber.onNext("late");
+		check(cancelled, "Subscription not cancelled");
+		check(dispatches.isEmpty(), "Item dispatched after cancellation");
+		check(subscriber.completion().toCompletableFuture().isDone(), "Cancelled subscriber not completed");
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package org.spicefactory.parsley.guice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.messaging.receiver.DefaultMessageHandler;
+import org.spicefactory.parsley.messaging.receiver.LazyMessageHandler;
+import org.spicefactory.parsley.messaging.receiver.LazyOwner;
+import org.spicefactory.parsley.registry.MessageHandlerEntry;
+import org.spicefactory.parsley.registry.ReceiverTable;
+
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
+import com.google.inject.Stage;
+import com.google.inject.spi.LinkedKeyBinding;
+
+/**
+ * The immutable registration plan of all Guice bindings of a single Context providing objects with Parsley metadata.
+ * <p>
+ * The plan is created once, right after the injector has been created, by visiting every binding with a
+ * <code>ParsleyModuleTargetVisitor</code> and looking up the <code>ReceiverTable</code> of the resulting class, so that registering
+ * receivers never requires scanning classes again.
+ * </p>
+ * <p>
+ * In <code>Stage.PRODUCTION</code> Guice creates singletons along with the injector, so singleton registrations are eager and hold their
+ * instance. All other registrations are lazy: their receivers are registered as proxies obtaining the owner from the provider of the binding,
+ * so that binding annotations and scoping apply. The owner of a singleton binding is obtained when the first matching message gets delivered
+ * and kept, the owner of any other binding is obtained for each delivery.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class GuiceRegistrationPlan {
+
+	/**
+	 * Creates the plan for the specified injector.
+	 * @param injector the injector of the Context
+	 * @param stage the stage the injector has been created in
+	 * @return the plan for the specified injector
+	 */
+	public static GuiceRegistrationPlan create(Injector injector, Stage stage) {
+		final ParsleyModuleTargetVisitor visitor = new ParsleyModuleTargetVisitor();
+		final Map<Key<?>, Binding<?>> explicitBindings = injector.getBindings();
+		final Map<Key<?>, Binding<?>> allBindings = injector.getAllBindings();
+
+		// A linked binding provides the instances of its target binding. When the target is explicitly bound, the target carries the
+		// registration; otherwise the target is a just-in-time binding whose scoping is defined by the link.
+		final Set<Key<?>> skipped = new HashSet<Key<?>>();
+		for (Binding<?> binding : allBindings.values()) {
+			if (binding instanceof LinkedKeyBinding) {
+				final Key<?> target = ((LinkedKeyBinding<?>) binding).getLinkedKey();
+				skipped.add(explicitBindings.containsKey(target) ? binding.getKey() : target);
+			}
+		}
+
+		final List<Registration> registrations = new ArrayList<Registration>();
+		for (Binding<?> binding : allBindings.values()) {
+			if (skipped.contains(binding.getKey())) {
+				continue;
+			}
+
+			final Class<?> type = binding.acceptTargetVisitor(visitor);
+			if (type == null) {
+				continue;
+			}
+
+			final ReceiverTable table = ReceiverTable.forClass(type);
+			if (table.isEmpty()) {
+				continue;
+			}
+
+			final boolean singleton = Scopes.isSingleton(binding);
+			final Object instance = (stage == Stage.PRODUCTION && singleton) ? binding.getProvider().get() : null;
+			registrations.add(new Registration(binding.getKey(), table, instance, binding.getProvider(), singleton));
+		}
+
+		return new GuiceRegistrationPlan(registrations);
+	}
+
+	private final List<Registration> registrations;
+
+	private GuiceRegistrationPlan(List<Registration> registrations) {
+		this.registrations = Collections.unmodifiableList(registrations);
+	}
+
+	/**
+	 * All registrations of this plan.
+	 */
+	public List<Registration> registrations() {
+		return registrations;
+	}
+
+	/**
+	 * Adds the message handlers of all registrations to the receiver registries of the scopes they are declared for. Handlers of lazy
+	 * registrations are added as proxies sharing one owner holder per registration.
+	 * <p>
+	 * All handlers are removed again once the specified Context gets destroyed, as the registries of scopes inherited from a parent Context
+	 * outlive it.
+	 * </p>
+	 * @param context the Context the handlers belong to
+	 * @param scopes the receiver registries of the scopes of the Context, mapped by scope name
+	 */
+	public void register(Context context, Map<String, ? extends MessageReceiverRegistry> scopes) {
+		for (Registration registration : registrations) {
+			for (MessageHandlerEntry entry : registration.table.messageHandlers()) {
+				if (!scopes.containsKey(entry.scope())) {
+					throw new IllegalStateException("Message handler '" + entry.methodName() + "' of " + registration.table.type()
+							+ " refers to unknown scope '" + entry.scope() + "'.");
+				}
+			}
+		}
+
+		final List<MessageReceiverRegistry> registries = new ArrayList<MessageReceiverRegistry>();
+		final List<MessageTarget> targets = new ArrayList<MessageTarget>();
+		for (Registration registration : registrations) {
+			final LazyOwner owner = registration.isEager() ? null : new LazyOwner(registration.provider, registration.table.type(),
+					registration.singleton);
+			for (MessageHandlerEntry entry : registration.table.messageHandlers()) {
+				final MessageReceiverRegistry registry = scopes.get(entry.scope());
+				final MessageTarget target;
+				if (owner == null) {
+					target = new DefaultMessageHandler(registration.instance, entry);
+				}
+				else {
+					target = new LazyMessageHandler(owner, entry);
+				}
+				registry.addTarget(target);
+				registries.add(registry);
+				targets.add(target);
+			}
+		}
+
+		context.addContextListener(new ContextListener() {
+
+			@Override
+			public void contextDestroyed(ContextEvent e) {
+				for (int i = 0; i < targets.size(); i++) {
+					registries.get(i).removeTarget(targets.get(i));
+				}
+			}
+		}, ContextEvent.DESTROYED);
+	}
+
+	/**
+	 * A single binding providing objects with Parsley metadata.
+	 */
+	public static final class Registration {
+
+		private final Key<?> key;
+		private final ReceiverTable table;
+		private final Object instance;
+		private final Provider<?> provider;
+		private final boolean singleton;
+
+		// Package-private.
+		Registration(Key<?> key, ReceiverTable table, Object instance, Provider<?> provider, boolean singleton) {
+			this.key = key;
+			this.table = table;
+			this.instance = instance;
+			this.provider = provider;
+			this.singleton = singleton;
+		}
+
+		/**
+		 * The key of the binding.
+		 */
+		public Key<?> key() {
+			return key;
+		}
+
+		/**
+		 * The receiver table of the class provided by the binding.
+		 */
+		public ReceiverTable table() {
+			return table;
+		}
+
+		/**
+		 * Indicates whether the binding is scoped as a singleton.
+		 */
+		public boolean isSingleton() {
+			return singleton;
+		}
+
+		/**
+		 * Indicates whether the receivers of this registration are registered with the instance created along with the injector.
+		 */
+		public boolean isEager() {
+			return instance != null;
+		}
+
+		/**
+		 * The singleton instance of an eager registration, null for lazy registrations.
+		 */
+		public Object instance() {
+			return instance;
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.spicefactory.parsley.guice;
 
+import com.google.inject.Binding;
 import com.google.inject.spi.BindingTargetVisitor;
 import com.google.inject.spi.ConstructorBinding;
 import com.google.inject.spi.ConvertedConstantBinding;
@@ -11,60 +12,64 @@ import com.google.inject.spi.ProviderInstanceBinding;
 import com.google.inject.spi.ProviderKeyBinding;
 import com.google.inject.spi.UntargettedBinding;
 
-public class ParsleyModuleTargetVisitor<T, V> implements BindingTargetVisitor<T, V> {
+/**
+ * Resolves the class whose Parsley metadata applies to the instances provided by a Guice binding.
+ * <p>
+ * The visitor returns null for bindings which never provide objects with Parsley metadata, like constants or the implicit
+ * <code>Provider&lt;T&gt;</code> bindings. For provider bindings the concrete class is only known after provisioning, so the raw type of the
+ * bound key is used instead.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class ParsleyModuleTargetVisitor implements BindingTargetVisitor<Object, Class<?>> {
 
 	@Override
-	public V visit(InstanceBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
-		return null;
+	public Class<?> visit(InstanceBinding<?> binding) {
+		return binding.getInstance().getClass();
 	}
 
 	@Override
-	public V visit(ProviderInstanceBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
-		return null;
+	public Class<?> visit(ProviderInstanceBinding<?> binding) {
+		return keyType(binding);
 	}
 
 	@Override
-	public V visit(ProviderKeyBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
-		return null;
+	public Class<?> visit(ProviderKeyBinding<?> binding) {
+		return keyType(binding);
 	}
 
 	@Override
-	public V visit(LinkedKeyBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
-		return null;
+	public Class<?> visit(LinkedKeyBinding<?> binding) {
+		return binding.getLinkedKey().getTypeLiteral().getRawType();
 	}
 
 	@Override
-	public V visit(ExposedBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
-		return null;
+	public Class<?> visit(ExposedBinding<?> binding) {
+		return keyType(binding);
 	}
 
 	@Override
-	public V visit(UntargettedBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
-		return null;
+	public Class<?> visit(UntargettedBinding<?> binding) {
+		return keyType(binding);
 	}
 
 	@Override
-	public V visit(ConstructorBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
-		return null;
+	public Class<?> visit(ConstructorBinding<?> binding) {
+		return binding.getConstructor().getDeclaringType().getRawType();
 	}
 
 	@Override
-	public V visit(ConvertedConstantBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
+	public Class<?> visit(ConvertedConstantBinding<?> binding) {
 		return null;
 	}
 
 	@Override
-	public V visit(ProviderBinding<? extends T> binding) {
-		// TODO Auto-generated method stub
+	public Class<?> visit(ProviderBinding<?> binding) {
 		return null;
 	}
 
+	private static Class<?> keyType(Binding<?> binding) {
+		return binding.getKey().getTypeLiteral().getRawType();
+	}
+
 }
@@ -1,21 +1,81 @@
 package org.spicefactory.parsley.guice.processor;
 
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.spicefactory.parsley.core.bootstrap.BootstrapInfo;
 import org.spicefactory.parsley.core.bootstrap.ConfigurationProcessor;
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ProviderSource;
+import org.spicefactory.parsley.core.context.ReceiverSource;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.guice.GuiceRegistrationPlan;
 
+import com.google.inject.AbstractModule;
+import com.google.inject.Binding;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Stage;
+import com.google.inject.matcher.Matchers;
 
-public class GuiceConfigurationProcessor implements ConfigurationProcessor {
+public class GuiceConfigurationProcessor implements ConfigurationProcessor, ProviderSource, ReceiverSource {
 
-	private final Injector injector;
+	private final Stage stage;
+	private final Module[] modules;
+	private final GuiceLifecycle lifecycle;
+	private volatile Injector injector;
+	private volatile GuiceRegistrationPlan plan;
 
 	public GuiceConfigurationProcessor(Module... modules) {
 		this(Stage.PRODUCTION, modules);
 	}
 
 	public GuiceConfigurationProcessor(Stage stage, Module... modules) {
-		injector = Guice.createInjector(stage, modules);
+		this.stage = stage;
+		this.modules = modules;
+		this.lifecycle = new GuiceLifecycle();
+	}
+
+	@Override
+	public void processConfiguration(BootstrapInfo info) {
+		// Creating the injector is the expensive part of the bootstrap, so it is deferred until the processor runs.
+		final Module[] all = Arrays.copyOf(modules, modules.length + 1);
+		all[modules.length] = new AbstractModule() {
+
+			@Override
+			protected void configure() {
+				bindListener(Matchers.any(), lifecycle);
+			}
+		};
+		injector = Guice.createInjector(stage, all);
+		plan = GuiceRegistrationPlan.create(injector, stage);
+	}
+
+	@Override
+	public <T> Provider<T> getProvider(Class<T> type) {
+		final Injector current = injector;
+		if (current == null) {
+			return null;
+		}
+		// Only existing bindings count, otherwise every injector of the hierarchy would claim any concrete type with a just-in-time binding.
+		final Binding<T> binding = current.getExistingBinding(Key.get(type));
+		return (binding != null) ? binding.getProvider() : null;
+	}
+
+	@Override
+	public void registerReceivers(Context context, Map<String, MessageReceiverRegistry> scopes) {
+		lifecycle.attach(context);
+		plan.register(context, scopes);
+	}
+
+	/**
+	 * The registration plan of the processed modules, null until the configuration has been processed.
+	 */
+	public GuiceRegistrationPlan plan() {
+		return plan;
 	}
 }
@@ -0,0 +1,131 @@
+package org.spicefactory.parsley.guice.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.lifecycle.ObjectLifecycle;
+import org.spicefactory.parsley.core.messaging.impl.MessageDispatcher;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeManager;
+import org.spicefactory.parsley.core.util.ConcurrentWeakIdentityMap;
+import org.spicefactory.parsley.messaging.FunctionDispatcher;
+import org.spicefactory.parsley.registry.MessageDispatcherEntry;
+import org.spicefactory.parsley.registry.ReceiverTable;
+
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.InjectionListener;
+import com.google.inject.spi.TypeEncounter;
+import com.google.inject.spi.TypeListener;
+
+/**
+ * Notifies the lifecycle observers of the scopes of a Context of the objects Guice creates for it, and injects their
+ * <code>@MessageDispatcher</code> fields.
+ * <p>
+ * Guice configures an object in a single step, so <code>PRE_INIT</code> is notified once it has been injected. Its dispatchers are injected
+ * next, then <code>POST_INIT</code> is notified. Objects created before the Context has been built, like the eager singletons of the injector,
+ * are processed once it is attached.
+ * All objects still reachable when the Context gets destroyed are notified of <code>PRE_DESTROY</code>, then of <code>POST_DESTROY</code>.
+ * Guice does not expose the binding an object has been created for, so objects are notified without id.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+final class GuiceLifecycle implements TypeListener, InjectionListener<Object> {
+
+	private final ConcurrentWeakIdentityMap<Object, Boolean> managed = new ConcurrentWeakIdentityMap<Object, Boolean>();
+	private final ConcurrentMap<String, FunctionDispatcher> dispatchers = new ConcurrentHashMap<String, FunctionDispatcher>();
+
+	// Guarded by this, until the Context is attached.
+	private List<Object> pending = new ArrayList<Object>();
+	private volatile List<Scope> scopes;
+	private volatile Context context;
+
+	@Override
+	public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
+		// Objects Guice binds for itself, like the Stage, are not part of the Context.
+		if (!type.getRawType().getName().startsWith("com.google.inject.")) {
+			encounter.register(this);
+		}
+	}
+
+	@Override
+	public void afterInjection(Object injectee) {
+		managed.put(injectee, Boolean.TRUE);
+		if (scopes == null) {
+			synchronized (this) {
+				if (pending != null) {
+					pending.add(injectee);
+					return;
+				}
+			}
+		}
+		initialize(injectee);
+	}
+
+	/**
+	 * Starts notifying the observers of the scopes of the specified Context, first of the objects created so far.
+	 * @param context the Context the objects belong to
+	 */
+	// Package-private.
+	void attach(Context context) {
+		final List<Object> created;
+		synchronized (this) {
+			this.context = context;
+			scopes = context.getInstance(ScopeManager.class).getAllScopes();
+			created = pending;
+			pending = null;
+		}
+		for (Object instance : created) {
+			initialize(instance);
+		}
+
+		context.addContextListener(new ContextListener() {
+
+			@Override
+			public void contextDestroyed(ContextEvent e) {
+				final List<Object> instances = managed.keys();
+				for (Object instance : instances) {
+					notifyObservers(instance, ObjectLifecycle.PRE_DESTROY);
+				}
+				for (Object instance : instances) {
+					notifyObservers(instance, ObjectLifecycle.POST_DESTROY);
+				}
+			}
+		}, ContextEvent.DESTROYED);
+	}
+
+	private void initialize(Object instance) {
+		notifyObservers(instance, ObjectLifecycle.PRE_INIT);
+		for (MessageDispatcherEntry entry : ReceiverTable.forClass(instance.getClass()).messageDispatchers()) {
+			entry.injector().inject(instance, dispatcher(entry.scope()));
+		}
+		notifyObservers(instance, ObjectLifecycle.POST_INIT);
+	}
+
+	/**
+	 * Returns the dispatcher for the specified scope, shared by all objects of the Context.
+	 */
+	private FunctionDispatcher dispatcher(String scope) {
+		FunctionDispatcher dispatcher = dispatchers.get(scope);
+		if (dispatcher == null) {
+			dispatcher = FunctionDispatcher.of(MessageDispatcher.forScope(context, scope));
+			final FunctionDispatcher existing = dispatchers.putIfAbsent(scope, dispatcher);
+			if (existing != null) {
+				dispatcher = existing;
+			}
+		}
+		return dispatcher;
+	}
+
+	private void notifyObservers(Object instance, ObjectLifecycle phase) {
+		for (Scope scope : scopes) {
+			scope.lifecycleObservers().notifyObservers(instance, phase, null);
+		}
+	}
+
+}
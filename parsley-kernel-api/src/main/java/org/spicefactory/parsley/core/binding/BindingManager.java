@@ -0,0 +1,51 @@
+package org.spicefactory.parsley.core.binding;
+
+import javax.annotation.Nullable;
+
+/**
+ * The manager for publishers and subscribers of the decoupled binding facility.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface BindingManager {
+
+	/**
+	 * Adds a publisher to this manager.
+	 * @param publisher the publisher to add
+	 */
+	void addPublisher(Publisher publisher);
+
+	/**
+	 * Removes a publisher from this manager. When the last publisher of a value gets removed, subscribers are updated with null.
+	 * @param publisher the publisher to remove
+	 */
+	void removePublisher(Publisher publisher);
+
+	/**
+	 * Publishes a new value on behalf of the specified publisher.
+	 * @param publisher the publisher of the value
+	 * @param value the new value, which must be an instance of the type of the publisher
+	 */
+	void publish(Publisher publisher, @Nullable Object value);
+
+	/**
+	 * Adds a subscriber to this manager. If a value has already been published, the subscriber gets updated with it.
+	 * @param subscriber the subscriber to add
+	 */
+	void addSubscriber(Subscriber subscriber);
+
+	/**
+	 * Removes a subscriber from this manager. Pending updates are not delivered anymore.
+	 * @param subscriber the subscriber to remove
+	 */
+	void removeSubscriber(Subscriber subscriber);
+
+	/**
+	 * Returns the latest value published for the specified type and id.
+	 * @param type the type of the value
+	 * @param id the id of the value
+	 * @return the latest value, or null if none has been published
+	 */
+	@Nullable
+	<T> T currentValue(Class<T> type, @Nullable String id);
+
+}
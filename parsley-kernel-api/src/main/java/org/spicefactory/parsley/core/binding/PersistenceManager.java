@@ -0,0 +1,40 @@
+package org.spicefactory.parsley.core.binding;
+
+import javax.annotation.Nullable;
+
+/**
+ * Manages values persisted by publishers.
+ * <p>
+ * Values are identified by the uuid of the scope they have been published in and by a key unique within that scope, which is why scopes
+ * holding persistent values should be defined with an explicit uuid.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface PersistenceManager {
+
+	/**
+	 * Saves the specified value, replacing any value previously saved with the same scope and key.
+	 * @param scopeId the uuid of the scope the value belongs to
+	 * @param key the key of the value within the scope
+	 * @param value the value to save
+	 */
+	void saveValue(String scopeId, String key, Object value);
+
+	/**
+	 * Deletes the value with the specified scope and key. Does nothing if there is no such value.
+	 * @param scopeId the uuid of the scope the value belongs to
+	 * @param key the key of the value within the scope
+	 */
+	void deleteValue(String scopeId, String key);
+
+	/**
+	 * Returns the value with the specified scope and key.
+	 * @param scopeId the uuid of the scope the value belongs to
+	 * @param key the key of the value within the scope
+	 * @param type the type of the value
+	 * @return the persisted value, or null if there is none
+	 */
+	@Nullable
+	<T> T getValue(String scopeId, String key, Class<T> type);
+
+}
@@ -0,0 +1,32 @@
+package org.spicefactory.parsley.core.binding;
+
+import javax.annotation.Nullable;
+
+/**
+ * A publisher of values of the decoupled binding facility.
+ * <p>
+ * Values are matched by type and id: subscribers receive the values published for the exact type and id they subscribed to. Values of
+ * persistent publishers are saved in the PersistenceManager of the scope, and restored when a persistent publisher is added for a value which
+ * has not been published yet.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface Publisher {
+
+	/**
+	 * The type of the published value.
+	 */
+	Class<?> type();
+
+	/**
+	 * The id of the published value, or null if values of this type are only published once per scope.
+	 */
+	@Nullable
+	String id();
+
+	/**
+	 * Indicates whether the published value should be persisted.
+	 */
+	boolean persistent();
+
+}
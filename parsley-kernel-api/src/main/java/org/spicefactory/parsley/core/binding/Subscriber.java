@@ -0,0 +1,52 @@
+package org.spicefactory.parsley.core.binding;
+
+import java.awt.EventQueue;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
+/**
+ * A subscriber to values of the decoupled binding facility.
+ * <p>
+ * Updates are delivered asynchronously on the executor of the subscriber and coalesced: when a value changes several times before a pending
+ * update has been delivered, the subscriber only receives the latest value. Subscribers sharing the same executor instance are updated within a
+ * single task per delivery cycle.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface Subscriber {
+
+	/**
+	 * Executor delivering updates on the event dispatch thread.
+	 */
+	final static Executor EVENT_DISPATCH_THREAD = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			EventQueue.invokeLater(command);
+		}
+	};
+
+	/**
+	 * The type of the value to subscribe to.
+	 */
+	Class<?> type();
+
+	/**
+	 * The id of the value to subscribe to, or null to subscribe to the value published without id.
+	 */
+	@Nullable
+	String id();
+
+	/**
+	 * The executor updates get delivered on, usually {@link #EVENT_DISPATCH_THREAD}.
+	 */
+	Executor executor();
+
+	/**
+	 * Invoked with the latest value, or null once all publishers of the value have been removed.
+	 * @param newValue the latest value
+	 */
+	void update(@Nullable Object newValue);
+
+}
@@ -0,0 +1,34 @@
+package org.spicefactory.parsley.core.binding;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes persisted values of a particular type.
+ * <p>
+ * Implementations write the state of the value in a compact binary form and read it back in the same order, instead of relying on Java
+ * serialization of the whole object graph.
+ * </p>
+ * @param <T> the type of the values
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface ValueCodec<T> {
+
+	/**
+	 * Writes the specified value.
+	 * @param value the value to encode
+	 * @param out the output to write to
+	 * @throws IOException if writing fails
+	 */
+	void encode(T value, DataOutput out) throws IOException;
+
+	/**
+	 * Reads a value written by {@link #encode}.
+	 * @param in the input to read from
+	 * @return the decoded value
+	 * @throws IOException if reading fails
+	 */
+	T decode(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,388 @@
+package org.spicefactory.parsley.core.binding.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.binding.BindingManager;
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.binding.Publisher;
+import org.spicefactory.parsley.core.binding.Subscriber;
+
+/**
+ * Default implementation of the BindingManager interface.
+ * <p>
+ * Each type and id pair owns a slot holding the latest value along with a version, replaced with a compare-and-set on each publication, so
+ * that publishing and reading never lock. Publishing does not invoke subscribers, it only marks them as pending in the delivery queue of their
+ * executor: a subscriber already pending is not queued again, and the delivery reads the latest version of the slot, so that a burst of
+ * publications results in a single update per subscriber. All pending subscribers of an executor are updated within one task.
+ * </p>
+ * <p>
+ * A slot is dropped once it has neither publishers nor subscribers. Registrations and removals of a slot are serialized on its entry in the
+ * map of slots, so that a slot never gets dropped while a publisher or subscriber is being added to it.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultBindingManager implements BindingManager {
+
+	private final PersistenceManager persistenceManager;
+	private final String scopeId;
+	private final ConcurrentMap<Key, Slot> slots;
+	private final ConcurrentMap<Executor, DeliveryQueue> queues;
+
+	/**
+	 * Creates a new instance.
+	 * @param persistenceManager the manager for values of persistent publishers
+	 * @param scopeId the uuid of the scope values are persisted for
+	 */
+	public DefaultBindingManager(PersistenceManager persistenceManager, String scopeId) {
+		this.persistenceManager = persistenceManager;
+		this.scopeId = scopeId;
+		this.slots = new ConcurrentHashMap<Key, Slot>();
+		this.queues = new ConcurrentHashMap<Executor, DeliveryQueue>();
+	}
+
+	@Override
+	public void addPublisher(Publisher publisher) {
+		final Key key = new Key(publisher.type(), publisher.id());
+		final Slot slot = slots.compute(key, new BiFunction<Key, Slot, Slot>() {
+
+			@Override
+			public Slot apply(Key k, Slot existing) {
+				final Slot slot = (existing != null) ? existing : new Slot();
+				slot.publishers.incrementAndGet();
+				return slot;
+			}
+		});
+
+		if (publisher.persistent() && slot.state.get() == Versioned.INITIAL) {
+			final Object value = persistenceManager.getValue(scopeId, key.persistenceKey(), publisher.type());
+			if (value != null && slot.state.compareAndSet(Versioned.INITIAL, new Versioned(1, value))) {
+				notifySubscribers(slot);
+			}
+		}
+	}
+
+	@Override
+	public void removePublisher(Publisher publisher) {
+		final Key key = new Key(publisher.type(), publisher.id());
+		final Slot slot = slots.get(key);
+		if (slot != null && slot.publishers.decrementAndGet() == 0) {
+			slot.set(null);
+			notifySubscribers(slot);
+			release(key);
+		}
+	}
+
+	@Override
+	public void publish(Publisher publisher, Object value) {
+		if (value != null && !publisher.type().isInstance(value)) {
+			throw new IllegalStateException("Value " + value + " is not an instance of published type " + publisher.type());
+		}
+
+		final Key key = new Key(publisher.type(), publisher.id());
+		final Slot slot = slotFor(key);
+		slot.set(value);
+		notifySubscribers(slot);
+
+		if (publisher.persistent()) {
+			if (value == null) {
+				persistenceManager.deleteValue(scopeId, key.persistenceKey());
+			}
+			else {
+				persistenceManager.saveValue(scopeId, key.persistenceKey(), value);
+			}
+		}
+	}
+
+	@Override
+	public void addSubscriber(final Subscriber subscriber) {
+		final DeliveryQueue queue = queueFor(subscriber.executor());
+		final Subscription[] added = new Subscription[1];
+		slots.compute(new Key(subscriber.type(), subscriber.id()), new BiFunction<Key, Slot, Slot>() {
+
+			@Override
+			public Slot apply(Key k, Slot existing) {
+				final Slot slot = (existing != null) ? existing : new Slot();
+				added[0] = new Subscription(slot, subscriber, queue);
+				slot.subscriptions.add(added[0]);
+				return slot;
+			}
+		});
+
+		// Scheduled outside of the map, since a direct executor delivers right away and the subscriber may register further bindings.
+		if (added[0].slot.state.get() != Versioned.INITIAL) {
+			added[0].schedule();
+		}
+	}
+
+	@Override
+	public void removeSubscriber(Subscriber subscriber) {
+		final Key key = new Key(subscriber.type(), subscriber.id());
+		final Slot slot = slots.get(key);
+		if (slot == null) {
+			return;
+		}
+		for (Subscription subscription : slot.subscriptions) {
+			if (subscription.subscriber == subscriber) {
+				subscription.cancelled = true;
+				slot.subscriptions.remove(subscription);
+			}
+		}
+		release(key);
+	}
+
+	@Override
+	public <T> T currentValue(Class<T> type, String id) {
+		final Slot slot = slots.get(new Key(type, id));
+		return (slot == null) ? null : type.cast(slot.state.get().value);
+	}
+
+	private void notifySubscribers(Slot slot) {
+		for (Subscription subscription : slot.subscriptions) {
+			subscription.schedule();
+		}
+	}
+
+	/**
+	 * Drops the slot of the specified key if it has neither publishers nor subscribers.
+	 */
+	private void release(Key key) {
+		slots.computeIfPresent(key, new BiFunction<Key, Slot, Slot>() {
+
+			@Override
+			public Slot apply(Key k, Slot slot) {
+				return (slot.publishers.get() == 0 && slot.subscriptions.isEmpty()) ? null : slot;
+			}
+		});
+	}
+
+	private Slot slotFor(Key key) {
+		Slot slot = slots.get(key);
+		if (slot == null) {
+			final Slot newSlot = new Slot();
+			slot = slots.putIfAbsent(key, newSlot);
+			if (slot == null) {
+				slot = newSlot;
+			}
+		}
+		return slot;
+	}
+
+	private DeliveryQueue queueFor(Executor executor) {
+		DeliveryQueue queue = queues.get(executor);
+		if (queue == null) {
+			final DeliveryQueue newQueue = new DeliveryQueue(executor);
+			queue = queues.putIfAbsent(executor, newQueue);
+			if (queue == null) {
+				queue = newQueue;
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * Identifies a value by its type and id.
+	 */
+	private static final class Key {
+
+		private final Class<?> type;
+		private final String id;
+
+		Key(Class<?> type, String id) {
+			this.type = type;
+			this.id = id;
+		}
+
+		String persistenceKey() {
+			return (id == null) ? type.getName() : type.getName() + "#" + id;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return type == other.type && ((id == null) ? other.id == null : id.equals(other.id));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * type.hashCode() + ((id == null) ? 0 : id.hashCode());
+		}
+	}
+
+	/**
+	 * An immutable value along with its version.
+	 */
+	private static final class Versioned {
+
+		static final Versioned INITIAL = new Versioned(0, null);
+
+		private final long version;
+		private final Object value;
+
+		Versioned(long version, Object value) {
+			this.version = version;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The latest value, the subscriptions and the number of publishers of a type and id pair.
+	 */
+	private static final class Slot {
+
+		private final AtomicReference<Versioned> state = new AtomicReference<Versioned>(Versioned.INITIAL);
+		private final AtomicInteger publishers = new AtomicInteger();
+		private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+		void set(Object value) {
+			Versioned current;
+			do {
+				current = state.get();
+			}
+			while (!state.compareAndSet(current, new Versioned(current.version + 1, value)));
+		}
+	}
+
+	/**
+	 * A subscriber registered for a slot, along with the last version delivered to it.
+	 */
+	private static final class Subscription {
+
+		private final Slot slot;
+		private final Subscriber subscriber;
+		private final DeliveryQueue queue;
+		private final AtomicBoolean pending = new AtomicBoolean();
+		private volatile boolean cancelled;
+
+		// Confined to the delivery of the queue.
+		private long delivered;
+
+		Subscription(Slot slot, Subscriber subscriber, DeliveryQueue queue) {
+			this.slot = slot;
+			this.subscriber = subscriber;
+			this.queue = queue;
+		}
+
+		void schedule() {
+			if (cancelled) {
+				return;
+			}
+			if (pending.compareAndSet(false, true)) {
+				queue.add(this);
+			}
+			else {
+				queue.resume();
+			}
+		}
+
+		void deliver() {
+			// Cleared before reading the slot, so that a publication racing with this delivery schedules another one.
+			pending.set(false);
+			if (cancelled) {
+				return;
+			}
+			final Versioned current = slot.state.get();
+			if (current.version != delivered) {
+				delivered = current.version;
+				try {
+					subscriber.update(current.value);
+				}
+				catch (RuntimeException e) {
+					logger.error("Subscriber {} failed to handle update of {}.", subscriber, subscriber.type(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The pending subscriptions of an executor, delivered within a single task per cycle.
+	 * <p>
+	 * The work counter ensures a single task is queued or running at any time, so that deliveries to a subscriber never overlap even with a
+	 * multi-threaded executor. Subscriptions scheduled during a cycle are delivered in a new task, which lets the executor run other tasks in
+	 * between.
+	 * </p>
+	 */
+	private static final class DeliveryQueue implements Runnable {
+
+		private final Executor executor;
+		private final Queue<Subscription> pending = new ConcurrentLinkedQueue<Subscription>();
+		private final AtomicInteger work = new AtomicInteger();
+
+		DeliveryQueue(Executor executor) {
+			this.executor = executor;
+		}
+
+		void add(Subscription subscription) {
+			pending.add(subscription);
+			if (work.getAndIncrement() == 0) {
+				submit();
+			}
+		}
+
+		@Override
+		public void run() {
+			final int missed = work.get();
+			try {
+				for (int i = pending.size(); i > 0; i--) {
+					final Subscription subscription = pending.poll();
+					if (subscription == null) {
+						break;
+					}
+					subscription.deliver();
+				}
+			}
+			finally {
+				// Also when a subscriber threw an Error, the subscriptions it left pending are delivered by the next task.
+				if (work.addAndGet(-missed) != 0 || (!pending.isEmpty() && work.getAndIncrement() == 0)) {
+					submit();
+				}
+			}
+		}
+
+		/**
+		 * Submits a task for subscriptions left pending after the executor rejected the previous one.
+		 */
+		void resume() {
+			if (work.get() == 0 && work.compareAndSet(0, 1)) {
+				submit();
+			}
+		}
+
+		/**
+		 * Submits this queue to its executor, resetting the work counter if the executor fails to accept it: the subscriptions stay pending
+		 * and the next publication to any of them submits a new task.
+		 */
+		private void submit() {
+			boolean submitted = false;
+			try {
+				executor.execute(this);
+				submitted = true;
+			}
+			catch (RejectedExecutionException e) {
+				logger.error("Executor {} rejected the delivery of bound values.", executor, e);
+			}
+			finally {
+				if (!submitted) {
+					work.set(0);
+				}
+			}
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultBindingManager.class);
+
+}
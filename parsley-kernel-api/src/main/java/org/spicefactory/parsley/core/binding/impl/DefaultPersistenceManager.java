@@ -0,0 +1,43 @@
+package org.spicefactory.parsley.core.binding.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+
+/**
+ * Default implementation of the PersistenceManager interface, keeping values in memory for the lifetime of the application.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultPersistenceManager implements PersistenceManager {
+
+	private final ConcurrentMap<String, ConcurrentMap<String, Object>> values = new ConcurrentHashMap<String, ConcurrentMap<String, Object>>();
+
+	@Override
+	public void saveValue(String scopeId, String key, Object value) {
+		ConcurrentMap<String, Object> scopeValues = values.get(scopeId);
+		if (scopeValues == null) {
+			final ConcurrentMap<String, Object> newValues = new ConcurrentHashMap<String, Object>();
+			scopeValues = values.putIfAbsent(scopeId, newValues);
+			if (scopeValues == null) {
+				scopeValues = newValues;
+			}
+		}
+		scopeValues.put(key, value);
+	}
+
+	@Override
+	public void deleteValue(String scopeId, String key) {
+		final ConcurrentMap<String, Object> scopeValues = values.get(scopeId);
+		if (scopeValues != null) {
+			scopeValues.remove(key);
+		}
+	}
+
+	@Override
+	public <T> T getValue(String scopeId, String key, Class<T> type) {
+		final ConcurrentMap<String, Object> scopeValues = values.get(scopeId);
+		return (scopeValues == null) ? null : type.cast(scopeValues.get(key));
+	}
+
+}
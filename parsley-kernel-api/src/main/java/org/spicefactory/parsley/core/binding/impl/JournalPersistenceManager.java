@@ -0,0 +1,472 @@
+package org.spicefactory.parsley.core.binding.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.binding.ValueCodec;
+
+/**
+ * PersistenceManager implementation storing values in an append-only journal file mapped into memory.
+ * <p>
+ * Each save or delete appends a record to the journal, records are never rewritten in place. An in-memory index maps the scope uuid and the
+ * key of each live value to the location of its record, values are only decoded when they get read. On startup the index is rebuilt by scanning
+ * the record headers of the mapped file, a record with an invalid checksum marks the end of the journal, so that a record torn by a crash gets
+ * discarded along with everything after it.
+ * </p>
+ * <p>
+ * The journal is checked periodically, off the writing threads, and once superseded records make up more than half of it, the live records
+ * are copied into a new file which atomically replaces the journal. The index only switches to the new file once it has replaced the
+ * journal. Values are encoded with the ValueCodec registered for their type, codecs for strings, byte arrays, booleans, integers, longs and
+ * doubles are built in.
+ * </p>
+ * <p>
+ * Record format: <code>[int length][int crc][byte op][short scopeLength][scope][short keyLength][key][value]</code>, where the length
+ * excludes the length field itself and the checksum covers everything after it.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class JournalPersistenceManager implements PersistenceManager, Closeable {
+
+	private static final int MAGIC = 0x504A524E;
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+	private static final int MIN_RECORD_LENGTH = 4 + 1 + 2 + 2;
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+
+	private static final int MIN_CAPACITY = 64 * 1024;
+	private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+	private final Path file;
+	private final ConcurrentMap<Class<?>, ValueCodec<?>> codecs;
+	private final ScheduledExecutorService ownedScheduler;
+	private final ScheduledFuture<?> compaction;
+	private volatile ConcurrentMap<String, ConcurrentMap<String, Location>> index;
+
+	// Guarded by this.
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int end;
+	private long garbage;
+	private volatile boolean closed;
+
+	/**
+	 * Opens the journal stored in the specified file, creating it if it does not exist yet. The journal is checked for compaction every
+	 * minute on a daemon thread owned by this instance.
+	 * @param file the journal file
+	 * @throws IOException if the file cannot be opened or is not a journal
+	 */
+	public JournalPersistenceManager(Path file) throws IOException {
+		this(file, null, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Opens the journal stored in the specified file, creating it if it does not exist yet.
+	 * @param file the journal file
+	 * @param scheduler the scheduler to check the journal for compaction on, or null to use a daemon thread owned by this instance
+	 * @param period the delay between two compaction checks
+	 * @param unit the unit of the delay
+	 * @throws IOException if the file cannot be opened or is not a journal
+	 */
+	public JournalPersistenceManager(Path file, @Nullable ScheduledExecutorService scheduler, long period, TimeUnit unit) throws IOException {
+		this.file = file;
+		this.codecs = new ConcurrentHashMap<Class<?>, ValueCodec<?>>();
+		this.index = new ConcurrentHashMap<String, ConcurrentMap<String, Location>>();
+		ValueCodecs.addTo(codecs);
+
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Journal too large: " + file);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(MIN_CAPACITY, size));
+			if (size < HEADER_LENGTH || buffer.getInt(0) == 0) {
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				this.end = HEADER_LENGTH;
+			}
+			else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException("Not a journal: " + file);
+			}
+			else {
+				this.end = scan();
+			}
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		this.ownedScheduler = (scheduler == null) ? Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread thread = new Thread(r, "journal-compaction");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+		this.compaction = ((scheduler != null) ? scheduler : ownedScheduler).scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				compactIfNeeded();
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Registers the codec for the specified value type.
+	 * @param type the value type
+	 * @param codec the codec for the value type
+	 * @return this instance for method chaining
+	 */
+	public <T> JournalPersistenceManager codec(Class<T> type, ValueCodec<T> codec) {
+		codecs.put(type, codec);
+		return this;
+	}
+
+	@Override
+	public void saveValue(String scopeId, String key, Object value) {
+		final byte[] payload;
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			encode(codecFor(value.getClass()), value, out);
+			out.flush();
+			payload = bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to encode value '" + key + "' of scope '" + scopeId + "'.", e);
+		}
+
+		synchronized (this) {
+			checkOpen();
+			final Location location = append(PUT, scopeId, key, payload);
+			ConcurrentMap<String, Location> scopeIndex = index.get(scopeId);
+			if (scopeIndex == null) {
+				scopeIndex = new ConcurrentHashMap<String, Location>();
+				index.put(scopeId, scopeIndex);
+			}
+			final Location previous = scopeIndex.put(key, location);
+			if (previous != null) {
+				garbage += previous.recordLength;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void deleteValue(String scopeId, String key) {
+		checkOpen();
+		final ConcurrentMap<String, Location> scopeIndex = index.get(scopeId);
+		final Location previous = (scopeIndex == null) ? null : scopeIndex.remove(key);
+		if (previous == null) {
+			return;
+		}
+		final Location location = append(DELETE, scopeId, key, new byte[0]);
+		garbage += previous.recordLength + location.recordLength;
+	}
+
+	@Override
+	public <T> T getValue(String scopeId, String key, Class<T> type) {
+		checkOpen();
+		final ConcurrentMap<String, Location> scopeIndex = index.get(scopeId);
+		final Location location = (scopeIndex == null) ? null : scopeIndex.get(key);
+		if (location == null) {
+			return null;
+		}
+
+		final ValueCodec<?> codec = codecFor(type);
+		try {
+			return type.cast(codec.decode(new DataInputStream(new ByteArrayInputStream(location.payload()))));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to decode value '" + key + "' of scope '" + scopeId + "'.", e);
+		}
+	}
+
+	/**
+	 * Copies the live records into a new journal file replacing the current one. The current journal and index are left untouched if the new
+	 * journal cannot be written.
+	 * @throws IOException if the new journal cannot be written
+	 */
+	public synchronized void compact() throws IOException {
+		checkOpen();
+		final Path target = file.resolveSibling(file.getFileName() + ".compact");
+		final FileChannel newChannel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		final MappedByteBuffer newBuffer;
+		final ConcurrentMap<String, ConcurrentMap<String, Location>> newIndex = new ConcurrentHashMap<String, ConcurrentMap<String, Location>>();
+		int position = HEADER_LENGTH;
+		try {
+			final long live = end - garbage;
+			newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(MIN_CAPACITY, Math.min(Integer.MAX_VALUE, live * 2)));
+			newBuffer.putInt(0, MAGIC);
+			newBuffer.putInt(4, VERSION);
+
+			for (Map.Entry<String, ConcurrentMap<String, Location>> scope : index.entrySet()) {
+				final ConcurrentMap<String, Location> scopeIndex = new ConcurrentHashMap<String, Location>();
+				for (Map.Entry<String, Location> value : scope.getValue().entrySet()) {
+					final Location location = value.getValue();
+					final ByteBuffer record = location.record();
+					newBuffer.position(position);
+					newBuffer.put(record);
+					final int payloadOffset = location.payloadOffset - location.offset;
+					scopeIndex.put(value.getKey(), new Location(newBuffer, position, payloadOffset, location.recordLength));
+					position += location.recordLength;
+				}
+				if (!scopeIndex.isEmpty()) {
+					newIndex.put(scope.getKey(), scopeIndex);
+				}
+			}
+			newBuffer.force();
+			Files.move(target, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			newChannel.close();
+			Files.deleteIfExists(target);
+			throw e;
+		}
+
+		channel.close();
+		channel = newChannel;
+		buffer = newBuffer;
+		index = newIndex;
+		end = position;
+		garbage = 0;
+	}
+
+	/**
+	 * Writes all changes of the journal to the storage device.
+	 */
+	public synchronized void flush() {
+		checkOpen();
+		buffer.force();
+	}
+
+	/**
+	 * Writes all changes to the storage device and closes the journal.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		compaction.cancel(false);
+		if (ownedScheduler != null) {
+			ownedScheduler.shutdown();
+		}
+		buffer.force();
+		channel.close();
+	}
+
+	/**
+	 * Rebuilds the index from the records of the journal.
+	 * @return the position following the last valid record
+	 */
+	private int scan() throws IOException {
+		final int capacity = buffer.capacity();
+		int position = HEADER_LENGTH;
+
+		while (position + 4 <= capacity) {
+			final int length = buffer.getInt(position);
+			if (length < MIN_RECORD_LENGTH || length > capacity - position - 4 || crc(buffer, position, length) != buffer.getInt(position + 4)) {
+				break;
+			}
+
+			final ByteBuffer record = buffer.duplicate();
+			record.position(position + 8);
+			final byte op = record.get();
+			final String scopeId = readString(record);
+			final String key = readString(record);
+			final int recordLength = 4 + length;
+
+			ConcurrentMap<String, Location> scopeIndex = index.get(scopeId);
+			if (scopeIndex == null) {
+				scopeIndex = new ConcurrentHashMap<String, Location>();
+				index.put(scopeId, scopeIndex);
+			}
+			final Location previous;
+			if (op == PUT) {
+				previous = scopeIndex.put(key, new Location(buffer, position, record.position() - position, recordLength));
+			}
+			else {
+				previous = scopeIndex.remove(key);
+				garbage += recordLength;
+			}
+			if (previous != null) {
+				garbage += previous.recordLength;
+			}
+			position += recordLength;
+		}
+
+		// Discard a torn record, so that it cannot be mistaken for a valid one once overwritten by shorter records.
+		if (position + 4 <= capacity && buffer.getInt(position) != 0) {
+			for (int i = position; i < capacity; i++) {
+				buffer.put(i, (byte) 0);
+			}
+		}
+		return position;
+	}
+
+	private Location append(byte op, String scopeId, String key, byte[] payload) {
+		final byte[] scope = scopeId.getBytes(StandardCharsets.UTF_8);
+		final byte[] name = key.getBytes(StandardCharsets.UTF_8);
+		if (scope.length > 0xFFFF || name.length > 0xFFFF) {
+			throw new IllegalStateException("Scope id or key too long: " + key);
+		}
+
+		final long recordLength = 4L + 4 + 1 + 2 + scope.length + 2 + name.length + payload.length;
+		ensureCapacity(end + recordLength);
+
+		final int position = end;
+		buffer.position(position + 8);
+		buffer.put(op);
+		buffer.putShort((short) scope.length).put(scope);
+		buffer.putShort((short) name.length).put(name);
+		final int payloadOffset = buffer.position() - position;
+		buffer.put(payload);
+		buffer.putInt(position + 4, crc(buffer, position, (int) recordLength - 4));
+		// Written last, so that a scan never sees a record whose length is set before its content.
+		buffer.putInt(position, (int) recordLength - 4);
+
+		end += (int) recordLength;
+		return new Location(buffer, position, payloadOffset, (int) recordLength);
+	}
+
+	private void ensureCapacity(long capacity) {
+		if (capacity <= buffer.capacity()) {
+			return;
+		}
+		if (capacity > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Journal full: " + file);
+		}
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, Math.max(capacity, 2L * buffer.capacity())));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to grow journal: " + file, e);
+		}
+	}
+
+	// Package-private.
+	synchronized void compactIfNeeded() {
+		if (!closed && garbage > COMPACTION_THRESHOLD && garbage > end / 2) {
+			try {
+				compact();
+			}
+			catch (IOException e) {
+				// Retried on the next check, failing would cancel the periodic task.
+				logger.error("Unable to compact journal: {}", file, e);
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Journal has been closed: " + file);
+		}
+	}
+
+	private ValueCodec<?> codecFor(Class<?> type) {
+		final ValueCodec<?> codec = codecs.get(type);
+		if (codec != null) {
+			return codec;
+		}
+		for (Map.Entry<Class<?>, ValueCodec<?>> entry : codecs.entrySet()) {
+			if (entry.getKey().isAssignableFrom(type)) {
+				return entry.getValue();
+			}
+		}
+		throw new IllegalStateException("No codec registered for " + type);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void encode(ValueCodec<T> codec, Object value, DataOutputStream out) throws IOException {
+		codec.encode((T) value, out);
+	}
+
+	/**
+	 * Returns the checksum of the record at the specified position, covering everything after the checksum itself.
+	 */
+	private static int crc(ByteBuffer buffer, int position, int length) {
+		final ByteBuffer content = buffer.duplicate();
+		content.limit(position + 4 + length).position(position + 8);
+		final CRC32 crc = new CRC32();
+		crc.update(content);
+		return (int) crc.getValue();
+	}
+
+	private static String readString(ByteBuffer record) {
+		final byte[] bytes = new byte[record.getShort() & 0xFFFF];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The location of a record in a mapping of the journal.
+	 * <p>
+	 * Each location keeps the mapping it has been written to, so that readers never need to synchronize with a growing or compacting writer:
+	 * records are never modified and a replaced mapping stays readable until it is no longer referenced.
+	 * </p>
+	 */
+	private static final class Location {
+
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int payloadOffset;
+		private final int recordLength;
+
+		Location(ByteBuffer buffer, int offset, int payloadOffset, int recordLength) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.payloadOffset = offset + payloadOffset;
+			this.recordLength = recordLength;
+		}
+
+		ByteBuffer record() {
+			final ByteBuffer record = buffer.duplicate();
+			record.limit(offset + recordLength).position(offset);
+			return record;
+		}
+
+		byte[] payload() {
+			final ByteBuffer payload = buffer.duplicate();
+			payload.limit(offset + recordLength).position(payloadOffset);
+			final byte[] bytes = new byte[payload.remaining()];
+			payload.get(bytes);
+			return bytes;
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(JournalPersistenceManager.class);
+
+}
@@ -0,0 +1,116 @@
+package org.spicefactory.parsley.core.binding.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.spicefactory.parsley.core.binding.ValueCodec;
+
+/**
+ * Codecs for the value types every PersistenceManager storing values in binary form supports out of the box.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+final class ValueCodecs {
+
+	private static final ValueCodec<String> STRING = new ValueCodec<String>() {
+
+		@Override
+		public void encode(String value, DataOutput out) throws IOException {
+			BYTES.encode(value.getBytes(StandardCharsets.UTF_8), out);
+		}
+
+		@Override
+		public String decode(DataInput in) throws IOException {
+			return new String(BYTES.decode(in), StandardCharsets.UTF_8);
+		}
+	};
+
+	private static final ValueCodec<byte[]> BYTES = new ValueCodec<byte[]>() {
+
+		@Override
+		public void encode(byte[] value, DataOutput out) throws IOException {
+			out.writeInt(value.length);
+			out.write(value);
+		}
+
+		@Override
+		public byte[] decode(DataInput in) throws IOException {
+			final byte[] value = new byte[in.readInt()];
+			in.readFully(value);
+			return value;
+		}
+	};
+
+	private static final ValueCodec<Boolean> BOOLEAN = new ValueCodec<Boolean>() {
+
+		@Override
+		public void encode(Boolean value, DataOutput out) throws IOException {
+			out.writeBoolean(value);
+		}
+
+		@Override
+		public Boolean decode(DataInput in) throws IOException {
+			return in.readBoolean();
+		}
+	};
+
+	private static final ValueCodec<Integer> INTEGER = new ValueCodec<Integer>() {
+
+		@Override
+		public void encode(Integer value, DataOutput out) throws IOException {
+			out.writeInt(value);
+		}
+
+		@Override
+		public Integer decode(DataInput in) throws IOException {
+			return in.readInt();
+		}
+	};
+
+	private static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+
+		@Override
+		public void encode(Long value, DataOutput out) throws IOException {
+			out.writeLong(value);
+		}
+
+		@Override
+		public Long decode(DataInput in) throws IOException {
+			return in.readLong();
+		}
+	};
+
+	private static final ValueCodec<Double> DOUBLE = new ValueCodec<Double>() {
+
+		@Override
+		public void encode(Double value, DataOutput out) throws IOException {
+			out.writeDouble(value);
+		}
+
+		@Override
+		public Double decode(DataInput in) throws IOException {
+			return in.readDouble();
+		}
+	};
+
+	/**
+	 * Adds the built-in codecs to the specified map.
+	 */
+	static void addTo(Map<Class<?>, ValueCodec<?>> codecs) {
+		codecs.put(String.class, STRING);
+		codecs.put(byte[].class, BYTES);
+		codecs.put(Boolean.class, BOOLEAN);
+		codecs.put(Integer.class, INTEGER);
+		codecs.put(Long.class, LONG);
+		codecs.put(Double.class, DOUBLE);
+	}
+
+	// Private.
+	private ValueCodecs() {
+		//
+	}
+
+}
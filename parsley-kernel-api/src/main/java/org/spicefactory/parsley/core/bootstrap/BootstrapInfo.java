@@ -1,5 +1,11 @@
 package org.spicefactory.parsley.core.bootstrap;
 
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.messaging.DispatchQueue;
+import org.spicefactory.parsley.core.messaging.IdempotencyCache;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.state.ClassLoaderManager;
+
 /**
  * Represents the environment for a single Context building process in a read-only way.
  * <p>
@@ -10,4 +16,29 @@ package org.spicefactory.parsley.core.bootstrap;
  */
 public interface BootstrapInfo {
 
+	/**
+	 * The manager for ClassLoaders whose types are cached by kernel services.
+	 */
+	ClassLoaderManager classLoaderManager();
+
+	/**
+	 * The index of scopes by uuid shared by the Context hierarchy.
+	 */
+	ScopeIndex scopeIndex();
+
+	/**
+	 * The manager for values persisted by publishers in the scopes created by the Context.
+	 */
+	PersistenceManager persistenceManager();
+
+	/**
+	 * The queue for messages delivered asynchronously by the scopes of the Context.
+	 */
+	DispatchQueue dispatchQueue();
+
+	/**
+	 * The cache of idempotency keys the scopes of the Context drop duplicate messages with.
+	 */
+	IdempotencyCache idempotencyCache();
+
 }
@@ -17,7 +17,8 @@ public interface BootstrapProcessor {
 	/**
 	 * Finally processes the configuration, applying all processors that were added and initializing the Context.
 	 * <p>
-	 * This process may be asynchronous. Listeners for the completion or error events can be registered with the returned Context.
+	 * This process may be asynchronous. Completion or failure of the initialization can be observed with the stage returned by
+	 * <code>Context.initialization()</code>.
 	 * @return the Context, possibly not yet fully initialized
 	 */
 	Context process();
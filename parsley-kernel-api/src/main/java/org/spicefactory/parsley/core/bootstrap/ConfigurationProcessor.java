@@ -1,5 +1,19 @@
 package org.spicefactory.parsley.core.bootstrap;
 
+/**
+ * Processes configuration for a single Context, like Guice modules or XML files.
+ * <p>
+ * When a Context is built in parallel mode, the processors added to the same <code>BootstrapProcessor</code> run concurrently and must
+ * therefore not depend on each other.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
 public interface ConfigurationProcessor {
 
+	/**
+	 * Processes the configuration of this processor.
+	 * @param info the environment of the Context building process
+	 */
+	void processConfiguration(BootstrapInfo info);
+
 }
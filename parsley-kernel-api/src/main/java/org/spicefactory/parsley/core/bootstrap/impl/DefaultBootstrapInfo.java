@@ -0,0 +1,56 @@
+package org.spicefactory.parsley.core.bootstrap.impl;
+
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.bootstrap.BootstrapInfo;
+import org.spicefactory.parsley.core.messaging.DispatchQueue;
+import org.spicefactory.parsley.core.messaging.IdempotencyCache;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.state.ClassLoaderManager;
+
+/**
+ * Default implementation of the BootstrapInfo interface.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultBootstrapInfo implements BootstrapInfo {
+
+	private final ClassLoaderManager classLoaderManager;
+	private final ScopeIndex scopeIndex;
+	private final PersistenceManager persistenceManager;
+	private final DispatchQueue dispatchQueue;
+	private final IdempotencyCache idempotencyCache;
+
+	public DefaultBootstrapInfo(ClassLoaderManager classLoaderManager, ScopeIndex scopeIndex, PersistenceManager persistenceManager,
+			DispatchQueue dispatchQueue, IdempotencyCache idempotencyCache) {
+		this.classLoaderManager = classLoaderManager;
+		this.scopeIndex = scopeIndex;
+		this.persistenceManager = persistenceManager;
+		this.dispatchQueue = dispatchQueue;
+		this.idempotencyCache = idempotencyCache;
+	}
+
+	@Override
+	public ClassLoaderManager classLoaderManager() {
+		return classLoaderManager;
+	}
+
+	@Override
+	public ScopeIndex scopeIndex() {
+		return scopeIndex;
+	}
+
+	@Override
+	public PersistenceManager persistenceManager() {
+		return persistenceManager;
+	}
+
+	@Override
+	public DispatchQueue dispatchQueue() {
+		return dispatchQueue;
+	}
+
+	@Override
+	public IdempotencyCache idempotencyCache() {
+		return idempotencyCache;
+	}
+
+}
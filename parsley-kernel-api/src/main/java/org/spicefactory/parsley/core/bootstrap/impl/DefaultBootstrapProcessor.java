@@ -0,0 +1,264 @@
+package org.spicefactory.parsley.core.bootstrap.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+
+import org.spicefactory.parsley.core.bootstrap.BootstrapInfo;
+import org.spicefactory.parsley.core.bootstrap.BootstrapProcessor;
+import org.spicefactory.parsley.core.bootstrap.ConfigurationProcessor;
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.context.ProviderSource;
+import org.spicefactory.parsley.core.context.ReceiverSource;
+import org.spicefactory.parsley.core.context.impl.DefaultContext;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.messaging.impl.DefaultMessageRouter;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeDefinition;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+import org.spicefactory.parsley.core.scope.ScopeManager;
+import org.spicefactory.parsley.core.scope.impl.DefaultScopeDefinition;
+import org.spicefactory.parsley.core.scope.impl.DefaultScopeInfoRegistry;
+import org.spicefactory.parsley.core.scope.impl.DefaultScopeManager;
+
+/**
+ * Default implementation of the BootstrapProcessor interface.
+ * <p>
+ * Without an executor all configuration processors run sequentially on the calling thread, and <code>process</code> returns a fully
+ * initialized Context or throws the first failure. With an executor all processors are submitted to it at once and run concurrently;
+ * <code>process</code> then returns immediately and the Context completes its <code>initialization()</code> stage when the last processor
+ * finished, or exceptionally with the first failure.
+ * </p>
+ * <p>
+ * Processors implementing <code>ProviderSource</code> provide the objects of the built Context, which also provides its ScopeManager and
+ * ScopeIndex. The Context inherits the inherited scopes of its parents and gets a new local scope, as well as a new global scope unless a
+ * parent provides one. Processors implementing <code>ReceiverSource</code> register their receivers in these scopes once all processors
+ * finished, before the Context completes its initialization. The scopes created for the Context are released when it gets destroyed.
+ * </p>
+ * <p>
+ * A Context without parents registers its scopes in the index of the BootstrapInfo, its descendants share the index of their parents. All
+ * parents of a Context must therefore belong to the same hierarchy.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultBootstrapProcessor implements BootstrapProcessor {
+
+	private final BootstrapInfo rootInfo;
+	private final Context[] parents;
+	private final Executor executor;
+	private final List<ConfigurationProcessor> processors;
+
+	/**
+	 * Creates a new instance.
+	 * @param info the environment of the Context building process
+	 * @param parents the parents of the Context to build
+	 * @param executor the executor to run the configuration processors on, or null to run them sequentially on the calling thread
+	 */
+	public DefaultBootstrapProcessor(BootstrapInfo info, Context[] parents, @Nullable Executor executor) {
+		this.rootInfo = info;
+		this.parents = parents;
+		this.executor = executor;
+		this.processors = new ArrayList<ConfigurationProcessor>();
+	}
+
+	@Override
+	public void addProcessor(ConfigurationProcessor processor) {
+		processors.add(processor);
+	}
+
+	@Override
+	public Context process() {
+		final BootstrapInfo info = createInfo();
+		final DefaultScopeManager scopeManager = createScopeManager(info);
+		final List<ProviderSource> sources = new ArrayList<ProviderSource>();
+		sources.add(new ProviderSource() {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public <T> Provider<T> getProvider(Class<T> type) {
+				if (type == ScopeManager.class) {
+					return (Provider<T>) new Provider<ScopeManager>() {
+
+						@Override
+						public ScopeManager get() {
+							return scopeManager;
+						}
+					};
+				}
+				if (type == ScopeIndex.class) {
+					return (Provider<T>) new Provider<ScopeIndex>() {
+
+						@Override
+						public ScopeIndex get() {
+							return info.scopeIndex();
+						}
+					};
+				}
+				return null;
+			}
+		});
+		for (ConfigurationProcessor processor : processors) {
+			if (processor instanceof ProviderSource) {
+				sources.add((ProviderSource) processor);
+			}
+		}
+
+		if (executor == null) {
+			Context context = null;
+			boolean initialized = false;
+			try {
+				for (ConfigurationProcessor processor : processors) {
+					processor.processConfiguration(info);
+				}
+				context = new DefaultContext(parents, sources, CompletableFuture.completedFuture(null));
+				destroyWith(context, scopeManager);
+				registerReceivers(info, context, scopeManager);
+				initialized = true;
+				return context;
+			}
+			finally {
+				// Errors must release the scopes as well, they are already registered in the scope index of the hierarchy.
+				if (!initialized) {
+					if (context != null) {
+						context.destroy();
+					}
+					else {
+						scopeManager.destroy();
+					}
+				}
+			}
+		}
+
+		final CompletableFuture<?>[] tasks = new CompletableFuture<?>[processors.size()];
+		for (int i = 0; i < tasks.length; i++) {
+			final ConfigurationProcessor processor = processors.get(i);
+			tasks[i] = CompletableFuture.runAsync(new Runnable() {
+
+				@Override
+				public void run() {
+					processor.processConfiguration(info);
+				}
+			}, executor);
+		}
+
+		final CompletableFuture<Void> initialization = new CompletableFuture<Void>();
+		final Context context = new DefaultContext(parents, sources, initialization);
+		destroyWith(context, scopeManager);
+		CompletableFuture.allOf(tasks).thenRun(new Runnable() {
+
+			@Override
+			public void run() {
+				registerReceivers(info, context, scopeManager);
+			}
+		}).whenComplete(new BiConsumer<Void, Throwable>() {
+
+			@Override
+			public void accept(Void ignored, Throwable failure) {
+				if (failure != null) {
+					// The Context has already been handed out, destroying it notifies its listeners and releases its scopes.
+					try {
+						context.destroy();
+					}
+					finally {
+						initialization.completeExceptionally(failure);
+					}
+				}
+				else {
+					initialization.complete(null);
+				}
+			}
+		});
+		return context;
+	}
+
+	/**
+	 * Creates the environment of the Context, with the scope index of its hierarchy.
+	 */
+	private BootstrapInfo createInfo() {
+		ScopeIndex scopeIndex = null;
+		if (parents != null) {
+			for (Context parent : parents) {
+				final Provider<ScopeIndex> provider = parent.getProvider(ScopeIndex.class);
+				if (provider == null) {
+					continue;
+				}
+				final ScopeIndex parentIndex = provider.get();
+				if (scopeIndex != null && scopeIndex != parentIndex) {
+					throw new IllegalStateException("Parents of a Context must belong to the same Context hierarchy.");
+				}
+				scopeIndex = parentIndex;
+			}
+		}
+		if (scopeIndex == null || scopeIndex == rootInfo.scopeIndex()) {
+			return rootInfo;
+		}
+		return new DefaultBootstrapInfo(rootInfo.classLoaderManager(), scopeIndex, rootInfo.persistenceManager(), rootInfo.dispatchQueue(),
+				rootInfo.idempotencyCache());
+	}
+
+	/**
+	 * Creates the ScopeManager of the Context, with the inherited scopes of the parents.
+	 */
+	private DefaultScopeManager createScopeManager(BootstrapInfo info) {
+		final List<ScopeInfo> parentScopes = new ArrayList<ScopeInfo>();
+		boolean inheritsGlobal = false;
+		if (parents != null) {
+			for (Context parent : parents) {
+				final Provider<ScopeManager> provider = parent.getProvider(ScopeManager.class);
+				if (provider == null) {
+					continue;
+				}
+				for (Scope scope : provider.get().getAllScopes()) {
+					final ScopeInfo scopeInfo = info.scopeIndex().get(scope.uuid());
+					if (scopeInfo != null && scopeInfo.inherited() && !parentScopes.contains(scopeInfo)) {
+						parentScopes.add(scopeInfo);
+						inheritsGlobal |= Scope.GLOBAL.equals(scopeInfo.name());
+					}
+				}
+			}
+		}
+
+		final List<ScopeDefinition> newScopes = new ArrayList<ScopeDefinition>();
+		if (!inheritsGlobal) {
+			newScopes.add(DefaultScopeDefinition.GLOBAL);
+		}
+		newScopes.add(DefaultScopeDefinition.LOCAL);
+		return new DefaultScopeManager(info, new DefaultScopeInfoRegistry(newScopes, parentScopes), new DefaultMessageRouter());
+	}
+
+	/**
+	 * Releases the scopes created for the Context once it gets destroyed.
+	 */
+	private static void destroyWith(Context context, final DefaultScopeManager scopeManager) {
+		context.addContextListener(new ContextListener() {
+
+			@Override
+			public void contextDestroyed(ContextEvent e) {
+				scopeManager.destroy();
+			}
+		}, ContextEvent.DESTROYED);
+	}
+
+	private void registerReceivers(BootstrapInfo info, Context context, ScopeManager scopeManager) {
+		final Map<String, MessageReceiverRegistry> scopes = new LinkedHashMap<String, MessageReceiverRegistry>();
+		for (Scope scope : scopeManager.getAllScopes()) {
+			scopes.put(scope.name(), info.scopeIndex().get(scope.uuid()).messageReceivers());
+		}
+		for (ConfigurationProcessor processor : processors) {
+			if (processor instanceof ReceiverSource) {
+				((ReceiverSource) processor).registerReceivers(context, scopes);
+			}
+		}
+	}
+
+}
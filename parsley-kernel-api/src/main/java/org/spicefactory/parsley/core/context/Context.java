@@ -1,6 +1,9 @@
 package org.spicefactory.parsley.core.context;
 
+import java.util.concurrent.CompletionStage;
+
 import javax.annotation.Nullable;
+import javax.inject.Provider;
 
 /**
  * The main interface of the IoC Container providing access to all configured objects.
@@ -16,6 +19,14 @@ public interface Context {
 	 */
 	void addContextListener(ContextListener l);
 
+	/**
+	 * Adds the specified context listener to receive the context events whose id is contained in the specified mask, like
+	 * <code>ContextEvent.DESTROYED</code>. If l is null, no exception is thrown and no action is performed.
+	 * @param l
+	 * @param mask the bit mask of the event ids to receive
+	 */
+	void addContextListener(ContextListener l, int mask);
+
 	/**
 	 * Removes the specified context listener so it no longer receives context events from this context. If l is null, no exception is thrown and
 	 * no action is performed.
@@ -26,15 +37,34 @@ public interface Context {
 	/**
 	 * Returns the appropriate instance for the given injection type; When feasible, avoid using this method, in favor of having Context inject
 	 * your dependencies ahead of time.
+	 * @throws IllegalStateException if neither this Context nor any of its parents is configured for the type
 	 */
 	<T> T getInstance(Class<T> type);
 
+	/**
+	 * Returns the provider for the given injection type, looking it up in this Context first and then in its parents in declaration order. The
+	 * lookup is cached per type until this Context or one of its ancestors gets destroyed.
+	 * @return the provider for the given type, or null if neither this Context nor any of its parents is configured for the type
+	 */
+	@Nullable
+	<T> Provider<T> getProvider(Class<T> type);
+
 	/**
 	 * Gets parents Context. Null if top-level parent.
 	 */
 	@Nullable
 	Context[] getParents();
 
+	/**
+	 * Returns a stage that completes with this Context once all of its configuration has been processed, or exceptionally with the first
+	 * failure. For a Context built synchronously the stage is already complete.
+	 * <p>
+	 * Dependent actions run on the thread completing the stage, which is a bootstrap thread in parallel mode; Swing code should use an async
+	 * variant with <code>SwingUtilities::invokeLater</code> as executor.
+	 * </p>
+	 */
+	CompletionStage<Context> initialization();
+
 	/**
 	 * Destroys this Context. This includes processing all life-cycle listeners for all objects that this Context has instantiated and calling
 	 * their methods marked with <code>@Destroy</code>. The Context may no longer be used after calling this method.
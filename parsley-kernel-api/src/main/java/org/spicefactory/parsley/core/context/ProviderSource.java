@@ -0,0 +1,24 @@
+package org.spicefactory.parsley.core.context;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+
+/**
+ * A source of providers for the objects configured for a single Context, usually implemented by a ConfigurationProcessor.
+ * <p>
+ * The Context asks its own sources first and then those of its parents, and caches the result per type. Sources should therefore only report
+ * providers for types they were explicitly configured for, and return consistent results once the configuration has been processed.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface ProviderSource {
+
+	/**
+	 * Returns the provider for the specified type.
+	 * @param type the type to return the provider for
+	 * @return the provider for the specified type, or null if this source is not configured for it
+	 */
+	@Nullable
+	<T> Provider<T> getProvider(Class<T> type);
+
+}
@@ -0,0 +1,24 @@
+package org.spicefactory.parsley.core.context;
+
+import java.util.Map;
+
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+
+/**
+ * A source of the message receivers of the objects configured for a single Context, usually implemented by a ConfigurationProcessor.
+ * <p>
+ * Receivers are registered once the configuration of the Context has been processed and its scopes exist, before the initialization stage of
+ * the Context completes.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface ReceiverSource {
+
+	/**
+	 * Registers the receivers of the objects configured for the specified Context.
+	 * @param context the Context the receivers belong to
+	 * @param scopes the receiver registries of all scopes of the Context, inherited ones included, mapped by scope name
+	 */
+	void registerReceivers(Context context, Map<String, MessageReceiverRegistry> scopes);
+
+}
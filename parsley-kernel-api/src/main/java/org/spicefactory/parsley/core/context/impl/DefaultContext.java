@@ -1,24 +1,75 @@
 package org.spicefactory.parsley.core.context.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
 import org.slf4j.Logger;
 import org.spicefactory.parsley.core.context.Context;
 import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.context.ProviderSource;
 import org.spicefactory.parsley.core.events.ContextEvent;
 import org.spicefactory.parsley.core.events.EventDispatcher;
 
 public final class DefaultContext extends EventDispatcher<ContextListener, ContextEvent> implements Context, ContextListener {
 
+	/**
+	 * Cached for types no Context of the hierarchy is configured for, as the concurrent map does not allow null values.
+	 */
+	private static final Provider<Object> ABSENT = new Provider<Object>() {
+
+		@Override
+		public Object get() {
+			throw new IllegalStateException();
+		}
+	};
+
 	@Inject
 	private Logger logger;
 
 	private final Context[] parents;
-
-	public DefaultContext(Context[] parents) {
+	private final List<Context> ancestors;
+	private final List<ProviderSource> sources;
+	private final ConcurrentMap<Class<?>, Provider<?>> providers;
+	private final CompletionStage<Context> initialization;
+	private volatile boolean configured;
+	private volatile boolean destroyed;
+	private volatile boolean ancestorDestroyed;
+
+	/**
+	 * Creates a new instance.
+	 * @param parents the parents of this Context
+	 * @param sources the sources of the objects configured for this Context
+	 * @param configuration the stage completing when all configuration of this Context has been processed
+	 */
+	public DefaultContext(Context[] parents, List<ProviderSource> sources, CompletionStage<?> configuration) {
 		this.parents = parents;
+		this.ancestors = collectAncestors(parents);
+		this.sources = new ArrayList<ProviderSource>(sources);
+		this.providers = new ConcurrentHashMap<Class<?>, Provider<?>>();
+		this.initialization = configuration.thenApply(ignored -> (Context) this);
+
+		// Lookups are only cached once the sources of this Context and of all its ancestors have been configured, since they may be
+		// incomplete before.
+		final CompletableFuture<?>[] stages = new CompletableFuture<?>[ancestors.size() + 1];
+		stages[0] = configuration.toCompletableFuture();
+		for (int i = 0; i < ancestors.size(); i++) {
+			stages[i + 1] = ancestors.get(i).initialization().toCompletableFuture();
+		}
+		CompletableFuture.allOf(stages).thenRun(() -> configured = true);
 
-		addContextListener(this);
-		for (Context p : parents) {
-			p.addContextListener(l);
+		addContextListener(this, ContextEvent.DESTROYED);
+		for (Context a : ancestors) {
+			a.addContextListener(this, ContextEvent.DESTROYED);
 		}
 	}
 
@@ -35,34 +86,88 @@ public final class DefaultContext extends EventDispatcher<ContextListener, Conte
 
 	}
 
+	@Override
+	protected int eventMask(ContextEvent e) {
+		return e.getId();
+	}
+
 	@Override
 	public <T> T getInstance(Class<T> type) {
-		// TODO Auto-generated method stub
-		return null;
+		final Provider<T> provider = getProvider(type);
+		if (provider == null) {
+			throw new IllegalStateException("No Context of the hierarchy is configured for " + type);
+		}
+		return provider.get();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> Provider<T> getProvider(Class<T> type) {
+		if (destroyed) {
+			throw new IllegalStateException("Context has been destroyed.");
+		}
+		if (ancestorDestroyed) {
+			// Checked before the cache, which may still receive a provider resolved concurrently with the destruction.
+			throw new IllegalStateException("A parent of this Context has been destroyed.");
+		}
+
+		Provider<?> provider = providers.get(type);
+		if (provider == null) {
+			// Read before resolving, so that a provider resolved while the hierarchy was still being configured never gets cached.
+			final boolean cacheable = configured;
+			provider = resolve(type);
+			if (cacheable) {
+				final Provider<?> existing = providers.putIfAbsent(type, provider);
+				if (existing != null) {
+					provider = existing;
+				}
+			}
+		}
+		return (provider != ABSENT) ? (Provider<T>) provider : null;
 	}
 
 	@Override
 	public void destroy() {
-		// TODO Auto-generated method stub
+		if (destroyed) {
+			return;
+		}
+		destroyed = true;
 
+		for (Context a : ancestors) {
+			a.removeContextListener(this);
+		}
+		dispatchEvent(new ContextEvent(this, ContextEvent.DESTROYED));
+		providers.clear();
 	}
 
 	@Override
 	public void contextDestroyed(ContextEvent e) {
-		// TODO Auto-generated method stub
-
+		if (e.getContext() != this) {
+			// Cached providers may belong to the destroyed ancestor.
+			ancestorDestroyed = true;
+			providers.clear();
+		}
 	}
 
 	@Override
 	public void addContextListener(ContextListener l) {
-		// TODO Auto-generated method stub
+		if (l != null) {
+			addEventListener(l);
+		}
+	}
 
+	@Override
+	public void addContextListener(ContextListener l, int mask) {
+		if (l != null) {
+			addEventListener(l, mask);
+		}
 	}
 
 	@Override
 	public void removeContextListener(ContextListener l) {
-		// TODO Auto-generated method stub
-
+		if (l != null) {
+			removeEventListener(l);
+		}
 	}
 
 	@Override
@@ -70,4 +175,50 @@ public final class DefaultContext extends EventDispatcher<ContextListener, Conte
 		return parents;
 	}
 
+	@Override
+	public CompletionStage<Context> initialization() {
+		return initialization;
+	}
+
+	/**
+	 * Resolves the provider for the specified type, asking the local sources first and then the parents in declaration order. Parents answer
+	 * from their own cache, so the hierarchy is walked at most once per type and Context.
+	 */
+	private Provider<?> resolve(Class<?> type) {
+		for (ProviderSource source : sources) {
+			final Provider<?> provider = source.getProvider(type);
+			if (provider != null) {
+				return provider;
+			}
+		}
+		if (parents != null) {
+			for (Context p : parents) {
+				final Provider<?> provider = p.getProvider(type);
+				if (provider != null) {
+					return provider;
+				}
+			}
+		}
+		return ABSENT;
+	}
+
+	private static List<Context> collectAncestors(Context[] parents) {
+		final Set<Context> visited = Collections.newSetFromMap(new IdentityHashMap<Context, Boolean>());
+		final List<Context> result = new ArrayList<Context>();
+		collectAncestors(parents, visited, result);
+		return Collections.unmodifiableList(result);
+	}
+
+	private static void collectAncestors(Context[] parents, Set<Context> visited, List<Context> result) {
+		if (parents == null) {
+			return;
+		}
+		for (Context p : parents) {
+			if (visited.add(p)) {
+				result.add(p);
+				collectAncestors(p.getParents(), visited, result);
+			}
+		}
+	}
+
 }
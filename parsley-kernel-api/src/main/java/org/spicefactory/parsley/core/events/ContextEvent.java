@@ -6,6 +6,9 @@ import org.spicefactory.parsley.core.context.Context;
 
 /**
  * Event that fires when a Context changes its internal state.
+ * <p>
+ * Event ids are distinct bits, so that listeners may subscribe to a combination of them with <code>Context.addContextListener(l, mask)</code>.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 public class ContextEvent extends EventObject {
@@ -2,30 +2,60 @@ package org.spicefactory.parsley.core.events;
 
 import java.util.EventListener;
 import java.util.EventObject;
-import java.util.Vector;
 
 /**
  * This class represents an event dispatcher object, or "data" in the model-view paradigm. It can be sub-classed to represent an object that the
  * application wants to have observed.
+ * <p>
+ * Listeners are kept in a copy-on-write array: adding or removing a listener copies the array under a lock, while dispatching reads the current
+ * array without locking or allocating. Each listener subscribes with a bit mask of the events it is interested in, and is skipped for events
+ * whose <code>eventMask</code> does not intersect it.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  * @param <L>
  * @param <E>
  */
 public abstract class EventDispatcher<L extends EventListener, E extends EventObject> {
 
-	private final transient Vector<L> listeners = new Vector<L>();
+	/**
+	 * Mask subscribing a listener to all events.
+	 */
+	public static final int ALL_EVENTS = ~0;
+
+	private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+	private transient volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
 
 	/**
-	 * Adds the specified event listener to receive events from this implementation.
+	 * Adds the specified event listener to receive all events from this implementation.
 	 * @param l
 	 */
-	public synchronized void addEventListener(L l) {
+	public void addEventListener(L l) {
+		addEventListener(l, ALL_EVENTS);
+	}
+
+	/**
+	 * Adds the specified event listener to receive the events matching the specified mask from this implementation. If the listener has already
+	 * been added, its mask gets replaced.
+	 * @param l
+	 * @param mask the bit mask of the events to receive
+	 */
+	public synchronized void addEventListener(L l, int mask) {
 		if (l == null) {
 			throw new NullPointerException();
 		}
-		if (!listeners.contains(l)) {
-			listeners.addElement(l);
+		final Subscription[] current = subscriptions;
+		final int index = indexOf(current, l);
+		final Subscription[] updated;
+		if (index >= 0) {
+			updated = current.clone();
+		}
+		else {
+			updated = new Subscription[current.length + 1];
+			System.arraycopy(current, 0, updated, 0, current.length);
 		}
+		updated[(index >= 0) ? index : current.length] = new Subscription(l, mask);
+		subscriptions = updated;
 	}
 
 	/**
@@ -33,21 +63,64 @@ public abstract class EventDispatcher<L extends EventListener, E extends EventOb
 	 * @param l
 	 */
 	public synchronized void removeEventListener(L l) {
-		listeners.removeElement(l);
+		final Subscription[] current = subscriptions;
+		final int index = indexOf(current, l);
+		if (index < 0) {
+			return;
+		}
+		if (current.length == 1) {
+			subscriptions = NO_SUBSCRIPTIONS;
+			return;
+		}
+		final Subscription[] updated = new Subscription[current.length - 1];
+		System.arraycopy(current, 0, updated, 0, index);
+		System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+		subscriptions = updated;
 	}
 
+	@SuppressWarnings("unchecked")
 	protected void dispatchEvent(E e) {
-		Object[] arrLocal = new Object[listeners.size()];
+		final Subscription[] current = subscriptions;
+		final int mask = eventMask(e);
 
-		synchronized (this) {
-			arrLocal = listeners.toArray(arrLocal);
+		for (int i = current.length - 1; i >= 0; i--) {
+			if ((current[i].mask & mask) != 0) {
+				processEvent((L) current[i].listener, e);
+			}
 		}
+	}
 
-		for (int i = arrLocal.length; i >= 0; i--) {
-			processEvent((L) arrLocal[i], e);
-		}
+	/**
+	 * Returns the bit mask identifying the specified event, matched against the masks listeners subscribed with. The default implementation
+	 * matches all listeners.
+	 */
+	protected int eventMask(E e) {
+		return ALL_EVENTS;
 	}
 
 	protected abstract void processEvent(L l, E e);
 
+	private static int indexOf(Subscription[] subscriptions, Object l) {
+		for (int i = 0; i < subscriptions.length; i++) {
+			if (subscriptions[i].listener.equals(l)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * An immutable pair of a listener and the mask of the events it subscribed to.
+	 */
+	private static final class Subscription {
+
+		final EventListener listener;
+		final int mask;
+
+		Subscription(EventListener listener, int mask) {
+			this.listener = listener;
+			this.mask = mask;
+		}
+	}
+
 }
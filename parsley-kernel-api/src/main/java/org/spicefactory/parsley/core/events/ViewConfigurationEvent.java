@@ -39,6 +39,7 @@ public class ViewConfigurationEvent extends AWTEvent {
 	public static final int AUTOWIRE_VIEW = 2001;
 
 	private final ViewConfiguration[] configurations;
+	private final CompleteHandler callback;
 	private boolean received;
 
 	/**
@@ -48,8 +49,10 @@ public class ViewConfigurationEvent extends AWTEvent {
 	 * @param callback the no-arg callback to invoke after processing of this event has completed
 	 */
 	public ViewConfigurationEvent(int id, ViewConfiguration[] configurations, @Nullable CompleteHandler callback) {
-		super(callback, id);
+		// The callback is optional, so it cannot serve as the source of the event.
+		super(configurations, id);
 		this.configurations = configurations;
+		this.callback = callback;
 	}
 
 	/**
@@ -80,10 +83,25 @@ public class ViewConfigurationEvent extends AWTEvent {
 		return configurations;
 	}
 
+	/**
+	 * The callback to invoke after processing of this event has completed, null if there is none.
+	 */
+	@Nullable
+	public CompleteHandler callback() {
+		return callback;
+	}
+
 	/**
 	 * Indicates whether this event instance has already been processed by a Context.
 	 */
 	public boolean received() {
 		return received;
 	}
+
+	/**
+	 * Marks this event as processed by a Context, so that no other Context processes it.
+	 */
+	public void markAsReceived() {
+		received = true;
+	}
 }
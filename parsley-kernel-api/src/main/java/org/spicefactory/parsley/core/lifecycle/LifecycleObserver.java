@@ -0,0 +1,33 @@
+package org.spicefactory.parsley.core.lifecycle;
+
+import javax.annotation.Nullable;
+
+/**
+ * Observes a phase of the lifecycle of managed objects of a particular type.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface LifecycleObserver {
+
+	/**
+	 * The type of the observed objects. Objects of sub-types are observed as well.
+	 */
+	Class<?> type();
+
+	/**
+	 * The lifecycle phase to observe.
+	 */
+	ObjectLifecycle phase();
+
+	/**
+	 * The id of the observed object, or null to observe all objects of the type.
+	 */
+	@Nullable
+	String id();
+
+	/**
+	 * Invoked when an observed object reaches the observed phase.
+	 * @param instance the observed object
+	 */
+	void observe(Object instance);
+
+}
@@ -0,0 +1,31 @@
+package org.spicefactory.parsley.core.lifecycle;
+
+import javax.annotation.Nullable;
+
+/**
+ * The registry for observers of lifecycle events dispatched by objects within a scope.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface LifecycleObserverRegistry {
+
+	/**
+	 * Adds an observer to this registry.
+	 * @param observer the observer to add
+	 */
+	void addObserver(LifecycleObserver observer);
+
+	/**
+	 * Removes an observer from this registry.
+	 * @param observer the observer to remove
+	 */
+	void removeObserver(LifecycleObserver observer);
+
+	/**
+	 * Notifies all observers matching the type of the specified object, the phase and the id.
+	 * @param instance the object that reached the phase
+	 * @param phase the phase the object reached
+	 * @param id the id of the object, or null if it has none
+	 */
+	void notifyObservers(Object instance, ObjectLifecycle phase, @Nullable String id);
+
+}
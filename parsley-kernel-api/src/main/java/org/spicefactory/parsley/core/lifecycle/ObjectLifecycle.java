@@ -0,0 +1,29 @@
+package org.spicefactory.parsley.core.lifecycle;
+
+/**
+ * The phases of the lifecycle of a managed object that observers can be registered for.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public enum ObjectLifecycle {
+
+	/**
+	 * The object has been instantiated but not configured yet.
+	 */
+	PRE_INIT,
+
+	/**
+	 * The object has been fully configured.
+	 */
+	POST_INIT,
+
+	/**
+	 * The object is about to be removed from the Context.
+	 */
+	PRE_DESTROY,
+
+	/**
+	 * The object has been removed from the Context.
+	 */
+	POST_DESTROY
+
+}
@@ -0,0 +1,151 @@
+package org.spicefactory.parsley.core.lifecycle.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.lifecycle.LifecycleObserver;
+import org.spicefactory.parsley.core.lifecycle.LifecycleObserverRegistry;
+import org.spicefactory.parsley.core.lifecycle.ObjectLifecycle;
+import org.spicefactory.parsley.core.util.ConcurrentWeakIdentityMap;
+import org.spicefactory.parsley.core.util.TypeHierarchy;
+
+/**
+ * Default implementation of the LifecycleObserverRegistry interface.
+ * <p>
+ * Observers are indexed by the type they observe. The observers matching an object type are selected once, by looking up each type of its
+ * <code>TypeHierarchy</code>, and cached per phase in a map holding the object types weakly. Adding or removing an observer only drops the
+ * selections of the subtypes of its observed type. Notifying observers thus never walks the registered observers: when none are registered it
+ * returns after reading a single field, otherwise it costs one cache lookup, returning a shared empty selection for types nobody observes.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultLifecycleObserverRegistry implements LifecycleObserverRegistry {
+
+	private static final LifecycleObserver[] NO_OBSERVERS = new LifecycleObserver[0];
+	private static final LifecycleObserver[][] EMPTY_SELECTION = new LifecycleObserver[ObjectLifecycle.values().length][];
+
+	static {
+		for (int i = 0; i < EMPTY_SELECTION.length; i++) {
+			EMPTY_SELECTION[i] = NO_OBSERVERS;
+		}
+	}
+
+	// Guarded by this, replaced on each change.
+	private volatile Map<Class<?>, List<LifecycleObserver>> observers = Collections.emptyMap();
+	private final ConcurrentWeakIdentityMap<Class<?>, LifecycleObserver[][]> selections =
+			new ConcurrentWeakIdentityMap<Class<?>, LifecycleObserver[][]>();
+
+	@Override
+	public synchronized void addObserver(LifecycleObserver observer) {
+		final Map<Class<?>, List<LifecycleObserver>> copy = new HashMap<Class<?>, List<LifecycleObserver>>(observers);
+		final List<LifecycleObserver> list = new ArrayList<LifecycleObserver>();
+		if (copy.containsKey(observer.type())) {
+			list.addAll(copy.get(observer.type()));
+		}
+		list.add(observer);
+		copy.put(observer.type(), list);
+		update(copy, observer.type());
+	}
+
+	@Override
+	public synchronized void removeObserver(LifecycleObserver observer) {
+		final List<LifecycleObserver> current = observers.get(observer.type());
+		if (current == null || !current.contains(observer)) {
+			return;
+		}
+		final Map<Class<?>, List<LifecycleObserver>> copy = new HashMap<Class<?>, List<LifecycleObserver>>(observers);
+		final List<LifecycleObserver> list = new ArrayList<LifecycleObserver>(current);
+		list.remove(observer);
+		if (list.isEmpty()) {
+			copy.remove(observer.type());
+		}
+		else {
+			copy.put(observer.type(), list);
+		}
+		update(copy, observer.type());
+	}
+
+	@Override
+	public void notifyObservers(Object instance, ObjectLifecycle phase, String id) {
+		if (observers.isEmpty()) {
+			return;
+		}
+
+		LifecycleObserver[][] selection = selections.get(instance.getClass());
+		if (selection == null) {
+			selection = select(instance.getClass());
+		}
+		for (LifecycleObserver observer : selection[phase.ordinal()]) {
+			final String observedId = observer.id();
+			if (observedId == null || observedId.equals(id)) {
+				try {
+					observer.observe(instance);
+				}
+				catch (RuntimeException e) {
+					logger.error("Lifecycle observer {} failed to observe {} of {}.", observer, phase, instance, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Publishes the new observers, then drops the selections of the subtypes of the observed type.
+	 */
+	private void update(Map<Class<?>, List<LifecycleObserver>> newObservers, Class<?> observedType) {
+		observers = Collections.unmodifiableMap(newObservers);
+		for (Class<?> type : selections.keys()) {
+			if (observedType.isAssignableFrom(type)) {
+				selections.remove(type);
+			}
+		}
+	}
+
+	private LifecycleObserver[][] select(Class<?> type) {
+		final Map<Class<?>, List<LifecycleObserver>> snapshot = observers;
+		final LifecycleObserver[][] selection = select(type, snapshot);
+		final LifecycleObserver[][] existing = selections.putIfAbsent(type, selection);
+		if (existing != null) {
+			return existing;
+		}
+		if (observers != snapshot) {
+			// Observers changed while selecting, the selection may have been cached after the change dropped the selections.
+			selections.remove(type, selection);
+		}
+		return selection;
+	}
+
+	private static LifecycleObserver[][] select(Class<?> type, Map<Class<?>, List<LifecycleObserver>> observers) {
+		final List<List<LifecycleObserver>> byPhase = new ArrayList<List<LifecycleObserver>>();
+		for (int i = 0; i < ObjectLifecycle.values().length; i++) {
+			byPhase.add(new ArrayList<LifecycleObserver>());
+		}
+
+		boolean empty = true;
+		for (Class<?> c : TypeHierarchy.of(type)) {
+			final List<LifecycleObserver> list = observers.get(c);
+			if (list != null) {
+				for (LifecycleObserver observer : list) {
+					byPhase.get(observer.phase().ordinal()).add(observer);
+					empty = false;
+				}
+			}
+		}
+		if (empty) {
+			return EMPTY_SELECTION;
+		}
+
+		final LifecycleObserver[][] selection = new LifecycleObserver[byPhase.size()][];
+		for (int i = 0; i < selection.length; i++) {
+			selection[i] = byPhase.get(i).toArray(NO_OBSERVERS);
+		}
+		return selection;
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultLifecycleObserverRegistry.class);
+
+}
@@ -0,0 +1,27 @@
+package org.spicefactory.parsley.core.messaging;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Represents an annotation that can be used on message types to assign them a priority class. Messages of an annotated type are always
+ * delivered asynchronously through the lane of their priority, even when dispatched without an explicit priority.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+@Documented
+@Inherited
+@Target(TYPE)
+@Retention(RUNTIME)
+public @interface DispatchPriority {
+
+	/**
+	 * The priority class of the message type.
+	 */
+	MessagePriority value();
+
+}
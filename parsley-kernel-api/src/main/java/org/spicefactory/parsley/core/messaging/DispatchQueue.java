@@ -0,0 +1,42 @@
+package org.spicefactory.parsley.core.messaging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue for asynchronous message deliveries, with one lane per priority class.
+ * <p>
+ * The queue is bounded for producers that use <code>tryEnqueue</code> or <code>offer</code>, so that they can slow down when receivers fall
+ * behind. Deliveries queued with <code>enqueue</code> are always accepted, but count against the capacity.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface DispatchQueue {
+
+	/**
+	 * Queues the delivery of a message in the lane of the specified priority.
+	 * @param priority the priority class of the message
+	 * @param delivery the task delivering the message to its receivers
+	 */
+	void enqueue(MessagePriority priority, Runnable delivery);
+
+	/**
+	 * Queues the delivery of a message in the lane of the specified priority, unless the queue is full.
+	 * @param priority the priority class of the message
+	 * @param delivery the task delivering the message to its receivers
+	 * @return true if the delivery has been queued, false if the queue is full
+	 */
+	boolean tryEnqueue(MessagePriority priority, Runnable delivery);
+
+	/**
+	 * Queues the delivery of a message in the lane of the specified priority, waiting up to the specified time for space to become available.
+	 * Implementations must not wait when called on the thread deliveries run on, as the queue could not make room before the timeout elapsed.
+	 * @param priority the priority class of the message
+	 * @param delivery the task delivering the message to its receivers
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the delivery has been queued, false if the queue remained full
+	 * @throws InterruptedException if the current thread got interrupted while waiting
+	 */
+	boolean offer(MessagePriority priority, Runnable delivery, long timeout, TimeUnit unit) throws InterruptedException;
+
+}
@@ -0,0 +1,124 @@
+package org.spicefactory.parsley.core.messaging;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
+
+/**
+ * The outcome of processing a single message, with one entry per interceptor or target the message has been passed to.
+ * <p>
+ * A message that has been discarded, because no target matched or because the dispatcher had been disabled, results in the cancelled state
+ * without any receiver outcome.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class DispatchResult {
+
+	private final Message message;
+	private final MessageState state;
+	private final List<Outcome> outcomes;
+
+	/**
+	 * Creates a new instance.
+	 * @param message the processed message
+	 * @param state the state processing ended in, either complete or cancelled
+	 * @param outcomes the outcomes of the receivers the message has been passed to, in processing order
+	 */
+	public DispatchResult(Message message, MessageState state, List<Outcome> outcomes) {
+		this.message = message;
+		this.state = state;
+		this.outcomes = Collections.unmodifiableList(outcomes);
+	}
+
+	/**
+	 * Creates a new instance for a message that has been discarded without being passed to any receiver.
+	 * @param message the discarded message
+	 * @return a result in the cancelled state without receiver outcomes
+	 */
+	public static DispatchResult discarded(Message message) {
+		return new DispatchResult(message, MessageState.CANCELLED, Collections.<Outcome> emptyList());
+	}
+
+	/**
+	 * The processed message.
+	 */
+	public Message message() {
+		return message;
+	}
+
+	/**
+	 * The state processing ended in, either complete or cancelled.
+	 */
+	public MessageState state() {
+		return state;
+	}
+
+	/**
+	 * The outcomes of the receivers the message has been passed to, in processing order.
+	 */
+	public List<Outcome> outcomes() {
+		return outcomes;
+	}
+
+	/**
+	 * Indicates whether at least one receiver threw an exception while processing the message.
+	 */
+	public boolean failed() {
+		for (Outcome outcome : outcomes) {
+			if (outcome.failure != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "DispatchResult [" + message.type().getName() + ", " + state + ", " + outcomes.size() + " receiver(s)]";
+	}
+
+	/**
+	 * The outcome of passing a message to a single receiver.
+	 */
+	public static final class Outcome {
+
+		private final MessageReceiver receiver;
+		private final Exception failure;
+
+		/**
+		 * Creates a new instance.
+		 * @param receiver the receiver the message has been passed to
+		 * @param failure the exception thrown by the receiver, or null if it handled the message
+		 */
+		public Outcome(MessageReceiver receiver, @Nullable Exception failure) {
+			this.receiver = receiver;
+			this.failure = failure;
+		}
+
+		/**
+		 * The receiver the message has been passed to.
+		 */
+		public MessageReceiver receiver() {
+			return receiver;
+		}
+
+		/**
+		 * The exception thrown by the receiver, or null if it handled the message.
+		 */
+		@Nullable
+		public Exception failure() {
+			return failure;
+		}
+
+		/**
+		 * Indicates whether the receiver handled the message without throwing an exception.
+		 */
+		public boolean succeeded() {
+			return failure == null;
+		}
+	}
+
+}
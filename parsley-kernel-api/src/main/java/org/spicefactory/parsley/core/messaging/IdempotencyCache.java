@@ -0,0 +1,112 @@
+package org.spicefactory.parsley.core.messaging;
+
+import javax.annotation.Nullable;
+
+/**
+ * Remembers the idempotency keys of dispatched messages, so that scopes can drop duplicates.
+ * <p>
+ * Only messages whose type declares an {@link IdempotencyKey} are considered, all other messages are never duplicates.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface IdempotencyCache {
+
+	/**
+	 * Indicates whether a message with the same type and idempotency key has been dispatched through the specified scope within the time to
+	 * live of the key, and remembers the key of the message if not. Scopes forget the key again if the message could not be queued or
+	 * delivered.
+	 * @param message the message about to be dispatched
+	 * @param scopeId the uuid of the scope the message is dispatched through, or null for all scopes of a Context
+	 * @return true if the message is a duplicate and should be dropped
+	 */
+	boolean isDuplicate(Object message, @Nullable String scopeId);
+
+	/**
+	 * Forgets the key of the specified message, so that the message is no longer a duplicate. Invoked when a message whose key has been
+	 * remembered got rejected by the dispatch queue, discarded, or when delivering it failed. Does nothing if the key has expired and been
+	 * remembered for another message since.
+	 * @param message the message whose key to forget
+	 * @param scopeId the uuid of the scope the message was dispatched through, or null for all scopes of a Context
+	 */
+	void forget(Object message, @Nullable String scopeId);
+
+	/**
+	 * Returns a snapshot of the statistics of this cache.
+	 */
+	Stats stats();
+
+	/**
+	 * Forgets all keys, without resetting the statistics.
+	 */
+	void clear();
+
+	/**
+	 * Statistics of an IdempotencyCache.
+	 */
+	final class Stats {
+
+		private final long hitCount;
+		private final long missCount;
+		private final long evictionCount;
+		private final long expirationCount;
+		private final int size;
+
+		/**
+		 * Creates a new instance.
+		 * @param hitCount the number of messages dropped as duplicates
+		 * @param missCount the number of messages whose key has been remembered
+		 * @param evictionCount the number of keys forgotten before expiring, to keep the cache within its bounds
+		 * @param expirationCount the number of keys forgotten after expiring
+		 * @param size the number of keys currently remembered
+		 */
+		public Stats(long hitCount, long missCount, long evictionCount, long expirationCount, int size) {
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.evictionCount = evictionCount;
+			this.expirationCount = expirationCount;
+			this.size = size;
+		}
+
+		/**
+		 * The number of messages dropped as duplicates.
+		 */
+		public long hitCount() {
+			return hitCount;
+		}
+
+		/**
+		 * The number of messages whose key has been remembered.
+		 */
+		public long missCount() {
+			return missCount;
+		}
+
+		/**
+		 * The number of keys forgotten before expiring, to keep the cache within its bounds.
+		 */
+		public long evictionCount() {
+			return evictionCount;
+		}
+
+		/**
+		 * The number of keys forgotten after expiring.
+		 */
+		public long expirationCount() {
+			return expirationCount;
+		}
+
+		/**
+		 * The number of keys currently remembered.
+		 */
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats [hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", expirations=" + expirationCount
+					+ ", size=" + size + "]";
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package org.spicefactory.parsley.core.messaging;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents an annotation that can be used on a field or a method without parameters of a message type to specify the idempotency key of its
+ * messages. A message whose key equals the key of a message of the same type dispatched through the same scope within the time to live is
+ * dropped as a duplicate. Messages whose key is null are never dropped.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+@Documented
+@Target({FIELD, METHOD})
+@Retention(RUNTIME)
+public @interface IdempotencyKey {
+
+	/**
+	 * The time during which a key is remembered after the first message carrying it has been dispatched. The default is 60 seconds.
+	 */
+	long ttl() default 60;
+
+	/**
+	 * The unit of the time to live.
+	 */
+	TimeUnit unit() default TimeUnit.SECONDS;
+
+}
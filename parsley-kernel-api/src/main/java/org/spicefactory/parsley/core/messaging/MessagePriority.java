@@ -0,0 +1,49 @@
+package org.spicefactory.parsley.core.messaging;
+
+import javax.annotation.Nullable;
+
+/**
+ * The priority classes of messages delivered asynchronously.
+ * <p>
+ * Each class has its own lane in the dispatch queue. Higher lanes are drained first, but messages waiting too long in a lower lane are still
+ * given a share of the deliveries, so that a steady flow of messages of a higher class cannot starve them.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public enum MessagePriority {
+
+	/**
+	 * Constant for messages reacting to user interaction, delivered before all others.
+	 */
+	UI_CRITICAL,
+
+	/**
+	 * Constant for regular messages.
+	 */
+	NORMAL,
+
+	/**
+	 * Constant for background messages like synchronization, delivered once no other message is waiting.
+	 */
+	BULK;
+
+	private static final ClassValue<MessagePriority> TYPE_PRIORITIES = new ClassValue<MessagePriority>() {
+
+		@Override
+		protected MessagePriority computeValue(Class<?> type) {
+			final DispatchPriority annotation = type.getAnnotation(DispatchPriority.class);
+			return (annotation == null) ? null : annotation.value();
+		}
+	};
+
+	/**
+	 * Returns the priority the specified message type has been annotated with.
+	 * @param type the message type
+	 * @return the priority of the message type, or null if it is not annotated with {@link DispatchPriority}
+	 */
+	@Nullable
+	public static MessagePriority forType(Class<?> type) {
+		return TYPE_PRIORITIES.get(type);
+	}
+
+}
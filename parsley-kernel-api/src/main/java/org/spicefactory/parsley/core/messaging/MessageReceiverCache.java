@@ -20,6 +20,13 @@ public interface MessageReceiverCache {
 	 */
 	Set<MessageReceiver> getReceivers(MessageReceiverKind kind, @Nullable Object selector);
 
+	/**
+	 * Returns the interceptors and targets for the specified selector value, compiled into a single ordered chain.
+	 * @param selector the selector to use for finding matching receivers
+	 * @return the chain of interceptors and targets for the specified selector value
+	 */
+	MessageReceiverChain getReceiverChain(@Nullable Object selector);
+
 	/**
 	 * Returns the value of the selector property of the specified message instance.
 	 * @param message the message instance
@@ -0,0 +1,72 @@
+package org.spicefactory.parsley.core.messaging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
+
+/**
+ * The interceptors and targets matching a message type and selector, compiled into a single ordered chain.
+ * <p>
+ * Interceptors come first, then targets, each in ascending order. Chains are immutable, so that a cache can compile the chain of a message type
+ * and selector once and hand it to each processor of a matching message.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class MessageReceiverChain {
+
+	private static final Comparator<MessageReceiver> ORDER = new Comparator<MessageReceiver>() {
+
+		@Override
+		public int compare(MessageReceiver a, MessageReceiver b) {
+			return (a.order() < b.order()) ? -1 : ((a.order() == b.order()) ? 0 : 1);
+		}
+	};
+
+	private final MessageReceiver[] receivers;
+	private final int interceptorCount;
+
+	/**
+	 * Compiles a new chain.
+	 * @param interceptors the interceptors of the chain, of kind {@link MessageReceiverKind#INTERCEPTOR}
+	 * @param targets the targets of the chain, of kind {@link MessageReceiverKind#TARGET}
+	 */
+	public MessageReceiverChain(Collection<MessageReceiver> interceptors, Collection<MessageReceiver> targets) {
+		final List<MessageReceiver> chain = new ArrayList<MessageReceiver>(interceptors.size() + targets.size());
+		chain.addAll(interceptors);
+		Collections.sort(chain, ORDER);
+		final List<MessageReceiver> sortedTargets = new ArrayList<MessageReceiver>(targets);
+		Collections.sort(sortedTargets, ORDER);
+		chain.addAll(sortedTargets);
+
+		this.receivers = chain.toArray(new MessageReceiver[chain.size()]);
+		this.interceptorCount = interceptors.size();
+	}
+
+	/**
+	 * The number of receivers in this chain.
+	 */
+	public int size() {
+		return receivers.length;
+	}
+
+	/**
+	 * The number of interceptors at the beginning of this chain.
+	 */
+	public int interceptorCount() {
+		return interceptorCount;
+	}
+
+	/**
+	 * Returns the receiver at the specified position, interceptors being at positions below <code>interceptorCount()</code>.
+	 * @param index the position of the receiver
+	 * @return the receiver at the specified position
+	 */
+	public MessageReceiver get(int index) {
+		return receivers[index];
+	}
+
+}
@@ -13,6 +13,11 @@ public enum MessageReceiverKind {
 	 */
 	TARGET,
 
+	/**
+	 * Constant for an interceptor, invoked before all targets and able to cancel or suspend the message processing.
+	 */
+	INTERCEPTOR,
+
 	/**
 	 * Constant for an error handler.
 	 */
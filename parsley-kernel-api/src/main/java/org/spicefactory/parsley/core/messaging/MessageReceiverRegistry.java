@@ -2,6 +2,7 @@ package org.spicefactory.parsley.core.messaging;
 
 import org.spicefactory.parsley.core.messaging.receiver.CommandObserver;
 import org.spicefactory.parsley.core.messaging.receiver.MessageErrorHandler;
+import org.spicefactory.parsley.core.messaging.receiver.MessageInterceptor;
 import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
 
 /**
@@ -27,6 +28,18 @@ public interface MessageReceiverRegistry {
 	 */
 	void removeTarget(MessageTarget target);
 
+	/**
+	 * Adds an interceptor to this registry.
+	 * @param interceptor the interceptor to add to this registry
+	 */
+	void addInterceptor(MessageInterceptor interceptor);
+
+	/**
+	 * Removes an interceptor from this registry.
+	 * @param interceptor the interceptor to remove from this registry
+	 */
+	void removeInterceptor(MessageInterceptor interceptor);
+
 	/**
 	 * Adds an error handler to this registry.
 	 * @param handler the error handler to add to this registry
@@ -1,5 +1,7 @@
 package org.spicefactory.parsley.core.messaging;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.spicefactory.parsley.core.command.ObservableCommand;
 
 /**
@@ -15,6 +17,15 @@ public interface MessageRouter {
 	 */
 	void dispatchMessage(Message message, MessageReceiverCache cache);
 
+	/**
+	 * Dispatches the specified message like <code>dispatchMessage(Message, MessageReceiverCache)</code>, recording the outcome of every
+	 * receiver. Exceptions thrown by receivers are reported through the result instead of being rethrown.
+	 * @param message the message to dispatch
+	 * @param cache the cache of receivers for the message type
+	 * @param result the future to complete once processing completed or has been cancelled
+	 */
+	void dispatchMessage(Message message, MessageReceiverCache cache, CompletableFuture<DispatchResult> result);
+
 	/**
 	 * Processes the observers registered for the specified command and its current status.
 	 * @param command the command to process the observers for
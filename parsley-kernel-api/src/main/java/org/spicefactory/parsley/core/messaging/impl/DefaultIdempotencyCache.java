@@ -0,0 +1,289 @@
+package org.spicefactory.parsley.core.messaging.impl;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.spicefactory.parsley.core.messaging.IdempotencyCache;
+import org.spicefactory.parsley.core.messaging.IdempotencyKey;
+
+/**
+ * Default implementation of the IdempotencyCache interface, remembering a bounded number of keys.
+ * <p>
+ * Keys are held in a concurrent map along with their expiry time, and in a queue in the order they have been remembered. An expired key is
+ * treated as absent and replaced in place. Each newly remembered key drains the head of the queue while it has expired or while the queue
+ * holds more entries than the maximum size, so that the oldest keys are evicted first and the work of expiring keys is spread over the
+ * dispatches.
+ * </p>
+ * <p>
+ * Replaced and forgotten entries stay queued until they reach the head, where they are skipped. They count against the maximum size, which
+ * thus bounds the queue as well as the map.
+ * </p>
+ * <p>
+ * How to read the key of a message type is resolved once per type, so checking whether a type has a key costs a single lookup.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultIdempotencyCache implements IdempotencyCache {
+
+	private static final ClassValue<KeyReader> KEY_READERS = new ClassValue<KeyReader>() {
+
+		@Override
+		protected KeyReader computeValue(Class<?> type) {
+			return KeyReader.of(type);
+		}
+	};
+
+	private final int maximumSize;
+	private final ConcurrentMap<EntryKey, Entry> entries;
+	private final Queue<Entry> order;
+	private final AtomicInteger size;
+	private final AtomicInteger queued;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+	private final LongAdder expirations;
+
+	/**
+	 * Creates a new instance remembering up to 10000 keys.
+	 */
+	public DefaultIdempotencyCache() {
+		this(10000);
+	}
+
+	/**
+	 * Creates a new instance.
+	 * @param maximumSize the maximum number of keys remembered
+	 */
+	public DefaultIdempotencyCache(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		this.entries = new ConcurrentHashMap<EntryKey, Entry>();
+		this.order = new ConcurrentLinkedQueue<Entry>();
+		this.size = new AtomicInteger();
+		this.queued = new AtomicInteger();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+		this.expirations = new LongAdder();
+	}
+
+	@Override
+	public boolean isDuplicate(Object message, @Nullable String scopeId) {
+		final KeyReader reader = KEY_READERS.get(message.getClass());
+		if (reader == KeyReader.NONE) {
+			return false;
+		}
+		final Object value = reader.read(message);
+		if (value == null) {
+			return false;
+		}
+
+		final long now = System.nanoTime();
+		final Entry entry = new Entry(new EntryKey(message.getClass(), scopeId, value), now + reader.ttlNanos, message);
+		for (;;) {
+			final Entry existing = entries.putIfAbsent(entry.key, entry);
+			if (existing == null) {
+				size.incrementAndGet();
+				break;
+			}
+			if (existing.expiry - now > 0) {
+				hits.increment();
+				return true;
+			}
+			if (entries.replace(entry.key, existing, entry)) {
+				// The stale entry stays queued until drained.
+				expirations.increment();
+				break;
+			}
+		}
+		misses.increment();
+		order.add(entry);
+		queued.incrementAndGet();
+		drain(now);
+		return false;
+	}
+
+	@Override
+	public void forget(Object message, @Nullable String scopeId) {
+		final KeyReader reader = KEY_READERS.get(message.getClass());
+		if (reader == KeyReader.NONE) {
+			return;
+		}
+		final Object value = reader.read(message);
+		if (value == null) {
+			return;
+		}
+		// Only the entry remembered for this very message, the key may have expired and been remembered again for another one since. The
+		// entry stays queued until drained, where it is no longer found.
+		final EntryKey key = new EntryKey(message.getClass(), scopeId, value);
+		final Entry entry = entries.get(key);
+		if (entry != null && entry.message.get() == message && entries.remove(key, entry)) {
+			size.decrementAndGet();
+		}
+	}
+
+	private void drain(long now) {
+		for (;;) {
+			final Entry head = order.peek();
+			if (head == null) {
+				return;
+			}
+			if (head.expiry - now > 0 && queued.get() <= maximumSize) {
+				return;
+			}
+			// May be a later entry if another thread drained concurrently.
+			final Entry polled = order.poll();
+			if (polled == null) {
+				return;
+			}
+			queued.decrementAndGet();
+			// Replaced and forgotten entries are no longer found.
+			if (entries.remove(polled.key, polled)) {
+				size.decrementAndGet();
+				if (polled.expiry - now <= 0) {
+					expirations.increment();
+				}
+				else {
+					evictions.increment();
+				}
+			}
+		}
+	}
+
+	@Override
+	public Stats stats() {
+		return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size.get());
+	}
+
+	@Override
+	public void clear() {
+		Entry head;
+		while ((head = order.poll()) != null) {
+			queued.decrementAndGet();
+			if (entries.remove(head.key, head)) {
+				size.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * A remembered key along with its expiry time and the message it has been remembered for, held weakly.
+	 */
+	private static final class Entry {
+
+		private final EntryKey key;
+		private final long expiry;
+		private final WeakReference<Object> message;
+
+		Entry(EntryKey key, long expiry, Object message) {
+			this.key = key;
+			this.expiry = expiry;
+			this.message = new WeakReference<Object>(message);
+		}
+	}
+
+	/**
+	 * The identity of a key: the key value of a message type within a scope.
+	 */
+	private static final class EntryKey {
+
+		private final Class<?> type;
+		private final String scopeId;
+		private final Object value;
+		private final int hash;
+
+		EntryKey(Class<?> type, String scopeId, Object value) {
+			this.type = type;
+			this.scopeId = scopeId;
+			this.value = value;
+			this.hash = 31 * (31 * type.hashCode() + ((scopeId != null) ? scopeId.hashCode() : 0)) + value.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof EntryKey)) {
+				return false;
+			}
+			final EntryKey other = (EntryKey) obj;
+			return type == other.type && value.equals(other.value) && ((scopeId != null) ? scopeId.equals(other.scopeId)
+					: other.scopeId == null);
+		}
+	}
+
+	/**
+	 * Reads the idempotency key of the messages of a single type.
+	 */
+	private static final class KeyReader {
+
+		private static final KeyReader NONE = new KeyReader(null, 0);
+
+		private final AccessibleObject member;
+		private final long ttlNanos;
+
+		KeyReader(AccessibleObject member, long ttlNanos) {
+			this.member = member;
+			this.ttlNanos = ttlNanos;
+		}
+
+		static KeyReader of(Class<?> type) {
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					final IdempotencyKey annotation = field.getAnnotation(IdempotencyKey.class);
+					if (annotation != null && !Modifier.isStatic(field.getModifiers())) {
+						return create(field, annotation);
+					}
+				}
+				for (Method method : c.getDeclaredMethods()) {
+					final IdempotencyKey annotation = method.getAnnotation(IdempotencyKey.class);
+					if (annotation != null && method.getParameterTypes().length == 0 && !Modifier.isStatic(method.getModifiers())) {
+						return create(method, annotation);
+					}
+				}
+			}
+			return NONE;
+		}
+
+		private static KeyReader create(AccessibleObject member, IdempotencyKey annotation) {
+			member.setAccessible(true);
+			return new KeyReader(member, annotation.unit().toNanos(annotation.ttl()));
+		}
+
+		Object read(Object message) {
+			try {
+				if (member instanceof Field) {
+					return ((Field) member).get(message);
+				}
+				return ((Method) member).invoke(message);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to read idempotency key " + member, e);
+			}
+			catch (InvocationTargetException e) {
+				throw new IllegalStateException("Unable to read idempotency key " + member, e.getCause());
+			}
+		}
+	}
+
+}
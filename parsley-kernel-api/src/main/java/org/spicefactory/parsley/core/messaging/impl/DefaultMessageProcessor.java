@@ -1,35 +1,51 @@
 package org.spicefactory.parsley.core.messaging.impl;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
 import org.spicefactory.parsley.core.messaging.Message;
 import org.spicefactory.parsley.core.messaging.MessageProcessor;
 import org.spicefactory.parsley.core.messaging.MessageReceiverCache;
+import org.spicefactory.parsley.core.messaging.MessageReceiverChain;
 import org.spicefactory.parsley.core.messaging.MessageReceiverKind;
 import org.spicefactory.parsley.core.messaging.MessageState;
+import org.spicefactory.parsley.core.messaging.receiver.MessageErrorHandler;
+import org.spicefactory.parsley.core.messaging.receiver.MessageInterceptor;
 import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
 import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
 
-//Package-private.
+/**
+ * Processes a single message by walking the compiled chain of its interceptors and targets.
+ * <p>
+ * The chain is fetched once from the receiver cache, so processing a message neither selects nor sorts receivers. Exceptions thrown by a
+ * receiver are passed to the matching error handlers, processing then continues with the next receiver unless a handler cancelled or suspended
+ * the processor. Exceptions no error handler matches cancel the processing and are rethrown.
+ * </p>
+ * <p>
+ * If processing has been requested with a result, the outcome of every receiver is recorded and the result gets completed once processing
+ * completed or has been cancelled, which may happen on another thread if a receiver suspended the processor. Nothing is recorded otherwise.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
 final class DefaultMessageProcessor implements MessageProcessor {
 
-	private Logger logger = LoggerFactory.getLogger(getClass());
-
-	private Processor currentProcessor;
-	private List<Processor> remainingProcessors;
-	private MessageState state;
-
 	private final Message message;
 	private final MessageReceiverCache cache;
-	private final Method receiverHandler;
+	private final CompletableFuture<DispatchResult> result;
+	private final List<DispatchResult.Outcome> outcomes;
+
+	private MessageReceiverChain chain;
+	private int index;
+	private volatile MessageState state;
 
 	// Package-private.
 	DefaultMessageProcessor(Message message, MessageReceiverCache cache) {
@@ -37,43 +53,53 @@ final class DefaultMessageProcessor implements MessageProcessor {
 	}
 
 	// Package-private.
-	DefaultMessageProcessor(Message message, MessageReceiverCache cache, @Nullable Method receiverHandler) {
-		this.cache = cache;
+	DefaultMessageProcessor(Message message, MessageReceiverCache cache, @Nullable CompletableFuture<DispatchResult> result) {
 		this.message = message;
-		this.receiverHandler = receiverHandler;
+		this.cache = cache;
+		this.chain = cache.getReceiverChain(message.selector());
+		this.result = result;
+		this.outcomes = (result != null) ? new ArrayList<DispatchResult.Outcome>(chain.size()) : null;
 	}
 
-	public void proceed() {
-		if (state == null) {
-			start();
-		} else {
-			resume();
+	/**
+	 * Starts processing the message.
+	 */
+	public void start() {
+		if (state != null) {
+			throw new IllegalStateException("Message processing already started.");
 		}
+		state = MessageState.ACTIVE;
+		processReceivers();
 	}
 
 	@Override
 	public Message message() {
-		// TODO Auto-generated method stub
-		return null;
-
+		return message;
 	}
 
 	@Override
 	public MessageState state() {
-		// TODO Auto-generated method stub
-		return null;
+		return state;
 	}
 
 	@Override
 	public void cancel() {
-		// TODO Auto-generated method stub
-
+		if (state == MessageState.COMPLETE) {
+			throw new IllegalStateException("Cannot cancel. Message processing completed.");
+		}
+		final boolean suspended = state == MessageState.SUSPENDED;
+		state = MessageState.CANCELLED;
+		if (suspended) {
+			completeResult();
+		}
 	}
 
 	@Override
 	public void suspend() {
-		// TODO Auto-generated method stub
-
+		if (state != MessageState.ACTIVE) {
+			throw new IllegalStateException("Cannot suspend. Message state not active.");
+		}
+		state = MessageState.SUSPENDED;
 	}
 
 	@Override
@@ -85,30 +111,14 @@ final class DefaultMessageProcessor implements MessageProcessor {
 		processReceivers();
 	}
 
-	public void start() {
-
-	}
-
 	@Override
 	public void rewind() {
 		if (state == MessageState.CANCELLED) {
 			throw new IllegalStateException("Cannot rewind. Message state is cancelled.");
 		}
-		logger.trace("Rewind message '{}' with {} receiver(s).", message.type(), remainingProcessors.get(0).receiverCount());
-		createProcessors();
-	}
-
-	private void createProcessors() {
-		currentProcessor = new Processor(fetchReceivers(), receiverHandler);
-		remainingProcessors = new ArrayList<DefaultMessageProcessor.Processor>();
-	}
-
-	/**
-	 * Fetches the receivers for the message type and receiver kind this processor handles.
-	 * @return the receivers for the message type and receiver kind this processor handles
-	 */
-	protected List<MessageReceiver> fetchReceivers() {
-		return new ArrayList<MessageReceiver>(cache.getReceivers(MessageReceiverKind.TARGET, message.selector()));
+		chain = cache.getReceiverChain(message.selector());
+		index = 0;
+		logger.trace("Rewind message '{}' with {} receiver(s).", message.type(), chain.size());
 	}
 
 	@Override
@@ -116,74 +126,83 @@ final class DefaultMessageProcessor implements MessageProcessor {
 
 	}
 
-	private void invokeTarget(MessageTarget target) {
-		target.handleMessage(this);
-	}
-
-	class Processor implements Runnable {
-
-		private volatile int currentIndex = 0;
-
-		private final List<MessageReceiver> receivers;
-		private final boolean handleErrors;
-		private final Method handler;
+	private void processReceivers() {
+		try {
+			while (index < chain.size()) {
+				final int current = index++;
+				final MessageReceiver receiver = chain.get(current);
+				try {
+					if (current < chain.interceptorCount()) {
+						((MessageInterceptor) receiver).intercept(this);
+					}
+					else {
+						((MessageTarget) receiver).handleMessage(this);
+					}
+					record(receiver, null);
+				}
+				catch (Exception e) {
+					record(receiver, e);
+					handleException(receiver, e);
+				}
 
-		Processor(List<MessageReceiver> receivers, Method handler) {
-			this(receivers, handler, true);
+				if (state != MessageState.ACTIVE) {
+					return;
+				}
+			}
+			state = MessageState.COMPLETE;
 		}
-
-		Processor(List<MessageReceiver> receivers, Method handler, boolean handleErrors) {
-			Collections.sort(receivers, new MessageSorter());
-			this.handleErrors = handleErrors;
-			this.receivers = receivers;
-			this.handler = handler;
+		finally {
+			if (state == MessageState.COMPLETE || state == MessageState.CANCELLED) {
+				completeResult();
+			}
 		}
+	}
 
-		boolean hasNext() {
-			return receivers.size() > currentIndex;
+	private void record(MessageReceiver receiver, @Nullable Exception failure) {
+		if (outcomes != null) {
+			outcomes.add(new DispatchResult.Outcome(receiver, failure));
 		}
+	}
 
-		int receiverCount() {
-			return receivers.size();
+	private void completeResult() {
+		if (result != null) {
+			result.complete(new DispatchResult(message, state, new ArrayList<DispatchResult.Outcome>(outcomes)));
 		}
+	}
 
-		void rewind() {
-			currentIndex = 0;
+	private void handleException(MessageReceiver receiver, Exception exception) {
+		final List<MessageErrorHandler> handlers = new ArrayList<MessageErrorHandler>();
+		for (MessageReceiver candidate : cache.getReceivers(MessageReceiverKind.ERROR_HANDLER, message.selector())) {
+			final MessageErrorHandler handler = (MessageErrorHandler) candidate;
+			if (handler.getExceptionType().isInstance(exception)) {
+				handlers.add(handler);
+			}
 		}
 
-		MessageReceiver currentReceiver() {
-			return hasNext() ? receivers.get(currentIndex) : null;
+		if (handlers.isEmpty()) {
+			logger.error("Receiver {} failed to handle message '{}'.", receiver, message.type(), exception);
+			state = MessageState.CANCELLED;
+			if (exception instanceof RuntimeException) {
+				throw (RuntimeException) exception;
+			}
+			throw new IllegalStateException("Receiver " + receiver + " failed to handle message '" + message.type() + "'.", exception);
 		}
 
-		@Override
-		public void run() {
-			do {
-				while (en.hasMoreElements()) {
+		Collections.sort(handlers, new Comparator<MessageErrorHandler>() {
 
-				}
+			@Override
+			public int compare(MessageErrorHandler a, MessageErrorHandler b) {
+				return (a.order() < b.order()) ? -1 : ((a.order() == b.order()) ? 0 : 1);
 			}
-			while (state == MessageState.ACTIVE);
-
-			final MessageReceiver receiver = receivers.get(currentIndex++);
-			if (handler != null) {
-				handler.invoke(receiver, this);
-			} else {
-				invokeTarget((MessageTarget) receiver);
+		});
+		for (MessageErrorHandler handler : handlers) {
+			handler.handleException(this, exception);
+			if (state != MessageState.ACTIVE) {
+				return;
 			}
 		}
 	}
 
-	class MessageSorter implements Comparator<MessageReceiver> {
+	private static final Logger logger = LoggerFactory.getLogger(DefaultMessageProcessor.class);
 
-		@Override
-		public int compare(MessageReceiver a, MessageReceiver b) {
-			if (a.order() > b.order()) {
-				return 1;
-			} else if (a.order() < b.order()) {
-				return -1;
-			}
-			return 0;
-		}
-
-	}
 }
@@ -1,24 +1,31 @@
 package org.spicefactory.parsley.core.messaging.impl;
 
 import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.Nullable;
 
 import org.spicefactory.parsley.core.messaging.MessageReceiverCache;
+import org.spicefactory.parsley.core.messaging.MessageReceiverChain;
 import org.spicefactory.parsley.core.messaging.MessageReceiverKind;
 import org.spicefactory.parsley.core.messaging.Selector;
 import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
+import org.spicefactory.parsley.core.util.TypeHierarchy;
 
 /**
  * A cached selection of receivers for a particular message messageType and its sub-types. Will be used by the default MessageRouter
  * implementation as a performance optimization.
+ * <p>
+ * Selections are filled lazily on the dispatch path, which may run on several threads at once, so all cached state is held in concurrent
+ * structures. A reset replaces these structures instead of clearing them, so that a selection computed from the receivers before the change
+ * ends up in the discarded structures rather than being cached as current.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 // Package-private.
@@ -27,14 +34,36 @@ class DefaultMessageReceiverCache implements MessageReceiverCache {
 	// Package-private.
 	DefaultMessageReceiverCache(Class<?> type, List<MessageReceiverCollection> collections) {
 		this.messageType = type;
-		this.collections = collections;
-		this.selectorMaps = new ConcurrentHashMap<MessageReceiverKind, SelectorMap>();
+		this.collections = new CopyOnWriteArrayList<MessageReceiverCollection>(collections);
+		this.selections = new Selections();
 		this.selectorField = getSelectorField(type.getFields());
 	}
 
 	@Override
 	public Set<MessageReceiver> getReceivers(MessageReceiverKind kind, Object selector) {
-		return getSelectorMap(kind).getReceivers(selector, messageType.getClassLoader());
+		return selections.getSelectorMap(kind).getReceivers(selector);
+	}
+
+	/**
+	 * Returns the compiled chain for the specified selector, compiling it on first use. Message types without interceptors get a chain made of
+	 * their targets only, so they pay nothing for the interceptor support.
+	 */
+	@Override
+	public MessageReceiverChain getReceiverChain(@Nullable Object selector) {
+		final Object key = (selector == null) ? NO_SELECTOR : selector;
+		final Selections current = selections;
+		MessageReceiverChain chain = current.chains.get(key);
+
+		if (chain == null) {
+			chain = new MessageReceiverChain(current.getSelectorMap(MessageReceiverKind.INTERCEPTOR).getReceivers(selector), current
+					.getSelectorMap(MessageReceiverKind.TARGET).getReceivers(selector));
+			final MessageReceiverChain existing = current.chains.putIfAbsent(key, chain);
+			if (existing != null) {
+				chain = existing;
+			}
+		}
+
+		return chain;
 	}
 
 	@Override
@@ -58,29 +87,51 @@ class DefaultMessageReceiverCache implements MessageReceiverCache {
 	 */
 	// Package-private.
 	void checkNewCollection(MessageReceiverCollection collection) {
-		if (messageType.isAssignableFrom(collection.messageType())) { // TODO: Check order of isAssignableFrom.
+		if (collection.messageType().isAssignableFrom(messageType)) {
 			collections.add(collection);
-			selectorMaps.clear();
-			//			addListener(collection);
+			reset();
+		}
+	}
+
+	/**
+	 * Resets all cached selections and chains if the specified collection, whose receivers changed, matches the message type of this cache.
+	 * @param collection the collection whose receivers changed
+	 */
+	// Package-private.
+	void collectionChanged(MessageReceiverCollection collection) {
+		if (collection.messageType().isAssignableFrom(messageType)) {
+			reset();
 		}
 	}
 
+	/**
+	 * Removes all collections for message types defined by the specified ClassLoader, or extending a type it defines, and resets all cached
+	 * selections, as they may hold selector values defined by that ClassLoader.
+	 * @param loader the ClassLoader that gets purged
+	 */
+	// Package-private.
+	void purgeCollections(ClassLoader loader) {
+		final List<MessageReceiverCollection> purged = new ArrayList<MessageReceiverCollection>();
+		for (MessageReceiverCollection collection : collections) {
+			if (DefaultMessageReceiverRegistry.dependsOn(collection.messageType(), loader)) {
+				purged.add(collection);
+			}
+		}
+		collections.removeAll(purged);
+		reset();
+	}
+
+	private void reset() {
+		selections = new Selections();
+	}
+
 	private final Class<?> messageType;
 	private final Field selectorField;
 	private final List<MessageReceiverCollection> collections;
 
-	private final ConcurrentMap<MessageReceiverKind, SelectorMap> selectorMaps;
-
-	private SelectorMap getSelectorMap(MessageReceiverKind kind) {
-		SelectorMap selectorMap = selectorMaps.get(kind);
+	private volatile Selections selections;
 
-		if (selectorMap == null) {
-			selectorMap = new SelectorMap(kind);
-			selectorMaps.put(kind, selectorMap);
-		}
-
-		return selectorMap;
-	}
+	private static final Object NO_SELECTOR = new Object();
 
 	private Field getSelectorField(Field[] fields) {
 		for (Field field : fields) {
@@ -91,26 +142,65 @@ class DefaultMessageReceiverCache implements MessageReceiverCache {
 		return null;
 	}
 
+	/**
+	 * The selections and chains computed since the last reset.
+	 */
+	private class Selections {
+
+		private final ConcurrentMap<MessageReceiverKind, SelectorMap> selectorMaps;
+		private final ConcurrentMap<Object, MessageReceiverChain> chains;
+
+		Selections() {
+			this.selectorMaps = new ConcurrentHashMap<MessageReceiverKind, SelectorMap>();
+			this.chains = new ConcurrentHashMap<Object, MessageReceiverChain>();
+		}
+
+		SelectorMap getSelectorMap(MessageReceiverKind kind) {
+			SelectorMap selectorMap = selectorMaps.get(kind);
+
+			if (selectorMap == null) {
+				selectorMap = new SelectorMap(kind);
+				final SelectorMap existing = selectorMaps.putIfAbsent(kind, selectorMap);
+				if (existing != null) {
+					selectorMap = existing;
+				}
+			}
+
+			return selectorMap;
+		}
+	}
+
+	/**
+	 * Selections of receivers of a single kind, cached per selector value and per selector type.
+	 * <p>
+	 * A <code>Class</code> selector matches receivers registered with that type or one of its supertypes as selector. Any other selector
+	 * matches receivers registered with an equal selector value, as well as receivers registered with the type of the selector or one of its
+	 * supertypes.
+	 * </p>
+	 */
 	private class SelectorMap {
 
 		private final MessageReceiverKind kind;
-		private final Map<Object, Set<MessageReceiver>> cache;
+		private final ConcurrentMap<Object, Set<MessageReceiver>> cache;
+		private final ConcurrentMap<Class<?>, Set<MessageReceiver>> typeCache;
 
 		public SelectorMap(MessageReceiverKind kind) {
 			this.kind = kind;
-			this.cache = new HashMap<Object, Set<MessageReceiver>>();
+			this.cache = new ConcurrentHashMap<Object, Set<MessageReceiver>>();
+			this.typeCache = new ConcurrentHashMap<Class<?>, Set<MessageReceiver>>();
 		}
 
-		public Set<MessageReceiver> getReceivers(@Nullable Object selector, ClassLoader loader) {
-			if (selector == null || selector.getClass().isPrimitive()) {
-				return getReceiversBySelectorValue(selector);
+		public Set<MessageReceiver> getReceivers(@Nullable Object selector) {
+			if (selector instanceof Class<?>) {
+				return getReceiversBySelectorType((Class<?>) selector);
 			} else {
-				return getReceiversBySelectorType(selector, loader);
+				return getReceiversBySelectorValue(selector);
 			}
 		}
 
-		private Set<MessageReceiver> getReceiversBySelectorValue(Object selector) {
-			Set<MessageReceiver> receivers = cache.get(selector);
+		private Set<MessageReceiver> getReceiversBySelectorValue(@Nullable Object selector) {
+			final Object key = (selector == null) ? NO_SELECTOR : selector;
+			Set<MessageReceiver> receivers = cache.get(key);
 
 			if (receivers == null) {
 				receivers = new HashSet<MessageReceiver>();
@@ -118,19 +208,29 @@ class DefaultMessageReceiverCache implements MessageReceiverCache {
 					Set<MessageReceiver> subset = collection.getReceiversBySelectorValue(kind, selector);
 					receivers.addAll(subset);
 				}
-				cache.put(selector, receivers);
+				if (selector != null) {
+					receivers.addAll(getReceiversBySelectorType(selector.getClass()));
+				}
+				cache.put(key, receivers);
 			}
 
 			return receivers;
 		}
 
-		private Set<MessageReceiver> getReceiversBySelectorType(Object selector, ClassLoader loader) {
-			Class<?> selectorType = getSelectorType(selector, loader);
-			return null;
-		}
+		private Set<MessageReceiver> getReceiversBySelectorType(Class<?> selectorType) {
+			Set<MessageReceiver> receivers = typeCache.get(selectorType);
 
-		private Class<?> getSelectorType(Object selector, ClassLoader loader) {
-			return loader.loadClass(selector.getClass().getCanonicalName());
+			if (receivers == null) {
+				final List<Class<?>> hierarchy = TypeHierarchy.of(selectorType);
+				receivers = new HashSet<MessageReceiver>();
+				for (MessageReceiverCollection collection : collections) {
+					receivers.addAll(collection.getReceiversBySelectorType(kind, hierarchy));
+					receivers.addAll(collection.getReceiversBySelectorValue(kind, null));
+				}
+				typeCache.put(selectorType, receivers);
+			}
+
+			return receivers;
 		}
 	}
 
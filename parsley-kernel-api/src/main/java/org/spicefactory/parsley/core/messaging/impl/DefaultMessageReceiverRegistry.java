@@ -1,46 +1,71 @@
 package org.spicefactory.parsley.core.messaging.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.spicefactory.parsley.core.messaging.MessageReceiverKind;
 import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
 import org.spicefactory.parsley.core.messaging.receiver.CommandObserver;
 import org.spicefactory.parsley.core.messaging.receiver.MessageErrorHandler;
+import org.spicefactory.parsley.core.messaging.receiver.MessageInterceptor;
 import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
 import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
-
-public class DefaultMessageReceiverRegistry implements MessageReceiverRegistry {
-
-	public DefaultMessageReceiverRegistry() {
-		// TODO: Check maps implementation + concurrency.
-		receivers = new HashMap<Class<?>, MessageReceiverCollection>();
-		selectionCache = new HashMap<Class<?>, DefaultMessageReceiverCache>();
+import org.spicefactory.parsley.core.state.ClassLoaderManager;
+import org.spicefactory.parsley.core.state.ClassLoaderManager.PurgeHandler;
+import org.spicefactory.parsley.core.util.TypeHierarchy;
+
+/**
+ * Default implementation of the MessageReceiverRegistry interface.
+ * <p>
+ * Selections are looked up without locking on the dispatch path, while registrations, purges and the creation of new selections are
+ * serialized on the registry, so that a new selection never misses a receiver added concurrently.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultMessageReceiverRegistry implements MessageReceiverRegistry, PurgeHandler {
+
+	public DefaultMessageReceiverRegistry(ClassLoaderManager classLoaderManager) {
+		this.receivers = new ConcurrentHashMap<Class<?>, MessageReceiverCollection>();
+		this.selectionCache = new ConcurrentHashMap<Object, ConcurrentMap<Class<?>, DefaultMessageReceiverCache>>();
+		this.classLoaderManager = classLoaderManager;
 	}
 
 	/**
 	 * Returns the selection of receivers that match the specified message type.
+	 * <p>
+	 * Selections are partitioned by the ClassLoader of the message type, so that all selections for the types of a ClassLoader can be dropped
+	 * at once when that ClassLoader gets purged.
+	 * </p>
 	 * @param messageType the message type to match against
 	 * @return the selection of receivers that match the specified message type
 	 */
 	public DefaultMessageReceiverCache getSelectionCache(Class<?> messageType) {
-		DefaultMessageReceiverCache receiverSelection = selectionCache.get(messageType);
-
-		if (receiverSelection == null) {
-			List<MessageReceiverCollection> collections = new ArrayList<MessageReceiverCollection>();
-			for (MessageReceiverCollection collection : receivers.values()) {
-				if (messageType.isAssignableFrom(collection.messageType())) { // TODO: Check order of isAssignableFrom.
-					collections.add(collection);
-				}
+		final Map<Class<?>, DefaultMessageReceiverCache> loaderCache = selectionCache.get(loaderKey(messageType.getClassLoader()));
+		if (loaderCache != null) {
+			final DefaultMessageReceiverCache receiverSelection = loaderCache.get(messageType);
+			if (receiverSelection != null) {
+				return receiverSelection;
 			}
-			receiverSelection = new DefaultMessageReceiverCache(messageType, collections);
-			selectionCache.put(messageType, receiverSelection);
-			//			domainManager.addPurgeHandler(messageType.getClassLoader(), clearDomainCache, messageType);
 		}
+		return createSelectionCache(messageType);
+	}
 
-		return receiverSelection;
+	/**
+	 * Unregisters this registry from the ClassLoaderManager and drops all receivers and selections. Invoked when the scope owning this
+	 * registry gets destroyed.
+	 */
+	public synchronized void destroy() {
+		for (Object loader : selectionCache.keySet()) {
+			if (loader != BOOTSTRAP_LOADER) {
+				classLoaderManager.removePurgeHandler((ClassLoader) loader, this);
+			}
+		}
+		selectionCache.clear();
+		receivers.clear();
 	}
 
 	@Override
@@ -53,6 +78,16 @@ public class DefaultMessageReceiverRegistry implements MessageReceiverRegistry {
 		removeReceiver(MessageReceiverKind.TARGET, target);
 	}
 
+	@Override
+	public void addInterceptor(MessageInterceptor interceptor) {
+		addReceiver(MessageReceiverKind.INTERCEPTOR, interceptor);
+	}
+
+	@Override
+	public void removeInterceptor(MessageInterceptor interceptor) {
+		removeReceiver(MessageReceiverKind.INTERCEPTOR, interceptor);
+	}
+
 	@Override
 	public void addErrorHandler(MessageErrorHandler handler) {
 		addReceiver(MessageReceiverKind.ERROR_HANDLER, handler);
@@ -77,29 +112,134 @@ public class DefaultMessageReceiverRegistry implements MessageReceiverRegistry {
 	// Internals.
 	///////////////////////////////////////////////////////////////////////////////
 
+	// Stands for the bootstrap ClassLoader, as concurrent maps do not support null keys.
+	private static final Object BOOTSTRAP_LOADER = new Object();
+
 	private final Map<Class<?>, MessageReceiverCollection> receivers;
-	private final Map<Class<?>, DefaultMessageReceiverCache> selectionCache;
+	private final ConcurrentMap<Object, ConcurrentMap<Class<?>, DefaultMessageReceiverCache>> selectionCache;
+	private final ClassLoaderManager classLoaderManager;
+
+	private static Object loaderKey(ClassLoader loader) {
+		return (loader != null) ? loader : BOOTSTRAP_LOADER;
+	}
+
+	/**
+	 * Returns the partition of the ClassLoader of the specified type, creating the partitions of all ClassLoaders defining a supertype of it,
+	 * so that this registry gets notified when any of them is purged.
+	 */
+	private ConcurrentMap<Class<?>, DefaultMessageReceiverCache> partitionFor(Class<?> type) {
+		for (Class<?> c : TypeHierarchy.of(type)) {
+			final ClassLoader loader = c.getClassLoader();
+			if (!selectionCache.containsKey(loaderKey(loader))) {
+				selectionCache.put(loaderKey(loader), new ConcurrentHashMap<Class<?>, DefaultMessageReceiverCache>());
+				if (loader != null) {
+					// Classes of the bootstrap ClassLoader never get unloaded.
+					classLoaderManager.addPurgeHandler(loader, this);
+				}
+			}
+		}
+		return selectionCache.get(loaderKey(type.getClassLoader()));
+	}
+
+	/**
+	 * Indicates whether the specified type or one of its supertypes has been defined by the specified ClassLoader.
+	 */
+	// Package-private.
+	static boolean dependsOn(Class<?> type, ClassLoader loader) {
+		for (Class<?> c : TypeHierarchy.of(type)) {
+			if (c.getClassLoader() == loader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized DefaultMessageReceiverCache createSelectionCache(Class<?> messageType) {
+		final ConcurrentMap<Class<?>, DefaultMessageReceiverCache> loaderCache = partitionFor(messageType);
+
+		DefaultMessageReceiverCache receiverSelection = loaderCache.get(messageType);
+
+		if (receiverSelection == null) {
+			List<MessageReceiverCollection> collections = new ArrayList<MessageReceiverCollection>();
+			for (MessageReceiverCollection collection : receivers.values()) {
+				if (collection.messageType().isAssignableFrom(messageType)) {
+					collections.add(collection);
+				}
+			}
+			receiverSelection = new DefaultMessageReceiverCache(messageType, collections);
+			loaderCache.put(messageType, receiverSelection);
+		}
 
-	private void addReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
+		return receiverSelection;
+	}
+
+	private synchronized void addReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
 		MessageReceiverCollection collection = receivers.get(receiver.type());
 		if (collection == null) {
+			partitionFor(receiver.type());
 			collection = new MessageReceiverCollection(receiver.type());
 			receivers.put(receiver.type(), collection);
-			for (DefaultMessageReceiverCache cache : selectionCache.values()) {
-				cache.checkNewCollection(collection);
+			for (Map<Class<?>, DefaultMessageReceiverCache> loaderCache : selectionCache.values()) {
+				for (DefaultMessageReceiverCache cache : loaderCache.values()) {
+					cache.checkNewCollection(collection);
+				}
 			}
 		}
 		collection.addReceiver(kind, receiver);
+		collectionChanged(collection);
 	}
 
-	private void removeReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
+	private synchronized void removeReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
 		MessageReceiverCollection collection = receivers.get(receiver.type());
 		if (collection == null) {
 			return;
 		}
 		collection.removeReceiver(kind, receiver);
 		if (collection.isEmpty()) {
-			receivers.remove(collection);
+			receivers.remove(receiver.type());
+		}
+		collectionChanged(collection);
+	}
+
+	private void collectionChanged(MessageReceiverCollection collection) {
+		for (Map<Class<?>, DefaultMessageReceiverCache> loaderCache : selectionCache.values()) {
+			for (DefaultMessageReceiverCache cache : loaderCache.values()) {
+				cache.collectionChanged(collection);
+			}
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	// Implements PurgeHandler.
+	///////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Drops all selections for the types of the specified ClassLoader and all receivers registered for these types, including types of other
+	 * ClassLoaders that extend one of them. Remaining selections are reset, as they may hold collections or selector values defined by the
+	 * purged ClassLoader.
+	 * @param loader the ClassLoader that gets purged
+	 */
+	@Override
+	public synchronized void purge(ClassLoader loader) {
+		selectionCache.remove(loaderKey(loader));
+
+		Iterator<Class<?>> types = receivers.keySet().iterator();
+		while (types.hasNext()) {
+			if (dependsOn(types.next(), loader)) {
+				types.remove();
+			}
+		}
+
+		for (Map<Class<?>, DefaultMessageReceiverCache> loaderCache : selectionCache.values()) {
+			types = loaderCache.keySet().iterator();
+			while (types.hasNext()) {
+				if (dependsOn(types.next(), loader)) {
+					types.remove();
+				}
+			}
+			for (DefaultMessageReceiverCache cache : loaderCache.values()) {
+				cache.purgeCollections(loader);
+			}
 		}
 	}
 
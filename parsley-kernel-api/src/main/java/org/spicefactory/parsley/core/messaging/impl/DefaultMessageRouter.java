@@ -1,6 +1,9 @@
 package org.spicefactory.parsley.core.messaging.impl;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.spicefactory.parsley.core.command.ObservableCommand;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
 import org.spicefactory.parsley.core.messaging.Message;
 import org.spicefactory.parsley.core.messaging.MessageReceiverCache;
 import org.spicefactory.parsley.core.messaging.MessageRouter;
@@ -13,6 +16,17 @@ public class DefaultMessageRouter implements MessageRouter {
 		processor.start();
 	}
 
+	@Override
+	public void dispatchMessage(Message message, MessageReceiverCache cache, CompletableFuture<DispatchResult> result) {
+		DefaultMessageProcessor processor = new DefaultMessageProcessor(message, cache, result);
+		try {
+			processor.start();
+		}
+		catch (RuntimeException e) {
+			// Already logged by the processor and reported through the result.
+		}
+	}
+
 	@Override
 	public void observeCommand(ObservableCommand command, MessageReceiverCache typeCache, MessageReceiverCache triggerCache) {
 		// TODO Auto-generated method stub
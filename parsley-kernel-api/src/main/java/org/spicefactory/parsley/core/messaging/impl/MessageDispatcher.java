@@ -1,42 +1,267 @@
 package org.spicefactory.parsley.core.messaging.impl;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
 import org.spicefactory.parsley.core.scope.Scope;
 import org.spicefactory.parsley.core.scope.ScopeManager;
+import org.spicefactory.parsley.core.util.ConcurrentWeakIdentityMap;
 
+/**
+ * Dispatches messages through a single scope, or through all scopes of a Context for the global scope.
+ * <p>
+ * The target scope is resolved once, when the dispatcher gets created for the injection into its owner, so that dispatching a message neither
+ * involves a lookup by scope name nor a string comparison. The dispatcher is disabled when its Context gets destroyed. Dispatchers obtained
+ * with {@link #forScope(Context, String)} are shared by all objects of a Context, which listens for its destruction only once.
+ * </p>
+ * <p>
+ * Producers that must not outrun their receivers use <code>tryDispatch</code> or <code>offer</code>, which queue messages on the bounded
+ * dispatch queue of the Context and report when it is full, or <code>dispatch</code> to wait for the outcome of each message. A disabled
+ * dispatcher discards all messages, it reports them as queued so that producers do not retry.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
 public final class MessageDispatcher {
 
-	private final Logger logger = LoggerFactory.getLogger(getClass());
+	private static final Logger logger = LoggerFactory.getLogger(MessageDispatcher.class);
 
-	private final String scope;
-	private final ScopeManager scopeManager;
+	/**
+	 * The resolved target of a dispatcher.
+	 */
+	private interface Target {
 
-	private volatile boolean enabled = true;
+		void dispatchMessage(Object message, @Nullable Object selector);
 
-	public MessageDispatcher(ScopeManager scopeManager, @Nullable String scope) {
-		this.scope = scope;
-		this.scopeManager = scopeManager;
+		CompletionStage<DispatchResult> dispatch(Object message, @Nullable Object selector);
+
+		boolean tryDispatch(Object message, @Nullable Object selector);
+
+		boolean offer(Object message, @Nullable Object selector, long timeout, TimeUnit unit) throws InterruptedException;
 	}
 
-	public void dispatchMessage(Object message, @Nullable Object selector) {
-		if (!enabled) {
-			logger.warn("Attempt to use message dispatched after it has been disabled.");
+	private static final Target DISABLED = new Target() {
+
+		@Override
+		public void dispatchMessage(Object message, Object selector) {
+			discard(message);
+		}
+
+		@Override
+		public CompletionStage<DispatchResult> dispatch(Object message, Object selector) {
+			discard(message);
+			return CompletableFuture.completedFuture(DispatchResult.discarded(new DefaultMessage(message, message.getClass(), selector)));
+		}
+
+		@Override
+		public boolean tryDispatch(Object message, Object selector) {
+			discard(message);
+			return true;
+		}
+
+		@Override
+		public boolean offer(Object message, Object selector, long timeout, TimeUnit unit) {
+			discard(message);
+			return true;
+		}
+
+		private void discard(Object message) {
+			logger.warn("Attempt to use message dispatcher after it has been disabled, discarding message '{}'.", message);
+		}
+	};
+
+	/**
+	 * The shared dispatchers of each live Context, by scope name.
+	 */
+	private static final ConcurrentWeakIdentityMap<Context, ConcurrentMap<String, MessageDispatcher>> shared =
+			new ConcurrentWeakIdentityMap<Context, ConcurrentMap<String, MessageDispatcher>>();
+
+	// Stands for the default scope, as the maps do not allow null keys.
+	private static final String DEFAULT_SCOPE = new String();
+
+	/**
+	 * Returns the dispatcher for the specified scope of a Context, shared by all objects of that Context. The shared dispatchers of a
+	 * Context are disabled and released together when it gets destroyed.
+	 * @param context the Context owning the scopes
+	 * @param scope the name of the scope to dispatch through, global to dispatch through all scopes, null for the default scope
+	 * @return the dispatcher for the specified scope
+	 * @throws IllegalStateException if the Context does not contain the specified scope
+	 */
+	public static MessageDispatcher forScope(final Context context, @Nullable String scope) {
+		ConcurrentMap<String, MessageDispatcher> dispatchers = shared.get(context);
+		if (dispatchers == null) {
+			dispatchers = new ConcurrentHashMap<String, MessageDispatcher>();
+			final ConcurrentMap<String, MessageDispatcher> existing = shared.putIfAbsent(context, dispatchers);
+			if (existing != null) {
+				dispatchers = existing;
+			}
+			else {
+				final ConcurrentMap<String, MessageDispatcher> released = dispatchers;
+				context.addContextListener(new ContextListener() {
+
+					@Override
+					public void contextDestroyed(ContextEvent e) {
+						context.removeContextListener(this);
+						shared.remove(context, released);
+						for (MessageDispatcher dispatcher : released.values()) {
+							dispatcher.disable();
+						}
+					}
+				}, ContextEvent.DESTROYED);
+			}
+		}
+
+		final String key = (scope != null) ? scope : DEFAULT_SCOPE;
+		MessageDispatcher dispatcher = dispatchers.get(key);
+		if (dispatcher == null) {
+			dispatcher = new MessageDispatcher(null, context.getInstance(ScopeManager.class), scope);
+			final MessageDispatcher existing = dispatchers.putIfAbsent(key, dispatcher);
+			if (existing != null) {
+				dispatcher = existing;
+			}
+		}
+		return dispatcher;
+	}
+
+	private final Context context;
+	private final ContextListener listener;
+	private volatile Target target;
+
+	/**
+	 * Creates a new instance which is disabled when the specified Context gets destroyed. Each instance listens to the Context on its own,
+	 * use {@link #forScope(Context, String)} for dispatchers created in large numbers.
+	 * @param context the Context owning the scopes
+	 * @param scopeManager the manager of the scopes of the Context
+	 * @param scope the name of the scope to dispatch through, global to dispatch through all scopes, null for the default scope
+	 * @throws IllegalStateException if the Context does not contain the specified scope
+	 */
+	public MessageDispatcher(@Nullable Context context, ScopeManager scopeManager, @Nullable String scope) {
+		this.target = resolve(scopeManager, scope);
+		this.context = context;
+		if (context != null) {
+			listener = e -> disable();
+			context.addContextListener(listener, ContextEvent.DESTROYED);
 		}
-		if (scope == Scope.GLOBAL) {
-			scopeManager.dispatchMessage(message, selector);
-		} else {
-			scopeManager.getScope(scope).dispatchMessage(message, selector);
+		else {
+			listener = null;
 		}
 	}
 
+	/**
+	 * Creates a new instance which is not bound to the life-cycle of a Context.
+	 * @param scopeManager the manager of the scopes to dispatch through
+	 * @param scope the name of the scope to dispatch through, global to dispatch through all scopes, null for the default scope
+	 */
+	public MessageDispatcher(ScopeManager scopeManager, @Nullable String scope) {
+		this(null, scopeManager, scope);
+	}
+
+	public void dispatchMessage(Object message, @Nullable Object selector) {
+		target.dispatchMessage(message, selector);
+	}
+
+	/**
+	 * Dispatches a message, returning the stage completed with the outcome of every receiver.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @return the stage completed once processing completed or has been cancelled
+	 */
+	public CompletionStage<DispatchResult> dispatch(Object message, @Nullable Object selector) {
+		return target.dispatch(message, selector);
+	}
+
+	/**
+	 * Queues a message for asynchronous delivery, unless the dispatch queue is full.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @return true if the message has been queued, false if the dispatch queue is full
+	 */
+	public boolean tryDispatch(Object message, @Nullable Object selector) {
+		return target.tryDispatch(message, selector);
+	}
+
+	/**
+	 * Queues a message for asynchronous delivery, waiting up to the specified time for the dispatch queue to make room for it.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the message has been queued, false if the dispatch queue remained full
+	 * @throws InterruptedException if the current thread got interrupted while waiting
+	 */
+	public boolean offer(Object message, @Nullable Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+		return target.offer(message, selector, timeout, unit);
+	}
+
 	/**
 	 * Disables this dispatcher so that calls to dispatchMessage get ignored.
 	 */
 	public void disable() {
-		enabled = false;
+		target = DISABLED;
+		if (context != null) {
+			context.removeContextListener(listener);
+		}
+	}
+
+	private static Target resolve(final ScopeManager scopeManager, @Nullable String scope) {
+		if (Scope.GLOBAL.equals(scope)) {
+			return new Target() {
+
+				@Override
+				public void dispatchMessage(Object message, Object selector) {
+					scopeManager.dispatchMessage(message, selector);
+				}
+
+				@Override
+				public CompletionStage<DispatchResult> dispatch(Object message, Object selector) {
+					return scopeManager.dispatch(message, selector);
+				}
+
+				@Override
+				public boolean tryDispatch(Object message, Object selector) {
+					return scopeManager.tryDispatch(message, selector);
+				}
+
+				@Override
+				public boolean offer(Object message, Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+					return scopeManager.offer(message, selector, timeout, unit);
+				}
+			};
+		}
+
+		final Scope target = scopeManager.getScope(scope);
+		return new Target() {
+
+			@Override
+			public void dispatchMessage(Object message, Object selector) {
+				target.dispatchMessage(message, selector);
+			}
+
+			@Override
+			public CompletionStage<DispatchResult> dispatch(Object message, Object selector) {
+				return target.dispatch(message, selector);
+			}
+
+			@Override
+			public boolean tryDispatch(Object message, Object selector) {
+				return target.tryDispatch(message, selector);
+			}
+
+			@Override
+			public boolean offer(Object message, Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+				return target.offer(message, selector, timeout, unit);
+			}
+		};
 	}
 
 }
@@ -2,7 +2,9 @@ package org.spicefactory.parsley.core.messaging.impl;
 
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -13,6 +15,14 @@ import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
 
 /**
  * A collection of message receivers for a particular message type.
+ * <p>
+ * Receivers are indexed by the kind of their selector: receivers without a selector match all messages, receivers with a <code>Class</code>
+ * as selector match all selectors of that type or any sub-type, and all other receivers match selectors equal to their own.
+ * </p>
+ * <p>
+ * Receivers are added and removed by the registry while selections get filled on the dispatch path, so all access is guarded by the
+ * collection itself, and the receivers are always returned as a snapshot.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 //Package-private.
@@ -21,14 +31,14 @@ final class MessageReceiverCollection {
 	private final Class<?> messageType;
 	private final Map<MessageReceiverKind, Set<MessageReceiver>> anySelector;
 	private final Map<MessageReceiverKind, Set<MessageReceiver>> byValue;
-	private final Map<MessageReceiverKind, Set<MessageReceiver>> byType;
+	private final Map<MessageReceiverKind, Map<Class<?>, Set<MessageReceiver>>> byType;
 
 	// Package-private.
 	MessageReceiverCollection(Class<?> messageType) {
 		this.messageType = messageType;
 		this.anySelector = new EnumMap<MessageReceiverKind, Set<MessageReceiver>>(MessageReceiverKind.class);
 		this.byValue = new EnumMap<MessageReceiverKind, Set<MessageReceiver>>(MessageReceiverKind.class);
-		this.byType = new EnumMap<MessageReceiverKind, Set<MessageReceiver>>(MessageReceiverKind.class);
+		this.byType = new EnumMap<MessageReceiverKind, Map<Class<?>, Set<MessageReceiver>>>(MessageReceiverKind.class);
 	}
 
 	/**
@@ -45,8 +55,20 @@ final class MessageReceiverCollection {
 	 * @param receiver the receiver to add
 	 */
 	// Package-private.
-	void addReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
-		getReceiverMap(receiver.selector()).get(kind).add(receiver);
+	synchronized void addReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
+		final Object selector = receiver.selector();
+
+		if (selector instanceof Class<?>) {
+			Map<Class<?>, Set<MessageReceiver>> types = byType.get(kind);
+			if (types == null) {
+				types = new HashMap<Class<?>, Set<MessageReceiver>>();
+				byType.put(kind, types);
+			}
+			receiversFor(types, (Class<?>) selector).add(receiver);
+		}
+		else {
+			receiversFor((selector == null) ? anySelector : byValue, kind).add(receiver);
+		}
 	}
 
 	/**
@@ -55,39 +77,58 @@ final class MessageReceiverCollection {
 	 * @param receiver the receiver to remove
 	 */
 	// Package-private.
-	void removeReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
-		getReceiverMap(receiver.selector()).get(kind).remove(receiver);
+	synchronized void removeReceiver(MessageReceiverKind kind, MessageReceiver receiver) {
+		final Object selector = receiver.selector();
+
+		if (selector instanceof Class<?>) {
+			final Map<Class<?>, Set<MessageReceiver>> types = byType.get(kind);
+			if (types != null) {
+				removeFrom(types, (Class<?>) selector, receiver);
+				if (types.isEmpty()) {
+					byType.remove(kind);
+				}
+			}
+		}
+		else {
+			removeFrom((selector == null) ? anySelector : byValue, kind, receiver);
+		}
 	}
 
 	/**
-	 * Returns <tt>true</tt> if this map contains no key-value mappings.
-	 * @return <tt>true</tt> if this map contains no key-value mappings
+	 * Returns <tt>true</tt> if this collection contains no receivers.
+	 * @return <tt>true</tt> if this collection contains no receivers
 	 */
 	// Package-private.
-	boolean isEmpty() {
+	synchronized boolean isEmpty() {
 		return anySelector.isEmpty() && byType.isEmpty() && byValue.isEmpty();
 	}
 
 	/**
 	 * Returns all receivers of a particular kind that match for the specified selector value.
+	 * <p>
+	 * Receivers registered with a type as selector are not included, see {@link #getReceiversBySelectorType}.
+	 * </p>
 	 * @param kind the kind of receiver to fetch
 	 * @param selectorValue the value of the selector property
 	 * @return all receivers of a particular kind that match for the specified selector value
 	 */
 	// Package-private.
-	Set<MessageReceiver> getReceiversBySelectorValue(MessageReceiverKind kind, @Nullable Object selectorValue) {
+	synchronized Set<MessageReceiver> getReceiversBySelectorValue(MessageReceiverKind kind, @Nullable Object selectorValue) {
 		final Set<MessageReceiver> filtered = new HashSet<MessageReceiver>();
 
 		if (selectorValue == null) {
 			final Set<MessageReceiver> any = anySelector.get(kind);
-			return Collections.unmodifiableSet((any == null) ? filtered : any);
+			if (any != null) {
+				filtered.addAll(any);
+			}
+			return Collections.unmodifiableSet(filtered);
 		}
 
-		final Set<MessageReceiver> receivers = (selectorValue instanceof Class<?>) ? byType.get(kind) : byValue.get(kind);
+		final Set<MessageReceiver> receivers = byValue.get(kind);
 
 		if (receivers != null) {
 			for (MessageReceiver receiver : receivers) {
-				if (selectorValue == receiver.selector()) { // TODO: Check the use of '=='.
+				if (selectorValue.equals(receiver.selector())) {
 					filtered.add(receiver);
 				}
 			}
@@ -96,6 +137,33 @@ final class MessageReceiverCollection {
 		return addReceiversMatchingAnySelector(kind, filtered);
 	}
 
+	/**
+	 * Returns all receivers of a particular kind that were registered with one of the specified types as selector.
+	 * <p>
+	 * Receivers matching any selector are not included.
+	 * </p>
+	 * @param kind the kind of receiver to fetch
+	 * @param hierarchy the type of the selector and all its supertypes
+	 * @return all receivers of a particular kind that match for the specified selector type
+	 */
+	// Package-private.
+	synchronized Set<MessageReceiver> getReceiversBySelectorType(MessageReceiverKind kind, List<Class<?>> hierarchy) {
+		final Map<Class<?>, Set<MessageReceiver>> types = byType.get(kind);
+		if (types == null) {
+			return Collections.emptySet();
+		}
+
+		final Set<MessageReceiver> filtered = new HashSet<MessageReceiver>();
+		for (Class<?> type : hierarchy) {
+			final Set<MessageReceiver> receivers = types.get(type);
+			if (receivers != null) {
+				filtered.addAll(receivers);
+			}
+		}
+
+		return Collections.unmodifiableSet(filtered);
+	}
+
 	private Set<MessageReceiver> addReceiversMatchingAnySelector(MessageReceiverKind kind, Set<MessageReceiver> receivers) {
 		final Set<MessageReceiver> any = anySelector.get(kind);
 		if (any == null || any.size() == 0) {
@@ -107,7 +175,19 @@ final class MessageReceiverCollection {
 		return Collections.unmodifiableSet(result);
 	}
 
-	private Map<MessageReceiverKind, Set<MessageReceiver>> getReceiverMap(@Nullable Object selector) {
-		return (selector == null) ? anySelector : ((selector instanceof Class<?>) ? byType : byValue);
+	private static <K> Set<MessageReceiver> receiversFor(Map<K, Set<MessageReceiver>> map, K key) {
+		Set<MessageReceiver> receivers = map.get(key);
+		if (receivers == null) {
+			receivers = new HashSet<MessageReceiver>();
+			map.put(key, receivers);
+		}
+		return receivers;
+	}
+
+	private static <K> void removeFrom(Map<K, Set<MessageReceiver>> map, K key, MessageReceiver receiver) {
+		final Set<MessageReceiver> receivers = map.get(key);
+		if (receivers != null && receivers.remove(receiver) && receivers.isEmpty()) {
+			map.remove(key);
+		}
 	}
 }
@@ -0,0 +1,284 @@
+package org.spicefactory.parsley.core.messaging.impl;
+
+import java.awt.EventQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.binding.Subscriber;
+import org.spicefactory.parsley.core.messaging.DispatchQueue;
+import org.spicefactory.parsley.core.messaging.MessagePriority;
+
+/**
+ * Default implementation of the DispatchQueue interface, delivering messages on a single executor.
+ * <p>
+ * Deliveries are drained by one task at a time, which always picks the head of the highest non-empty lane, except for every
+ * <code>FAIRNESS</code>th pick: that one goes to the lowest lane whose head has been waiting longer than the starvation delay, if any. Lower
+ * lanes thus still get a share of the deliveries under a steady flow of higher priority messages, without a backlog of overdue bulk messages
+ * taking over. A task delivers a bounded batch and then re-submits itself, so that an executor like the event dispatch thread can run other
+ * events in between.
+ * </p>
+ * <p>
+ * The number of queued deliveries is tracked by the same counter that schedules the draining task, so bounding the queue costs a single
+ * compare-and-set per delivery. Producers waiting in <code>offer</code> are only signalled after a batch if there are any.
+ * </p>
+ * <p>
+ * A producer calling <code>offer</code> on the thread deliveries run on, that is from a receiver or on the event dispatch thread when the
+ * executor is <code>Subscriber.EVENT_DISPATCH_THREAD</code>, would wait for deliveries that cannot run before it returns. It delivers a
+ * batch on the calling thread instead of waiting. Other executors running on the event dispatch thread are not detected.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class PriorityDispatchQueue implements DispatchQueue {
+
+	private static final int FAIRNESS = 4;
+	private static final MessagePriority[] PRIORITIES = MessagePriority.values();
+
+	private final Executor executor;
+	private final int capacity;
+	private final int batchSize;
+	private final long starvationNanos;
+	private final Queue<Entry>[] lanes;
+	private final AtomicInteger work;
+	private final Runnable drain;
+	private final ReentrantLock lock;
+	private final Condition notFull;
+	private volatile int waiters;
+	private volatile Thread drainer;
+
+	// Confined to the draining task.
+	private int picks;
+
+	/**
+	 * Creates a new instance holding up to 1024 messages, delivering batches of 64 messages, with a starvation delay of 100 milliseconds.
+	 * @param executor the executor to deliver messages on
+	 */
+	public PriorityDispatchQueue(Executor executor) {
+		this(executor, 1024);
+	}
+
+	/**
+	 * Creates a new instance delivering batches of 64 messages, with a starvation delay of 100 milliseconds.
+	 * @param executor the executor to deliver messages on
+	 * @param capacity the number of queued messages above which <code>tryEnqueue</code> and <code>offer</code> reject further messages
+	 */
+	public PriorityDispatchQueue(Executor executor, int capacity) {
+		this(executor, capacity, 64, 100, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a new instance.
+	 * @param executor the executor to deliver messages on
+	 * @param capacity the number of queued messages above which <code>tryEnqueue</code> and <code>offer</code> reject further messages
+	 * @param batchSize the maximum number of messages delivered per task
+	 * @param starvationDelay the time after which a message waiting in a lower lane gets a share of the deliveries
+	 * @param unit the unit of the starvation delay
+	 */
+	@SuppressWarnings("unchecked")
+	public PriorityDispatchQueue(Executor executor, int capacity, int batchSize, long starvationDelay, TimeUnit unit) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.executor = executor;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.starvationNanos = unit.toNanos(starvationDelay);
+		this.lanes = (Queue<Entry>[]) new Queue<?>[PRIORITIES.length];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new ConcurrentLinkedQueue<Entry>();
+		}
+		this.work = new AtomicInteger();
+		this.drain = new Runnable() {
+
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+		this.lock = new ReentrantLock();
+		this.notFull = lock.newCondition();
+	}
+
+	@Override
+	public void enqueue(MessagePriority priority, Runnable delivery) {
+		lanes[priority.ordinal()].add(new Entry(delivery, System.nanoTime()));
+		if (work.getAndIncrement() == 0) {
+			executor.execute(drain);
+		}
+	}
+
+	@Override
+	public boolean tryEnqueue(MessagePriority priority, Runnable delivery) {
+		final int queued = reserve();
+		if (queued < 0) {
+			return false;
+		}
+		lanes[priority.ordinal()].add(new Entry(delivery, System.nanoTime()));
+		if (queued == 0) {
+			executor.execute(drain);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean offer(MessagePriority priority, Runnable delivery, long timeout, TimeUnit unit) throws InterruptedException {
+		if (tryEnqueue(priority, delivery)) {
+			return true;
+		}
+		if (isDeliveryThread()) {
+			// Waiting would keep the queued deliveries from running, so make room by delivering some of them right away.
+			deliverBatch();
+			return tryEnqueue(priority, delivery);
+		}
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			waiters++;
+			try {
+				while (!tryEnqueue(priority, delivery)) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = notFull.awaitNanos(nanos);
+				}
+				return true;
+			}
+			finally {
+				waiters--;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Reserves room for one delivery, returning the number of deliveries queued before, or -1 if the queue is full.
+	 */
+	private int reserve() {
+		for (;;) {
+			final int queued = work.get();
+			if (queued >= capacity) {
+				return -1;
+			}
+			if (work.compareAndSet(queued, queued + 1)) {
+				return queued;
+			}
+		}
+	}
+
+	private void drain() {
+		drainer = Thread.currentThread();
+		int delivered = 0;
+		try {
+			while (delivered < batchSize) {
+				final Entry entry = next();
+				if (entry == null) {
+					break;
+				}
+				delivered++;
+				deliver(entry);
+			}
+		}
+		finally {
+			drainer = null;
+			// Also when a delivery threw an Error, otherwise the counter would never drop to zero and no task would drain the lanes again.
+			final int remaining = work.addAndGet(-delivered);
+			if (delivered != 0 && waiters != 0) {
+				signalNotFull();
+			}
+			if (remaining != 0) {
+				executor.execute(drain);
+			}
+		}
+	}
+
+	/**
+	 * Delivers a batch on the calling thread, which must be the thread deliveries run on. The counter does not drop to zero while a draining
+	 * task runs, as its own deliveries are only subtracted at the end of its batch, so no second task gets scheduled concurrently.
+	 */
+	private void deliverBatch() {
+		int delivered = 0;
+		while (delivered < batchSize) {
+			final Entry entry = next();
+			if (entry == null) {
+				break;
+			}
+			delivered++;
+			work.decrementAndGet();
+			deliver(entry);
+		}
+		if (delivered != 0 && waiters != 0) {
+			signalNotFull();
+		}
+	}
+
+	private boolean isDeliveryThread() {
+		return Thread.currentThread() == drainer || (executor == Subscriber.EVENT_DISPATCH_THREAD && EventQueue.isDispatchThread());
+	}
+
+	private static void deliver(Entry entry) {
+		try {
+			entry.delivery.run();
+		}
+		catch (RuntimeException e) {
+			logger.error("Asynchronous message delivery failed.", e);
+		}
+	}
+
+	private void signalNotFull() {
+		lock.lock();
+		try {
+			notFull.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private Entry next() {
+		int highest = 0;
+		while (highest < lanes.length && lanes[highest].isEmpty()) {
+			highest++;
+		}
+		if (highest == lanes.length) {
+			return null;
+		}
+
+		if (++picks >= FAIRNESS) {
+			picks = FAIRNESS;
+			final long now = System.nanoTime();
+			for (int i = lanes.length - 1; i > highest; i--) {
+				final Entry head = lanes[i].peek();
+				if (head != null && now - head.enqueued > starvationNanos) {
+					picks = 0;
+					return lanes[i].poll();
+				}
+			}
+		}
+		return lanes[highest].poll();
+	}
+
+	/**
+	 * A queued delivery along with the time it has been queued at.
+	 */
+	private static final class Entry {
+
+		private final Runnable delivery;
+		private final long enqueued;
+
+		Entry(Runnable delivery, long enqueued) {
+			this.delivery = delivery;
+			this.enqueued = enqueued;
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(PriorityDispatchQueue.class);
+
+}
@@ -20,7 +20,8 @@ public interface MessageErrorHandler extends MessageReceiver {
 	/**
 	 * Handles an exception thrown by a regular message target or interceptor.
 	 * <p>
-	 * Processing further exception handlers and targets will only happen if proceed is called on the specified processor.
+	 * Processing continues with the remaining receivers when this method returns, unless the specified processor has been cancelled or
+	 * suspended.
 	 * @param processor the processor for the message
 	 * @param exception the exception thrown by a message target
 	 */
@@ -0,0 +1,24 @@
+package org.spicefactory.parsley.core.messaging.receiver;
+
+import org.spicefactory.parsley.core.messaging.MessageProcessor;
+
+/**
+ * Intercepts a message before it gets delivered to the regular targets.
+ * <p>
+ * Interceptors are invoked in ascending order before any target. An interceptor may cancel the processing of the message, or suspend it and
+ * resume it later, for example once a user confirmed an action.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface MessageInterceptor extends MessageReceiver {
+
+	/**
+	 * Intercepts a message.
+	 * <p>
+	 * Processing continues with the next receiver when this method returns, unless the specified processor has been cancelled or suspended.
+	 * </p>
+	 * @param processor the processor for the message
+	 */
+	void intercept(MessageProcessor processor);
+
+}
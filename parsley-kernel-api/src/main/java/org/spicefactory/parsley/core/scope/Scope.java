@@ -1,7 +1,18 @@
 package org.spicefactory.parsley.core.scope;
 
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nullable;
 
+import org.spicefactory.parsley.core.binding.BindingManager;
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.lifecycle.LifecycleObserverRegistry;
+import org.spicefactory.parsley.core.messaging.DispatchPriority;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.messaging.IdempotencyKey;
+import org.spicefactory.parsley.core.messaging.MessagePriority;
+
 /**
  * Represents a single scope.
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
@@ -64,30 +75,83 @@ public interface Scope {
 	//	function get commandManager () : CommandManager;
 	//
 	//	/**
-	//	 * The manager for publishers and subscribers of the decoupled binding facility.
-	//	 */
-	//	function get bindingManager () : BindingManager;
-	//
-	//	/**
-	//	 * The manager for values persisted by publishers.
-	//	 */
-	//	function get persistenceManager () : PersistenceManager;
-	//
-	//	/**
-	//	 * The registry for observers of lifecycle events dispatched by objects within this scope.
-	//	 */
-	//	function get lifecycleObservers () : LifecycleObserverRegistry; 
-	//
-	//	/**
 	//	 * Custom extensions registered for this scope.
 	//	 */
 	//	function get extensions () : ScopeExtensions;
 
+	/**
+	 * The manager for publishers and subscribers of the decoupled binding facility.
+	 */
+	BindingManager bindingManager();
+
+	/**
+	 * The manager for values persisted by publishers.
+	 */
+	PersistenceManager persistenceManager();
+
+	/**
+	 * The registry for observers of lifecycle events dispatched by objects within this scope.
+	 */
+	LifecycleObserverRegistry lifecycleObservers();
+
 	/**
 	 * Dispatches a message through this scope.
+	 * <p>
+	 * The message is delivered synchronously, unless its type is annotated with {@link DispatchPriority}, in which case it is queued in the
+	 * lane of that priority.
+	 * </p>
+	 * <p>
+	 * If its type declares an {@link IdempotencyKey}, the message is dropped when a message of the same type with an equal key has been
+	 * dispatched the same way within the time to live of the key. This applies to all dispatch methods.
+	 * </p>
 	 * @param message the message to dispatch
 	 * @param selector the selector to use if it cannot be determined from the message instance itself
 	 */
 	void dispatchMessage(Object message, @Nullable Object selector);
 
+	/**
+	 * Queues a message for asynchronous delivery through this scope, in the lane of the specified priority.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @param priority the priority class of the message, overriding the one its type may be annotated with
+	 */
+	void dispatchMessage(Object message, @Nullable Object selector, MessagePriority priority);
+
+	/**
+	 * Dispatches a message through this scope like <code>dispatchMessage(Object, Object)</code>, returning the outcome of every receiver.
+	 * <p>
+	 * The returned stage is completed once processing completed or has been cancelled. Exceptions thrown by receivers are reported through
+	 * the result instead of being rethrown to the caller.
+	 * </p>
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @return the stage completed with the outcome of processing the message
+	 */
+	CompletionStage<DispatchResult> dispatch(Object message, @Nullable Object selector);
+
+	/**
+	 * Queues a message for asynchronous delivery through this scope, unless the dispatch queue is full. The message is queued in the lane its
+	 * type is annotated with, or in the normal lane. This method never waits, so it may be called on any thread.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @return true if the message has been queued, false if the dispatch queue is full
+	 */
+	boolean tryDispatch(Object message, @Nullable Object selector);
+
+	/**
+	 * Queues a message for asynchronous delivery through this scope, waiting up to the specified time for the dispatch queue to make room for
+	 * it. The message is queued in the lane its type is annotated with, or in the normal lane.
+	 * <p>
+	 * When called on the thread queued messages are delivered on, like the event dispatch thread by default, the queue cannot make room while
+	 * the caller waits. A batch of queued messages is then delivered on the calling thread instead of waiting.
+	 * </p>
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the message has been queued, false if the dispatch queue remained full
+	 * @throws InterruptedException if the current thread got interrupted while waiting
+	 */
+	boolean offer(Object message, @Nullable Object selector, long timeout, TimeUnit unit) throws InterruptedException;
+
 }
@@ -0,0 +1,36 @@
+package org.spicefactory.parsley.core.scope;
+
+import javax.annotation.Nullable;
+
+/**
+ * Index of scopes by their unique id, spanning all Contexts sharing it.
+ * <p>
+ * Scopes are registered by the ScopeManager of the Context creating them, inherited scopes are not registered again. The index allows to
+ * route a message to one particular scope without broadcasting it through all scopes.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface ScopeIndex {
+
+	/**
+	 * Adds the specified scope to this index.
+	 * @param scope the scope to add
+	 * @throws IllegalStateException if another scope with the same uuid has already been added
+	 */
+	void register(ScopeInfo scope);
+
+	/**
+	 * Removes the specified scope from this index. Does nothing if another scope is registered with its uuid.
+	 * @param scope the scope to remove
+	 */
+	void unregister(ScopeInfo scope);
+
+	/**
+	 * Returns the scope with the specified uuid.
+	 * @param uuid the unique id of the scope
+	 * @return the scope with the specified uuid, or null if there is none
+	 */
+	@Nullable
+	ScopeInfo get(String uuid);
+
+}
@@ -1,5 +1,8 @@
 package org.spicefactory.parsley.core.scope;
 
+import org.spicefactory.parsley.core.binding.BindingManager;
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.lifecycle.LifecycleObserverRegistry;
 import org.spicefactory.parsley.core.messaging.MessageReceiverCache;
 import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
 
@@ -15,11 +18,36 @@ public interface ScopeInfo {
 	 */
 	String name();
 
+	/**
+	 * The unique id of the scope. See {@link Scope#uuid()} method for details.
+	 */
+	String uuid();
+
+	/**
+	 * Indicates whether this scope will be inherited by child Contexts.
+	 */
+	boolean inherited();
+
 	/**
 	 * The registry for receivers of application messages dispatched through this scope.
 	 */
 	MessageReceiverRegistry messageReceivers();
 
+	/**
+	 * The manager for publishers and subscribers of the decoupled binding facility.
+	 */
+	BindingManager bindingManager();
+
+	/**
+	 * The manager for values persisted by publishers.
+	 */
+	PersistenceManager persistenceManager();
+
+	/**
+	 * The registry for observers of lifecycle events dispatched by objects within this scope.
+	 */
+	LifecycleObserverRegistry lifecycleObservers();
+
 	/**
 	 * Returns the cache of message receivers for the specified message type.
 	 * <p>
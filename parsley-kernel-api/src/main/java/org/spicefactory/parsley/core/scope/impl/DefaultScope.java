@@ -1,9 +1,22 @@
 package org.spicefactory.parsley.core.scope.impl;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.binding.BindingManager;
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.lifecycle.LifecycleObserverRegistry;
+import org.spicefactory.parsley.core.messaging.DispatchQueue;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.messaging.IdempotencyCache;
 import org.spicefactory.parsley.core.messaging.Message;
 import org.spicefactory.parsley.core.messaging.MessageReceiverCache;
+import org.spicefactory.parsley.core.messaging.MessagePriority;
 import org.spicefactory.parsley.core.messaging.MessageReceiverKind;
 import org.spicefactory.parsley.core.messaging.MessageRouter;
 import org.spicefactory.parsley.core.messaging.impl.DefaultMessage;
@@ -12,35 +25,87 @@ import org.spicefactory.parsley.core.scope.ScopeInfo;
 
 /**
  * Default implementation of the Scope interface.
+ * <p>
+ * Messages whose type declares an idempotency key are checked against the idempotency cache before being delivered or queued, see
+ * <code>IdempotentDispatch</code>.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 public class DefaultScope implements Scope {
 
-	DefaultScope(ScopeInfo info, MessageRouter router) {
+	DefaultScope(final ScopeInfo info, final MessageRouter router, DispatchQueue dispatchQueue, IdempotencyCache idempotencyCache) {
 		this.info = info;
-		this.messageRouter = router;
+		this.dispatch = new IdempotentDispatch(dispatchQueue, idempotencyCache, info.uuid()) {
+
+			@Override
+			protected boolean route(Object instance, Object selector, CompletableFuture<DispatchResult> result) {
+				return DefaultScope.dispatchMessage(info, router, instance, selector, result);
+			}
+		};
 	}
 
 	@Override
 	public String name() {
-		// TODO Auto-generated method stub
-		return null;
+		return info.name();
 	}
 
 	@Override
 	public String uuid() {
-		// TODO Auto-generated method stub
-		return null;
+		return info.uuid();
 	}
 
 	@Override
 	public boolean inherited() {
-		// TODO Auto-generated method stub
-		return false;
+		return info.inherited();
+	}
+
+	@Override
+	public BindingManager bindingManager() {
+		return info.bindingManager();
+	}
+
+	@Override
+	public PersistenceManager persistenceManager() {
+		return info.persistenceManager();
+	}
+
+	@Override
+	public LifecycleObserverRegistry lifecycleObservers() {
+		return info.lifecycleObservers();
 	}
 
 	@Override
 	public void dispatchMessage(Object instance, Object selector) {
+		dispatch.dispatchMessage(instance, selector);
+	}
+
+	@Override
+	public void dispatchMessage(Object instance, Object selector, MessagePriority priority) {
+		dispatch.dispatchMessage(instance, selector, priority);
+	}
+
+	@Override
+	public CompletionStage<DispatchResult> dispatch(Object instance, Object selector) {
+		return dispatch.dispatch(instance, selector);
+	}
+
+	@Override
+	public boolean tryDispatch(Object instance, Object selector) {
+		return dispatch.tryDispatch(instance, selector);
+	}
+
+	@Override
+	public boolean offer(Object instance, Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+		return dispatch.offer(instance, selector, timeout, unit);
+	}
+
+	/**
+	 * Dispatches a message straight through the receiver cache of the specified scope, completing the specified result if not null.
+	 * @return false if the message has been discarded as no target matched
+	 */
+	// Package-private.
+	static boolean dispatchMessage(ScopeInfo info, MessageRouter messageRouter, Object instance, Object selector,
+			@Nullable CompletableFuture<DispatchResult> result) {
 		final Class<?> type = instance.getClass();
 		final MessageReceiverCache cache = info.getMessageReceiverCache(type);
 
@@ -50,15 +115,24 @@ public class DefaultScope implements Scope {
 		final Message message = new DefaultMessage(instance, type, selector);
 
 		if (cache.getReceivers(MessageReceiverKind.TARGET, message.selector()).size() == 0) {
-			logger.warn("Discarding message '{}' for scope '{}': no matching receiver.", instance, this);
-			return;
+			logger.warn("Discarding message '{}' for scope '{}': no matching receiver.", instance, info.name());
+			if (result != null) {
+				result.complete(DispatchResult.discarded(message));
+			}
+			return false;
 		}
 
-		messageRouter.dispatchMessage(message, cache);
+		if (result != null) {
+			messageRouter.dispatchMessage(message, cache, result);
+		}
+		else {
+			messageRouter.dispatchMessage(message, cache);
+		}
+		return true;
 	}
 
-	private final Logger logger = LoggerFactory.getLogger(DefaultScope.class);
+	private static final Logger logger = LoggerFactory.getLogger(DefaultScope.class);
 
 	private final ScopeInfo info;
-	private final MessageRouter messageRouter;
+	private final IdempotentDispatch dispatch;
 }
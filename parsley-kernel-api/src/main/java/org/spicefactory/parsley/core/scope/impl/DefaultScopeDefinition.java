@@ -0,0 +1,89 @@
+package org.spicefactory.parsley.core.scope.impl;
+
+import java.lang.annotation.Annotation;
+
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeDefinition;
+
+/**
+ * A scope definition created programmatically, like the global and local scopes every Context gets by default.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class DefaultScopeDefinition implements ScopeDefinition {
+
+	/**
+	 * The definition of the global scope, inherited by child Contexts.
+	 */
+	public static final ScopeDefinition GLOBAL = new DefaultScopeDefinition(Scope.GLOBAL, true, "");
+
+	/**
+	 * The definition of the local scope, only spanning the Context creating it.
+	 */
+	public static final ScopeDefinition LOCAL = new DefaultScopeDefinition(Scope.LOCAL, false, "");
+
+	private final String name;
+	private final boolean inherited;
+	private final String uuid;
+
+	/**
+	 * Creates a new instance.
+	 * @param name the name of the scope
+	 * @param inherited whether the scope will be inherited by child Contexts
+	 * @param uuid the unique id of the scope, or an empty string to generate one per created scope
+	 */
+	public DefaultScopeDefinition(String name, boolean inherited, String uuid) {
+		this.name = name;
+		this.inherited = inherited;
+		this.uuid = uuid;
+	}
+
+	@Override
+	public String name() {
+		return name;
+	}
+
+	@Override
+	public boolean inherited() {
+		return inherited;
+	}
+
+	@Override
+	public String uuid() {
+		return uuid;
+	}
+
+	@Override
+	public Class<? extends Annotation> annotationType() {
+		return ScopeDefinition.class;
+	}
+
+	/**
+	 * Follows the contract of <code>Annotation.equals</code>, so that definitions compare equal to annotations with the same members.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ScopeDefinition)) {
+			return false;
+		}
+		final ScopeDefinition other = (ScopeDefinition) obj;
+		return name.equals(other.name()) && inherited == other.inherited() && uuid.equals(other.uuid());
+	}
+
+	/**
+	 * Follows the contract of <code>Annotation.hashCode</code>.
+	 */
+	@Override
+	public int hashCode() {
+		return ((127 * "name".hashCode()) ^ name.hashCode()) + ((127 * "inherited".hashCode()) ^ Boolean.valueOf(inherited).hashCode())
+				+ ((127 * "uuid".hashCode()) ^ uuid.hashCode());
+	}
+
+	@Override
+	public String toString() {
+		return "@" + ScopeDefinition.class.getName() + "(name=" + name + ", inherited=" + inherited + ", uuid=" + uuid + ")";
+	}
+
+}
@@ -0,0 +1,35 @@
+package org.spicefactory.parsley.core.scope.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+
+/**
+ * Default implementation of the ScopeIndex interface.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultScopeIndex implements ScopeIndex {
+
+	private final ConcurrentMap<String, ScopeInfo> scopes = new ConcurrentHashMap<String, ScopeInfo>();
+
+	@Override
+	public void register(ScopeInfo scope) {
+		final ScopeInfo existing = scopes.putIfAbsent(scope.uuid(), scope);
+		if (existing != null && existing != scope) {
+			throw new IllegalStateException("Duplicate scope with uuid: " + scope.uuid());
+		}
+	}
+
+	@Override
+	public void unregister(ScopeInfo scope) {
+		scopes.remove(scope.uuid(), scope);
+	}
+
+	@Override
+	public ScopeInfo get(String uuid) {
+		return scopes.get(uuid);
+	}
+
+}
@@ -1,6 +1,13 @@
 package org.spicefactory.parsley.core.scope.impl;
 
+import java.util.UUID;
+
+import org.spicefactory.parsley.core.binding.BindingManager;
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.binding.impl.DefaultBindingManager;
 import org.spicefactory.parsley.core.bootstrap.BootstrapInfo;
+import org.spicefactory.parsley.core.lifecycle.LifecycleObserverRegistry;
+import org.spicefactory.parsley.core.lifecycle.impl.DefaultLifecycleObserverRegistry;
 import org.spicefactory.parsley.core.messaging.MessageReceiverCache;
 import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
 import org.spicefactory.parsley.core.messaging.impl.DefaultMessageReceiverRegistry;
@@ -15,9 +22,12 @@ public class DefaultScopeInfo implements ScopeInfo {
 
 	DefaultScopeInfo(ScopeDefinition definition, BootstrapInfo info) {
 		this.name = definition.name();
-		this.uuid = definition.uuid();
+		this.uuid = definition.uuid().isEmpty() ? UUID.randomUUID().toString() : definition.uuid();
 		this.inherited = definition.inherited();
-		this.messageReceivers = new DefaultMessageReceiverRegistry();
+		this.messageReceivers = new DefaultMessageReceiverRegistry(info.classLoaderManager());
+		this.persistenceManager = info.persistenceManager();
+		this.bindingManager = new DefaultBindingManager(persistenceManager, uuid);
+		this.lifecycleObservers = new DefaultLifecycleObserverRegistry();
 	}
 
 	@Override
@@ -25,19 +35,55 @@ public class DefaultScopeInfo implements ScopeInfo {
 		return name;
 	}
 
+	@Override
+	public String uuid() {
+		return uuid;
+	}
+
+	@Override
+	public boolean inherited() {
+		return inherited;
+	}
+
 	@Override
 	public MessageReceiverRegistry messageReceivers() {
 		return messageReceivers;
 	}
 
+	@Override
+	public BindingManager bindingManager() {
+		return bindingManager;
+	}
+
+	@Override
+	public PersistenceManager persistenceManager() {
+		return persistenceManager;
+	}
+
+	@Override
+	public LifecycleObserverRegistry lifecycleObservers() {
+		return lifecycleObservers;
+	}
+
 	@Override
 	public MessageReceiverCache getMessageReceiverCache(Class<?> type) {
 		return messageReceivers.getSelectionCache(type);
 	}
 
+	/**
+	 * Releases the receivers registered in this scope. Invoked when the Context that created this scope gets destroyed.
+	 */
+	// Package-private.
+	void destroy() {
+		messageReceivers.destroy();
+	}
+
 	private final String name;
 	private final String uuid;
 	private final boolean inherited;
 	private final DefaultMessageReceiverRegistry messageReceivers;
+	private final PersistenceManager persistenceManager;
+	private final BindingManager bindingManager;
+	private final LifecycleObserverRegistry lifecycleObservers;
 
 }
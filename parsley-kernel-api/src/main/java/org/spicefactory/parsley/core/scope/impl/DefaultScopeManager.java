@@ -1,16 +1,42 @@
 package org.spicefactory.parsley.core.scope.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.bootstrap.BootstrapInfo;
+import org.spicefactory.parsley.core.command.ObservableCommand;
+import org.spicefactory.parsley.core.messaging.DispatchQueue;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.messaging.IdempotencyCache;
+import org.spicefactory.parsley.core.messaging.Message;
+import org.spicefactory.parsley.core.messaging.MessagePriority;
+import org.spicefactory.parsley.core.messaging.MessageReceiverCache;
+import org.spicefactory.parsley.core.messaging.MessageReceiverChain;
+import org.spicefactory.parsley.core.messaging.MessageReceiverKind;
+import org.spicefactory.parsley.core.messaging.MessageRouter;
+import org.spicefactory.parsley.core.messaging.impl.DefaultMessage;
+import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeDefinition;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+import org.spicefactory.parsley.core.scope.ScopeInfoRegistry;
+import org.spicefactory.parsley.core.scope.ScopeManager;
 
 /**
  * Default implementation of the ScopeManager interface.
@@ -19,20 +45,35 @@ import org.slf4j.Logger;
 @Singleton
 public class DefaultScopeManager implements ScopeManager {
 
-	@Inject
-	private Logger logger;
-
 	private final Map<String, Scope> scopes;
+	private final List<DefaultScopeInfo> ownScopes;
+	private final ScopeIndex scopeIndex;
+	private final DispatchQueue dispatchQueue;
+	private final IdempotencyCache idempotencyCache;
 	private final MessageRouter messageRouter;
 	private final ScopeInfoRegistry scopeInfoRegistry;
+	private final MergedChainCache mergedChains;
+	private final IdempotentDispatch dispatch;
 
 	@Inject
-	DefaultScopeManager(ScopeInfoRegistry scopeInfoRegistry, MessageRouter messageRouter) {
-		this.scopes = new HashMap<String, Scope>();
+	public DefaultScopeManager(BootstrapInfo info, ScopeInfoRegistry scopeInfoRegistry, MessageRouter messageRouter) {
+		this.scopes = new LinkedHashMap<String, Scope>();
+		this.ownScopes = new ArrayList<DefaultScopeInfo>();
+		this.scopeIndex = info.scopeIndex();
+		this.dispatchQueue = info.dispatchQueue();
+		this.idempotencyCache = info.idempotencyCache();
 		this.messageRouter = messageRouter;
 		this.scopeInfoRegistry = scopeInfoRegistry;
+		this.mergedChains = new MergedChainCache(info.classLoaderManager());
+		this.dispatch = new IdempotentDispatch(dispatchQueue, idempotencyCache, null) {
 
-		initScopes(null);
+			@Override
+			protected boolean route(Object instance, Object selector, CompletableFuture<DispatchResult> result) {
+				return deliverToActiveScopes(instance, selector, result);
+			}
+		};
+
+		initScopes(info);
 	}
 
 	/**
@@ -48,16 +89,31 @@ public class DefaultScopeManager implements ScopeManager {
 	 * @param info a BootstrapInfo instance providing information about all scopes inherited by parent Contexts and all new scope definitions
 	 *            added for this Context
 	 */
-	protected void initScopes(/* TODO: not used. */BootstrapInfo info) {
+	protected void initScopes(BootstrapInfo info) {
 		for (ScopeInfo scopeInfo : scopeInfoRegistry.getParentScopes()) {
 			addScope(scopeInfo, info);
 		}
 		for (ScopeDefinition scopeDef : scopeInfoRegistry.getNewScopes()) {
 			DefaultScopeInfo newScope = new DefaultScopeInfo(scopeDef, info);
 			addScope(newScope, info);
+			info.scopeIndex().register(newScope);
+			ownScopes.add(newScope);
 		}
 	}
 
+	/**
+	 * Removes the scopes created by this manager from the scope index and releases their receivers. Invoked when the Context gets destroyed,
+	 * inherited scopes remain registered by the Context that created them.
+	 */
+	public void destroy() {
+		for (DefaultScopeInfo scopeInfo : ownScopes) {
+			scopeIndex.unregister(scopeInfo);
+			scopeInfo.destroy();
+		}
+		ownScopes.clear();
+		mergedChains.destroy();
+	}
+
 	/**
 	 * Adds the specified scope to the active scopes of this manager.
 	 * @param scopeInfo the scope to add to this manager
@@ -68,30 +124,55 @@ public class DefaultScopeManager implements ScopeManager {
 			throw new IllegalStateException("Duplicate scope with name: " + scopeInfo.name());
 		}
 		scopeInfoRegistry.addActiveScope(scopeInfo);
-		Scope scope = new DefaultScope(scopeInfo, messageRouter);
+		Scope scope = new DefaultScope(scopeInfo, messageRouter, dispatchQueue, idempotencyCache);
 		scopes.put(scope.name(), scope);
 	}
 
 	@Override
 	public boolean hasScope(String name) {
-		// TODO Auto-generated method stub
-		return false;
+		return scopes.containsKey(name);
 	}
 
 	@Override
 	public Scope getScope(String name) {
-		// TODO Auto-generated method stub
-		return null;
+		final Scope scope = scopes.get((name != null) ? name : Scope.GLOBAL);
+		if (scope == null) {
+			throw new IllegalStateException("This Context does not contain a scope with name: " + name);
+		}
+		return scope;
 	}
 
 	@Override
 	public List<Scope> getAllScopes() {
-		// TODO Auto-generated method stub
-		return null;
+		return Collections.unmodifiableList(new ArrayList<Scope>(scopes.values()));
 	}
 
 	@Override
 	public void dispatchMessage(Object instance, Object selector) {
+		dispatch.dispatchMessage(instance, selector);
+	}
+
+	@Override
+	public void dispatchMessage(Object instance, Object selector, MessagePriority priority) {
+		dispatch.dispatchMessage(instance, selector, priority);
+	}
+
+	@Override
+	public CompletionStage<DispatchResult> dispatch(Object instance, Object selector) {
+		return dispatch.dispatch(instance, selector);
+	}
+
+	@Override
+	public boolean tryDispatch(Object instance, Object selector) {
+		return dispatch.tryDispatch(instance, selector);
+	}
+
+	@Override
+	public boolean offer(Object instance, Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+		return dispatch.offer(instance, selector, timeout, unit);
+	}
+
+	private boolean deliverToActiveScopes(Object instance, Object selector, @Nullable CompletableFuture<DispatchResult> result) {
 		final Class<?> type = instance.getClass();
 		final List<ScopeInfo> scopes = scopeInfoRegistry.getActiveScopes();
 		final List<MessageReceiverCache> caches = new ArrayList<MessageReceiverCache>(scopes.size());
@@ -99,19 +180,45 @@ public class DefaultScopeManager implements ScopeManager {
 		for (ScopeInfo scope : scopes) {
 			caches.add(scope.getMessageReceiverCache(type));
 		}
-		final MessageReceiverCache cache = new MergedMessageReceiverCache(caches);
+		final MessageReceiverCache cache = new MergedMessageReceiverCache(type, caches);
 
 		if (selector == null) {
 			selector = cache.getSelectorValue(instance);
 		}
 		final Message message = new DefaultMessage(instance, type, selector);
 
-		if (cache.getReceivers(MessageReceiverKind.TARGET, selector).size() == 0) {
+		final MessageReceiverChain chain = cache.getReceiverChain(selector);
+		if (chain.size() == chain.interceptorCount()) {
 			logger.warn("Discarding message '{}': no matching receiver in any scope.", type);
+			if (result != null) {
+				result.complete(DispatchResult.discarded(message));
+			}
+			return false;
+		}
+
+		if (result != null) {
+			messageRouter.dispatchMessage(message, cache, result);
+		}
+		else {
+			messageRouter.dispatchMessage(message, cache);
+		}
+		return true;
+	}
+
+	@Override
+	public void dispatchTo(String uuid, Object message, Object selector) {
+		final ScopeInfo scope = scopeIndex.get(uuid);
+		if (scope == null) {
+			logger.warn("Discarding message '{}': no scope with uuid '{}'.", message.getClass(), uuid);
 			return;
 		}
+		new IdempotentDispatch(dispatchQueue, idempotencyCache, uuid) {
 
-		messageRouter.dispatchMessage(message, cache);
+			@Override
+			protected boolean route(Object instance, Object selector, CompletableFuture<DispatchResult> result) {
+				return DefaultScope.dispatchMessage(scope, messageRouter, instance, selector, result);
+			}
+		}.dispatchNow(message, selector);
 	}
 
 	@Override
@@ -120,11 +227,17 @@ public class DefaultScopeManager implements ScopeManager {
 
 	}
 
+	/**
+	 * Merges the selections of the scopes for a single message type. Created for each delivery, while the merged chains are kept per message
+	 * type and selector and only merged again once the chain of a scope changed.
+	 */
 	private class MergedMessageReceiverCache implements MessageReceiverCache {
 
+		private final Class<?> type;
 		private final List<MessageReceiverCache> caches;
 
-		public MergedMessageReceiverCache(List<MessageReceiverCache> caches) {
+		public MergedMessageReceiverCache(Class<?> type, List<MessageReceiverCache> caches) {
+			this.type = type;
 			this.caches = caches;
 		}
 
@@ -137,6 +250,15 @@ public class DefaultScopeManager implements ScopeManager {
 			return receivers;
 		}
 
+		@Override
+		public MessageReceiverChain getReceiverChain(Object selector) {
+			final MessageReceiverChain[] parts = new MessageReceiverChain[caches.size()];
+			for (int i = 0; i < parts.length; i++) {
+				parts[i] = caches.get(i).getReceiverChain(selector);
+			}
+			return mergedChains.getChain(type, selector, parts);
+		}
+
 		@Override
 		public Object getSelectorValue(Object message) {
 			// TODO Auto-generated method stub
@@ -145,4 +267,6 @@ public class DefaultScopeManager implements ScopeManager {
 
 	}
 
+	private static final Logger logger = LoggerFactory.getLogger(DefaultScopeManager.class);
+
 }
@@ -0,0 +1,201 @@
+package org.spicefactory.parsley.core.scope.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.messaging.DispatchQueue;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.messaging.IdempotencyCache;
+import org.spicefactory.parsley.core.messaging.MessagePriority;
+import org.spicefactory.parsley.core.messaging.MessageState;
+import org.spicefactory.parsley.core.messaging.impl.DefaultMessage;
+
+/**
+ * The dispatch methods shared by scopes and scope managers, which differ only in how a message is delivered to its receivers.
+ * <p>
+ * Messages whose type declares an idempotency key are checked against the idempotency cache before being delivered or queued, duplicates are
+ * dropped without reaching any receiver. The key of a message is forgotten again if the message could not be queued, got discarded, or if
+ * delivering it failed, so that it may be dispatched again.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+abstract class IdempotentDispatch {
+
+	private final DispatchQueue dispatchQueue;
+	private final IdempotencyCache idempotencyCache;
+	private final String scopeId;
+
+	/**
+	 * Creates a new instance.
+	 * @param dispatchQueue the queue for asynchronous deliveries
+	 * @param idempotencyCache the cache to check messages against
+	 * @param scopeId the uuid of the scope messages are dispatched through, or null for all scopes of a Context
+	 */
+	IdempotentDispatch(DispatchQueue dispatchQueue, IdempotencyCache idempotencyCache, @Nullable String scopeId) {
+		this.dispatchQueue = dispatchQueue;
+		this.idempotencyCache = idempotencyCache;
+		this.scopeId = scopeId;
+	}
+
+	/**
+	 * Delivers a message to its receivers on the calling thread, completing the specified result if not null.
+	 * @return false if the message has been discarded as no target matched
+	 */
+	protected abstract boolean route(Object instance, @Nullable Object selector, @Nullable CompletableFuture<DispatchResult> result);
+
+	void dispatchMessage(Object instance, @Nullable Object selector) {
+		if (isDuplicate(instance)) {
+			return;
+		}
+		final MessagePriority priority = MessagePriority.forType(instance.getClass());
+		if (priority != null) {
+			enqueue(priority, instance, selector, null);
+			return;
+		}
+		deliver(instance, selector, null);
+	}
+
+	void dispatchMessage(Object instance, @Nullable Object selector, MessagePriority priority) {
+		if (isDuplicate(instance)) {
+			return;
+		}
+		enqueue(priority, instance, selector, null);
+	}
+
+	/**
+	 * Delivers a message on the calling thread, regardless of the priority its type may be annotated with.
+	 */
+	void dispatchNow(Object instance, @Nullable Object selector) {
+		if (isDuplicate(instance)) {
+			return;
+		}
+		deliver(instance, selector, null);
+	}
+
+	CompletionStage<DispatchResult> dispatch(Object instance, @Nullable Object selector) {
+		if (isDuplicate(instance)) {
+			return CompletableFuture.completedFuture(DispatchResult.discarded(new DefaultMessage(instance, instance.getClass(), selector)));
+		}
+		final CompletableFuture<DispatchResult> result = new CompletableFuture<DispatchResult>();
+		final MessagePriority priority = MessagePriority.forType(instance.getClass());
+		if (priority != null) {
+			enqueue(priority, instance, selector, result);
+		}
+		else {
+			deliver(instance, selector, result);
+		}
+		return result;
+	}
+
+	boolean tryDispatch(Object instance, @Nullable Object selector) {
+		if (isDuplicate(instance)) {
+			return true;
+		}
+		boolean queued = false;
+		try {
+			queued = dispatchQueue.tryEnqueue(queuedPriority(instance), delivery(instance, selector, null));
+			return queued;
+		}
+		finally {
+			if (!queued) {
+				forget(instance);
+			}
+		}
+	}
+
+	boolean offer(Object instance, @Nullable Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+		if (isDuplicate(instance)) {
+			return true;
+		}
+		boolean queued = false;
+		try {
+			queued = dispatchQueue.offer(queuedPriority(instance), delivery(instance, selector, null), timeout, unit);
+			return queued;
+		}
+		finally {
+			if (!queued) {
+				forget(instance);
+			}
+		}
+	}
+
+	private void enqueue(MessagePriority priority, Object instance, Object selector, @Nullable CompletableFuture<DispatchResult> result) {
+		boolean queued = false;
+		try {
+			dispatchQueue.enqueue(priority, delivery(instance, selector, result));
+			queued = true;
+		}
+		finally {
+			if (!queued) {
+				forget(instance);
+			}
+		}
+	}
+
+	private Runnable delivery(final Object instance, final Object selector, @Nullable final CompletableFuture<DispatchResult> result) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				deliver(instance, selector, result);
+			}
+		};
+	}
+
+	/**
+	 * Delivers a message whose key has been remembered, forgetting the key again unless the message has been processed.
+	 */
+	private void deliver(final Object instance, Object selector, @Nullable CompletableFuture<DispatchResult> result) {
+		boolean delivered = false;
+		try {
+			delivered = route(instance, selector, result);
+		}
+		finally {
+			if (!delivered) {
+				forget(instance);
+			}
+		}
+		if (result != null) {
+			// Forgets the key once processing got cancelled, like when a receiver failed, so that the message may be dispatched again.
+			result.whenComplete(new BiConsumer<DispatchResult, Throwable>() {
+
+				@Override
+				public void accept(DispatchResult outcome, Throwable failure) {
+					if (failure != null || outcome.state() == MessageState.CANCELLED) {
+						forget(instance);
+					}
+				}
+			});
+		}
+	}
+
+	private boolean isDuplicate(Object instance) {
+		if (idempotencyCache.isDuplicate(instance, scopeId)) {
+			logger.debug("Dropping duplicate message '{}' for scope '{}'.", instance, (scopeId != null) ? scopeId : "*");
+			return true;
+		}
+		return false;
+	}
+
+	private void forget(Object instance) {
+		idempotencyCache.forget(instance, scopeId);
+	}
+
+	/**
+	 * Returns the lane the type of the specified message is annotated with, or the normal lane.
+	 */
+	private static MessagePriority queuedPriority(Object instance) {
+		final MessagePriority priority = MessagePriority.forType(instance.getClass());
+		return (priority != null) ? priority : MessagePriority.NORMAL;
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(IdempotentDispatch.class);
+
+}
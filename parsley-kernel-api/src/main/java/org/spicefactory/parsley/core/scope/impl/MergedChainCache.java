@@ -0,0 +1,175 @@
+package org.spicefactory.parsley.core.scope.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.spicefactory.parsley.core.messaging.MessageReceiverChain;
+import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
+import org.spicefactory.parsley.core.state.ClassLoaderManager;
+import org.spicefactory.parsley.core.state.ClassLoaderManager.PurgeHandler;
+import org.spicefactory.parsley.core.util.TypeHierarchy;
+
+/**
+ * Keeps the chains merged from the chains of all active scopes per message type and selector, so that they are only merged again once the
+ * chain of a scope changed.
+ * <p>
+ * Merged chains hold receivers, which reference the message type and its supertypes. Chains are therefore partitioned by the ClassLoader of
+ * the message type and dropped when the ClassLoader of the type or of one of its supertypes gets purged. Selector values are only cached up
+ * to a fixed number per message type, and only if their class cannot keep another ClassLoader reachable; other selections are merged on each
+ * delivery.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+class MergedChainCache implements PurgeHandler {
+
+	// Maximum number of selector values cached per message type.
+	static final int MAX_SELECTORS = 32;
+
+	// Stands for the bootstrap ClassLoader and for the absent selector, as concurrent maps do not support null keys.
+	private static final Object BOOTSTRAP_LOADER = new Object();
+	private static final Object NO_SELECTOR = new Object();
+
+	private final ConcurrentMap<Object, ConcurrentMap<Class<?>, ConcurrentMap<Object, MergedChain>>> partitions;
+	private final ClassLoaderManager classLoaderManager;
+
+	MergedChainCache(ClassLoaderManager classLoaderManager) {
+		this.partitions = new ConcurrentHashMap<Object, ConcurrentMap<Class<?>, ConcurrentMap<Object, MergedChain>>>();
+		this.classLoaderManager = classLoaderManager;
+	}
+
+	/**
+	 * Returns the chain merged from the specified chains of the active scopes, reusing the chain merged last time for the same message type
+	 * and selector if the scopes still return the same chains.
+	 * @param type the message type
+	 * @param selector the selector of the message, may be null
+	 * @param parts the chains the active scopes returned for the message type and selector
+	 * @return the merged chain
+	 */
+	MessageReceiverChain getChain(Class<?> type, Object selector, MessageReceiverChain[] parts) {
+		final ConcurrentMap<Object, MergedChain> chains = chainsFor(type);
+		final Object key = (selector == null) ? NO_SELECTOR : selector;
+		final MergedChain merged = chains.get(key);
+		if (merged != null && merged.isMergedFrom(parts)) {
+			return merged.chain;
+		}
+		// Replacing concurrently merged chains is harmless, they are merged from the chains each scope returned.
+		final MergedChain replacement = new MergedChain(parts);
+		if (merged != null || (selector == null) || (chains.size() < MAX_SELECTORS && isCacheable(type, selector))) {
+			chains.put(key, replacement);
+		}
+		return replacement.chain;
+	}
+
+	/**
+	 * Unregisters this cache from the ClassLoaderManager and drops all merged chains.
+	 */
+	synchronized void destroy() {
+		for (Object loader : partitions.keySet()) {
+			if (loader != BOOTSTRAP_LOADER) {
+				classLoaderManager.removePurgeHandler((ClassLoader) loader, this);
+			}
+		}
+		partitions.clear();
+	}
+
+	/**
+	 * Drops all merged chains for the types of the specified ClassLoader, including types of other ClassLoaders that extend one of them.
+	 * @param loader the ClassLoader that gets purged
+	 */
+	@Override
+	public synchronized void purge(ClassLoader loader) {
+		partitions.remove(loaderKey(loader));
+		for (ConcurrentMap<Class<?>, ConcurrentMap<Object, MergedChain>> partition : partitions.values()) {
+			final Iterator<Class<?>> types = partition.keySet().iterator();
+			while (types.hasNext()) {
+				if (dependsOn(types.next(), loader)) {
+					types.remove();
+				}
+			}
+		}
+	}
+
+	private ConcurrentMap<Object, MergedChain> chainsFor(Class<?> type) {
+		final ConcurrentMap<Class<?>, ConcurrentMap<Object, MergedChain>> partition = partitions.get(loaderKey(type.getClassLoader()));
+		if (partition != null) {
+			final ConcurrentMap<Object, MergedChain> chains = partition.get(type);
+			if (chains != null) {
+				return chains;
+			}
+		}
+		return createChains(type);
+	}
+
+	private synchronized ConcurrentMap<Object, MergedChain> createChains(Class<?> type) {
+		for (Class<?> c : TypeHierarchy.of(type)) {
+			final ClassLoader loader = c.getClassLoader();
+			if (!partitions.containsKey(loaderKey(loader))) {
+				partitions.put(loaderKey(loader), new ConcurrentHashMap<Class<?>, ConcurrentMap<Object, MergedChain>>());
+				if (loader != null) {
+					// Classes of the bootstrap ClassLoader never get unloaded.
+					classLoaderManager.addPurgeHandler(loader, this);
+				}
+			}
+		}
+		final ConcurrentMap<Class<?>, ConcurrentMap<Object, MergedChain>> partition = partitions.get(loaderKey(type.getClassLoader()));
+		ConcurrentMap<Object, MergedChain> chains = partition.get(type);
+		if (chains == null) {
+			chains = new ConcurrentHashMap<Object, MergedChain>();
+			partition.put(type, chains);
+		}
+		return chains;
+	}
+
+	/**
+	 * Indicates whether the specified selector may be cached for the specified message type, that is whether its class has been defined by
+	 * the bootstrap ClassLoader or by a ClassLoader of the type hierarchy, whose purge drops the chains of the message type.
+	 */
+	private static boolean isCacheable(Class<?> type, Object selector) {
+		final ClassLoader loader = ((selector instanceof Class) ? (Class<?>) selector : selector.getClass()).getClassLoader();
+		return loader == null || dependsOn(type, loader);
+	}
+
+	private static boolean dependsOn(Class<?> type, ClassLoader loader) {
+		for (Class<?> c : TypeHierarchy.of(type)) {
+			if (c.getClassLoader() == loader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Object loaderKey(ClassLoader loader) {
+		return (loader != null) ? loader : BOOTSTRAP_LOADER;
+	}
+
+	/**
+	 * A chain merged from the chains of all active scopes, valid as long as each scope returns the same chain.
+	 */
+	private static final class MergedChain {
+
+		private final MessageReceiverChain[] parts;
+		private final MessageReceiverChain chain;
+
+		MergedChain(MessageReceiverChain[] parts) {
+			final Set<MessageReceiver> interceptors = new LinkedHashSet<MessageReceiver>();
+			final Set<MessageReceiver> targets = new LinkedHashSet<MessageReceiver>();
+			for (MessageReceiverChain part : parts) {
+				for (int i = 0; i < part.size(); i++) {
+					(i < part.interceptorCount() ? interceptors : targets).add(part.get(i));
+				}
+			}
+			this.parts = parts;
+			this.chain = new MessageReceiverChain(interceptors, targets);
+		}
+
+		boolean isMergedFrom(MessageReceiverChain[] current) {
+			return Arrays.equals(parts, current);
+		}
+	}
+
+}
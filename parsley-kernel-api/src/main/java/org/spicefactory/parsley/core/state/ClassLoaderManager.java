@@ -0,0 +1,53 @@
+package org.spicefactory.parsley.core.state;
+
+/**
+ * Manages the ClassLoaders known to the framework and the caches kernel services keep for the types they define.
+ * <p>
+ * Kernel services that cache reflection data or selections keyed by <code>Class</code> register a purge handler for the ClassLoader of each
+ * cached type. When an application unloads a plugin it calls <code>purge</code> with the ClassLoader of that plugin, so that all these caches
+ * drop their strong references to the classes of the plugin and the ClassLoader can be garbage collected.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface ClassLoaderManager {
+
+	/**
+	 * Adds a handler to be invoked when the specified ClassLoader gets purged. Adding the same handler twice for the same ClassLoader has no
+	 * effect.
+	 * <p>
+	 * Implementations may hold handlers weakly, the caller is responsible for keeping the handler reachable and for removing it once the
+	 * service it belongs to gets destroyed.
+	 * </p>
+	 * @param loader the ClassLoader to watch
+	 * @param handler the handler to invoke when the ClassLoader gets purged
+	 */
+	void addPurgeHandler(ClassLoader loader, PurgeHandler handler);
+
+	/**
+	 * Removes a handler previously registered for the specified ClassLoader.
+	 * @param loader the ClassLoader the handler was registered for
+	 * @param handler the handler to remove
+	 */
+	void removePurgeHandler(ClassLoader loader, PurgeHandler handler);
+
+	/**
+	 * Purges all caches associated with the specified ClassLoader, invoking all handlers registered for it. Should be called when the classes of
+	 * a ClassLoader will no longer be used, like when a plugin gets unloaded.
+	 * @param loader the ClassLoader to purge
+	 */
+	void purge(ClassLoader loader);
+
+	/**
+	 * Handler invoked when a ClassLoader gets purged.
+	 */
+	@FunctionalInterface
+	interface PurgeHandler {
+
+		/**
+		 * Invoked when the specified ClassLoader gets purged. Implementations must release all references to classes defined by this loader.
+		 * @param loader the ClassLoader that gets purged
+		 */
+		void purge(ClassLoader loader);
+	}
+
+}
@@ -0,0 +1,26 @@
+package org.spicefactory.parsley.core.state;
+
+import org.spicefactory.parsley.core.state.impl.DefaultClassLoaderManager;
+
+/**
+ * Global state shared by all Context instances of the application.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class GlobalState {
+
+	private static final ClassLoaderManager CLASS_LOADERS = new DefaultClassLoaderManager();
+
+	/**
+	 * The manager for all ClassLoaders whose types are cached by the framework. Applications unloading plugins should call
+	 * <code>purge</code> on this instance with the ClassLoader of the plugin.
+	 */
+	public static ClassLoaderManager classLoaders() {
+		return CLASS_LOADERS;
+	}
+
+	// Private.
+	private GlobalState() {
+		//
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.spicefactory.parsley.core.state.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.inject.Singleton;
+
+import org.spicefactory.parsley.core.state.ClassLoaderManager;
+
+/**
+ * Default implementation of the ClassLoaderManager interface.
+ * <p>
+ * ClassLoaders and handlers are both held weakly, so this instance never keeps a ClassLoader or the service that registered a handler
+ * reachable: a handler is only invoked as long as its service is reachable by other means. Handlers are invoked outside of the lock guarding
+ * the registrations, so they may add or remove handlers themselves.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+@Singleton
+public class DefaultClassLoaderManager implements ClassLoaderManager {
+
+	private final Map<ClassLoader, List<WeakReference<PurgeHandler>>> handlers = new WeakHashMap<ClassLoader, List<WeakReference<PurgeHandler>>>();
+
+	@Override
+	public void addPurgeHandler(ClassLoader loader, PurgeHandler handler) {
+		synchronized (handlers) {
+			List<WeakReference<PurgeHandler>> loaderHandlers = handlers.get(loader);
+			if (loaderHandlers == null) {
+				loaderHandlers = new ArrayList<WeakReference<PurgeHandler>>();
+				handlers.put(loader, loaderHandlers);
+			}
+
+			final Iterator<WeakReference<PurgeHandler>> references = loaderHandlers.iterator();
+			while (references.hasNext()) {
+				final PurgeHandler existing = references.next().get();
+				if (existing == handler) {
+					return;
+				}
+				if (existing == null) {
+					references.remove();
+				}
+			}
+			loaderHandlers.add(new WeakReference<PurgeHandler>(handler));
+		}
+	}
+
+	@Override
+	public void removePurgeHandler(ClassLoader loader, PurgeHandler handler) {
+		synchronized (handlers) {
+			final List<WeakReference<PurgeHandler>> loaderHandlers = handlers.get(loader);
+			if (loaderHandlers == null) {
+				return;
+			}
+			final Iterator<WeakReference<PurgeHandler>> references = loaderHandlers.iterator();
+			while (references.hasNext()) {
+				final PurgeHandler existing = references.next().get();
+				if (existing == handler || existing == null) {
+					references.remove();
+				}
+			}
+			if (loaderHandlers.isEmpty()) {
+				handlers.remove(loader);
+			}
+		}
+	}
+
+	@Override
+	public void purge(ClassLoader loader) {
+		final List<WeakReference<PurgeHandler>> loaderHandlers;
+		synchronized (handlers) {
+			loaderHandlers = handlers.remove(loader);
+		}
+		if (loaderHandlers == null) {
+			return;
+		}
+		for (WeakReference<PurgeHandler> reference : loaderHandlers) {
+			final PurgeHandler handler = reference.get();
+			if (handler != null) {
+				handler.purge(loader);
+			}
+		}
+	}
+
+}
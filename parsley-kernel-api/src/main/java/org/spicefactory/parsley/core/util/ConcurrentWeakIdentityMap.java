@@ -0,0 +1,172 @@
+package org.spicefactory.parsley.core.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe map comparing keys by identity and holding them weakly.
+ * <p>
+ * Entries whose key has been garbage collected are expunged by the next modifying operation. Values are held strongly, so a value must not
+ * reference its own key, or the key will never be collected.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class ConcurrentWeakIdentityMap<K, V> {
+
+	private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<Object, V>();
+	private final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+	/**
+	 * Returns the value mapped to the specified key, or null if there is none.
+	 */
+	public V get(K key) {
+		return map.get(new LookupKey(key));
+	}
+
+	/**
+	 * Indicates whether a value is mapped to the specified key.
+	 */
+	public boolean containsKey(K key) {
+		return map.containsKey(new LookupKey(key));
+	}
+
+	/**
+	 * Maps the specified value to the specified key.
+	 * @return the value previously mapped to the key, or null if there was none
+	 */
+	public V put(K key, V value) {
+		expungeStaleEntries();
+		return map.put(new IdentityWeakReference<K>(key, queue), value);
+	}
+
+	/**
+	 * Maps the specified value to the specified key unless a value is already mapped to it.
+	 * @return the value already mapped to the key, or null if the specified value has been mapped
+	 */
+	public V putIfAbsent(K key, V value) {
+		expungeStaleEntries();
+		return map.putIfAbsent(new IdentityWeakReference<K>(key, queue), value);
+	}
+
+	/**
+	 * Removes the value mapped to the specified key.
+	 * @return the value previously mapped to the key, or null if there was none
+	 */
+	public V remove(K key) {
+		expungeStaleEntries();
+		return map.remove(new LookupKey(key));
+	}
+
+	/**
+	 * Removes the entry for the specified key only if it is currently mapped to the specified value.
+	 * @return true if the entry was removed
+	 */
+	public boolean remove(K key, V value) {
+		expungeStaleEntries();
+		return map.remove(new LookupKey(key), value);
+	}
+
+	/**
+	 * Returns a snapshot of the keys that have not been garbage collected.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<K> keys() {
+		final List<K> keys = new ArrayList<K>(map.size());
+		for (Object key : map.keySet()) {
+			final Object referent = ((IdentityWeakReference<?>) key).get();
+			if (referent != null) {
+				keys.add((K) referent);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the number of entries, including entries whose key has been collected but which have not been expunged yet.
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Removes all entries whose key has been garbage collected.
+	 */
+	public void expungeStaleEntries() {
+		Reference<? extends K> reference;
+		while ((reference = queue.poll()) != null) {
+			map.remove(reference);
+		}
+	}
+
+	/**
+	 * The key stored in the map. Once cleared, it is only equal to itself, which still allows to remove its entry.
+	 */
+	private static final class IdentityWeakReference<K> extends WeakReference<K> {
+
+		private final int hash;
+
+		IdentityWeakReference(K referent, ReferenceQueue<K> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (o instanceof LookupKey) {
+				final Object referent = get();
+				return referent != null && referent == ((LookupKey) o).referent;
+			}
+			if (o instanceof IdentityWeakReference) {
+				final Object referent = get();
+				return referent != null && referent == ((IdentityWeakReference<?>) o).get();
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A short-lived strong key used for lookups, avoiding the registration of a reference with the queue.
+	 */
+	private static final class LookupKey {
+
+		private final Object referent;
+		private final int hash;
+
+		LookupKey(Object referent) {
+			this.referent = referent;
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (o instanceof IdentityWeakReference) {
+				return referent == ((IdentityWeakReference<?>) o).get();
+			}
+			return o instanceof LookupKey && referent == ((LookupKey) o).referent;
+		}
+	}
+
+}
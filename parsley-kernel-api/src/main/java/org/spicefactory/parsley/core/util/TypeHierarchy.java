@@ -0,0 +1,57 @@
+package org.spicefactory.parsley.core.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Precomputed index of the supertypes of a class, used to match receivers or observers registered for a type against instances of its
+ * sub-types.
+ * <p>
+ * The hierarchy of each class is computed once and held in a <code>ClassValue</code>, so lookups on the dispatch path never walk the class
+ * hierarchy nor load classes, and the index does not prevent a ClassLoader from being unloaded.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class TypeHierarchy {
+
+	private static final ClassValue<List<Class<?>>> HIERARCHY = new ClassValue<List<Class<?>>>() {
+
+		@Override
+		protected List<Class<?>> computeValue(Class<?> type) {
+			Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				types.add(c);
+			}
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				addInterfaces(c, types);
+			}
+			return Collections.unmodifiableList(new ArrayList<Class<?>>(types));
+		}
+
+		private void addInterfaces(Class<?> type, Set<Class<?>> types) {
+			for (Class<?> i : type.getInterfaces()) {
+				if (types.add(i)) {
+					addInterfaces(i, types);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Returns the specified type, all its superclasses and all interfaces it implements, starting with the type itself.
+	 * @param type the type to return the hierarchy for
+	 * @return the specified type and all its supertypes
+	 */
+	public static List<Class<?>> of(Class<?> type) {
+		return HIERARCHY.get(type);
+	}
+
+	// Private.
+	private TypeHierarchy() {
+		//
+	}
+
+}
@@ -51,6 +51,14 @@ public class ViewConfiguration {
 	 */
 	public boolean reuse;
 
+	/**
+	 * The plan the target has been processed with.
+	 * <p>
+	 * Only kept by the <code>ViewProcessor</code> when <code>reuse</code> is set, so that subsequent life-cycles of the view apply the same plan
+	 * without resolving it again.
+	 */
+	public @Nullable ViewPlan plan;
+
 	/**
 	 * Creates a new instance.
 	 * <p>
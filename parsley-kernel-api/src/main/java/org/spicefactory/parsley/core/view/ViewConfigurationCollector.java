@@ -0,0 +1,218 @@
+package org.spicefactory.parsley.core.view;
+
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.events.ViewConfigurationEvent;
+import org.spicefactory.parsley.core.util.ConcurrentWeakIdentityMap;
+import org.spicefactory.parsley.core.view.ViewConfiguration.CompleteHandler;
+import org.spicefactory.parsley.core.view.impl.DefaultViewManager;
+
+/**
+ * Collects view configurations raised on the event dispatch thread and dispatches them in bulk.
+ * <p>
+ * Configurations added during one tick of the event dispatch thread, or between <code>begin</code> and <code>end</code> of an explicit batch
+ * like the one opened by <code>ViewManager.addViewRoot</code>, are grouped by the parent of their view. Siblings that are no view root share
+ * the nearest Context in the view hierarchy, so each group is dispatched as a single <code>ViewConfigurationEvent</code> from the view of its
+ * first configuration, which lets the Context resolve definitions once per configuration id or class instead of once per component. A view
+ * that is a view root dispatches its configurations on its own, so that they reach the Context attached to it.
+ * </p>
+ * <p>
+ * A group failing to dispatch is logged and does not prevent the remaining groups from being dispatched.
+ * </p>
+ * <p>
+ * An event not consumed by its source is passed to the receiver of the nearest view root in the hierarchy of the source, as AWT does not
+ * bubble custom events. Receivers are registered by the Contexts attached to view roots, and referenced only as long as their view root.
+ * </p>
+ * <p>
+ * Configurations added from another thread are dispatched immediately, one per event.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class ViewConfigurationCollector {
+
+	/**
+	 * Receives the view configuration events dispatched below a view root, usually on behalf of the Context attached to it.
+	 */
+	@FunctionalInterface
+	public interface Receiver {
+
+		/**
+		 * Processes the specified event, which has already been marked as received.
+		 * @param event the event to process
+		 */
+		void receive(ViewConfigurationEvent event);
+
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(ViewConfigurationCollector.class);
+
+	private static final ConcurrentWeakIdentityMap<Component, Receiver> receivers = new ConcurrentWeakIdentityMap<Component, Receiver>();
+
+	// Only accessed from the event dispatch thread.
+	private static List<Pending> pending = new ArrayList<Pending>();
+	private static int depth;
+	private static boolean scheduled;
+
+	private static final Runnable FLUSH = new Runnable() {
+
+		@Override
+		public void run() {
+			scheduled = false;
+			if (depth == 0) {
+				flush();
+			}
+		}
+	};
+
+	/**
+	 * Adds a configuration to the current batch, or dispatches it immediately when not invoked on the event dispatch thread.
+	 * @param config the configuration to process
+	 * @param callback the callback to invoke after the configuration has been processed
+	 */
+	public static void add(ViewConfiguration config, @Nullable CompleteHandler callback) {
+		if (!EventQueue.isDispatchThread()) {
+			dispatch(config.view, new ViewConfiguration[] {config}, callback);
+			return;
+		}
+
+		pending.add(new Pending(config, callback));
+		if (depth == 0 && !scheduled) {
+			scheduled = true;
+			EventQueue.invokeLater(FLUSH);
+		}
+	}
+
+	/**
+	 * Registers the receiver of the events dispatched from the specified view root or any component below it. Replaces a receiver registered
+	 * previously for the same view root.
+	 * @param viewRoot the view root to receive events for
+	 * @param receiver the receiver of the events
+	 */
+	public static void addReceiver(Component viewRoot, Receiver receiver) {
+		receivers.put(viewRoot, receiver);
+	}
+
+	/**
+	 * Unregisters the receiver of the specified view root, if it is still registered.
+	 * @param viewRoot the view root to stop receiving events for
+	 * @param receiver the receiver to unregister
+	 */
+	public static void removeReceiver(Component viewRoot, Receiver receiver) {
+		receivers.remove(viewRoot, receiver);
+	}
+
+	/**
+	 * Opens an explicit batch on the event dispatch thread. Configurations added until the matching <code>end</code> are dispatched together.
+	 * Batches may be nested.
+	 */
+	public static void begin() {
+		if (EventQueue.isDispatchThread()) {
+			depth++;
+		}
+	}
+
+	/**
+	 * Closes an explicit batch, dispatching all collected configurations when the outermost batch gets closed.
+	 */
+	public static void end() {
+		if (EventQueue.isDispatchThread() && depth > 0 && --depth == 0) {
+			flush();
+		}
+	}
+
+	private static void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		final List<Pending> batch = pending;
+		pending = new ArrayList<Pending>();
+
+		final Map<Component, List<Pending>> groups = new IdentityHashMap<Component, List<Pending>>();
+		final List<Component> keys = new ArrayList<Component>();
+		for (Pending p : batch) {
+			// A view removed from its parent meanwhile, or hosting a Context itself, dispatches on its own.
+			final Component view = p.config.view;
+			final Component key = (view.getParent() != null && !DefaultViewManager.isViewRoot(view)) ? view.getParent() : view;
+			List<Pending> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Pending>();
+				groups.put(key, group);
+				keys.add(key);
+			}
+			group.add(p);
+		}
+
+		for (Component key : keys) {
+			final List<Pending> group = groups.get(key);
+			final ViewConfiguration[] configurations = new ViewConfiguration[group.size()];
+			final List<CompleteHandler> callbacks = new ArrayList<CompleteHandler>(group.size());
+			for (int i = 0; i < configurations.length; i++) {
+				configurations[i] = group.get(i).config;
+				if (group.get(i).callback != null) {
+					callbacks.add(group.get(i).callback);
+				}
+			}
+			try {
+				dispatch(configurations[0].view, configurations, callbacks.isEmpty() ? null : () -> {
+					for (CompleteHandler callback : callbacks) {
+						callback.configurationComplete();
+					}
+				});
+			}
+			catch (RuntimeException e) {
+				logger.error("Failed to dispatch {} view configuration(s) from {}.", configurations.length, configurations[0].view, e);
+			}
+		}
+	}
+
+	private static void dispatch(Component source, ViewConfiguration[] configurations, @Nullable CompleteHandler callback) {
+		final ViewConfigurationEvent event = ViewConfigurationEvent.forConfigurations(configurations, callback);
+		source.dispatchEvent(event);
+		if (!event.received() && !deliver(source, event)) {
+			for (ViewConfiguration config : configurations) {
+				logger.warn("View configuration could not be processed for target {}: no Context found in view hierarchy.", config.target);
+			}
+		}
+	}
+
+	/**
+	 * Passes the event to the receiver of the nearest view root in the hierarchy of the source, if any.
+	 */
+	private static boolean deliver(Component source, ViewConfigurationEvent event) {
+		for (Component c = source; c != null; c = c.getParent()) {
+			final Receiver receiver = receivers.get(c);
+			if (receiver != null) {
+				event.markAsReceived();
+				receiver.receive(event);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Pending {
+
+		final ViewConfiguration config;
+		final CompleteHandler callback;
+
+		Pending(ViewConfiguration config, CompleteHandler callback) {
+			this.config = config;
+			this.callback = callback;
+		}
+	}
+
+	// Private.
+	private ViewConfigurationCollector() {
+		//
+	}
+
+}
@@ -0,0 +1,43 @@
+package org.spicefactory.parsley.core.view;
+
+import org.spicefactory.parsley.core.context.Context;
+
+/**
+ * The precomputed processing of view targets of a single class, resolved against a single Context.
+ * <p>
+ * A ViewProcessor may attach the plan to a reused <code>ViewConfiguration</code>, so that processing the same target again does not resolve
+ * anything.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface ViewPlan {
+
+	/**
+	 * The class of the targets this plan applies to.
+	 */
+	Class<?> type();
+
+	/**
+	 * The Context this plan has been resolved against.
+	 */
+	Context context();
+
+	/**
+	 * Performs all work of this plan which does not touch the target, like creating the objects to inject, and returns the remaining steps.
+	 * <p>
+	 * This method may be invoked on any thread, the returned steps must be run on the event dispatch thread.
+	 * </p>
+	 * @param config the configuration to process, whose target, or view without target, is an instance of exactly the class of this plan
+	 * @return the steps applying the prepared work to the target
+	 */
+	Runnable prepare(ViewConfiguration config);
+
+	/**
+	 * Applies this plan to the target of the specified configuration on the current thread.
+	 * @param config the configuration to process, whose target, or view without target, is an instance of exactly the class of this plan
+	 */
+	default void apply(ViewConfiguration config) {
+		prepare(config).run();
+	}
+
+}
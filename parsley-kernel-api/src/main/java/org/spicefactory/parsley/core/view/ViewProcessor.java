@@ -1,5 +1,27 @@
 package org.spicefactory.parsley.core.view;
 
+import org.spicefactory.parsley.core.context.Context;
+
+/**
+ * Responsible for processing a single view configuration, like injecting dependencies into its target or adding it to the Context.
+ * <p>
+ * A new processor instance is used for each configuration, so implementations may keep state between <code>init</code> and
+ * <code>destroy</code>.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
 public interface ViewProcessor {
 
+	/**
+	 * Processes the specified view configuration.
+	 * @param config the view configuration to process
+	 * @param context the Context the view configuration is processed by
+	 */
+	void init(ViewConfiguration config, Context context);
+
+	/**
+	 * Invoked when the view of the processed configuration has been removed from the stage.
+	 */
+	void destroy();
+
 }
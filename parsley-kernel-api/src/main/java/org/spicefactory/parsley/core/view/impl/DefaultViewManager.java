@@ -1,8 +1,10 @@
 package org.spicefactory.parsley.core.view.impl;
 
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.event.ContainerEvent;
 import java.awt.event.ContainerListener;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -16,6 +18,8 @@ import org.slf4j.Logger;
 import org.spicefactory.parsley.core.context.Context;
 import org.spicefactory.parsley.core.context.ContextListener;
 import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.util.ConcurrentWeakIdentityMap;
+import org.spicefactory.parsley.core.view.ViewConfigurationCollector;
 import org.spicefactory.parsley.core.view.ViewManager;
 import org.spicefactory.parsley.core.view.ViewRootHandler;
 import org.spicefactory.parsley.core.view.ViewSettings;
@@ -40,7 +44,13 @@ public class DefaultViewManager implements ViewManager, ContainerListener, Conte
 
 	private final Map<Container, ViewRoot> viewRoots = new IdentityHashMap<Container, DefaultViewManager.ViewRoot>();
 
-	private final static Map<Container, ViewManager> viewRootRegistry = new IdentityHashMap<Container, ViewManager>();
+	/**
+	 * The ViewManager of each view root, application-wide. Managers are referenced weakly as well, since they reference their view roots.
+	 */
+	private final static ConcurrentWeakIdentityMap<Container, WeakReference<ViewManager>> viewRootRegistry =
+			new ConcurrentWeakIdentityMap<Container, WeakReference<ViewManager>>();
+
+	private final WeakReference<ViewManager> registryEntry = new WeakReference<ViewManager>(this);
 
 	@Inject
 	DefaultViewManager(Context c, @Nullable ViewSettings s) {
@@ -60,6 +70,19 @@ public class DefaultViewManager implements ViewManager, ContainerListener, Conte
 		}
 	}
 
+	/**
+	 * Indicates whether the specified component is a view root of a live ViewManager, and thus hosts its own Context.
+	 * @param view the component to check
+	 * @return true if the specified component is a view root
+	 */
+	public static boolean isViewRoot(Component view) {
+		if (!(view instanceof Container)) {
+			return false;
+		}
+		final WeakReference<ViewManager> entry = viewRootRegistry.get((Container) view);
+		return entry != null && entry.get() != null;
+	}
+
 	@Override
 	public void addViewRoot(Container view) {
 		if (viewRoots.containsKey(view)) {
@@ -67,13 +90,13 @@ public class DefaultViewManager implements ViewManager, ContainerListener, Conte
 		}
 		logger.trace("Adding view root {}/{}.", view.getName(), view.getClass());
 
-		if (viewRootRegistry.containsKey(view)) {
+		WeakReference<ViewManager> previous = viewRootRegistry.put(view, registryEntry);
+		ViewManager viewManager = (previous != null) ? previous.get() : null;
+		if (viewManager != null && viewManager != this) {
 			// Does not allows two view managers on the same view, but allows switching them.
 			logger.trace("Switching ViewManager for view root '{}'.", view.getClass());
-			ViewManager viewManager = viewRootRegistry.get(view);
 			viewManager.removeViewRoot(view);
 		}
-		viewRootRegistry.put(view, this);
 
 		boolean autoRemove = settings.autoRemoveViewRoots();
 		if (autoRemove) {
@@ -84,8 +107,15 @@ public class DefaultViewManager implements ViewManager, ContainerListener, Conte
 
 		viewRoots.put(view, new ViewRoot(view, autoRemove));
 
-		for (ViewRootHandler handler : handlers) {
-			handler.addViewRoot(view);
+		// Views configured while the handlers process the new root get dispatched together.
+		ViewConfigurationCollector.begin();
+		try {
+			for (ViewRootHandler handler : handlers) {
+				handler.addViewRoot(view);
+			}
+		}
+		finally {
+			ViewConfigurationCollector.end();
 		}
 	}
 
@@ -113,7 +143,8 @@ public class DefaultViewManager implements ViewManager, ContainerListener, Conte
 			// TODO: implement if needed.
 		}
 
-		viewRootRegistry.remove(viewRoot);
+		// Only removes the entry if the view root has not been switched to another ViewManager meanwhile.
+		viewRootRegistry.remove(viewRoot.view, registryEntry);
 	}
 
 	///////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,181 @@
+package org.spicefactory.parsley.core.binding.impl;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.spicefactory.parsley.core.binding.Publisher;
+import org.spicefactory.parsley.core.binding.Subscriber;
+
+/**
+ * Checks the coalescing, the failure handling and the clean-up of the default binding manager on an executor run by hand.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultBindingManagerTest {
+
+	private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+	private boolean rejecting;
+	private final Executor executor = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			if (rejecting) {
+				throw new RejectedExecutionException();
+			}
+			tasks.add(command);
+		}
+	};
+	private final DefaultBindingManager manager = new DefaultBindingManager(new DefaultPersistenceManager(), "scope");
+
+	public void testBurstDeliveredOnce() {
+		final Source source = new Source();
+		final Sink sink = new Sink();
+		manager.addPublisher(source);
+		manager.addSubscriber(sink);
+		manager.publish(source, "a");
+		manager.publish(source, "b");
+		manager.publish(source, "c");
+		check(tasks.size() == 1, "One delivery task expected: " + tasks.size());
+
+		runTasks();
+		check(sink.values.equals(Arrays.asList("c")), "Burst not coalesced: " + sink.values);
+	}
+
+	public void testSubscriberGetsCurrentValue() {
+		final Source source = new Source();
+		manager.addPublisher(source);
+		manager.publish(source, "a");
+
+		final Sink sink = new Sink();
+		manager.addSubscriber(sink);
+		runTasks();
+		check(sink.values.equals(Arrays.asList("a")), "Current value not delivered: " + sink.values);
+		check("a".equals(manager.currentValue(String.class, null)), "Unexpected current value");
+	}
+
+	public void testErrorInSubscriberKeepsQueueDelivering() {
+		final Source source = new Source();
+		final Sink failing = new Sink() {
+
+			@Override
+			public void update(Object newValue) {
+				throw new LinkageError("update");
+			}
+		};
+		final Sink sink = new Sink();
+		manager.addPublisher(source);
+		manager.addSubscriber(failing);
+		manager.addSubscriber(sink);
+		manager.publish(source, "a");
+		try {
+			tasks.poll().run();
+			throw new AssertionError("Error swallowed");
+		}
+		catch (LinkageError expected) {
+			// Expected.
+		}
+
+		runTasks();
+		check(sink.values.equals(Arrays.asList("a")), "Remaining subscriber not updated: " + sink.values);
+		manager.removeSubscriber(failing);
+		manager.publish(source, "b");
+		runTasks();
+		check(sink.values.equals(Arrays.asList("a", "b")), "Queue stalled: " + sink.values);
+	}
+
+	public void testRejectedExecutionRecovers() {
+		final Source source = new Source();
+		final Sink sink = new Sink();
+		manager.addPublisher(source);
+		manager.addSubscriber(sink);
+
+		rejecting = true;
+		manager.publish(source, "a");
+		rejecting = false;
+		manager.publish(source, "b");
+		runTasks();
+		check(sink.values.equals(Arrays.asList("b")), "Subscriber not updated after rejection: " + sink.values);
+	}
+
+	public void testUnusedSlotDropped() throws Exception {
+		final Source source = new Source();
+		final Sink sink = new Sink();
+		manager.addPublisher(source);
+		manager.addSubscriber(sink);
+		manager.publish(source, "a");
+		check(slots().size() == 1, "Slot not created");
+
+		manager.removePublisher(source);
+		check(slots().size() == 1, "Slot dropped while subscribed");
+		manager.removeSubscriber(sink);
+		check(slots().isEmpty(), "Unused slot kept");
+	}
+
+	private Map<?, ?> slots() throws Exception {
+		final Field field = DefaultBindingManager.class.getDeclaredField("slots");
+		field.setAccessible(true);
+		return (Map<?, ?>) field.get(manager);
+	}
+
+	private void runTasks() {
+		for (Runnable task; (task = tasks.poll()) != null;) {
+			task.run();
+		}
+	}
+
+	private static class Source implements Publisher {
+
+		@Override
+		public Class<?> type() {
+			return String.class;
+		}
+
+		@Override
+		public String id() {
+			return null;
+		}
+
+		@Override
+		public boolean persistent() {
+			return false;
+		}
+	}
+
+	private class Sink implements Subscriber {
+
+		final List<Object> values = new ArrayList<Object>();
+
+		@Override
+		public Class<?> type() {
+			return String.class;
+		}
+
+		@Override
+		public String id() {
+			return null;
+		}
+
+		@Override
+		public Executor executor() {
+			return executor;
+		}
+
+		@Override
+		public void update(Object newValue) {
+			values.add(newValue);
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
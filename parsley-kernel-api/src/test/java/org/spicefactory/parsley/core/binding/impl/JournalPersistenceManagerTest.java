@@ -0,0 +1,128 @@
+package org.spicefactory.parsley.core.binding.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.parsley.core.binding.ValueCodec;
+
+/**
+ * Checks that the journal rebuilds its index from the file, discards torn records and keeps the live values when compacted.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class JournalPersistenceManagerTest {
+
+	public void testScanRestoresLiveValues() throws IOException {
+		final Path file = newFile();
+		JournalPersistenceManager journal = open(file);
+		journal.saveValue("scope", "a", 1);
+		journal.saveValue("scope", "b", "value");
+		journal.saveValue("scope", "a", 2);
+		journal.deleteValue("scope", "b");
+		journal.close();
+
+		journal = open(file);
+		check(journal.getValue("scope", "a", Integer.class) == 2, "Latest value not restored");
+		check(journal.getValue("scope", "b", String.class) == null, "Deleted value restored");
+		journal.close();
+	}
+
+	public void testScanDiscardsTornRecord() throws IOException {
+		final Path file = newFile();
+		JournalPersistenceManager journal = open(file);
+		journal.saveValue("scope", "a", "first");
+		journal.saveValue("scope", "b", "second");
+		journal.close();
+
+		// Flips a byte in the content of the second record, as if it had been torn by a crash.
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final ByteBuffer length = ByteBuffer.allocate(4);
+			channel.read(length, 8);
+			final long second = 8 + 4 + length.getInt(0);
+			final ByteBuffer content = ByteBuffer.allocate(1);
+			channel.read(content, second + 9);
+			content.put(0, (byte) ~content.get(0)).rewind();
+			channel.write(content, second + 9);
+		}
+
+		journal = open(file);
+		check("first".equals(journal.getValue("scope", "a", String.class)), "Value before the torn record lost");
+		check(journal.getValue("scope", "b", String.class) == null, "Torn record restored");
+		journal.saveValue("scope", "c", "third");
+		journal.close();
+
+		journal = open(file);
+		check("third".equals(journal.getValue("scope", "c", String.class)), "Record written over the torn one lost");
+		journal.close();
+	}
+
+	public void testCompactionKeepsLiveValues() throws IOException {
+		final Path file = newFile();
+		JournalPersistenceManager journal = open(file);
+		final byte[] payload = new byte[64 * 1024];
+		for (int i = 0; i < 24; i++) {
+			payload[0] = (byte) i;
+			journal.saveValue("scope", "bulk", payload.clone());
+		}
+		journal.saveValue("scope", "small", "kept");
+		final long before = Files.size(file);
+
+		journal.compactIfNeeded();
+		check(Files.size(file) < before, "Journal not compacted: " + Files.size(file));
+		check(journal.getValue("scope", "bulk", byte[].class)[0] == 23, "Latest value lost by compaction");
+		journal.saveValue("scope", "after", "appended");
+		journal.close();
+
+		journal = open(file);
+		check(journal.getValue("scope", "bulk", byte[].class)[0] == 23, "Compacted journal not restored");
+		check("kept".equals(journal.getValue("scope", "small", String.class)), "Compacted value lost");
+		check("appended".equals(journal.getValue("scope", "after", String.class)), "Value appended after compaction lost");
+		journal.close();
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void testValueReadWithCodecOfSupertype() throws IOException {
+		final JournalPersistenceManager journal = open(newFile()).codec(List.class, new ValueCodec<List>() {
+
+			@Override
+			public void encode(List value, DataOutput out) throws IOException {
+				out.writeInt(value.size());
+			}
+
+			@Override
+			public List decode(DataInput in) throws IOException {
+				return new ArrayList<Object>(Arrays.asList(new Object[in.readInt()]));
+			}
+		});
+		journal.saveValue("scope", "list", new ArrayList<Object>(Arrays.asList("a", "b")));
+		check(journal.getValue("scope", "list", ArrayList.class).size() == 2, "Value not decoded");
+		journal.close();
+	}
+
+	private static JournalPersistenceManager open(Path file) throws IOException {
+		// Compaction is triggered by hand.
+		return new JournalPersistenceManager(file, null, 1, TimeUnit.DAYS);
+	}
+
+	private static Path newFile() throws IOException {
+		final Path file = Files.createTempFile("journal", ".bin");
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
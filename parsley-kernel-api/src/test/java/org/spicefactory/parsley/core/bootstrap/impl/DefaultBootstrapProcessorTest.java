@@ -0,0 +1,152 @@
+package org.spicefactory.parsley.core.bootstrap.impl;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.spicefactory.parsley.core.binding.impl.DefaultPersistenceManager;
+import org.spicefactory.parsley.core.bootstrap.BootstrapInfo;
+import org.spicefactory.parsley.core.bootstrap.ConfigurationProcessor;
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.context.ReceiverSource;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.messaging.impl.DefaultIdempotencyCache;
+import org.spicefactory.parsley.core.messaging.impl.PriorityDispatchQueue;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+import org.spicefactory.parsley.core.scope.impl.DefaultScopeIndex;
+import org.spicefactory.parsley.core.state.impl.DefaultClassLoaderManager;
+
+/**
+ * Checks that a failing bootstrap releases the scopes and the Context it created.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultBootstrapProcessorTest {
+
+	private static final Executor DIRECT = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final RecordingScopeIndex scopeIndex = new RecordingScopeIndex();
+	private final BootstrapInfo info = new DefaultBootstrapInfo(new DefaultClassLoaderManager(), scopeIndex, new DefaultPersistenceManager(),
+			new PriorityDispatchQueue(DIRECT), new DefaultIdempotencyCache());
+
+	public void testErrorInProcessorReleasesScopes() {
+		final DefaultBootstrapProcessor processor = new DefaultBootstrapProcessor(info, null, null);
+		processor.addProcessor(new FailingProcessor(false));
+		try {
+			processor.process();
+			throw new AssertionError("Error not thrown");
+		}
+		catch (LinkageError expected) {
+			// Expected.
+		}
+		check(scopeIndex.registered.isEmpty(), "Scopes still registered: " + scopeIndex.registered.size());
+	}
+
+	public void testErrorInReceiverSourceDestroysContext() {
+		final DefaultBootstrapProcessor processor = new DefaultBootstrapProcessor(info, null, null);
+		final FailingProcessor failing = new FailingProcessor(true);
+		processor.addProcessor(failing);
+		try {
+			processor.process();
+			throw new AssertionError("Error not thrown");
+		}
+		catch (LinkageError expected) {
+			// Expected.
+		}
+		check(failing.destroyed, "Context not destroyed");
+		check(scopeIndex.registered.isEmpty(), "Scopes still registered: " + scopeIndex.registered.size());
+	}
+
+	public void testAsyncFailureDestroysContext() throws Exception {
+		final DefaultBootstrapProcessor processor = new DefaultBootstrapProcessor(info, null, DIRECT);
+		processor.addProcessor(new FailingProcessor(false));
+		final Context context = processor.process();
+		try {
+			context.initialization().toCompletableFuture().get();
+			throw new AssertionError("Initialization completed");
+		}
+		catch (ExecutionException expected) {
+			check(expected.getCause() instanceof LinkageError, "Unexpected failure: " + expected.getCause());
+		}
+		check(scopeIndex.registered.isEmpty(), "Scopes still registered: " + scopeIndex.registered.size());
+		try {
+			context.getProvider(String.class);
+			throw new AssertionError("Context not destroyed");
+		}
+		catch (IllegalStateException expected) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Fails with an Error when processing its configuration, or when registering its receivers.
+	 */
+	private static final class FailingProcessor implements ConfigurationProcessor, ReceiverSource {
+
+		private final boolean failOnRegistration;
+		private volatile boolean destroyed;
+
+		FailingProcessor(boolean failOnRegistration) {
+			this.failOnRegistration = failOnRegistration;
+		}
+
+		@Override
+		public void processConfiguration(BootstrapInfo info) {
+			if (!failOnRegistration) {
+				throw new LinkageError("processConfiguration");
+			}
+		}
+
+		@Override
+		public void registerReceivers(Context context, Map<String, MessageReceiverRegistry> scopes) {
+			context.addContextListener(new ContextListener() {
+
+				@Override
+				public void contextDestroyed(ContextEvent e) {
+					destroyed = true;
+				}
+			}, ContextEvent.DESTROYED);
+			throw new LinkageError("registerReceivers");
+		}
+	}
+
+	private static final class RecordingScopeIndex implements ScopeIndex {
+
+		private final ScopeIndex delegate = new DefaultScopeIndex();
+		private final Set<String> registered = new HashSet<String>();
+
+		@Override
+		public void register(ScopeInfo scope) {
+			delegate.register(scope);
+			registered.add(scope.uuid());
+		}
+
+		@Override
+		public void unregister(ScopeInfo scope) {
+			delegate.unregister(scope);
+			registered.remove(scope.uuid());
+		}
+
+		@Override
+		public ScopeInfo get(String uuid) {
+			return delegate.get(uuid);
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.spicefactory.parsley.core.context.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import javax.inject.Provider;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ProviderSource;
+
+/**
+ * Checks when the lookups of a Context get cached and that they fail once a parent has been destroyed.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultContextTest {
+
+	private int lookups;
+
+	private final ProviderSource source = new ProviderSource() {
+
+		@Override
+		public <T> Provider<T> getProvider(final Class<T> type) {
+			lookups++;
+			if (type != String.class) {
+				return null;
+			}
+			return new Provider<T>() {
+
+				@Override
+				public T get() {
+					return type.cast("parent");
+				}
+			};
+		}
+	};
+
+	public void testLookupsCachedOnceAncestorsConfigured() {
+		final CompletableFuture<Void> parentConfiguration = new CompletableFuture<Void>();
+		final DefaultContext parent = new DefaultContext(null, Arrays.asList(source), parentConfiguration);
+		final DefaultContext child = new DefaultContext(new Context[] { parent }, Collections.<ProviderSource> emptyList(),
+				CompletableFuture.completedFuture(null));
+
+		child.getProvider(String.class);
+		child.getProvider(String.class);
+		check(lookups == 2, "Lookup cached before the parent has been configured: " + lookups);
+
+		parentConfiguration.complete(null);
+		check(child.getInstance(String.class).equals("parent"), "Provider of the parent not found");
+		child.getProvider(String.class);
+		check(lookups == 3, "Lookup not cached once the hierarchy has been configured: " + lookups);
+	}
+
+	public void testLookupFailsOnceParentDestroyed() {
+		final DefaultContext parent = new DefaultContext(null, Arrays.asList(source), CompletableFuture.completedFuture(null));
+		final DefaultContext child = new DefaultContext(new Context[] { parent }, Collections.<ProviderSource> emptyList(),
+				CompletableFuture.completedFuture(null));
+		child.getProvider(String.class);
+
+		parent.destroy();
+		try {
+			child.getProvider(String.class);
+			throw new AssertionError("Cached provider of the destroyed parent returned");
+		}
+		catch (IllegalStateException expected) {
+			check(expected.getMessage().contains("parent"), "Unexpected failure: " + expected.getMessage());
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package org.spicefactory.parsley.core.messaging.impl;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.parsley.core.messaging.IdempotencyKey;
+
+/**
+ * Checks duplicate detection, forgetting and the bounds of the default idempotency cache.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultIdempotencyCacheTest {
+
+	static final class Keyed {
+
+		@IdempotencyKey
+		private final String key;
+
+		Keyed(String key) {
+			this.key = key;
+		}
+	}
+
+	static final class ShortLived {
+
+		private final String key;
+
+		ShortLived(String key) {
+			this.key = key;
+		}
+
+		@IdempotencyKey(ttl = 1, unit = TimeUnit.NANOSECONDS)
+		String key() {
+			return key;
+		}
+	}
+
+	public void testDuplicateDropped() {
+		final DefaultIdempotencyCache cache = new DefaultIdempotencyCache();
+		check(!cache.isDuplicate(new Keyed("a"), null), "First message dropped");
+		check(cache.isDuplicate(new Keyed("a"), null), "Duplicate not dropped");
+		check(!cache.isDuplicate(new Keyed("a"), "scope"), "Key shared across scopes");
+		check(!cache.isDuplicate(new Keyed("b"), null), "Other key dropped");
+		check(!cache.isDuplicate("a", null) && !cache.isDuplicate("a", null), "Message without key dropped");
+		check(cache.stats().hitCount() == 1 && cache.stats().size() == 3, "Unexpected stats: " + cache.stats());
+	}
+
+	public void testForgottenKeyDeliveredAgain() {
+		final DefaultIdempotencyCache cache = new DefaultIdempotencyCache();
+		final Keyed message = new Keyed("a");
+		cache.isDuplicate(message, null);
+		cache.forget(message, null);
+		check(!cache.isDuplicate(new Keyed("a"), null), "Forgotten key still remembered");
+	}
+
+	public void testForgetKeepsKeyRememberedForOtherMessage() throws Exception {
+		final DefaultIdempotencyCache cache = new DefaultIdempotencyCache();
+		final ShortLived first = new ShortLived("a");
+		cache.isDuplicate(first, null);
+		Thread.sleep(1);
+		check(!cache.isDuplicate(new ShortLived("a"), null), "Expired key still remembered");
+
+		cache.forget(first, null);
+		check(cache.stats().size() == 1, "Key of the second message forgotten");
+	}
+
+	public void testExpiredKeyReplaced() throws Exception {
+		final DefaultIdempotencyCache cache = new DefaultIdempotencyCache();
+		cache.isDuplicate(new ShortLived("a"), null);
+		Thread.sleep(1);
+		check(!cache.isDuplicate(new ShortLived("a"), null), "Expired key still remembered");
+		check(cache.stats().size() == 1, "Expired entry kept: " + cache.stats());
+	}
+
+	public void testOldestKeyEvicted() {
+		final DefaultIdempotencyCache cache = new DefaultIdempotencyCache(2);
+		cache.isDuplicate(new Keyed("a"), null);
+		cache.isDuplicate(new Keyed("b"), null);
+		cache.isDuplicate(new Keyed("c"), null);
+		check(cache.stats().evictionCount() == 1 && cache.stats().size() == 2, "Unexpected stats: " + cache.stats());
+		check(cache.isDuplicate(new Keyed("c"), null), "Newest key evicted");
+		check(!cache.isDuplicate(new Keyed("a"), null), "Oldest key kept");
+	}
+
+	public void testQueueBoundedWithForgottenKeys() throws Exception {
+		final DefaultIdempotencyCache cache = new DefaultIdempotencyCache(4);
+		final Keyed live = new Keyed("live");
+		cache.isDuplicate(live, null);
+		for (int i = 0; i < 100; i++) {
+			final Keyed message = new Keyed("k" + i);
+			cache.isDuplicate(message, null);
+			cache.forget(message, null);
+		}
+		check(order(cache).size() <= 4, "Forgotten entries accumulate: " + order(cache).size());
+		check(cache.stats().size() == 0, "Unexpected size: " + cache.stats());
+	}
+
+	public void testClear() {
+		final DefaultIdempotencyCache cache = new DefaultIdempotencyCache();
+		cache.isDuplicate(new Keyed("a"), null);
+		cache.clear();
+		check(cache.stats().size() == 0, "Keys kept");
+		check(!cache.isDuplicate(new Keyed("a"), null), "Key still remembered");
+	}
+
+	private static Collection<?> order(DefaultIdempotencyCache cache) throws Exception {
+		final Field field = DefaultIdempotencyCache.class.getDeclaredField("order");
+		field.setAccessible(true);
+		return (Collection<?>) field.get(cache);
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package org.spicefactory.parsley.core.messaging.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import org.spicefactory.parsley.core.messaging.MessageProcessor;
+import org.spicefactory.parsley.core.messaging.MessageReceiverKind;
+import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.core.state.impl.DefaultClassLoaderManager;
+
+/**
+ * Checks the receiver collections and the selection caches of the default registry.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultMessageReceiverRegistryTest {
+
+	public static class PluginMessage {
+	}
+
+	public static class PluginSubMessage extends PluginMessage {
+	}
+
+	private final DefaultClassLoaderManager classLoaderManager = new DefaultClassLoaderManager();
+	private final DefaultMessageReceiverRegistry registry = new DefaultMessageReceiverRegistry(classLoaderManager);
+
+	public void testTypeSelectorMatchesSubtypes() {
+		final Target target = new Target(String.class, CharSequence.class);
+		registry.addTarget(target);
+
+		final DefaultMessageReceiverCache cache = registry.getSelectionCache(String.class);
+		check(cache.getReceivers(MessageReceiverKind.TARGET, "value").contains(target), "Instance of the selector type not matched");
+		check(cache.getReceivers(MessageReceiverKind.TARGET, String.class).contains(target), "Selector sub-type not matched");
+		check(cache.getReceivers(MessageReceiverKind.TARGET, 42).isEmpty(), "Unrelated selector matched");
+	}
+
+	public void testSelectionsResetOnRegistration() {
+		final DefaultMessageReceiverCache cache = registry.getSelectionCache(String.class);
+		check(cache.getReceiverChain(null).size() == 0, "Chain not empty");
+
+		final Target target = new Target(Object.class, null);
+		registry.addTarget(target);
+		check(cache.getReceiverChain(null).size() == 1, "Cached chain misses the new target");
+
+		registry.removeTarget(target);
+		check(cache.getReceiverChain(null).size() == 0, "Cached chain keeps the removed target");
+	}
+
+	public void testCollectionReturnsSnapshots() {
+		final MessageReceiverCollection collection = new MessageReceiverCollection(String.class);
+		collection.addReceiver(MessageReceiverKind.TARGET, new Target(String.class, null));
+		final Set<MessageReceiver> any = collection.getReceiversBySelectorValue(MessageReceiverKind.TARGET, null);
+
+		collection.addReceiver(MessageReceiverKind.TARGET, new Target(String.class, null));
+		check(any.size() == 1, "Returned set follows the collection: " + any.size());
+		check(collection.getReceiversBySelectorValue(MessageReceiverKind.TARGET, null).size() == 2, "Receiver not added");
+	}
+
+	public void testPurgeDropsSelectionsOfSubtypes() throws Exception {
+		final ClassLoader plugin = new IsolatingLoader(getClass().getClassLoader(), PluginMessage.class.getName());
+		final ClassLoader child = new IsolatingLoader(plugin, PluginSubMessage.class.getName());
+		final Class<?> pluginType = plugin.loadClass(PluginMessage.class.getName());
+		final Class<?> childType = child.loadClass(PluginSubMessage.class.getName());
+		check(childType.getSuperclass() == pluginType, "Fixture types not related");
+
+		registry.addTarget(new Target(pluginType, null));
+		final DefaultMessageReceiverCache cache = registry.getSelectionCache(childType);
+		check(cache.getReceivers(MessageReceiverKind.TARGET, null).size() == 1, "Receiver of the supertype not selected");
+
+		// Only the plugin ClassLoader gets purged, the selection of the child type references it through its supertype.
+		classLoaderManager.purge(plugin);
+		final DefaultMessageReceiverCache purged = registry.getSelectionCache(childType);
+		check(purged != cache, "Selection of the sub-type survived the purge");
+		check(purged.getReceivers(MessageReceiverKind.TARGET, null).isEmpty(), "Receiver of the purged type survived the purge");
+	}
+
+	/**
+	 * Defines a single class itself, delegating all others to its parent.
+	 */
+	private static final class IsolatingLoader extends ClassLoader {
+
+		private final String name;
+
+		IsolatingLoader(ClassLoader parent, String name) {
+			super(parent);
+			this.name = name;
+		}
+
+		@Override
+		protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+			if (!className.equals(name)) {
+				return super.loadClass(className, resolve);
+			}
+			synchronized (getClassLoadingLock(className)) {
+				Class<?> type = findLoadedClass(className);
+				if (type == null) {
+					final byte[] bytes = read(className.replace('.', '/') + ".class");
+					type = defineClass(className, bytes, 0, bytes.length);
+				}
+				return type;
+			}
+		}
+
+		private byte[] read(String resource) throws ClassNotFoundException {
+			final InputStream in = getParent().getResourceAsStream(resource);
+			if (in == null) {
+				throw new ClassNotFoundException(resource);
+			}
+			try {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[4096];
+				for (int n; (n = in.read(buffer)) != -1;) {
+					out.write(buffer, 0, n);
+				}
+				in.close();
+				return out.toByteArray();
+			}
+			catch (IOException e) {
+				throw new ClassNotFoundException(resource, e);
+			}
+		}
+	}
+
+	private static final class Target implements MessageTarget {
+
+		private final Class<?> type;
+		private final Object selector;
+
+		Target(Class<?> type, Object selector) {
+			this.type = type;
+			this.selector = selector;
+		}
+
+		@Override
+		public Class<?> type() {
+			return type;
+		}
+
+		@Override
+		public Object selector() {
+			return selector;
+		}
+
+		@Override
+		public int order() {
+			return 0;
+		}
+
+		@Override
+		public void handleMessage(MessageProcessor processor) {
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package org.spicefactory.parsley.core.messaging.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeManager;
+
+/**
+ * Checks that the dispatchers of a Context are shared per scope and released along with the Context.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class MessageDispatcherTest {
+
+	private final List<ContextListener> listeners = new ArrayList<ContextListener>();
+	private final List<Object> dispatched = new ArrayList<Object>();
+
+	public void testSharedPerScopeWithSingleListener() {
+		final Context context = context();
+		final MessageDispatcher dispatcher = MessageDispatcher.forScope(context, Scope.GLOBAL);
+		check(MessageDispatcher.forScope(context, Scope.GLOBAL) == dispatcher, "Dispatcher not shared");
+		check(MessageDispatcher.forScope(context, null) != dispatcher, "Default scope shares the global dispatcher");
+		check(listeners.size() == 1, "Listeners per dispatcher: " + listeners.size());
+
+		dispatcher.dispatchMessage("before", null);
+		context.destroy();
+		dispatcher.dispatchMessage("after", null);
+		check(dispatched.size() == 1 && dispatched.get(0).equals("before"), "Dispatcher not disabled: " + dispatched);
+		check(listeners.isEmpty(), "Listener not removed: " + listeners.size());
+		check(MessageDispatcher.forScope(context(), Scope.GLOBAL) != dispatcher, "Released dispatcher shared again");
+	}
+
+	private Context context() {
+		final ScopeManager scopeManager = stub(ScopeManager.class, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("dispatchMessage")) {
+					dispatched.add(args[0]);
+				}
+				return null;
+			}
+		});
+		return stub(Context.class, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("addContextListener")) {
+					listeners.add((ContextListener) args[0]);
+				}
+				else if (method.getName().equals("removeContextListener")) {
+					listeners.remove(args[0]);
+				}
+				else if (method.getName().equals("getInstance")) {
+					return scopeManager;
+				}
+				else if (method.getName().equals("destroy")) {
+					for (ContextListener l : new ArrayList<ContextListener>(listeners)) {
+						l.contextDestroyed(new ContextEvent((Context) proxy, ContextEvent.DESTROYED));
+					}
+				}
+				else if (method.getName().equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				else if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				}
+				return null;
+			}
+		});
+	}
+
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(MessageDispatcherTest.class.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
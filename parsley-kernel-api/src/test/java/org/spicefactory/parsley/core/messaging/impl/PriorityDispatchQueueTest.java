@@ -0,0 +1,149 @@
+package org.spicefactory.parsley.core.messaging.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.parsley.core.messaging.MessagePriority;
+
+/**
+ * Checks the ordering, batching and bounding of the priority dispatch queue on an executor run by hand.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class PriorityDispatchQueueTest {
+
+	private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+	private final Executor executor = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+	};
+	private final List<String> deliveries = new ArrayList<String>();
+
+	public void testHigherPriorityDeliveredFirst() {
+		final PriorityDispatchQueue queue = new PriorityDispatchQueue(executor);
+		queue.enqueue(MessagePriority.BULK, delivery("bulk"));
+		queue.enqueue(MessagePriority.NORMAL, delivery("normal"));
+		queue.enqueue(MessagePriority.UI_CRITICAL, delivery("critical"));
+		check(tasks.size() == 1, "One draining task expected: " + tasks.size());
+
+		runTasks();
+		check(deliveries.equals(Arrays.asList("critical", "normal", "bulk")), "Unexpected order: " + deliveries);
+	}
+
+	public void testStarvedLaneGetsShare() throws Exception {
+		final PriorityDispatchQueue queue = new PriorityDispatchQueue(executor, 1024, 64, 1, TimeUnit.NANOSECONDS);
+		queue.enqueue(MessagePriority.BULK, delivery("bulk"));
+		for (int i = 0; i < 8; i++) {
+			queue.enqueue(MessagePriority.UI_CRITICAL, delivery("critical"));
+		}
+		Thread.sleep(1);
+
+		runTasks();
+		check(deliveries.indexOf("bulk") == 3, "Starved message not picked on the fairness turn: " + deliveries);
+	}
+
+	public void testBatchResubmitsTask() {
+		final PriorityDispatchQueue queue = new PriorityDispatchQueue(executor, 1024, 2, 100, TimeUnit.MILLISECONDS);
+		for (int i = 0; i < 5; i++) {
+			queue.enqueue(MessagePriority.NORMAL, delivery("m" + i));
+		}
+		tasks.poll().run();
+		check(deliveries.size() == 2, "Batch size not honoured: " + deliveries.size());
+		check(tasks.size() == 1, "Draining task not re-submitted");
+
+		runTasks();
+		check(deliveries.size() == 5, "Messages lost: " + deliveries);
+	}
+
+	public void testTryEnqueueRejectsAtCapacity() throws Exception {
+		final PriorityDispatchQueue queue = new PriorityDispatchQueue(executor, 2);
+		check(queue.tryEnqueue(MessagePriority.NORMAL, delivery("a")), "Rejected below capacity");
+		check(queue.tryEnqueue(MessagePriority.NORMAL, delivery("b")), "Rejected below capacity");
+		check(!queue.tryEnqueue(MessagePriority.NORMAL, delivery("c")), "Accepted above capacity");
+		check(!queue.offer(MessagePriority.NORMAL, delivery("c"), 1, TimeUnit.MILLISECONDS), "Offer accepted above capacity");
+
+		runTasks();
+		check(queue.tryEnqueue(MessagePriority.NORMAL, delivery("c")), "Rejected after draining");
+	}
+
+	public void testErrorInDeliveryKeepsQueueDraining() {
+		final PriorityDispatchQueue queue = new PriorityDispatchQueue(executor, 2);
+		queue.enqueue(MessagePriority.NORMAL, new Runnable() {
+
+			@Override
+			public void run() {
+				throw new LinkageError("delivery");
+			}
+		});
+		queue.enqueue(MessagePriority.NORMAL, delivery("after"));
+		try {
+			tasks.poll().run();
+			throw new AssertionError("Error swallowed");
+		}
+		catch (LinkageError expected) {
+			// Expected.
+		}
+
+		runTasks();
+		check(deliveries.equals(Arrays.asList("after")), "Remaining message not delivered: " + deliveries);
+		check(queue.tryEnqueue(MessagePriority.NORMAL, delivery("a")) && queue.tryEnqueue(MessagePriority.NORMAL, delivery("b")),
+				"Failed delivery still counted as queued");
+		check(tasks.size() == 1, "Draining task not scheduled");
+	}
+
+	public void testOfferFromDeliveryDoesNotWait() {
+		final PriorityDispatchQueue queue = new PriorityDispatchQueue(executor, 2);
+		final List<Boolean> offered = new ArrayList<Boolean>();
+		queue.enqueue(MessagePriority.NORMAL, new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					offered.add(queue.offer(MessagePriority.NORMAL, delivery("c"), 10, TimeUnit.SECONDS));
+				}
+				catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+			}
+		});
+		queue.enqueue(MessagePriority.NORMAL, delivery("b"));
+
+		final long start = System.nanoTime();
+		runTasks();
+		check(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "Offer waited on the draining thread");
+		check(offered.equals(Arrays.asList(true)), "Offer rejected after delivering inline: " + offered);
+		check(deliveries.equals(Arrays.asList("b", "c")), "Unexpected deliveries: " + deliveries);
+		check(queue.tryEnqueue(MessagePriority.NORMAL, delivery("d")) && queue.tryEnqueue(MessagePriority.NORMAL, delivery("e")),
+				"Inline delivery still counted as queued");
+	}
+
+	private Runnable delivery(final String name) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				deliveries.add(name);
+			}
+		};
+	}
+
+	private void runTasks() {
+		for (Runnable task; (task = tasks.poll()) != null;) {
+			task.run();
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package org.spicefactory.parsley.core.scope.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.spicefactory.parsley.core.messaging.MessageReceiverChain;
+import org.spicefactory.parsley.core.messaging.receiver.MessageReceiver;
+import org.spicefactory.parsley.core.state.impl.DefaultClassLoaderManager;
+
+/**
+ * Checks that the chains merged across scopes are reused, bounded and purged with the ClassLoader of their message type.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class MergedChainCacheTest {
+
+	public static class PluginMessage {
+	}
+
+	private final DefaultClassLoaderManager classLoaderManager = new DefaultClassLoaderManager();
+	private final MergedChainCache cache = new MergedChainCache(classLoaderManager);
+	private final MessageReceiverChain[] parts = { emptyChain(), emptyChain() };
+
+	public void testChainReusedWhileScopesReturnSameChains() {
+		final MessageReceiverChain chain = cache.getChain(String.class, null, parts);
+		check(cache.getChain(String.class, null, parts) == chain, "Merged chain not reused");
+		check(cache.getChain(String.class, null, new MessageReceiverChain[] { emptyChain() }) != chain, "Stale merged chain reused");
+	}
+
+	public void testValueSelectorsBounded() {
+		for (int i = 0; i < MergedChainCache.MAX_SELECTORS; i++) {
+			cache.getChain(String.class, i, parts);
+		}
+		final Integer selector = MergedChainCache.MAX_SELECTORS;
+		check(cache.getChain(String.class, selector, parts) != cache.getChain(String.class, selector, parts), "Selector beyond bound cached");
+		check(cache.getChain(String.class, 0, parts) == cache.getChain(String.class, 0, parts), "Selector within bound not cached");
+	}
+
+	public void testForeignSelectorNotCached() throws Exception {
+		final Class<?> foreign = new IsolatingLoader(getClass().getClassLoader(), PluginMessage.class.getName()).loadClass(
+				PluginMessage.class.getName());
+		check(cache.getChain(String.class, foreign, parts) != cache.getChain(String.class, foreign, parts), "Foreign selector cached");
+	}
+
+	public void testChainsDroppedOnPurge() throws Exception {
+		final ClassLoader plugin = new IsolatingLoader(getClass().getClassLoader(), PluginMessage.class.getName());
+		final Class<?> type = plugin.loadClass(PluginMessage.class.getName());
+
+		final MessageReceiverChain chain = cache.getChain(type, null, parts);
+		check(cache.getChain(type, null, parts) == chain, "Merged chain not reused");
+
+		classLoaderManager.purge(plugin);
+		check(cache.getChain(type, null, parts) != chain, "Merged chain survived the purge");
+	}
+
+	private static MessageReceiverChain emptyChain() {
+		return new MessageReceiverChain(Collections.<MessageReceiver> emptySet(), Collections.<MessageReceiver> emptySet());
+	}
+
+	/**
+	 * Defines a single class itself, delegating all others to its parent.
+	 */
+	private static final class IsolatingLoader extends ClassLoader {
+
+		private final String name;
+
+		IsolatingLoader(ClassLoader parent, String name) {
+			super(parent);
+			this.name = name;
+		}
+
+		@Override
+		protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+			if (!className.equals(name)) {
+				return super.loadClass(className, resolve);
+			}
+			synchronized (getClassLoadingLock(className)) {
+				Class<?> type = findLoadedClass(className);
+				if (type == null) {
+					final byte[] bytes = read(className.replace('.', '/') + ".class");
+					type = defineClass(className, bytes, 0, bytes.length);
+				}
+				return type;
+			}
+		}
+
+		private byte[] read(String resource) throws ClassNotFoundException {
+			final InputStream in = getParent().getResourceAsStream(resource);
+			if (in == null) {
+				throw new ClassNotFoundException(resource);
+			}
+			try {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[4096];
+				for (int n; (n = in.read(buffer)) != -1;) {
+					out.write(buffer, 0, n);
+				}
+				in.close();
+				return out.toByteArray();
+			}
+			catch (IOException e) {
+				throw new ClassNotFoundException(resource, e);
+			}
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
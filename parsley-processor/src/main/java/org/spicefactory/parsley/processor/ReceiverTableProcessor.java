@@ -0,0 +1,533 @@
+package org.spicefactory.parsley.processor;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor generating a <code>ReceiverTableFactory</code> for each class declaring members annotated with
+ * <code>@MessageHandler</code>, <code>@MessageHandlers</code>, <code>@MessageDispatcher</code> or <code>@CommandResult</code>.
+ * <p>
+ * The generated factory creates the receiver table of the class with invokers calling the annotated members directly, so that neither
+ * annotation discovery nor reflective invocation is needed at runtime. Members the generated code cannot access (like private methods) are left
+ * to the reflective invokers of the runtime. Misconfigured handlers are reported as compilation errors.
+ * </p>
+ * <p>
+ * Once processing is over, the processor writes an index of all classes of the compilation, telling which ones got a factory and which ones
+ * declare no receivers at all, so that the runtime resolves the latter to an empty table without scanning them. Classes the generated code
+ * cannot refer to are left out of the index and scanned at runtime. The processor claims the annotations it supports.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+@SupportedAnnotationTypes({ReceiverTableProcessor.MESSAGE_HANDLER, ReceiverTableProcessor.MESSAGE_HANDLERS,
+		ReceiverTableProcessor.MESSAGE_DISPATCHER, ReceiverTableProcessor.COMMAND_RESULT})
+public class ReceiverTableProcessor extends AbstractProcessor {
+
+	// Package-private.
+	static final String MESSAGE_HANDLER = "org.spicefactory.parsley.messaging.annotation.MessageHandler";
+	static final String MESSAGE_HANDLERS = "org.spicefactory.parsley.messaging.annotation.MessageHandlers";
+	static final String MESSAGE_DISPATCHER = "org.spicefactory.parsley.messaging.annotation.MessageDispatcher";
+	static final String COMMAND_RESULT = "org.spicefactory.parsley.comobserver.annotation.CommandResult";
+
+	private static final String REGISTRY = "org.spicefactory.parsley.registry.";
+	private static final String SUFFIX = "$$ParsleyReceivers";
+	private static final String INDEX = "META-INF/parsley/receivers.index";
+
+	private final Set<String> generated = new HashSet<String>();
+	// Binary names of the classes of the compilation, mapped to whether a factory has been generated for them.
+	private final Map<String, Boolean> index = new TreeMap<String, Boolean>();
+	private final Set<String> unindexed = new HashSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		final Map<TypeElement, Table> tables = new LinkedHashMap<TypeElement, Table>();
+
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				final TypeElement owner = (TypeElement) element.getEnclosingElement();
+				Table table = tables.get(owner);
+				if (table == null) {
+					table = new Table(owner);
+					tables.put(owner, table);
+				}
+				table.add(element, annotation.getQualifiedName().toString());
+			}
+		}
+
+		for (Table table : tables.values()) {
+			final String name = binaryName(table.owner);
+			if (!table.failed && isAccessible(table.owner)) {
+				if (generated.add(table.owner.getQualifiedName().toString())) {
+					write(table);
+				}
+				index.put(name, Boolean.TRUE);
+			} else {
+				unindexed.add(name);
+			}
+		}
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			if (!type.getSimpleName().toString().endsWith(SUFFIX)) {
+				indexTypes(type);
+			}
+		}
+
+		if (roundEnv.processingOver()) {
+			writeIndex();
+		}
+
+		return true;
+	}
+
+	private void indexTypes(TypeElement type) {
+		final String name = binaryName(type);
+		if (!index.containsKey(name)) {
+			index.put(name, Boolean.FALSE);
+		}
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			indexTypes(nested);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	// Model.
+	///////////////////////////////////////////////////////////////////////////////
+
+	private class Table {
+
+		private final TypeElement owner;
+		private final List<String> handlers = new ArrayList<String>();
+		private final List<String> dispatchers = new ArrayList<String>();
+		private final List<String> results = new ArrayList<String>();
+		private final List<String> invokeCases = new ArrayList<String>();
+		private final List<String> injectCases = new ArrayList<String>();
+		private boolean failed;
+
+		Table(TypeElement owner) {
+			this.owner = owner;
+		}
+
+		void add(Element element, String annotation) {
+			if (MESSAGE_DISPATCHER.equals(annotation)) {
+				addDispatcher((VariableElement) element, find(element, MESSAGE_DISPATCHER));
+			} else if (COMMAND_RESULT.equals(annotation)) {
+				addCommandResult((ExecutableElement) element);
+			} else if (MESSAGE_HANDLER.equals(annotation)) {
+				addHandler((ExecutableElement) element, find(element, MESSAGE_HANDLER));
+			} else if (MESSAGE_HANDLERS.equals(annotation)) {
+				for (AnnotationValue value : asList(values(find(element, MESSAGE_HANDLERS)).get("value"))) {
+					addHandler((ExecutableElement) element, (AnnotationMirror) value.getValue());
+				}
+			}
+		}
+
+		private void addHandler(ExecutableElement method, AnnotationMirror annotation) {
+			final Map<String, AnnotationValue> values = values(annotation);
+			final List<? extends VariableElement> parameters = method.getParameters();
+			final List<String> properties = new ArrayList<String>();
+			for (AnnotationValue value : asList(values.get("messagesProperties"))) {
+				properties.add((String) value.getValue());
+			}
+
+			TypeMirror messageType = (TypeMirror) values.get("type").getValue();
+			if (isObject(messageType)) {
+				if (!properties.isEmpty() || parameters.size() != 1) {
+					error(method, "Message type must be specified explicitly for this message handler.");
+					return;
+				}
+				messageType = parameters.get(0).asType();
+			}
+			if (properties.isEmpty() && parameters.size() > 1) {
+				error(method, "Message handler must not declare more than one parameter.");
+				return;
+			}
+			if (!properties.isEmpty() && properties.size() != parameters.size()) {
+				error(method, "Message handler must declare one parameter per message property.");
+				return;
+			}
+			if (!checkInstanceMethod(method)) {
+				return;
+			}
+
+			final String invoker;
+			if (!isInvokable(method)) {
+				invoker = "null";
+			} else if (properties.isEmpty()) {
+				invoker = invoker(method, parameters.isEmpty() ? "" : cast(parameters.get(0).asType(), "argument"));
+			} else {
+				final String arguments = propertyArguments(method, messageType, properties);
+				if (arguments == null) {
+					return;
+				}
+				invoker = (arguments.isEmpty()) ? "null" : invoker(method, arguments);
+			}
+
+			final String selector = (String) values.get("selector").getValue();
+			handlers.add("new " + REGISTRY + "MessageHandlerEntry(" + classLiteral(messageType) + ", "
+					+ (selector.isEmpty() ? "null" : literal(selector)) + ", " + literal(values.get("scope").getValue()) + ", "
+					+ values.get("order").getValue() + ", " + stringArray(properties) + ", " + literal(method.getSimpleName().toString())
+					+ ", " + parameterTypes(method) + ", " + invoker + ")");
+		}
+
+		private void addCommandResult(ExecutableElement method) {
+			if (method.getParameters().size() != 1) {
+				error(method, "Command result method must declare exactly one parameter.");
+				return;
+			}
+			if (!checkInstanceMethod(method)) {
+				return;
+			}
+
+			final TypeMirror resultType = method.getParameters().get(0).asType();
+			final String invoker = isInvokable(method) ? invoker(method, cast(resultType, "argument")) : "null";
+			results.add("new " + REGISTRY + "CommandResultEntry(" + classLiteral(resultType) + ", "
+					+ literal(method.getSimpleName().toString()) + ", " + invoker + ")");
+		}
+
+		private void addDispatcher(VariableElement field, AnnotationMirror annotation) {
+			if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.FINAL)) {
+				error(field, "Message dispatcher field must neither be static nor final.");
+				return;
+			}
+
+			String injector = "null";
+			if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+				injectCases.add("((" + erasure(owner.asType()) + ") target)." + field.getSimpleName() + " = " + cast(field.asType(), "value")
+						+ ";");
+				injector = "new Invoker(" + (injectCases.size() - 1) + ")";
+			}
+			dispatchers.add("new " + REGISTRY + "MessageDispatcherEntry(" + literal(values(annotation).get("scope").getValue()) + ", "
+					+ literal(field.getSimpleName().toString()) + ", " + injector + ")");
+		}
+
+		private String invoker(ExecutableElement method, String arguments) {
+			final String call = "((" + erasure(owner.asType()) + ") target)." + method.getSimpleName() + "(" + arguments + ")";
+			if (method.getReturnType().getKind() == TypeKind.VOID) {
+				invokeCases.add(call + ";\n\t\t\t\t\treturn null;");
+			} else {
+				invokeCases.add("return " + call + ";");
+			}
+			return "new Invoker(" + (invokeCases.size() - 1) + ")";
+		}
+
+		/**
+		 * Returns the arguments reading the specified properties from the message, an empty string if a property exists but cannot be read by
+		 * generated code, or null if the configuration is invalid.
+		 */
+		private String propertyArguments(ExecutableElement method, TypeMirror messageType, List<String> properties) {
+			if (messageType.getKind() != TypeKind.DECLARED) {
+				error(method, "Message type " + messageType + " does not declare properties.");
+				return null;
+			}
+
+			final TypeElement messageElement = (TypeElement) ((DeclaredType) messageType).asElement();
+			final List<Element> members = new ArrayList<Element>(processingEnv.getElementUtils().getAllMembers(messageElement));
+			final StringBuilder arguments = new StringBuilder();
+			boolean accessible = isAccessible(messageElement);
+
+			for (int i = 0; i < properties.size(); i++) {
+				final String property = properties.get(i);
+				final Element accessor = findAccessor(members, property);
+				if (accessor == null) {
+					error(method, "Message type " + messageType + " has no readable property '" + property + "'.");
+					return null;
+				}
+
+				final TypeMirror propertyType = (accessor.getKind() == ElementKind.METHOD) ? ((ExecutableElement) accessor).getReturnType()
+						: accessor.asType();
+				final TypeMirror parameterType = method.getParameters().get(i).asType();
+				if (!processingEnv.getTypeUtils().isAssignable(propertyType, parameterType)) {
+					error(method, "Property '" + property + "' of type " + propertyType + " is not assignable to parameter of type "
+							+ parameterType + ".");
+					return null;
+				}
+
+				accessible &= isAccessibleMember(accessor);
+				if (i > 0) {
+					arguments.append(", ");
+				}
+				arguments.append("((").append(erasure(messageType)).append(") argument).").append(accessor.getSimpleName());
+				if (accessor.getKind() == ElementKind.METHOD) {
+					arguments.append("()");
+				}
+			}
+
+			return accessible ? arguments.toString() : "";
+		}
+
+		private Element findAccessor(List<Element> members, String property) {
+			final String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+			for (String name : new String[] {"get" + suffix, "is" + suffix}) {
+				for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+					if (method.getSimpleName().contentEquals(name) && method.getParameters().isEmpty()
+							&& !method.getModifiers().contains(Modifier.STATIC)) {
+						return method;
+					}
+				}
+			}
+			for (VariableElement field : ElementFilter.fieldsIn(members)) {
+				if (field.getSimpleName().contentEquals(property) && !field.getModifiers().contains(Modifier.STATIC)) {
+					return field;
+				}
+			}
+			return null;
+		}
+
+		private boolean checkInstanceMethod(ExecutableElement method) {
+			if (method.getModifiers().contains(Modifier.STATIC)) {
+				error(method, "Receiver method must not be static.");
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Indicates whether generated code can call the specified method and propagate all exceptions it declares.
+		 */
+		private boolean isInvokable(ExecutableElement method) {
+			if (method.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+			final TypeMirror exception = processingEnv.getElementUtils().getTypeElement(Exception.class.getName()).asType();
+			for (TypeMirror thrown : method.getThrownTypes()) {
+				if (!processingEnv.getTypeUtils().isAssignable(thrown, exception)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isAccessibleMember(Element member) {
+			final Set<Modifier> modifiers = member.getModifiers();
+			if (modifiers.contains(Modifier.PUBLIC)) {
+				return true;
+			}
+			return !modifiers.contains(Modifier.PRIVATE) && packageOf(member).equals(packageOf(owner));
+		}
+
+		private void error(Element element, String message) {
+			failed = true;
+			processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	// Code generation.
+	///////////////////////////////////////////////////////////////////////////////
+
+	private void write(Table table) {
+		final String packageName = packageOf(table.owner);
+		final String binaryName = binaryName(table.owner);
+		final String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+
+		final StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n * Receiver table of {@link ").append(table.owner.getQualifiedName())
+				.append("}, generated by ").append(getClass().getName()).append(".\n */\n");
+		source.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+		source.append("public final class ").append(simpleName).append(" implements ").append(REGISTRY).append("ReceiverTableFactory {\n\n");
+
+		source.append("\t@Override\n\tpublic ").append(REGISTRY).append("ReceiverTable create() {\n");
+		source.append("\t\treturn new ").append(REGISTRY).append("ReceiverTable(").append(erasure(table.owner.asType())).append(".class,\n");
+		appendArray(source, "MessageHandlerEntry", table.handlers, ",");
+		appendArray(source, "MessageDispatcherEntry", table.dispatchers, ",");
+		appendArray(source, "CommandResultEntry", table.results, ");");
+		source.append("\t}\n\n");
+
+		source.append("\tprivate static final class Invoker implements ").append(REGISTRY).append("ReceiverInvoker, ").append(REGISTRY)
+				.append("FieldInjector {\n\n");
+		source.append("\t\tprivate final int index;\n\n");
+		source.append("\t\tInvoker(int index) {\n\t\t\tthis.index = index;\n\t\t}\n\n");
+		source.append("\t\t@Override\n\t\tpublic Object invoke(Object target, Object argument) throws Exception {\n");
+		appendSwitch(source, table.invokeCases, false);
+		source.append("\t\t}\n\n");
+		source.append("\t\t@Override\n\t\tpublic void inject(Object target, Object value) {\n");
+		appendSwitch(source, table.injectCases, true);
+		source.append("\t\t}\n\t}\n\n}\n");
+
+		try {
+			final Writer writer = processingEnv.getFiler()
+					.createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, table.owner).openWriter();
+			try {
+				writer.write(source.toString());
+			}
+			finally {
+				writer.close();
+			}
+		}
+		catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write receiver table: " + e.getMessage(), table.owner);
+		}
+	}
+
+	private void writeIndex() {
+		final StringBuilder source = new StringBuilder("# Receiver tables generated by ").append(getClass().getName()).append(".\n");
+		for (Map.Entry<String, Boolean> entry : index.entrySet()) {
+			if (!unindexed.contains(entry.getKey())) {
+				source.append(entry.getValue() ? '+' : '-').append(entry.getKey()).append('\n');
+			}
+		}
+
+		try {
+			final Writer writer = new OutputStreamWriter(processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX)
+					.openOutputStream(), StandardCharsets.UTF_8);
+			try {
+				writer.write(source.toString());
+			}
+			finally {
+				writer.close();
+			}
+		}
+		catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write receiver index: " + e.getMessage());
+		}
+	}
+
+	private void appendArray(StringBuilder source, String entryType, List<String> entries, String terminator) {
+		source.append("\t\t\t\tnew ").append(REGISTRY).append(entryType).append("[] {");
+		for (String entry : entries) {
+			source.append("\n\t\t\t\t\t\t").append(entry).append(",");
+		}
+		source.append(entries.isEmpty() ? "}" : "\n\t\t\t\t}").append(terminator).append("\n");
+	}
+
+	private void appendSwitch(StringBuilder source, List<String> cases, boolean breaks) {
+		source.append("\t\t\tswitch (index) {\n");
+		for (int i = 0; i < cases.size(); i++) {
+			source.append("\t\t\t\tcase ").append(i).append(":\n\t\t\t\t\t").append(cases.get(i)).append("\n");
+			if (breaks) {
+				source.append("\t\t\t\t\tbreak;\n");
+			}
+		}
+		source.append("\t\t\t\tdefault:\n\t\t\t\t\tthrow new IllegalStateException(\"Unknown member index: \" + index);\n");
+		source.append("\t\t\t}\n");
+	}
+
+	private String cast(TypeMirror type, String expression) {
+		final TypeMirror target = type.getKind().isPrimitive()
+				? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).asType() : type;
+		return "(" + erasure(target) + ") " + expression;
+	}
+
+	private String parameterTypes(ExecutableElement method) {
+		final StringBuilder types = new StringBuilder("new Class<?>[] {");
+		for (int i = 0; i < method.getParameters().size(); i++) {
+			types.append((i > 0) ? ", " : "").append(classLiteral(method.getParameters().get(i).asType()));
+		}
+		return types.append("}").toString();
+	}
+
+	private String stringArray(List<String> values) {
+		final StringBuilder array = new StringBuilder("new String[] {");
+		for (int i = 0; i < values.size(); i++) {
+			array.append((i > 0) ? ", " : "").append(literal(values.get(i)));
+		}
+		return array.append("}").toString();
+	}
+
+	private String classLiteral(TypeMirror type) {
+		return erasure(type) + ".class";
+	}
+
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private String literal(Object value) {
+		return processingEnv.getElementUtils().getConstantExpression(value);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	// Helpers.
+	///////////////////////////////////////////////////////////////////////////////
+
+	private AnnotationMirror find(Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+				return mirror;
+			}
+		}
+		throw new IllegalStateException("Annotation " + annotation + " not present on " + element);
+	}
+
+	private Map<String, AnnotationValue> values(AnnotationMirror mirror) {
+		final Map<String, AnnotationValue> values = new LinkedHashMap<String, AnnotationValue>();
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv.getElementUtils()
+				.getElementValuesWithDefaults(mirror).entrySet()) {
+			values.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+		}
+		return values;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<? extends AnnotationValue> asList(AnnotationValue value) {
+		return (List<? extends AnnotationValue>) value.getValue();
+	}
+
+	private boolean isObject(TypeMirror type) {
+		return type.getKind() == TypeKind.DECLARED
+				&& ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(Object.class.getName());
+	}
+
+	/**
+	 * Indicates whether generated code in the package of the specified type can refer to it.
+	 */
+	private boolean isAccessible(TypeElement type) {
+		for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+			if (!(e instanceof TypeElement)) {
+				return false;
+			}
+			final NestingKind nesting = ((TypeElement) e).getNestingKind();
+			if (nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS || e.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	private String packageOf(Element element) {
+		final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(element);
+		return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+	}
+
+}
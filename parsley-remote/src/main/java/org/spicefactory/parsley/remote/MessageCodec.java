@@ -0,0 +1,34 @@
+package org.spicefactory.parsley.remote;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes messages of a particular type relayed to other processes.
+ * <p>
+ * Implementations write the fields of the message in a compact binary form and read them back in the same order, type information and framing
+ * are handled by the bridge.
+ * </p>
+ * @param <T> the type of the messages
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface MessageCodec<T> {
+
+	/**
+	 * Writes the specified message.
+	 * @param message the message to encode
+	 * @param out the output to write to
+	 * @throws IOException if writing fails
+	 */
+	void encode(T message, DataOutput out) throws IOException;
+
+	/**
+	 * Reads a message written by {@link #encode}.
+	 * @param in the input to read from
+	 * @return the decoded message
+	 * @throws IOException if reading fails
+	 */
+	T decode(DataInput in) throws IOException;
+
+}
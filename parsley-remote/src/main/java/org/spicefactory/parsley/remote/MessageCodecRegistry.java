@@ -0,0 +1,99 @@
+package org.spicefactory.parsley.remote;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Registry for the codecs of the message types relayed by a RemoteScopeBridge.
+ * <p>
+ * Each message type is identified on the wire by a numeric id rather than by its class name, processes sharing a scope must register the same
+ * types with the same ids. Only messages whose exact type has been registered are relayed.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class MessageCodecRegistry {
+
+	private final ConcurrentMap<Class<?>, Entry<?>> byType = new ConcurrentHashMap<Class<?>, Entry<?>>();
+	private final ConcurrentMap<Integer, Entry<?>> byId = new ConcurrentHashMap<Integer, Entry<?>>();
+
+	/**
+	 * Registers the codec for the specified message type.
+	 * @param id the id of the message type on the wire, between 0 and 65535
+	 * @param type the message type
+	 * @param codec the codec for the message type
+	 * @return this registry for method chaining
+	 * @throws IllegalStateException if the id or the type have already been registered
+	 */
+	public <T> MessageCodecRegistry register(int id, Class<T> type, MessageCodec<T> codec) {
+		if (id < 0 || id > 0xFFFF) {
+			throw new IllegalArgumentException("Message type id out of range: " + id);
+		}
+		final Entry<T> entry = new Entry<T>(id, type, codec);
+		if (byId.putIfAbsent(id, entry) != null) {
+			throw new IllegalStateException("Duplicate message type id: " + id);
+		}
+		if (byType.putIfAbsent(type, entry) != null) {
+			byId.remove(id, entry);
+			throw new IllegalStateException("Duplicate codec for message type " + type);
+		}
+		return this;
+	}
+
+	// Package-private.
+	@Nullable
+	Entry<?> forType(Class<?> type) {
+		return byType.get(type);
+	}
+
+	// Package-private.
+	@Nullable
+	Entry<?> forId(int id) {
+		return byId.get(id);
+	}
+
+	// Package-private.
+	Collection<Entry<?>> entries() {
+		return Collections.unmodifiableCollection(byType.values());
+	}
+
+	/**
+	 * A registered message type along with its id and codec.
+	 */
+	// Package-private.
+	static final class Entry<T> {
+
+		private final int id;
+		private final Class<T> type;
+		private final MessageCodec<T> codec;
+
+		Entry(int id, Class<T> type, MessageCodec<T> codec) {
+			this.id = id;
+			this.type = type;
+			this.codec = codec;
+		}
+
+		int id() {
+			return id;
+		}
+
+		Class<T> type() {
+			return type;
+		}
+
+		void encode(Object message, DataOutput out) throws IOException {
+			codec.encode(type.cast(message), out);
+		}
+
+		T decode(DataInput in) throws IOException {
+			return codec.decode(in);
+		}
+	}
+
+}
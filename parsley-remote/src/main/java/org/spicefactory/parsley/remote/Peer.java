@@ -0,0 +1,293 @@
+package org.spicefactory.parsley.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection to another process mirroring the scope.
+ * <p>
+ * Each peer owns a writer and a reader thread. Messages relayed to the peer are queued in a bounded queue, the writer drains everything queued
+ * into a single batch frame, so that bursts cost one write rather than one per message. Flow control is credit-based: the remote side announces
+ * a window in its handshake and grants credits back once it has dispatched a batch, the writer never sends more messages than it holds credits
+ * for. Sending never blocks the dispatching thread: when the queue is full, the message gets discarded.
+ * </p>
+ * <p>
+ * Frames are made of a length, a kind and the payload. Only the writer thread writes to the channel, credits granted by the reader are handed
+ * to the writer, so that neither side can block the other one while both are writing.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+class Peer {
+
+	// Package-private.
+	static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	private static final byte HELLO = 1;
+	private static final byte BATCH = 2;
+	private static final byte CREDIT = 3;
+
+	private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+	private final RemoteScopeBridge bridge;
+	private final SocketChannel channel;
+	private final String name;
+	private final int batchSize;
+	private final int window;
+	private final int queueCapacity;
+
+	// Guarded by this.
+	private final ArrayDeque<byte[]> outbound;
+	private int credits;
+	private int grant;
+	private boolean closed;
+
+	Peer(RemoteScopeBridge bridge, SocketChannel channel, String name, int batchSize, int window, int queueCapacity) {
+		this.bridge = bridge;
+		this.channel = channel;
+		this.name = name;
+		this.batchSize = batchSize;
+		this.window = window;
+		this.queueCapacity = queueCapacity;
+		this.outbound = new ArrayDeque<byte[]>();
+	}
+
+	/**
+	 * Starts the writer and reader threads of this peer.
+	 */
+	void start() {
+		startThread("writer", new Runnable() {
+
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		});
+		startThread("reader", new Runnable() {
+
+			@Override
+			public void run() {
+				readLoop();
+			}
+		});
+	}
+
+	/**
+	 * Queues an encoded message unless the queue is full, without waiting.
+	 * @return false if the message has been discarded
+	 */
+	synchronized boolean send(byte[] message) {
+		if (closed || outbound.size() >= queueCapacity) {
+			return false;
+		}
+		outbound.add(message);
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Grants the peer credits for the specified number of messages it sent, once they have been dispatched.
+	 */
+	synchronized void grant(int count) {
+		grant += count;
+		notifyAll();
+	}
+
+	void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			outbound.clear();
+			notifyAll();
+		}
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			logger.debug("Failed to close connection to peer '{}'.", name, e);
+		}
+		bridge.removePeer(this);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	private void writeLoop() {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		final List<byte[]> batch = new ArrayList<byte[]>();
+
+		try {
+			final byte[] uuid = bridge.scopeUuid().getBytes(StandardCharsets.UTF_8);
+			buffer.putInt(1 + 4 + uuid.length + 4).put(HELLO).putInt(uuid.length).put(uuid).putInt(window);
+			flush(buffer);
+
+			while (true) {
+				final int granted;
+				int batchBytes = 0;
+				batch.clear();
+
+				synchronized (this) {
+					while (!closed && grant == 0 && (outbound.isEmpty() || credits == 0)) {
+						wait();
+					}
+					if (closed) {
+						return;
+					}
+					granted = grant;
+					grant = 0;
+					while (!outbound.isEmpty() && credits > 0 && batch.size() < batchSize && batchBytes < MAX_BATCH_BYTES) {
+						final byte[] message = outbound.poll();
+						batch.add(message);
+						batchBytes += 4 + message.length;
+						credits--;
+					}
+				}
+
+				buffer = ensureCapacity(buffer, 9 + 9 + batchBytes);
+				if (granted > 0) {
+					buffer.putInt(5).put(CREDIT).putInt(granted);
+				}
+				if (!batch.isEmpty()) {
+					buffer.putInt(1 + 4 + batchBytes).put(BATCH).putInt(batch.size());
+					for (byte[] message : batch) {
+						buffer.putInt(message.length).put(message);
+					}
+				}
+				flush(buffer);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			if (!isClosed()) {
+				logger.warn("Failed to write to peer '{}', closing connection.", name, e);
+			}
+		}
+		finally {
+			close();
+		}
+	}
+
+	private void readLoop() {
+		final ByteBuffer header = ByteBuffer.allocate(4);
+		ByteBuffer body = ByteBuffer.allocate(64 * 1024);
+		boolean handshaken = false;
+
+		try {
+			while (true) {
+				header.clear();
+				readFully(header);
+				final int length = header.getInt(0);
+				if (length <= 0 || length > MAX_FRAME_LENGTH) {
+					throw new IOException("Invalid frame length: " + length);
+				}
+				if (body.capacity() < length) {
+					body = ByteBuffer.allocate(length);
+				}
+				body.clear().limit(length);
+				readFully(body);
+
+				final DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array(), 0, length));
+				final byte kind = in.readByte();
+
+				if (kind == HELLO) {
+					final byte[] uuid = new byte[in.readInt()];
+					in.readFully(uuid);
+					final String remoteUuid = new String(uuid, StandardCharsets.UTF_8);
+					if (!remoteUuid.equals(bridge.scopeUuid())) {
+						throw new IOException("Peer mirrors scope '" + remoteUuid + "' instead of '" + bridge.scopeUuid() + "'.");
+					}
+					addCredits(in.readInt());
+					handshaken = true;
+				}
+				else if (!handshaken) {
+					throw new IOException("Missing handshake.");
+				}
+				else if (kind == CREDIT) {
+					addCredits(in.readInt());
+				}
+				else if (kind == BATCH) {
+					final int count = in.readInt();
+					for (int i = 0; i < count; i++) {
+						final byte[] message = new byte[in.readInt()];
+						in.readFully(message);
+						// Grants the credit for the message once it has been dispatched.
+						bridge.receive(this, message);
+					}
+				}
+				else {
+					throw new IOException("Unknown frame kind: " + kind);
+				}
+			}
+		}
+		catch (EOFException e) {
+			logger.debug("Peer '{}' disconnected.", name);
+		}
+		catch (ClosedChannelException e) {
+			// Closed locally.
+		}
+		catch (IOException e) {
+			if (!isClosed()) {
+				logger.warn("Failed to read from peer '{}', closing connection.", name, e);
+			}
+		}
+		finally {
+			close();
+		}
+	}
+
+	private synchronized void addCredits(int count) {
+		credits += count;
+		notifyAll();
+	}
+
+	private synchronized boolean isClosed() {
+		return closed;
+	}
+
+	private void flush(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+		return (buffer.capacity() >= capacity) ? buffer : ByteBuffer.allocate(capacity);
+	}
+
+	private void startThread(String role, Runnable task) {
+		final Thread thread = new Thread(task, "parsley-remote-" + name + "-" + role);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(Peer.class);
+
+}
@@ -0,0 +1,49 @@
+package org.spicefactory.parsley.remote;
+
+import org.spicefactory.parsley.core.messaging.Message;
+import org.spicefactory.parsley.core.messaging.MessageProcessor;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+
+/**
+ * Target registered for each relayed message type, handing matching messages to the bridge.
+ * <p>
+ * The target matches all selectors but only relays messages whose exact type is its own, so that a message is relayed once even when codecs
+ * have been registered for several types of its hierarchy.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+class RelayTarget implements MessageTarget {
+
+	private final RemoteScopeBridge bridge;
+	private final Class<?> type;
+
+	RelayTarget(RemoteScopeBridge bridge, Class<?> type) {
+		this.bridge = bridge;
+		this.type = type;
+	}
+
+	@Override
+	public Class<?> type() {
+		return type;
+	}
+
+	@Override
+	public Object selector() {
+		return null;
+	}
+
+	@Override
+	public int order() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void handleMessage(MessageProcessor processor) {
+		final Message message = processor.message();
+		if (message.instance().getClass() == type) {
+			bridge.relay(message.instance(), message.selector());
+		}
+	}
+
+}
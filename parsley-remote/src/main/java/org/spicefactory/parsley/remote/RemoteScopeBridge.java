@@ -0,0 +1,373 @@
+package org.spicefactory.parsley.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+import org.spicefactory.parsley.core.scope.ScopeManager;
+
+/**
+ * Mirrors a scope across processes of the same host over Unix domain sockets.
+ * <p>
+ * Messages dispatched through the scope whose type has a codec in the MessageCodecRegistry are encoded once and relayed to all connected peers,
+ * which dispatch them into their own instance of the scope like local messages, queued on the dispatch executor if their type declares a
+ * priority. Both sides must define the scope with the same uuid and register the same
+ * codecs. A message received from a peer is relayed to all other peers but never back to its origin, so that processes may be connected in a
+ * star or a chain, but must not form a cycle.
+ * </p>
+ * <p>
+ * Relaying never blocks the thread dispatching a message, messages are discarded for peers whose send queue is full. A peer is granted a
+ * credit for each received message once it has been dispatched, so that the messages a peer may have in flight are bounded by the window.
+ * </p>
+ * <p>
+ * Codecs must be registered before the bridge gets created, the settings must be set before the first connection is made.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class RemoteScopeBridge implements AutoCloseable {
+
+	private final Scope scope;
+	private final String scopeUuid;
+	private final String scopeName;
+	private final MessageReceiverRegistry receivers;
+	private final MessageCodecRegistry codecs;
+	private final List<RelayTarget> targets;
+	private final List<Peer> peers;
+	private final List<ServerSocketChannel> servers;
+	private final List<Path> paths;
+	private final Map<Object, Inbound> inbound;
+
+	private volatile int batchSize = 256;
+	private volatile int window = 1024;
+	private volatile int queueCapacity = 4096;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new bridge for the specified scope of a Context, looking the scope up in the scope index of its hierarchy.
+	 * @param context the Context the scope belongs to
+	 * @param scopeName the name of the scope to mirror
+	 * @param codecs the codecs of the message types to relay
+	 */
+	public RemoteScopeBridge(Context context, String scopeName, MessageCodecRegistry codecs) {
+		this(context.getInstance(ScopeManager.class), context.getInstance(ScopeIndex.class), scopeName, codecs);
+	}
+
+	/**
+	 * Creates a new bridge for the specified scope.
+	 * @param scopeManager the scope manager of the Context the scope belongs to
+	 * @param scopeIndex the index the scope has been registered in
+	 * @param scopeName the name of the scope to mirror
+	 * @param codecs the codecs of the message types to relay
+	 */
+	public RemoteScopeBridge(ScopeManager scopeManager, ScopeIndex scopeIndex, String scopeName, MessageCodecRegistry codecs) {
+		final Scope scope = scopeManager.getScope(scopeName);
+		final ScopeInfo info = scopeIndex.get(scope.uuid());
+		if (info == null) {
+			throw new IllegalStateException("Scope '" + scopeName + "' is not registered in the scope index.");
+		}
+
+		this.scope = scope;
+		this.scopeUuid = scope.uuid();
+		this.scopeName = scope.name();
+		this.receivers = info.messageReceivers();
+		this.codecs = codecs;
+		this.targets = new ArrayList<RelayTarget>();
+		this.peers = new CopyOnWriteArrayList<Peer>();
+		this.servers = new CopyOnWriteArrayList<ServerSocketChannel>();
+		this.paths = new CopyOnWriteArrayList<Path>();
+		// By identity, as equal messages received from different peers must not be mistaken for each other.
+		this.inbound = Collections.synchronizedMap(new IdentityHashMap<Object, Inbound>());
+
+		for (MessageCodecRegistry.Entry<?> entry : codecs.entries()) {
+			final RelayTarget target = new RelayTarget(this, entry.type());
+			receivers.addTarget(target);
+			targets.add(target);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of messages sent to a peer in a single frame. The default is 256.
+	 */
+	public RemoteScopeBridge batchSize(int batchSize) {
+		this.batchSize = positive(batchSize);
+		return this;
+	}
+
+	/**
+	 * Sets the number of messages a peer may send before waiting for this side to have dispatched them. The default is 1024.
+	 */
+	public RemoteScopeBridge window(int window) {
+		this.window = positive(window);
+		return this;
+	}
+
+	/**
+	 * Sets the number of messages queued per peer before further messages for that peer get discarded. The default is 4096.
+	 */
+	public RemoteScopeBridge queueCapacity(int queueCapacity) {
+		this.queueCapacity = positive(queueCapacity);
+		return this;
+	}
+
+	/**
+	 * Accepts connections from peers on a Unix domain socket bound to the specified path. The socket file is deleted when the bridge gets
+	 * closed.
+	 * @param path the path of the socket file, which must not exist yet
+	 * @throws IOException if the socket cannot be bound
+	 */
+	public void listen(Path path) throws IOException {
+		checkOpen();
+		final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(path));
+		servers.add(server);
+		paths.add(path);
+
+		final Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				accept(server, path);
+			}
+		}, "parsley-remote-" + scopeName + "-accept");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Connects to a peer listening on a Unix domain socket bound to the specified path.
+	 * @param path the path of the socket file
+	 * @throws IOException if the connection fails
+	 */
+	public void connect(Path path) throws IOException {
+		checkOpen();
+		addPeer(SocketChannel.open(UnixDomainSocketAddress.of(path)), path.toString());
+	}
+
+	/**
+	 * Disconnects all peers, stops listening and stops relaying messages of the scope.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (RelayTarget target : targets) {
+			receivers.removeTarget(target);
+		}
+		for (ServerSocketChannel server : servers) {
+			try {
+				server.close();
+			}
+			catch (IOException e) {
+				logger.debug("Failed to close server socket.", e);
+			}
+		}
+		for (Path path : paths) {
+			try {
+				Files.deleteIfExists(path);
+			}
+			catch (IOException e) {
+				logger.debug("Failed to delete socket file '{}'.", path, e);
+			}
+		}
+		for (Peer peer : peers) {
+			peer.close();
+		}
+	}
+
+	/**
+	 * Encodes the specified message and queues it for all peers, except the one the message has been received from.
+	 */
+	// Package-private.
+	void relay(Object instance, Object selector) {
+		if (peers.isEmpty()) {
+			return;
+		}
+
+		final Inbound received = inbound.remove(instance);
+		final Peer origin;
+		final byte[] message;
+		if (received != null) {
+			origin = received.origin;
+			message = received.message;
+		}
+		else {
+			origin = null;
+			try {
+				message = encode(instance, selector);
+			}
+			catch (IOException e) {
+				logger.warn("Discarding message '{}' for remote scope '{}': encoding failed.", instance, scopeName, e);
+				return;
+			}
+		}
+
+		for (Peer peer : peers) {
+			if (peer != origin && !peer.send(message)) {
+				logger.warn("Discarding message '{}' for peer '{}': send queue full.", instance, peer);
+			}
+		}
+	}
+
+	/**
+	 * Decodes a message received from the specified peer and dispatches it into the local scope, granting the peer a credit once it has been
+	 * dispatched.
+	 */
+	// Package-private.
+	void receive(final Peer origin, byte[] message) {
+		final Object instance;
+		final Object selector;
+		try {
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+			final int id = in.readUnsignedShort();
+			selector = in.readBoolean() ? in.readUTF() : null;
+			final MessageCodecRegistry.Entry<?> entry = codecs.forId(id);
+			if (entry == null) {
+				logger.warn("Discarding message from peer '{}': unknown message type id {}.", origin, id);
+				return;
+			}
+			instance = entry.decode(in);
+		}
+		catch (IOException e) {
+			logger.warn("Discarding message from peer '{}': decoding failed.", origin, e);
+			origin.grant(1);
+			return;
+		}
+
+		// Remembered until the message reaches the relay target, which may run on the dispatch executor.
+		inbound.put(instance, new Inbound(origin, message));
+		boolean dispatched = false;
+		try {
+			scope.dispatch(instance, selector).whenComplete(new BiConsumer<DispatchResult, Throwable>() {
+
+				@Override
+				public void accept(DispatchResult result, Throwable failure) {
+					// Also when an interceptor cancelled the message before it reached the relay target.
+					inbound.remove(instance);
+					origin.grant(1);
+					if (failure != null) {
+						logger.error("Failed to dispatch message '{}' from peer '{}'.", instance, origin, failure);
+					}
+				}
+			});
+			dispatched = true;
+		}
+		finally {
+			if (!dispatched) {
+				inbound.remove(instance);
+				origin.grant(1);
+			}
+		}
+	}
+
+	// Package-private.
+	String scopeUuid() {
+		return scopeUuid;
+	}
+
+	// Package-private.
+	void removePeer(Peer peer) {
+		peers.remove(peer);
+	}
+
+	private byte[] encode(Object instance, Object selector) throws IOException {
+		final MessageCodecRegistry.Entry<?> entry = codecs.forType(instance.getClass());
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		final DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeShort(entry.id());
+		if (selector instanceof String) {
+			out.writeBoolean(true);
+			out.writeUTF((String) selector);
+		}
+		else {
+			out.writeBoolean(false);
+		}
+		entry.encode(instance, out);
+		out.flush();
+
+		if (bytes.size() > Peer.MAX_FRAME_LENGTH / 2) {
+			throw new IOException("Encoded message too large: " + bytes.size() + " bytes.");
+		}
+		return bytes.toByteArray();
+	}
+
+	private void accept(ServerSocketChannel server, Path path) {
+		try {
+			while (true) {
+				addPeer(server.accept(), path.toString());
+			}
+		}
+		catch (ClosedChannelException e) {
+			// Closed locally.
+		}
+		catch (IOException e) {
+			logger.warn("Stopped accepting peers on '{}'.", path, e);
+		}
+		catch (IllegalStateException e) {
+			// Bridge closed.
+		}
+	}
+
+	private void addPeer(SocketChannel channel, String name) throws IOException {
+		final Peer peer = new Peer(this, channel, scopeName + "@" + name, batchSize, window, queueCapacity);
+		peers.add(peer);
+		if (closed) {
+			peer.close();
+			checkOpen();
+		}
+		peer.start();
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Remote scope bridge for scope '" + scopeName + "' has been closed.");
+		}
+	}
+
+	private static int positive(int value) {
+		if (value <= 0) {
+			throw new IllegalArgumentException("Value must be positive: " + value);
+		}
+		return value;
+	}
+
+	/**
+	 * A message being dispatched on behalf of a peer.
+	 */
+	private static final class Inbound {
+
+		private final Peer origin;
+		private final byte[] message;
+
+		Inbound(Peer origin, byte[] message) {
+			this.origin = origin;
+			this.message = message;
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(RemoteScopeBridge.class);
+
+}
@@ -1,10 +1,20 @@
 package org.spicefactory.parsley.comobserver.annotation;
 
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
 /**
  * Represents an annotation that can be used on methods which wish to be invoked when the result of a matching asynchronous command execution has
  * been received.
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
 public @interface CommandResult {
 	//
 }
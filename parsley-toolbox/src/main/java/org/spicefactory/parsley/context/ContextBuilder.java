@@ -1,8 +1,14 @@
 package org.spicefactory.parsley.context;
 
+import java.awt.Container;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
 import org.spicefactory.parsley.core.bootstrap.BootstrapProcessor;
 import org.spicefactory.parsley.core.bootstrap.ConfigurationProcessor;
 import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.view.ViewEventProcessor;
 
 /**
  * A ContextBuilder offers the option to create a new Context programmatically using the convenient configuration DSL.
@@ -33,6 +39,20 @@ import org.spicefactory.parsley.core.context.Context;
  *         .config(GuiceConfig.forClass(MyConfig.class))
  * 	       .build();</code>
  * </pre>
+ *
+ * Independent configuration processors may be run concurrently by entering parallel mode. <code>build</code> then returns immediately and the
+ * Context signals readiness through its initialization stage:
+ *
+ * <pre>
+ * <code>
+ * ContextBuilder.newSetup()
+ *     .parallel()
+ *     .newBuilder()
+ *         .config(GuiceConfig.forClass(ServiceConfig.class))
+ *         .config(GuiceConfig.forClass(ViewConfig.class))
+ *         .build()
+ *         .initialization().thenAcceptAsync(context -> ..., SwingUtilities::invokeLater);</code>
+ * </pre>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 public final class ContextBuilder {
@@ -71,22 +91,28 @@ public final class ContextBuilder {
 
 	/**
 	 * Builds and returns the final Context instance, applying all settings specified for this builder.
+	 * <p>
+	 * In parallel mode the returned Context may not be fully initialized yet, and failures of configuration processors complete its
+	 * initialization stage exceptionally. Otherwise failures are thrown by this method.
+	 * </p>
 	 * @return the final Context instance
 	 */
 	public Context build() {
-		Context context = null;
-		try {
-			context = processor.process();
-		}
-		catch (Error e) {
-			// TODO: catch it.
+		final Context context = processor.process();
+		if (viewRoot != null) {
+			new ViewEventProcessor(context, viewExecutor).install(viewRoot);
 		}
 		return context;
 	}
 
 	private final BootstrapProcessor processor;
+	private final Container viewRoot;
+	private final Executor viewExecutor;
 
-	private ContextBuilder(BootstrapProcessor processor) {
+	// Package-private.
+	ContextBuilder(BootstrapProcessor processor, @Nullable Container viewRoot, @Nullable Executor viewExecutor) {
 		this.processor = processor;
+		this.viewRoot = viewRoot;
+		this.viewExecutor = viewExecutor;
 	}
 }
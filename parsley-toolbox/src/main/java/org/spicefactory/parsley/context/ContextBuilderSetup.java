@@ -1,6 +1,20 @@
 package org.spicefactory.parsley.context;
 
 import java.awt.Container;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.spicefactory.parsley.core.binding.PersistenceManager;
+import org.spicefactory.parsley.core.binding.Subscriber;
+import org.spicefactory.parsley.core.binding.impl.DefaultPersistenceManager;
+import org.spicefactory.parsley.core.bootstrap.impl.DefaultBootstrapInfo;
+import org.spicefactory.parsley.core.bootstrap.impl.DefaultBootstrapProcessor;
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.messaging.IdempotencyCache;
+import org.spicefactory.parsley.core.messaging.impl.DefaultIdempotencyCache;
+import org.spicefactory.parsley.core.messaging.impl.PriorityDispatchQueue;
+import org.spicefactory.parsley.core.scope.impl.DefaultScopeIndex;
+import org.spicefactory.parsley.core.state.GlobalState;
 
 /**
  * Allows to specify the options for a ContextBuilder before creating it.
@@ -19,14 +33,99 @@ public final class ContextBuilderSetup {
 		return this;
 	}
 
+	/**
+	 * Sets the executor the view configurations dispatched below the view root get prepared on before being attached on the event dispatch
+	 * thread. By default they are processed entirely on the event dispatch thread. Has no effect without a view root.
+	 * @param viewExecutor the executor to prepare view configurations on
+	 * @return this builder instance for method chaining
+	 */
+	public ContextBuilderSetup viewExecutor(Executor viewExecutor) {
+		this.viewExecutor = viewExecutor;
+		return this;
+	}
+
+	/**
+	 * Runs the configuration processors of the target Context concurrently on the common fork-join pool.
+	 * @return this builder instance for method chaining
+	 * @see #parallel(Executor)
+	 */
+	public ContextBuilderSetup parallel() {
+		return parallel(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Runs the configuration processors of the target Context concurrently on the specified executor. The processors must be independent of
+	 * each other, and <code>ContextBuilder.build</code> returns before they completed.
+	 * @param executor the executor to run the configuration processors on
+	 * @return this builder instance for method chaining
+	 */
+	public ContextBuilderSetup parallel(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Sets the manager for values persisted by publishers in the scopes created by the target Context. By default values are kept in memory.
+	 * @param persistenceManager the manager for persisted values
+	 * @return this builder instance for method chaining
+	 */
+	public ContextBuilderSetup persistenceManager(PersistenceManager persistenceManager) {
+		this.persistenceManager = persistenceManager;
+		return this;
+	}
+
+	/**
+	 * Sets the executor messages dispatched with a priority get delivered on. By default they are delivered on the event dispatch thread, and
+	 * <code>offer</code> called on the event dispatch thread delivers queued messages itself rather than waiting for room in the queue. A
+	 * custom executor running on the event dispatch thread does not get that treatment, so <code>offer</code> must not be called there.
+	 * @param messageExecutor the executor for asynchronous message deliveries
+	 * @return this builder instance for method chaining
+	 */
+	public ContextBuilderSetup messageExecutor(Executor messageExecutor) {
+		this.messageExecutor = messageExecutor;
+		return this;
+	}
+
+	/**
+	 * Sets the number of queued messages above which producers using <code>tryDispatch</code> or <code>offer</code> are held back. Defaults
+	 * to 1024.
+	 * @param messageQueueCapacity the capacity of the queue for asynchronous message deliveries
+	 * @return this builder instance for method chaining
+	 */
+	public ContextBuilderSetup messageQueueCapacity(int messageQueueCapacity) {
+		this.messageQueueCapacity = messageQueueCapacity;
+		return this;
+	}
+
+	/**
+	 * Sets the cache of idempotency keys the scopes of the target Context drop duplicate messages with. By default up to 10000 keys are
+	 * remembered.
+	 * @param idempotencyCache the cache of idempotency keys
+	 * @return this builder instance for method chaining
+	 */
+	public ContextBuilderSetup idempotencyCache(IdempotencyCache idempotencyCache) {
+		this.idempotencyCache = idempotencyCache;
+		return this;
+	}
+
 	/**
 	 * Creates a new ContextBuilder based on the settings of this setup instance.
 	 * @return a new ContextBuilder based on the settings of this setup instance
 	 */
 	public ContextBuilder newBuilder() {
-		return null;
+		final DefaultBootstrapInfo info = new DefaultBootstrapInfo(GlobalState.classLoaders(), new DefaultScopeIndex(),
+				(persistenceManager != null) ? persistenceManager : new DefaultPersistenceManager(), new PriorityDispatchQueue(
+						(messageExecutor != null) ? messageExecutor : Subscriber.EVENT_DISPATCH_THREAD, messageQueueCapacity),
+				(idempotencyCache != null) ? idempotencyCache : new DefaultIdempotencyCache());
+		return new ContextBuilder(new DefaultBootstrapProcessor(info, new Context[0], executor), viewRoot, viewExecutor);
 	}
 
 	private Container viewRoot;
+	private Executor viewExecutor;
+	private Executor executor;
+	private PersistenceManager persistenceManager;
+	private Executor messageExecutor;
+	private int messageQueueCapacity = 1024;
+	private IdempotencyCache idempotencyCache;
 
 }
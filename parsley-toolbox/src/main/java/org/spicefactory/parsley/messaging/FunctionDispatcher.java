@@ -1,5 +1,15 @@
 package org.spicefactory.parsley.messaging;
 
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.messaging.MessageState;
+import org.spicefactory.parsley.core.messaging.impl.DefaultMessage;
+import org.spicefactory.parsley.core.messaging.impl.MessageDispatcher;
+
 /**
  * FunctionDispatcher offers the option to use any class as an application message, whether it extends <tt>java.util.EventObject</tt> or not.
  * <p>
@@ -39,6 +49,24 @@ package org.spicefactory.parsley.messaging;
  * Your service does not extend <tt>EventDispatcher</tt>. Instead it declares a field of type <tt>FunctionDispatcher</tt> annotated with the
  * <tt>@MessageDispatcher</tt> annotation which instructs Parsley to inject a message dispatcher function on object creation. You can then simply
  * pass any kind of object to this dispatcher function.
+ * <p>
+ * Producers that must not outrun their receivers, like an import pipeline, can slow down using <code>tryDispatch</code> or <code>offer</code>,
+ * which queue messages on the bounded dispatch queue of the Context and report when it is full:
+ *
+ * <pre>
+ * <code>
+ * for (Record record : records) {
+ *     while (!dispatcher.offer(new ImportMessage(record), 100, TimeUnit.MILLISECONDS)) {
+ *         [...]
+ *     }
+ * }
+ * </code>
+ * </pre>
+ *
+ * The framework injects dispatchers created with <code>FunctionDispatcher.of</code>. A dispatcher that is not backed by the framework, like a
+ * plain lambda, has no queue: all variants deliver messages synchronously through <code>dispatchMessage</code>, so a slow receiver holds the
+ * producer back for as long as it takes, and <code>dispatch</code> completes with a result that carries no receiver outcomes.
+ * </p>
  * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
  */
 @FunctionalInterface
@@ -51,4 +79,93 @@ public interface FunctionDispatcher {
 		dispatchMessage(message, null);
 	}
 
+	/**
+	 * Dispatches a message, returning the stage completed with the outcome of every receiver once processing completed or has been cancelled.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @return the stage completed with the outcome of processing the message, already completed if this dispatcher is not backed by the
+	 *         framework, exceptionally if delivering the message failed
+	 */
+	default CompletionStage<DispatchResult> dispatch(Object message, Object selector) {
+		final CompletableFuture<DispatchResult> result = new CompletableFuture<DispatchResult>();
+		try {
+			dispatchMessage(message, selector);
+			result.complete(new DispatchResult(new DefaultMessage(message, message.getClass(), selector), MessageState.COMPLETE, Collections
+					.<DispatchResult.Outcome> emptyList()));
+		}
+		catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	default CompletionStage<DispatchResult> dispatch(Object message) {
+		return dispatch(message, null);
+	}
+
+	/**
+	 * Queues a message for asynchronous delivery, unless the dispatch queue is full. A dispatcher that is not backed by the framework delivers
+	 * the message synchronously instead, so its producer is held back by the receivers themselves.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @return true if the message has been queued or delivered, false if the dispatch queue is full
+	 */
+	default boolean tryDispatch(Object message, Object selector) {
+		dispatchMessage(message, selector);
+		return true;
+	}
+
+	default boolean tryDispatch(Object message) {
+		return tryDispatch(message, null);
+	}
+
+	/**
+	 * Queues a message for asynchronous delivery, waiting up to the specified time for the dispatch queue to make room for it. A dispatcher
+	 * that is not backed by the framework delivers the message synchronously instead, regardless of the timeout.
+	 * @param message the message to dispatch
+	 * @param selector the selector to use if it cannot be determined from the message instance itself
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the message has been queued or delivered, false if the dispatch queue remained full
+	 * @throws InterruptedException if the current thread got interrupted while waiting
+	 */
+	default boolean offer(Object message, Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+		dispatchMessage(message, selector);
+		return true;
+	}
+
+	default boolean offer(Object message, long timeout, TimeUnit unit) throws InterruptedException {
+		return offer(message, null, timeout, unit);
+	}
+
+	/**
+	 * Returns a dispatcher function backed by the specified framework dispatcher, supporting all dispatch variants.
+	 * @param dispatcher the framework dispatcher to delegate to
+	 * @return a dispatcher function delegating to the specified dispatcher
+	 */
+	static FunctionDispatcher of(final MessageDispatcher dispatcher) {
+		return new FunctionDispatcher() {
+
+			@Override
+			public void dispatchMessage(Object message, Object selector) {
+				dispatcher.dispatchMessage(message, selector);
+			}
+
+			@Override
+			public CompletionStage<DispatchResult> dispatch(Object message, Object selector) {
+				return dispatcher.dispatch(message, selector);
+			}
+
+			@Override
+			public boolean tryDispatch(Object message, Object selector) {
+				return dispatcher.tryDispatch(message, selector);
+			}
+
+			@Override
+			public boolean offer(Object message, Object selector, long timeout, TimeUnit unit) throws InterruptedException {
+				return dispatcher.offer(message, selector, timeout, unit);
+			}
+		};
+	}
+
 }
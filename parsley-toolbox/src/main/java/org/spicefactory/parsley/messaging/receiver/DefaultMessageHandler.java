@@ -0,0 +1,65 @@
+package org.spicefactory.parsley.messaging.receiver;
+
+import org.spicefactory.parsley.core.messaging.MessageProcessor;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.registry.MessageHandlerEntry;
+
+/**
+ * A regular message handler, invoking a method annotated with <code>@MessageHandler</code> on its owning instance.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultMessageHandler implements MessageTarget {
+
+	private final Object owner;
+	private final MessageHandlerEntry entry;
+
+	/**
+	 * Creates a new instance.
+	 * @param owner the instance owning the handler method
+	 * @param entry the entry describing the handler method
+	 */
+	public DefaultMessageHandler(Object owner, MessageHandlerEntry entry) {
+		this.owner = owner;
+		this.entry = entry;
+	}
+
+	@Override
+	public Class<?> type() {
+		return entry.messageType();
+	}
+
+	@Override
+	public Object selector() {
+		return entry.selector();
+	}
+
+	@Override
+	public int order() {
+		return entry.order();
+	}
+
+	@Override
+	public void handleMessage(MessageProcessor processor) {
+		invoke(entry, owner, processor.message().instance());
+	}
+
+	/**
+	 * Invokes the handler method described by the specified entry, wrapping checked exceptions thrown by the method.
+	 * @param entry the entry describing the handler method
+	 * @param owner the instance owning the handler method
+	 * @param message the message to pass to the handler method
+	 */
+	// Package-private.
+	static void invoke(MessageHandlerEntry entry, Object owner, Object message) {
+		try {
+			entry.invoker().invoke(owner, message);
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Message handler '" + entry.methodName() + "' of " + owner.getClass() + " failed.", e);
+		}
+	}
+
+}
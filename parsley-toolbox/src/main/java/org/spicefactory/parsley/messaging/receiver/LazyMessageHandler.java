@@ -0,0 +1,50 @@
+package org.spicefactory.parsley.messaging.receiver;
+
+import org.spicefactory.parsley.core.messaging.MessageProcessor;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.registry.MessageHandlerEntry;
+
+/**
+ * A proxy for a message handler whose owner has not been created yet.
+ * <p>
+ * Type, selector and order are taken from the handler metadata, so the proxy can be registered and selected like any other target. The owner
+ * is only obtained when the first matching message gets delivered.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class LazyMessageHandler implements MessageTarget {
+
+	private final LazyOwner owner;
+	private final MessageHandlerEntry entry;
+
+	/**
+	 * Creates a new instance.
+	 * @param owner the holder of the instance owning the handler method
+	 * @param entry the entry describing the handler method
+	 */
+	public LazyMessageHandler(LazyOwner owner, MessageHandlerEntry entry) {
+		this.owner = owner;
+		this.entry = entry;
+	}
+
+	@Override
+	public Class<?> type() {
+		return entry.messageType();
+	}
+
+	@Override
+	public Object selector() {
+		return entry.selector();
+	}
+
+	@Override
+	public int order() {
+		return entry.order();
+	}
+
+	@Override
+	public void handleMessage(MessageProcessor processor) {
+		DefaultMessageHandler.invoke(entry, owner.get(), processor.message().instance());
+	}
+
+}
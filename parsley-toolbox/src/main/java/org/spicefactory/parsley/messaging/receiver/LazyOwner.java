@@ -0,0 +1,76 @@
+package org.spicefactory.parsley.messaging.receiver;
+
+import javax.inject.Provider;
+
+/**
+ * Holds the owner of lazy message receivers, obtaining it from a provider the first time it is requested.
+ * <p>
+ * All receivers declared by the same object share a single instance of this class. For a shared owner, like a singleton, the owner gets
+ * obtained only once even if several of its receivers are invoked concurrently for the first time, and a failure to obtain it is not cached,
+ * the next request will try again. Otherwise each request obtains the owner from the provider, leaving its lifecycle to the provider.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class LazyOwner {
+
+	private final Provider<?> provider;
+	private final Class<?> type;
+	private final boolean shared;
+	private volatile Object instance;
+
+	/**
+	 * Creates a new instance.
+	 * @param provider the provider to obtain the owner from
+	 * @param type the type of the owner
+	 * @param shared whether the provider always returns the same instance, which is then kept by this holder
+	 */
+	public LazyOwner(Provider<?> provider, Class<?> type, boolean shared) {
+		this.provider = provider;
+		this.type = type;
+		this.shared = shared;
+	}
+
+	/**
+	 * The type of the owner.
+	 */
+	public Class<?> type() {
+		return type;
+	}
+
+	/**
+	 * Indicates whether a shared owner has already been obtained. Always false if the owner is not shared.
+	 */
+	public boolean isInitialized() {
+		return instance != null;
+	}
+
+	/**
+	 * Returns the owner, obtaining it from the provider if it is not shared or if this is the first request.
+	 * @return the owner
+	 */
+	public Object get() {
+		if (!shared) {
+			return obtain();
+		}
+		Object result = instance;
+		if (result == null) {
+			synchronized (this) {
+				result = instance;
+				if (result == null) {
+					result = obtain();
+					instance = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private Object obtain() {
+		final Object result = provider.get();
+		if (result == null) {
+			throw new IllegalStateException("Provider did not provide an instance of " + type);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.spicefactory.parsley.registry;
+
+import javax.annotation.Nullable;
+
+/**
+ * Describes a single method annotated with <code>@CommandResult</code>.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class CommandResultEntry {
+
+	private final Class<?> resultType;
+	private final String methodName;
+	private final ReceiverInvoker invoker;
+
+	/**
+	 * Creates a new instance.
+	 * @param resultType the type of the result the method expects
+	 * @param methodName the name of the result method
+	 * @param invoker the invoker for the result method, or null if it should be resolved reflectively
+	 */
+	public CommandResultEntry(Class<?> resultType, String methodName, @Nullable ReceiverInvoker invoker) {
+		this.resultType = resultType;
+		this.methodName = methodName;
+		this.invoker = invoker;
+	}
+
+	/**
+	 * The type of the result the method expects.
+	 */
+	public Class<?> resultType() {
+		return resultType;
+	}
+
+	/**
+	 * The name of the result method.
+	 */
+	public String methodName() {
+		return methodName;
+	}
+
+	/**
+	 * The invoker for the result method, receiving the command result as argument. Null until resolved by the owning ReceiverTable.
+	 */
+	public ReceiverInvoker invoker() {
+		return invoker;
+	}
+
+	// Package-private.
+	CommandResultEntry withInvoker(ReceiverInvoker invoker) {
+		return new CommandResultEntry(resultType, methodName, invoker);
+	}
+
+}
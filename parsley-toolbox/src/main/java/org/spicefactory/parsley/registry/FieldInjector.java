@@ -0,0 +1,17 @@
+package org.spicefactory.parsley.registry;
+
+/**
+ * Injects a value into a single field of its owning instance.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+@FunctionalInterface
+public interface FieldInjector {
+
+	/**
+	 * Injects the specified value.
+	 * @param target the instance owning the field
+	 * @param value the value to inject
+	 */
+	void inject(Object target, Object value);
+
+}
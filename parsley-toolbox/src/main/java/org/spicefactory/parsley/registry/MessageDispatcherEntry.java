@@ -0,0 +1,53 @@
+package org.spicefactory.parsley.registry;
+
+import javax.annotation.Nullable;
+
+/**
+ * Describes a single field annotated with <code>@MessageDispatcher</code>.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class MessageDispatcherEntry {
+
+	private final String scope;
+	private final String fieldName;
+	private final FieldInjector injector;
+
+	/**
+	 * Creates a new instance.
+	 * @param scope the name of the scope messages should be dispatched through
+	 * @param fieldName the name of the field the dispatcher gets injected into
+	 * @param injector the injector for the field, or null if it should be resolved reflectively
+	 */
+	public MessageDispatcherEntry(String scope, String fieldName, @Nullable FieldInjector injector) {
+		this.scope = scope;
+		this.fieldName = fieldName;
+		this.injector = injector;
+	}
+
+	/**
+	 * The name of the scope messages should be dispatched through.
+	 */
+	public String scope() {
+		return scope;
+	}
+
+	/**
+	 * The name of the field the dispatcher gets injected into.
+	 */
+	public String fieldName() {
+		return fieldName;
+	}
+
+	/**
+	 * The injector for the field. Null until resolved by the owning ReceiverTable.
+	 */
+	public FieldInjector injector() {
+		return injector;
+	}
+
+	// Package-private.
+	MessageDispatcherEntry withInjector(FieldInjector injector) {
+		return new MessageDispatcherEntry(scope, fieldName, injector);
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.spicefactory.parsley.registry;
+
+import javax.annotation.Nullable;
+
+/**
+ * Describes a single method annotated with <code>@MessageHandler</code>.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class MessageHandlerEntry {
+
+	private final Class<?> messageType;
+	private final String selector;
+	private final String scope;
+	private final int order;
+	private final String[] messageProperties;
+	private final String methodName;
+	private final Class<?>[] parameterTypes;
+	private final ReceiverInvoker invoker;
+
+	/**
+	 * Creates a new instance.
+	 * @param messageType the type of the messages the handler wants to handle
+	 * @param selector the selector value, or null if the handler matches any selector
+	 * @param scope the name of the scope the handler should be registered to
+	 * @param order the execution order of the handler
+	 * @param messageProperties the names of the message properties to pass as method parameters, empty to pass the message itself
+	 * @param methodName the name of the handler method
+	 * @param parameterTypes the parameter types of the handler method
+	 * @param invoker the invoker for the handler method, or null if it should be resolved reflectively
+	 */
+	public MessageHandlerEntry(Class<?> messageType, @Nullable String selector, String scope, int order, String[] messageProperties,
+			String methodName, Class<?>[] parameterTypes, @Nullable ReceiverInvoker invoker) {
+		this.messageType = messageType;
+		this.selector = selector;
+		this.scope = scope;
+		this.order = order;
+		this.messageProperties = messageProperties;
+		this.methodName = methodName;
+		this.parameterTypes = parameterTypes;
+		this.invoker = invoker;
+	}
+
+	/**
+	 * The type of the messages the handler wants to handle.
+	 */
+	public Class<?> messageType() {
+		return messageType;
+	}
+
+	/**
+	 * The selector value, or null if the handler matches any selector.
+	 */
+	@Nullable
+	public String selector() {
+		return selector;
+	}
+
+	/**
+	 * The name of the scope the handler should be registered to.
+	 */
+	public String scope() {
+		return scope;
+	}
+
+	/**
+	 * The execution order of the handler.
+	 */
+	public int order() {
+		return order;
+	}
+
+	/**
+	 * The names of the message properties to pass as method parameters. Empty if the message itself is passed.
+	 */
+	public String[] messageProperties() {
+		return messageProperties.clone();
+	}
+
+	/**
+	 * The name of the handler method.
+	 */
+	public String methodName() {
+		return methodName;
+	}
+
+	/**
+	 * The parameter types of the handler method.
+	 */
+	public Class<?>[] parameterTypes() {
+		return parameterTypes.clone();
+	}
+
+	/**
+	 * The invoker for the handler method, receiving the message instance as argument. Null until resolved by the owning ReceiverTable.
+	 */
+	public ReceiverInvoker invoker() {
+		return invoker;
+	}
+
+	// Package-private.
+	MessageHandlerEntry withInvoker(ReceiverInvoker invoker) {
+		return new MessageHandlerEntry(messageType, selector, scope, order, messageProperties, methodName, parameterTypes, invoker);
+	}
+
+}
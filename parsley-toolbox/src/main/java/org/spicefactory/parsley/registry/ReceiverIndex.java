@@ -0,0 +1,96 @@
+package org.spicefactory.parsley.registry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The classes visible to a ClassLoader that the Parsley annotation processor compiled without generating a receiver table, as they declare
+ * no receivers.
+ * <p>
+ * The index merges all {@link ReceiverTableFactory#INDEX} resources visible to the ClassLoader, and is read once per ClassLoader. A class
+ * listed with a generated table in any of these resources is never considered empty, so that a stale index of a previous compilation never
+ * hides receivers.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+final class ReceiverIndex {
+
+	private static final Map<ClassLoader, ReceiverIndex> INDEXES = new WeakHashMap<ClassLoader, ReceiverIndex>();
+
+	/**
+	 * Returns the index of the specified ClassLoader, reading it on first use.
+	 * @param loader the ClassLoader to return the index for
+	 * @return the index of the specified ClassLoader
+	 */
+	// Package-private.
+	static ReceiverIndex forLoader(ClassLoader loader) {
+		synchronized (INDEXES) {
+			ReceiverIndex index = INDEXES.get(loader);
+			if (index == null) {
+				index = read(loader);
+				INDEXES.put(loader, index);
+			}
+			return index;
+		}
+	}
+
+	private final Set<String> empty;
+
+	private ReceiverIndex(Set<String> empty) {
+		this.empty = empty;
+	}
+
+	/**
+	 * Indicates whether the processor compiled the specified class and found no receivers in it.
+	 */
+	// Package-private.
+	boolean isEmpty(Class<?> type) {
+		return empty.contains(type.getName());
+	}
+
+	private static ReceiverIndex read(ClassLoader loader) {
+		final Set<String> empty = new HashSet<String>();
+		final Set<String> tables = new HashSet<String>();
+		try {
+			final Enumeration<URL> resources = loader.getResources(ReceiverTableFactory.INDEX);
+			while (resources.hasMoreElements()) {
+				final URL resource = resources.nextElement();
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.startsWith("+")) {
+							tables.add(line.substring(1));
+						} else if (line.startsWith("-")) {
+							empty.add(line.substring(1));
+						}
+					}
+				}
+				finally {
+					reader.close();
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Unable to read receiver index, falling back to reflective scanning.", e);
+			return new ReceiverIndex(new HashSet<String>());
+		}
+		empty.removeAll(tables);
+		return new ReceiverIndex(empty);
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(ReceiverIndex.class);
+
+}
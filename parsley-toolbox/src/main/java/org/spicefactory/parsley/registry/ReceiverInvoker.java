@@ -0,0 +1,23 @@
+package org.spicefactory.parsley.registry;
+
+/**
+ * Invokes a single receiver method on its owning instance.
+ * <p>
+ * Generated receiver tables implement this interface with direct method calls. For classes compiled without the annotation processor, or for
+ * members the generated code cannot access, a reflective implementation is used instead.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+@FunctionalInterface
+public interface ReceiverInvoker {
+
+	/**
+	 * Invokes the receiver method.
+	 * @param target the instance owning the receiver method
+	 * @param argument the message or command result to pass to the receiver
+	 * @return the value returned by the receiver method, or null for void methods
+	 * @throws Exception any exception thrown by the receiver method
+	 */
+	Object invoke(Object target, Object argument) throws Exception;
+
+}
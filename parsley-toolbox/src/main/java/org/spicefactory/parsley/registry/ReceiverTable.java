@@ -0,0 +1,191 @@
+package org.spicefactory.parsley.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The table of message handlers, message dispatchers and command result methods of a single class.
+ * <p>
+ * Tables are looked up once per class with {@link #forClass(Class)}. When the class was compiled with the Parsley annotation processor, the
+ * table is created by the generated <code>ReceiverTableFactory</code> and no reflective annotation discovery takes place. Classes the processor
+ * listed in its index as declaring no receivers get an empty table right away. Any other class is scanned with reflection as a fallback.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class ReceiverTable {
+
+	private static final ClassValue<ReceiverTable> TABLES = new ClassValue<ReceiverTable>() {
+
+		@Override
+		protected ReceiverTable computeValue(Class<?> type) {
+			final ReceiverTable declared = createDeclaredTable(type);
+			final Class<?> superclass = type.getSuperclass();
+			if (superclass == null || superclass == Object.class) {
+				return declared;
+			}
+			return declared.inherit(TABLES.get(superclass));
+		}
+	};
+
+	/**
+	 * Returns the table for the specified class, including members inherited from its superclasses.
+	 * @param type the class to return the table for
+	 * @return the table for the specified class
+	 */
+	public static ReceiverTable forClass(Class<?> type) {
+		return TABLES.get(type);
+	}
+
+	private final Class<?> type;
+	private final List<MessageHandlerEntry> messageHandlers;
+	private final List<MessageDispatcherEntry> messageDispatchers;
+	private final List<CommandResultEntry> commandResults;
+
+	/**
+	 * Creates a new instance. Entries without an invoker or injector get a reflective one resolved against the specified type.
+	 * @param type the class owning the members of this table
+	 * @param messageHandlers the methods annotated with <code>@MessageHandler</code>
+	 * @param messageDispatchers the fields annotated with <code>@MessageDispatcher</code>
+	 * @param commandResults the methods annotated with <code>@CommandResult</code>
+	 */
+	public ReceiverTable(Class<?> type, MessageHandlerEntry[] messageHandlers, MessageDispatcherEntry[] messageDispatchers,
+			CommandResultEntry[] commandResults) {
+		this.type = type;
+
+		final List<MessageHandlerEntry> handlers = new ArrayList<MessageHandlerEntry>(messageHandlers.length);
+		for (MessageHandlerEntry entry : messageHandlers) {
+			handlers.add((entry.invoker() != null) ? entry : entry.withInvoker(ReflectiveInvokers.forMessageHandler(type, entry)));
+		}
+
+		final List<MessageDispatcherEntry> dispatchers = new ArrayList<MessageDispatcherEntry>(messageDispatchers.length);
+		for (MessageDispatcherEntry entry : messageDispatchers) {
+			dispatchers.add((entry.injector() != null) ? entry : entry.withInjector(ReflectiveInvokers.forField(type, entry.fieldName())));
+		}
+
+		final List<CommandResultEntry> results = new ArrayList<CommandResultEntry>(commandResults.length);
+		for (CommandResultEntry entry : commandResults) {
+			results.add((entry.invoker() != null) ? entry : entry.withInvoker(ReflectiveInvokers.forCommandResult(type, entry)));
+		}
+
+		this.messageHandlers = Collections.unmodifiableList(handlers);
+		this.messageDispatchers = Collections.unmodifiableList(dispatchers);
+		this.commandResults = Collections.unmodifiableList(results);
+	}
+
+	private ReceiverTable(Class<?> type, List<MessageHandlerEntry> messageHandlers, List<MessageDispatcherEntry> messageDispatchers,
+			List<CommandResultEntry> commandResults) {
+		this.type = type;
+		this.messageHandlers = Collections.unmodifiableList(messageHandlers);
+		this.messageDispatchers = Collections.unmodifiableList(messageDispatchers);
+		this.commandResults = Collections.unmodifiableList(commandResults);
+	}
+
+	/**
+	 * The class owning the members of this table.
+	 */
+	public Class<?> type() {
+		return type;
+	}
+
+	/**
+	 * The methods annotated with <code>@MessageHandler</code>, one entry per annotation.
+	 */
+	public List<MessageHandlerEntry> messageHandlers() {
+		return messageHandlers;
+	}
+
+	/**
+	 * The fields annotated with <code>@MessageDispatcher</code>.
+	 */
+	public List<MessageDispatcherEntry> messageDispatchers() {
+		return messageDispatchers;
+	}
+
+	/**
+	 * The methods annotated with <code>@CommandResult</code>.
+	 */
+	public List<CommandResultEntry> commandResults() {
+		return commandResults;
+	}
+
+	/**
+	 * Indicates whether this table contains no entries at all.
+	 */
+	public boolean isEmpty() {
+		return messageHandlers.isEmpty() && messageDispatchers.isEmpty() && commandResults.isEmpty();
+	}
+
+	private ReceiverTable inherit(ReceiverTable parent) {
+		if (parent.isEmpty()) {
+			return this;
+		}
+
+		final List<MessageHandlerEntry> handlers = new ArrayList<MessageHandlerEntry>(messageHandlers);
+		for (MessageHandlerEntry entry : parent.messageHandlers) {
+			if (!overrides(entry)) {
+				handlers.add(entry);
+			}
+		}
+
+		final List<MessageDispatcherEntry> dispatchers = new ArrayList<MessageDispatcherEntry>(messageDispatchers);
+		dispatchers.addAll(parent.messageDispatchers);
+
+		final List<CommandResultEntry> results = new ArrayList<CommandResultEntry>(commandResults);
+		for (CommandResultEntry entry : parent.commandResults) {
+			if (!overrides(entry)) {
+				results.add(entry);
+			}
+		}
+
+		return new ReceiverTable(type, handlers, dispatchers, results);
+	}
+
+	private boolean overrides(MessageHandlerEntry inherited) {
+		for (MessageHandlerEntry entry : messageHandlers) {
+			if (entry.methodName().equals(inherited.methodName())
+					&& Arrays.equals(entry.parameterTypes(), inherited.parameterTypes())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean overrides(CommandResultEntry inherited) {
+		for (CommandResultEntry entry : commandResults) {
+			if (entry.methodName().equals(inherited.methodName()) && entry.resultType() == inherited.resultType()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static ReceiverTable createDeclaredTable(Class<?> type) {
+		final ClassLoader loader = type.getClassLoader();
+		if (loader == null) {
+			// Classes of the bootstrap ClassLoader never declare receivers.
+			return ReflectiveReceiverScanner.empty(type);
+		}
+
+		if (ReceiverIndex.forLoader(loader).isEmpty(type)) {
+			return ReflectiveReceiverScanner.empty(type);
+		}
+
+		final Class<?> factory;
+		try {
+			factory = Class.forName(type.getName() + ReceiverTableFactory.SUFFIX, true, loader);
+		}
+		catch (ClassNotFoundException e) {
+			return ReflectiveReceiverScanner.scan(type);
+		}
+
+		try {
+			return ((ReceiverTableFactory) factory.getDeclaredConstructor().newInstance()).create();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to create generated receiver table for " + type, e);
+		}
+	}
+
+}
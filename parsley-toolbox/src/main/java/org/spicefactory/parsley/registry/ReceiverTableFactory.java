@@ -0,0 +1,29 @@
+package org.spicefactory.parsley.registry;
+
+/**
+ * Factory for the receiver table of a single class, implemented by the classes generated by the Parsley annotation processor.
+ * <p>
+ * The generated factory for a class <code>com.acme.Foo</code> is named <code>com.acme.Foo$$ParsleyReceivers</code>.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public interface ReceiverTableFactory {
+
+	/**
+	 * Suffix appended to the binary name of a class to obtain the name of its generated factory.
+	 */
+	final static String SUFFIX = "$$ParsleyReceivers";
+
+	/**
+	 * Resource listing the classes compiled with the Parsley annotation processor, written once per compilation. Each line holds the binary
+	 * name of a class, prefixed with <code>+</code> if a factory has been generated for it and with <code>-</code> if it declares no receivers.
+	 */
+	final static String INDEX = "META-INF/parsley/receivers.index";
+
+	/**
+	 * Creates the table of the members declared by the class this factory was generated for. Inherited members are not included.
+	 * @return the table of the declared members
+	 */
+	ReceiverTable create();
+
+}
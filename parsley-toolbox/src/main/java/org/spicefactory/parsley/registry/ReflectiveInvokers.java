@@ -0,0 +1,241 @@
+package org.spicefactory.parsley.registry;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Invokers and injectors for members the generated code cannot access or for classes compiled without the annotation processor.
+ * <p>
+ * Members are resolved with reflection once, when the receiver table of their class gets created, and compiled into method handles. For a
+ * message handler splitting message properties into method parameters, the accessors of all properties are fused with the handler method into a
+ * single <code>(target, message)</code> handle, so that invocation involves no lookup by name, no <code>Object[]</code> and no boxing of
+ * property values whose type matches the parameter.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+final class ReflectiveInvokers {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object.class);
+	private static final List<Class<?>> WIDENING_ORDER = Arrays.<Class<?>> asList(byte.class, short.class, int.class, long.class, float.class,
+			double.class);
+
+	// Package-private.
+	static ReceiverInvoker forMessageHandler(Class<?> type, MessageHandlerEntry entry) {
+		final Method method = findMethod(type, entry.methodName(), entry.parameterTypes());
+		final String[] properties = entry.messageProperties();
+
+		if (properties.length == 0) {
+			return new HandleInvoker(unreflect(method));
+		}
+		return new HandleInvoker(fuse(method, entry.messageType(), properties));
+	}
+
+	// Package-private.
+	static ReceiverInvoker forCommandResult(Class<?> type, CommandResultEntry entry) {
+		return new HandleInvoker(unreflect(findMethod(type, entry.methodName(), new Class<?>[] {entry.resultType()})));
+	}
+
+	// Package-private.
+	static FieldInjector forField(Class<?> type, String name) {
+		final Field field;
+		try {
+			field = type.getDeclaredField(name);
+		}
+		catch (NoSuchFieldException e) {
+			throw new IllegalStateException("No field '" + name + "' declared by " + type, e);
+		}
+		field.setAccessible(true);
+
+		return new FieldInjector() {
+
+			@Override
+			public void inject(Object target, Object value) {
+				try {
+					field.set(target, value);
+				}
+				catch (IllegalAccessException e) {
+					throw new IllegalStateException("Unable to inject field " + field, e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a <code>(Object target, Object argument)Object</code> handle for the specified method, which must take zero or one parameter.
+	 */
+	private static MethodHandle unreflect(Method method) {
+		MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflect(method);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to access method " + method, e);
+		}
+
+		if (method.getParameterTypes().length == 0) {
+			handle = MethodHandles.dropArguments(handle, 1, Object.class);
+		}
+		return handle.asType(INVOKER_TYPE);
+	}
+
+	/**
+	 * Fuses the accessors of the specified message properties with the handler method into a single
+	 * <code>(Object target, Object message)Object</code> handle, validating property names and types.
+	 */
+	private static MethodHandle fuse(Method method, Class<?> messageType, String[] properties) {
+		final Class<?>[] parameterTypes = method.getParameterTypes();
+		if (parameterTypes.length != properties.length) {
+			throw new IllegalStateException("Message handler " + method + " must declare one parameter per message property.");
+		}
+
+		final MethodHandle[] accessors = new MethodHandle[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			final MethodHandle accessor = findAccessor(messageType, properties[i]);
+			final Class<?> propertyType = accessor.type().returnType();
+			if (!isAssignable(propertyType, parameterTypes[i])) {
+				throw new IllegalStateException("Property '" + properties[i] + "' of type " + propertyType.getName() + " of " + messageType
+						+ " is not assignable to parameter " + i + " of message handler " + method);
+			}
+			accessors[i] = accessor.asType(MethodType.methodType(parameterTypes[i], messageType));
+		}
+
+		MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflect(method);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to access method " + method, e);
+		}
+
+		// (Owner, P1, ..., Pn)R becomes (Owner, Message, ..., Message)R, then (Owner, Message)R.
+		handle = MethodHandles.filterArguments(handle, 1, accessors);
+		final int[] reorder = new int[properties.length + 1];
+		Arrays.fill(reorder, 1);
+		reorder[0] = 0;
+		handle = MethodHandles.permuteArguments(handle, MethodType.methodType(handle.type().returnType(), method.getDeclaringClass(),
+				messageType), reorder);
+
+		return handle.asType(INVOKER_TYPE);
+	}
+
+	/**
+	 * Returns a <code>(Message)Property</code> handle reading the specified property, preferring a getter over a field.
+	 */
+	private static MethodHandle findAccessor(Class<?> messageType, String property) {
+		final String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+
+		for (Class<?> c = messageType; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Method method : c.getDeclaredMethods()) {
+				if (method.getParameterTypes().length == 0 && !Modifier.isStatic(method.getModifiers())
+						&& (method.getName().equals("get" + suffix) || method.getName().equals("is" + suffix))) {
+					method.setAccessible(true);
+					try {
+						return LOOKUP.unreflect(method);
+					}
+					catch (IllegalAccessException e) {
+						throw new IllegalStateException("Unable to access getter " + method, e);
+					}
+				}
+			}
+		}
+
+		for (Class<?> c = messageType; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (field.getName().equals(property) && !Modifier.isStatic(field.getModifiers())) {
+					field.setAccessible(true);
+					try {
+						return LOOKUP.unreflectGetter(field);
+					}
+					catch (IllegalAccessException e) {
+						throw new IllegalStateException("Unable to access field " + field, e);
+					}
+				}
+			}
+		}
+
+		throw new IllegalStateException("Message type " + messageType + " has no readable property '" + property + "'.");
+	}
+
+	/**
+	 * Indicates whether a value of the specified type may be assigned to a variable of the specified type, allowing widening, boxing and
+	 * unboxing conversions.
+	 */
+	private static boolean isAssignable(Class<?> from, Class<?> to) {
+		if (to.isAssignableFrom(from)) {
+			return true;
+		}
+		if (from.isPrimitive() && !to.isPrimitive()) {
+			return to.isAssignableFrom(MethodType.methodType(from).wrap().returnType());
+		}
+		if (!from.isPrimitive() && to.isPrimitive()) {
+			final Class<?> primitive = MethodType.methodType(from).unwrap().returnType();
+			return primitive.isPrimitive() && isAssignable(primitive, to);
+		}
+		if (from.isPrimitive() && to.isPrimitive()) {
+			return isWidening(from, to);
+		}
+		return false;
+	}
+
+	private static boolean isWidening(Class<?> from, Class<?> to) {
+		if (from == char.class) {
+			return to == int.class || to == long.class || to == float.class || to == double.class;
+		}
+		final int fromIndex = WIDENING_ORDER.indexOf(from);
+		return fromIndex >= 0 && WIDENING_ORDER.indexOf(to) > fromIndex;
+	}
+
+	private static Method findMethod(Class<?> type, String name, Class<?>[] parameterTypes) {
+		final Method method;
+		try {
+			method = type.getDeclaredMethod(name, parameterTypes);
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException("No method '" + name + "' declared by " + type, e);
+		}
+		method.setAccessible(true);
+		return method;
+	}
+
+	/**
+	 * Invokes a <code>(Object target, Object argument)Object</code> handle.
+	 */
+	private static class HandleInvoker implements ReceiverInvoker {
+
+		private final MethodHandle handle;
+
+		HandleInvoker(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public Object invoke(Object target, Object argument) throws Exception {
+			try {
+				return handle.invokeExact(target, argument);
+			}
+			catch (Exception e) {
+				throw e;
+			}
+			catch (Error e) {
+				throw e;
+			}
+			catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+
+	// Private.
+	private ReflectiveInvokers() {
+		//
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.spicefactory.parsley.registry;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.spicefactory.parsley.comobserver.annotation.CommandResult;
+import org.spicefactory.parsley.messaging.annotation.MessageDispatcher;
+import org.spicefactory.parsley.messaging.annotation.MessageHandler;
+
+/**
+ * Builds the receiver table of a class compiled without the Parsley annotation processor, discovering its annotations with reflection.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+final class ReflectiveReceiverScanner {
+
+	private static final MessageHandlerEntry[] NO_HANDLERS = new MessageHandlerEntry[0];
+	private static final MessageDispatcherEntry[] NO_DISPATCHERS = new MessageDispatcherEntry[0];
+	private static final CommandResultEntry[] NO_RESULTS = new CommandResultEntry[0];
+
+	/**
+	 * Returns a table without any entries for the specified type.
+	 */
+	// Package-private.
+	static ReceiverTable empty(Class<?> type) {
+		return new ReceiverTable(type, NO_HANDLERS, NO_DISPATCHERS, NO_RESULTS);
+	}
+
+	/**
+	 * Scans the members declared by the specified type. Inherited members are not included.
+	 * @param type the type to scan
+	 * @return the table of the declared members
+	 */
+	// Package-private.
+	static ReceiverTable scan(Class<?> type) {
+		final List<MessageHandlerEntry> handlers = new ArrayList<MessageHandlerEntry>();
+		final List<MessageDispatcherEntry> dispatchers = new ArrayList<MessageDispatcherEntry>();
+		final List<CommandResultEntry> results = new ArrayList<CommandResultEntry>();
+
+		for (Method method : type.getDeclaredMethods()) {
+			if (method.isSynthetic() || method.isBridge()) {
+				continue;
+			}
+			for (MessageHandler annotation : method.getAnnotationsByType(MessageHandler.class)) {
+				handlers.add(createMessageHandlerEntry(method, annotation));
+			}
+			if (method.isAnnotationPresent(CommandResult.class)) {
+				results.add(createCommandResultEntry(method));
+			}
+		}
+
+		for (Field field : type.getDeclaredFields()) {
+			final MessageDispatcher annotation = field.getAnnotation(MessageDispatcher.class);
+			if (annotation != null) {
+				dispatchers.add(new MessageDispatcherEntry(annotation.scope(), field.getName(), null));
+			}
+		}
+
+		return new ReceiverTable(type, handlers.toArray(NO_HANDLERS), dispatchers.toArray(NO_DISPATCHERS), results.toArray(NO_RESULTS));
+	}
+
+	private static MessageHandlerEntry createMessageHandlerEntry(Method method, MessageHandler annotation) {
+		final Class<?>[] parameterTypes = method.getParameterTypes();
+		final String[] properties = annotation.messagesProperties();
+
+		Class<?> messageType = annotation.type();
+		if (messageType == Object.class) {
+			if (properties.length > 0 || parameterTypes.length != 1) {
+				throw new IllegalStateException("Message type must be specified explicitly for message handler " + method);
+			}
+			messageType = parameterTypes[0];
+		}
+		if (properties.length == 0 && parameterTypes.length > 1) {
+			throw new IllegalStateException("Message handler " + method + " must not declare more than one parameter.");
+		}
+		if (properties.length > 0 && properties.length != parameterTypes.length) {
+			throw new IllegalStateException("Message handler " + method + " must declare one parameter per message property.");
+		}
+
+		final String selector = annotation.selector().isEmpty() ? null : annotation.selector();
+		return new MessageHandlerEntry(messageType, selector, annotation.scope(), annotation.order(), properties, method.getName(),
+				parameterTypes, null);
+	}
+
+	private static CommandResultEntry createCommandResultEntry(Method method) {
+		final Class<?>[] parameterTypes = method.getParameterTypes();
+		if (parameterTypes.length != 1) {
+			throw new IllegalStateException("Command result method " + method + " must declare exactly one parameter.");
+		}
+		return new CommandResultEntry(parameterTypes[0], method.getName(), null);
+	}
+
+	// Private.
+	private ReflectiveReceiverScanner() {
+		//
+	}
+
+}
@@ -3,12 +3,13 @@ package org.spicefactory.parsley.view;
 import java.awt.Component;
 import java.awt.event.HierarchyEvent;
 import java.awt.event.HierarchyListener;
+import java.lang.ref.WeakReference;
+
+import javax.swing.JComponent;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.spicefactory.parsley.core.events.ViewConfigurationEvent;
 import org.spicefactory.parsley.core.view.ViewConfiguration;
 import org.spicefactory.parsley.core.view.ViewConfiguration.CompleteHandler;
+import org.spicefactory.parsley.core.view.ViewConfigurationCollector;
 import org.spicefactory.parsley.core.view.ViewProcessor;
 
 /**
@@ -19,7 +20,19 @@ import org.spicefactory.parsley.core.view.ViewProcessor;
  */
 public final class Configure implements HierarchyListener {
 
-	private final Logger logger = LoggerFactory.getLogger(Configure.class);
+	/**
+	 * Watches unparented views with a single Toolkit-level <code>AWTEventListener</code> instead of adding a <code>HierarchyListener</code> to
+	 * each of them. This avoids the listener churn of components created in large numbers, like the renderers of lists and tables.
+	 * <p>
+	 * The Toolkit listener makes AWT generate hierarchy events for all components and requires the <code>listenToAllAWTEvents</code>
+	 * permission when running under a security manager, so it is disabled by default. Only Swing components are watched this way, as the
+	 * pending configuration is kept as a client property of the view; other components still get a <code>HierarchyListener</code>.
+	 * </p>
+	 * @param enabled true to watch unparented views with the Toolkit listener
+	 */
+	public static void listenOnToolkit(boolean enabled) {
+		listenOnToolkit = enabled;
+	}
 
 	/**
 	 * The view that demarcates the life-cycle of the target instance to be configured.
@@ -40,7 +53,9 @@ public final class Configure implements HierarchyListener {
 	 * @return this Configure instance for method chaining
 	 */
 	public Configure target(Object target) {
-		this.target = target;
+		// Keeps the view only weakly referenced while pending when it is its own target.
+		this.targetIsView = (target == view.get());
+		this.target = targetIsView ? null : target;
 		return this;
 	}
 
@@ -48,6 +63,10 @@ public final class Configure implements HierarchyListener {
 	 * Indicates whether the target instance will be reused in subsequent life-cycles of the view. When set to false the configuration will only
 	 * be processed once. This value should be true if the application keeps instances of the view in memory and adds them back to the stage
 	 * later. It should be false if the view will get garbage collected once it has been removed from the stage.
+	 * <p>
+	 * When true, this instance keeps the configuration it dispatched and dispatches it again on each subsequent execution, which holds the view
+	 * strongly for as long as this instance is referenced.
+	 * </p>
 	 * @param value indicates whether the target instance will be reused in subsequent life-cycles of the view
 	 * @return this Configure instance for method chaining
 	 */
@@ -90,37 +109,60 @@ public final class Configure implements HierarchyListener {
 
 	/**
 	 * Executes this view configuration at the nearest Context in the view hierarchy.
+	 * <p>
+	 * On the event dispatch thread the configuration is collected with all others raised in the same tick and dispatched in bulk.
+	 * </p>
 	 */
 	public void execute() {
-		if (view.getParent() == null) {
-			view.addHierarchyListener(this);
-		} else {
+		final Component v = view.get();
+		if (v == null) {
+			// The view has already been garbage collected, there is nothing left to configure.
+			return;
+		}
+		if (v.getParent() != null) {
 			dispatchEvent();
 		}
+		else if (listenOnToolkit && v instanceof JComponent) {
+			HierarchyWatcher.getInstance().watch((JComponent) v, this);
+		}
+		else {
+			v.addHierarchyListener(this);
+		}
 	}
 
 	@Override
 	public void hierarchyChanged(HierarchyEvent evt) {
 		if ((evt.getChangeFlags() & HierarchyEvent.PARENT_CHANGED) != 0) {
-			view.removeHierarchyListener(this);
+			evt.getComponent().removeHierarchyListener(this);
 			dispatchEvent();
 		}
 	}
 
-	private void dispatchEvent() {
-		ViewConfiguration config = new ViewConfiguration(view, target, configId);
-		config.reuse = reuse;
-		config.autoremove = autoremove;
-		config.processor = processor;
-		ViewConfigurationEvent event = ViewConfigurationEvent.forConfigurations(new ViewConfiguration[] {config}, completeHandler);
-		view.dispatchEvent(event);
-		if (!event.received()) {
-			logger.warn("View configuration could not be processed for target {}: no Context found in view hierarchy.", config.target);
+	// Package-private.
+	void dispatchEvent() {
+		Component v = view.get();
+		if (v == null) {
+			return;
 		}
+		ViewConfiguration config = this.config;
+		if (config == null) {
+			config = new ViewConfiguration(v, targetIsView ? v : target, configId);
+			config.reuse = reuse;
+			config.autoremove = autoremove;
+			config.processor = processor;
+			// Dispatches the same instance in subsequent life-cycles, so that the plan attached to it by the processor applies again.
+			if (reuse) {
+				this.config = config;
+			}
+		}
+		ViewConfigurationCollector.add(config, completeHandler);
 	}
 
-	private final Component view;
+	private static volatile boolean listenOnToolkit;
+
+	private final WeakReference<Component> view;
 	private Object target;
+	private boolean targetIsView;
 
 	private boolean reuse;
 	private boolean autoremove;
@@ -129,9 +171,11 @@ public final class Configure implements HierarchyListener {
 
 	private CompleteHandler completeHandler;
 
+	private ViewConfiguration config;
+
 	// Private
 	private Configure(Component view) {
-		this.view = view;
+		this.view = new WeakReference<Component>(view);
 	}
 
 }
@@ -0,0 +1,65 @@
+package org.spicefactory.parsley.view;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.view.ViewConfiguration;
+import org.spicefactory.parsley.core.view.ViewPlan;
+import org.spicefactory.parsley.core.view.ViewProcessor;
+
+/**
+ * Default implementation of the ViewProcessor interface, applying the <code>ViewInjectionPlan</code> of the target class.
+ * <p>
+ * When the configuration is reused, the resolved plan is attached to it and applied directly in subsequent life-cycles of the view, as long as
+ * it is processed by the same Context.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class DefaultViewProcessor implements ViewProcessor {
+
+	@Override
+	public void init(ViewConfiguration config, Context context) {
+		prepare(config, context).run();
+	}
+
+	@Override
+	public void destroy() {
+		// Nothing to release, injected fields are left as they are.
+	}
+
+	/**
+	 * Resolves the plan for the specified configuration and prepares it, without touching the target. May be invoked on any thread.
+	 * @return the steps applying the prepared work to the target, to be run on the event dispatch thread
+	 */
+	// Package-private.
+	static Runnable prepare(ViewConfiguration config, Context context) {
+		return prepare(config, context, new HashMap<List<Object>, ViewPlan>(2));
+	}
+
+	/**
+	 * Resolves the plan for the specified configuration and prepares it like <code>prepare(ViewConfiguration, Context)</code>, sharing the
+	 * plans resolved for a batch of configurations per target class and configId, so that each plan and its providers get resolved once.
+	 * @param plans the plans resolved so far for the batch, keyed by target class and configId
+	 * @return the steps applying the prepared work to the target, to be run on the event dispatch thread
+	 */
+	// Package-private.
+	static Runnable prepare(ViewConfiguration config, Context context, Map<List<Object>, ViewPlan> plans) {
+		final Object target = (config.target != null) ? config.target : config.view;
+
+		ViewPlan plan = config.plan;
+		if (plan == null || plan.context() != context || plan.type() != target.getClass()) {
+			final List<Object> key = Arrays.<Object> asList(target.getClass(), config.configId);
+			plan = plans.get(key);
+			if (plan == null) {
+				plan = ViewInjectionPlan.forClass(target.getClass()).resolve(context);
+				plans.put(key, plan);
+			}
+			config.plan = config.reuse ? plan : null;
+		}
+		return plan.prepare(config);
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.spicefactory.parsley.view;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.HierarchyEvent;
+import java.lang.ref.WeakReference;
+
+import javax.swing.JComponent;
+
+import org.spicefactory.parsley.core.util.ConcurrentWeakIdentityMap;
+
+/**
+ * Watches all unparented views of pending <code>Configure</code> instances with a single Toolkit listener, instead of adding a
+ * HierarchyListener to each of them.
+ * <p>
+ * The pending configuration is kept as a client property of its view, and the watcher only references both weakly. The configuration, its
+ * target and its complete handler thus live exactly as long as the view, so a view which is never added to a container can still be garbage
+ * collected even if its target references it.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+// Package-private.
+final class HierarchyWatcher implements AWTEventListener {
+
+	/**
+	 * Lazily installs the listener with the Toolkit on first use.
+	 */
+	private static final class Holder {
+		static final HierarchyWatcher INSTANCE = new HierarchyWatcher();
+	}
+
+	// Package-private.
+	static HierarchyWatcher getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	private static final Object PENDING = new Object();
+
+	private final ConcurrentWeakIdentityMap<Component, WeakReference<Configure>> pending =
+			new ConcurrentWeakIdentityMap<Component, WeakReference<Configure>>();
+
+	// Private.
+	private HierarchyWatcher() {
+		Toolkit.getDefaultToolkit().addAWTEventListener(this, AWTEvent.HIERARCHY_EVENT_MASK);
+	}
+
+	/**
+	 * Executes the specified configuration as soon as the view gets a parent.
+	 */
+	// Package-private.
+	void watch(JComponent view, Configure configure) {
+		view.putClientProperty(PENDING, configure);
+		pending.put(view, new WeakReference<Configure>(configure));
+
+		// The view may have been added to its parent before it was registered.
+		if (view.getParent() != null) {
+			parentChanged(view);
+		}
+	}
+
+	@Override
+	public void eventDispatched(AWTEvent event) {
+		final HierarchyEvent e = (HierarchyEvent) event;
+		if ((e.getChangeFlags() & HierarchyEvent.PARENT_CHANGED) != 0 && e.getChanged() == e.getComponent()
+				&& e.getComponent().getParent() != null) {
+			parentChanged(e.getComponent());
+		}
+	}
+
+	private void parentChanged(Component view) {
+		// Removal succeeds only once per registration, so concurrent notifications do not execute the configuration twice.
+		final WeakReference<Configure> reference = pending.remove(view);
+		if (reference == null) {
+			return;
+		}
+		final Configure configure = reference.get();
+		if (configure != null && ((JComponent) view).getClientProperty(PENDING) == configure) {
+			((JComponent) view).putClientProperty(PENDING, null);
+		}
+		if (configure != null) {
+			configure.dispatchEvent();
+		}
+	}
+
+}
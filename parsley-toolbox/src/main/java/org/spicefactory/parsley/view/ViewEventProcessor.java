@@ -0,0 +1,183 @@
+package org.spicefactory.parsley.view;
+
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.events.ViewConfigurationEvent;
+import org.spicefactory.parsley.core.view.ViewConfiguration;
+import org.spicefactory.parsley.core.view.ViewConfiguration.CompleteHandler;
+import org.spicefactory.parsley.core.view.ViewConfigurationCollector;
+import org.spicefactory.parsley.core.view.ViewPlan;
+
+/**
+ * Processes the view configurations of a <code>ViewConfigurationEvent</code> received by a Context.
+ * <p>
+ * Without an executor all configurations are processed on the event dispatch thread. With an executor, the configurations using the default
+ * processor are resolved and prepared on the executor in a single task, and only the steps touching the targets are posted back to the event
+ * dispatch thread. Configurations with a custom <code>ViewProcessor</code> are always processed on the event dispatch thread, after the
+ * prepared steps. In both modes the <code>CompleteHandler</code> of the event fires on the event dispatch thread once all configurations have
+ * been processed, even if some of them failed or the executor rejected the task, in which case the configurations are processed on the event
+ * dispatch thread. The configurations of a batch sharing the same target class and configId are prepared with a plan resolved once for
+ * all of them.
+ * </p>
+ * <p>
+ * A Context built with a view root gets an instance installed for that view root, see <code>ContextBuilderSetup.viewRoot</code> and
+ * <code>ContextBuilderSetup.viewExecutor</code>.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class ViewEventProcessor implements ViewConfigurationCollector.Receiver {
+
+	private static final Logger logger = LoggerFactory.getLogger(ViewEventProcessor.class);
+
+	private final Context context;
+	private final Executor executor;
+
+	/**
+	 * Creates a new instance.
+	 * @param context the Context processing the configurations
+	 * @param executor the executor for the work not touching components, or null to process everything on the event dispatch thread
+	 */
+	public ViewEventProcessor(Context context, @Nullable Executor executor) {
+		this.context = context;
+		this.executor = executor;
+	}
+
+	/**
+	 * Receives the view configuration events dispatched below the specified view root until the Context gets destroyed.
+	 * @param viewRoot the view root to receive events for
+	 */
+	public void install(Component viewRoot) {
+		ViewConfigurationCollector.addReceiver(viewRoot, this);
+		// Weakly, as the Context is reachable from the receiver registered for the view root.
+		final WeakReference<Component> root = new WeakReference<Component>(viewRoot);
+		context.addContextListener(new ContextListener() {
+
+			@Override
+			public void contextDestroyed(ContextEvent e) {
+				final Component viewRoot = root.get();
+				if (viewRoot != null) {
+					ViewConfigurationCollector.removeReceiver(viewRoot, ViewEventProcessor.this);
+				}
+			}
+		}, ContextEvent.DESTROYED);
+	}
+
+	@Override
+	public void receive(final ViewConfigurationEvent event) {
+		if (EventQueue.isDispatchThread()) {
+			process(event);
+			return;
+		}
+		EventQueue.invokeLater(new Runnable() {
+
+			@Override
+			public void run() {
+				process(event);
+			}
+		});
+	}
+
+	/**
+	 * Processes all configurations of the specified event. Must be invoked on the event dispatch thread.
+	 * @param event the event to process
+	 */
+	public void process(ViewConfigurationEvent event) {
+		final List<ViewConfiguration> defaults = new ArrayList<ViewConfiguration>();
+		final List<ViewConfiguration> customs = new ArrayList<ViewConfiguration>();
+		for (ViewConfiguration config : event.configurations()) {
+			(config.processor == null ? defaults : customs).add(config);
+		}
+
+		final CompleteHandler callback = event.callback();
+		if (executor == null || defaults.isEmpty()) {
+			attach(prepare(defaults), customs, callback);
+			return;
+		}
+
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					List<Runnable> steps = Collections.emptyList();
+					try {
+						steps = prepare(defaults);
+					}
+					finally {
+						final List<Runnable> prepared = steps;
+						EventQueue.invokeLater(new Runnable() {
+
+							@Override
+							public void run() {
+								attach(prepared, customs, callback);
+							}
+						});
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			logger.warn("View processing executor rejected {} configuration(s), processing them on the event dispatch thread.",
+					defaults.size(), e);
+			attach(prepare(defaults), customs, callback);
+		}
+	}
+
+	private List<Runnable> prepare(List<ViewConfiguration> configs) {
+		final List<Runnable> steps = new ArrayList<Runnable>(configs.size());
+		final Map<List<Object>, ViewPlan> plans = new HashMap<List<Object>, ViewPlan>();
+		for (ViewConfiguration config : configs) {
+			try {
+				steps.add(DefaultViewProcessor.prepare(config, context, plans));
+			}
+			catch (RuntimeException e) {
+				// A single broken view must neither prevent the others from being processed nor the callback from firing.
+				logger.error("Unable to process view configuration for target {}.", config.target, e);
+			}
+		}
+		return steps;
+	}
+
+	private void attach(List<Runnable> steps, List<ViewConfiguration> customs, @Nullable CompleteHandler callback) {
+		try {
+			for (Runnable step : steps) {
+				try {
+					step.run();
+				}
+				catch (RuntimeException e) {
+					logger.error("Unable to attach view configuration.", e);
+				}
+			}
+			for (ViewConfiguration config : customs) {
+				try {
+					config.processor.init(config, context);
+				}
+				catch (RuntimeException e) {
+					logger.error("Unable to process view configuration for target {}.", config.target, e);
+				}
+			}
+		}
+		finally {
+			if (callback != null) {
+				callback.configurationComplete();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,331 @@
+package org.spicefactory.parsley.view;
+
+import java.awt.Component;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.events.ContextEvent;
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.messaging.impl.MessageDispatcher;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+import org.spicefactory.parsley.core.scope.ScopeManager;
+import org.spicefactory.parsley.core.view.ViewConfiguration;
+import org.spicefactory.parsley.core.view.ViewPlan;
+import org.spicefactory.parsley.messaging.FunctionDispatcher;
+import org.spicefactory.parsley.messaging.receiver.DefaultMessageHandler;
+import org.spicefactory.parsley.registry.FieldInjector;
+import org.spicefactory.parsley.registry.MessageDispatcherEntry;
+import org.spicefactory.parsley.registry.MessageHandlerEntry;
+import org.spicefactory.parsley.registry.ReceiverTable;
+
+/**
+ * The injection and wiring plan of a single view target class.
+ * <p>
+ * Plans are computed once per class with {@link #forClass(Class)}: the fields annotated with <code>@Inject</code>, including inherited ones,
+ * are compiled into method handle setters, and the message handlers and dispatchers are taken from the <code>ReceiverTable</code> of the
+ * class. A plan is then resolved against a Context, looking up the provider of each injected field, the receiver registry of the scope of
+ * each message handler, and creating the dispatcher of each <code>@MessageDispatcher</code> field once.
+ * </p>
+ * <p>
+ * The message handlers of a target are registered once it has been injected. They are removed when its view is removed from the stage if
+ * the configuration has <code>autoremove</code> set, and when the Context gets destroyed.
+ * </p>
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public final class ViewInjectionPlan {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final ClassValue<ViewInjectionPlan> PLANS = new ClassValue<ViewInjectionPlan>() {
+
+		@Override
+		protected ViewInjectionPlan computeValue(Class<?> type) {
+			return new ViewInjectionPlan(type);
+		}
+	};
+
+	/**
+	 * Returns the plan for the specified target class.
+	 * @param type the class of the view targets
+	 * @return the plan for the specified target class
+	 */
+	public static ViewInjectionPlan forClass(Class<?> type) {
+		return PLANS.get(type);
+	}
+
+	private final Class<?> type;
+	private final List<Injection> injections;
+	private final ReceiverTable receivers;
+
+	private ViewInjectionPlan(Class<?> type) {
+		this.type = type;
+
+		final List<Injection> result = new ArrayList<Injection>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (field.isAnnotationPresent(Inject.class) && !Modifier.isStatic(field.getModifiers())) {
+					result.add(new Injection(field));
+				}
+			}
+		}
+		this.injections = Collections.unmodifiableList(result);
+		this.receivers = ReceiverTable.forClass(type);
+	}
+
+	/**
+	 * The class of the view targets.
+	 */
+	public Class<?> type() {
+		return type;
+	}
+
+	/**
+	 * The fields annotated with <code>@Inject</code>.
+	 */
+	public List<Injection> injections() {
+		return injections;
+	}
+
+	/**
+	 * The message handlers, message dispatchers and command results of the class.
+	 */
+	public ReceiverTable receivers() {
+		return receivers;
+	}
+
+	/**
+	 * Resolves this plan against the specified Context.
+	 * @param context the Context to look up the injected objects in
+	 * @return the resolved plan
+	 * @throws IllegalStateException if the Context hierarchy is not configured for the type of an injected field
+	 */
+	public ViewPlan resolve(Context context) {
+		final Provider<?>[] providers = new Provider<?>[injections.size()];
+		for (int i = 0; i < providers.length; i++) {
+			final Injection injection = injections.get(i);
+			providers[i] = context.getProvider(injection.type);
+			if (providers[i] == null) {
+				throw new IllegalStateException("No Context of the hierarchy is configured for field '" + injection.name + "' of " + type);
+			}
+		}
+
+		final List<MessageDispatcherEntry> entries = receivers.messageDispatchers();
+		final FunctionDispatcher[] dispatchers = new FunctionDispatcher[entries.size()];
+		final List<MessageHandlerEntry> handlers = receivers.messageHandlers();
+		final MessageReceiverRegistry[] registries = new MessageReceiverRegistry[handlers.size()];
+		for (int i = 0; i < dispatchers.length; i++) {
+			dispatchers[i] = FunctionDispatcher.of(MessageDispatcher.forScope(context, entries.get(i).scope()));
+		}
+		if (registries.length > 0) {
+			final ScopeManager scopeManager = context.getInstance(ScopeManager.class);
+			for (int i = 0; i < registries.length; i++) {
+				registries[i] = registryOf(context, scopeManager.getScope(handlers.get(i).scope()));
+			}
+		}
+		return new ResolvedPlan(context, providers, dispatchers, registries);
+	}
+
+	private static MessageReceiverRegistry registryOf(Context context, Scope scope) {
+		final ScopeInfo info = context.getInstance(ScopeIndex.class).get(scope.uuid());
+		if (info == null) {
+			throw new IllegalStateException("Scope '" + scope.name() + "' is not registered in the scope index.");
+		}
+		return info.messageReceivers();
+	}
+
+	/**
+	 * A single field annotated with <code>@Inject</code>.
+	 */
+	public static final class Injection {
+
+		private final String name;
+		private final Class<?> type;
+		private final FieldInjector injector;
+
+		// Package-private.
+		Injection(Field field) {
+			this.name = field.getName();
+			this.type = field.getType();
+
+			field.setAccessible(true);
+			final MethodHandle setter;
+			try {
+				setter = LOOKUP.unreflectSetter(field).asType(SETTER_TYPE);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to access field " + field, e);
+			}
+
+			this.injector = new FieldInjector() {
+
+				@Override
+				public void inject(Object target, Object value) {
+					try {
+						setter.invokeExact(target, value);
+					}
+					catch (RuntimeException e) {
+						throw e;
+					}
+					catch (Error e) {
+						throw e;
+					}
+					catch (Throwable t) {
+						throw new IllegalStateException(t);
+					}
+				}
+			};
+		}
+
+		/**
+		 * The name of the field.
+		 */
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * The type of the field.
+		 */
+		public Class<?> type() {
+			return type;
+		}
+
+		/**
+		 * The compiled setter of the field.
+		 */
+		public FieldInjector injector() {
+			return injector;
+		}
+	}
+
+	/**
+	 * The plan bound to a Context, holding one provider per injected field, one dispatcher per dispatcher field and one receiver registry
+	 * per message handler.
+	 */
+	private final class ResolvedPlan implements ViewPlan {
+
+		private final Context context;
+		private final Provider<?>[] providers;
+		private final FunctionDispatcher[] dispatchers;
+		private final MessageReceiverRegistry[] registries;
+
+		ResolvedPlan(Context context, Provider<?>[] providers, FunctionDispatcher[] dispatchers, MessageReceiverRegistry[] registries) {
+			this.context = context;
+			this.providers = providers;
+			this.dispatchers = dispatchers;
+			this.registries = registries;
+		}
+
+		@Override
+		public Class<?> type() {
+			return type;
+		}
+
+		@Override
+		public Context context() {
+			return context;
+		}
+
+		@Override
+		public Runnable prepare(final ViewConfiguration config) {
+			final Object target = (config.target != null) ? config.target : config.view;
+			final Object[] values = new Object[providers.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = providers[i].get();
+			}
+			return new Runnable() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < values.length; i++) {
+						injections.get(i).injector.inject(target, values[i]);
+					}
+					for (int i = 0; i < dispatchers.length; i++) {
+						receivers.messageDispatchers().get(i).injector().inject(target, dispatchers[i]);
+					}
+					if (registries.length > 0 && !isRegistered(config.view, target)) {
+						new HandlerRegistration(config.view, target, config.autoremove);
+					}
+				}
+			};
+		}
+
+		private boolean isRegistered(Component view, Object target) {
+			for (HierarchyListener l : view.getHierarchyListeners()) {
+				if (l instanceof HandlerRegistration && ((HandlerRegistration) l).owns(context, target)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * The message handlers of a single target, registered for as long as it is part of the Context. Kept as a listener of the view,
+		 * which also prevents registering the handlers of a reused target twice.
+		 */
+		private final class HandlerRegistration implements HierarchyListener, ContextListener {
+
+			private final Component view;
+			private final Object target;
+			private final boolean autoremove;
+			private final MessageTarget[] handlers;
+
+			HandlerRegistration(Component view, Object target, boolean autoremove) {
+				this.view = view;
+				this.target = target;
+				this.autoremove = autoremove;
+				this.handlers = new MessageTarget[registries.length];
+				for (int i = 0; i < handlers.length; i++) {
+					handlers[i] = new DefaultMessageHandler(target, receivers.messageHandlers().get(i));
+					registries[i].addTarget(handlers[i]);
+				}
+				view.addHierarchyListener(this);
+				context.addContextListener(this, ContextEvent.DESTROYED);
+			}
+
+			boolean owns(Context context, Object target) {
+				return context == ResolvedPlan.this.context && target == this.target;
+			}
+
+			@Override
+			public void hierarchyChanged(HierarchyEvent e) {
+				// The view left the stage when the subtree it belongs to has been detached.
+				if (autoremove && (e.getChangeFlags() & HierarchyEvent.PARENT_CHANGED) != 0 && e.getChanged().getParent() == null) {
+					remove();
+				}
+			}
+
+			@Override
+			public void contextDestroyed(ContextEvent e) {
+				// Handlers registered in scopes inherited from a parent Context would outlive this Context otherwise.
+				remove();
+			}
+
+			private void remove() {
+				for (int i = 0; i < handlers.length; i++) {
+					registries[i].removeTarget(handlers[i]);
+				}
+				view.removeHierarchyListener(this);
+				context.removeContextListener(this);
+			}
+		}
+	}
+
+}
@@ -1,3 +1,18 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.spicefactory.parsley.core.command.ObservableCommand;
+import org.spicefactory.parsley.core.messaging.DispatchResult;
+import org.spicefactory.parsley.core.messaging.MessagePriority;
+import org.spicefactory.parsley.core.messaging.MessageState;
+import org.spicefactory.parsley.core.messaging.impl.DefaultMessage;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeManager;
 import org.spicefactory.parsley.messaging.FunctionDispatcher;
 import org.spicefactory.parsley.messaging.annotation.MessageDispatcher;
 
@@ -6,18 +21,85 @@ public class Test {
 	@MessageDispatcher
 	FunctionDispatcher dispatcher;
 
+	final StubScopeManager scopeManager = new StubScopeManager();
+
 	public Test() {
 
 		// Framework bindings.
 		org.spicefactory.parsley.core.messaging.impl.MessageDispatcher instance =
-				new org.spicefactory.parsley.core.messaging.impl.MessageDispatcher(null, null);
-		dispatcher = instance::dispatchMessage;
+				new org.spicefactory.parsley.core.messaging.impl.MessageDispatcher(scopeManager, Scope.GLOBAL);
+		dispatcher = FunctionDispatcher.of(instance);
 
 		// Client API.
 		dispatcher.dispatchMessage("");
+		dispatcher.tryDispatch("queued");
+		if (!scopeManager.dispatched.equals(Arrays.asList("", "queued"))) {
+			throw new AssertionError("Message not dispatched: " + scopeManager.dispatched);
+		}
 	}
 
 	int compare(Test b) {
 		return 0;
 	}
+
+	/**
+	 * Scope manager without scopes, recording the messages dispatched through it.
+	 */
+	static final class StubScopeManager implements ScopeManager {
+
+		final List<Object> dispatched = new ArrayList<Object>();
+
+		@Override
+		public boolean hasScope(String name) {
+			return false;
+		}
+
+		@Override
+		public Scope getScope(String name) {
+			throw new IllegalArgumentException("No scope with name " + name);
+		}
+
+		@Override
+		public List<Scope> getAllScopes() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void dispatchMessage(Object message, Object selector) {
+			dispatched.add(message);
+		}
+
+		@Override
+		public void dispatchMessage(Object message, Object selector, MessagePriority priority) {
+			dispatched.add(message);
+		}
+
+		@Override
+		public CompletionStage<DispatchResult> dispatch(Object message, Object selector) {
+			dispatched.add(message);
+			return CompletableFuture.completedFuture(new DispatchResult(new DefaultMessage(message, message.getClass(), selector),
+					MessageState.COMPLETE, Collections.<DispatchResult.Outcome> emptyList()));
+		}
+
+		@Override
+		public boolean tryDispatch(Object message, Object selector) {
+			dispatched.add(message);
+			return true;
+		}
+
+		@Override
+		public boolean offer(Object message, Object selector, long timeout, TimeUnit unit) {
+			dispatched.add(message);
+			return true;
+		}
+
+		@Override
+		public void dispatchTo(String uuid, Object message, Object selector) {
+			dispatched.add(message);
+		}
+
+		@Override
+		public void observeCommand(ObservableCommand command) {
+		}
+	}
 }
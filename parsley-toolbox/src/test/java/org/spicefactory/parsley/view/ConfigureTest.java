@@ -0,0 +1,97 @@
+package org.spicefactory.parsley.view;
+
+import java.awt.EventQueue;
+
+import javax.inject.Inject;
+import javax.swing.JPanel;
+
+import org.spicefactory.parsley.core.events.ViewConfigurationEvent;
+import org.spicefactory.parsley.core.view.ViewConfiguration;
+
+/**
+ * Checks that view configurations resolve the plan of their target only once, whether reused or processed in a batch.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class ConfigureTest {
+
+	public static class Model {
+		@Inject
+		String value;
+	}
+
+	public void testReusedConfigurationSkipsResolution() throws Exception {
+		final StubContext context = new StubContext().with(String.class, "injected");
+		final JPanel root = new JPanel();
+		new ViewEventProcessor(context, null).install(root);
+		final JPanel view = new JPanel();
+		root.add(view);
+
+		final Model model = new Model();
+		final Configure configure = Configure.view(view).target(model).reuse(true);
+		configure.execute();
+		flush();
+		check(model.value == "injected", "First life-cycle not injected");
+		check(context.providerLookups == 1, "Plan not resolved once: " + context.providerLookups);
+
+		// Second life-cycle of the view.
+		root.remove(view);
+		model.value = null;
+		root.add(view);
+		configure.execute();
+		flush();
+		check(model.value == "injected", "Second life-cycle not injected");
+		check(context.providerLookups == 1, "Reused plan resolved again: " + context.providerLookups);
+	}
+
+	public void testConfigurationWithoutReuseResolvesEachTime() throws Exception {
+		final StubContext context = new StubContext().with(String.class, "injected");
+		final JPanel root = new JPanel();
+		new ViewEventProcessor(context, null).install(root);
+		final JPanel view = new JPanel();
+		root.add(view);
+
+		final Configure configure = Configure.view(view).target(new Model());
+		configure.execute();
+		configure.execute();
+		flush();
+		check(context.providerLookups == 2, "Plan not resolved per life-cycle: " + context.providerLookups);
+	}
+
+	public void testBatchResolvesPlanOncePerClass() throws Exception {
+		final StubContext context = new StubContext().with(String.class, "injected");
+		final ViewEventProcessor processor = new ViewEventProcessor(context, null);
+		final Model[] models = { new Model(), new Model(), new Model() };
+		final ViewConfiguration[] configs = new ViewConfiguration[models.length];
+		for (int i = 0; i < models.length; i++) {
+			configs[i] = new ViewConfiguration(new JPanel(), models[i]);
+		}
+		EventQueue.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				processor.process(ViewConfigurationEvent.forConfigurations(configs));
+			}
+		});
+		for (Model model : models) {
+			check(model.value == "injected", "Target of the batch not injected");
+		}
+		check(context.providerLookups == 1, "Plan not resolved once per class: " + context.providerLookups);
+	}
+
+	private static void flush() throws Exception {
+		EventQueue.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				// Waits for the configurations posted to the event dispatch thread.
+			}
+		});
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.spicefactory.parsley.view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.inject.Provider;
+
+import org.spicefactory.parsley.core.context.Context;
+import org.spicefactory.parsley.core.context.ContextListener;
+import org.spicefactory.parsley.core.events.ContextEvent;
+
+/**
+ * Context without parents holding fixed instances, counting the provider lookups made against it.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+final class StubContext implements Context {
+
+	final Map<Class<?>, Object> instances = new HashMap<Class<?>, Object>();
+	final List<ContextListener> listeners = new ArrayList<ContextListener>();
+	int providerLookups;
+
+	<T> StubContext with(Class<T> type, T instance) {
+		instances.put(type, instance);
+		return this;
+	}
+
+	@Override
+	public void addContextListener(ContextListener l) {
+		listeners.add(l);
+	}
+
+	@Override
+	public void addContextListener(ContextListener l, int mask) {
+		listeners.add(l);
+	}
+
+	@Override
+	public void removeContextListener(ContextListener l) {
+		listeners.remove(l);
+	}
+
+	@Override
+	public <T> T getInstance(Class<T> type) {
+		final Provider<T> provider = getProvider(type);
+		if (provider == null) {
+			throw new IllegalStateException("Not configured: " + type);
+		}
+		return provider.get();
+	}
+
+	@Override
+	public <T> Provider<T> getProvider(final Class<T> type) {
+		providerLookups++;
+		if (!instances.containsKey(type)) {
+			return null;
+		}
+		return new Provider<T>() {
+
+			@Override
+			public T get() {
+				return type.cast(instances.get(type));
+			}
+		};
+	}
+
+	@Override
+	public Context[] getParents() {
+		return null;
+	}
+
+	@Override
+	public CompletionStage<Context> initialization() {
+		return CompletableFuture.<Context> completedFuture(this);
+	}
+
+	@Override
+	public void destroy() {
+		for (ContextListener l : new ArrayList<ContextListener>(listeners)) {
+			l.contextDestroyed(new ContextEvent(this, ContextEvent.DESTROYED));
+		}
+	}
+
+}
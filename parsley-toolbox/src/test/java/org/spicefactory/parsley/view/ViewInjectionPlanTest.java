@@ -0,0 +1,108 @@
+package org.spicefactory.parsley.view;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JPanel;
+
+import org.spicefactory.parsley.core.messaging.MessageReceiverRegistry;
+import org.spicefactory.parsley.core.messaging.receiver.MessageTarget;
+import org.spicefactory.parsley.core.scope.Scope;
+import org.spicefactory.parsley.core.scope.ScopeIndex;
+import org.spicefactory.parsley.core.scope.ScopeInfo;
+import org.spicefactory.parsley.core.scope.ScopeManager;
+import org.spicefactory.parsley.core.view.ViewConfiguration;
+import org.spicefactory.parsley.messaging.annotation.MessageHandler;
+
+/**
+ * Checks that the message handlers of view targets are registered with their scope and removed along with their view or Context.
+ * @author Sylvain Lecoy <sylvain.lecoy@gmail.com>
+ */
+public class ViewInjectionPlanTest {
+
+	public static class Handler {
+		@MessageHandler
+		public void handle(String message) {
+		}
+	}
+
+	private final List<MessageTarget> targets = new ArrayList<MessageTarget>();
+	private final StubContext context = new StubContext();
+
+	public ViewInjectionPlanTest() {
+		final MessageReceiverRegistry registry = stub(MessageReceiverRegistry.class, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("addTarget")) {
+					targets.add((MessageTarget) args[0]);
+				}
+				else if (method.getName().equals("removeTarget")) {
+					targets.remove(args[0]);
+				}
+				return null;
+			}
+		});
+		final ScopeInfo info = stub(ScopeInfo.class, returning("messageReceivers", registry));
+		final Scope scope = stub(Scope.class, returning("uuid", "global-uuid"));
+		context.with(ScopeManager.class, stub(ScopeManager.class, returning("getScope", scope)));
+		context.with(ScopeIndex.class, stub(ScopeIndex.class, returning("get", info)));
+	}
+
+	public void testHandlersRemovedWithView() {
+		final JPanel root = new JPanel();
+		final JPanel view = new JPanel();
+		root.add(view);
+		final ViewConfiguration config = new ViewConfiguration(view, new Handler());
+		config.autoremove = true;
+
+		final ViewInjectionPlan plan = ViewInjectionPlan.forClass(Handler.class);
+		plan.resolve(context).apply(config);
+		check(targets.size() == 1 && targets.get(0).type() == String.class, "Handler not registered: " + targets);
+
+		// A reused target processed again keeps a single registration.
+		plan.resolve(context).apply(config);
+		check(targets.size() == 1, "Handler registered twice: " + targets);
+
+		root.remove(view);
+		check(targets.isEmpty(), "Handler not removed with its view: " + targets);
+		check(context.listeners.isEmpty(), "Context listener not removed: " + context.listeners);
+	}
+
+	public void testHandlersRemovedWithContext() {
+		final JPanel root = new JPanel();
+		final JPanel view = new JPanel();
+		root.add(view);
+
+		ViewInjectionPlan.forClass(Handler.class).resolve(context).apply(new ViewConfiguration(view, new Handler()));
+		root.remove(view);
+		check(targets.size() == 1, "Handler removed without autoremove: " + targets);
+
+		context.destroy();
+		check(targets.isEmpty(), "Handler not removed with its Context: " + targets);
+	}
+
+	private static InvocationHandler returning(final String name, final Object value) {
+		return new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return method.getName().equals(name) ? value : null;
+			}
+		};
+	}
+
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(ViewInjectionPlanTest.class.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}